@@ -63,6 +63,9 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "output_flush_interval", required = true, validator = PositiveIntegerValidator.class)
     private int outputFlushInterval = 1;
 
+    @Parameter(value = "output_flush_concurrency", validator = PositiveIntegerValidator.class)
+    private int outputFlushConcurrency = 3;
+
     @Parameter(value = "outputbuffer_processors", required = true, validator = PositiveIntegerValidator.class)
     private int outputBufferProcessors = 3;
 
@@ -75,6 +78,9 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "outputbuffer_processor_keep_alive_time", validator = PositiveIntegerValidator.class)
     private int outputBufferProcessorKeepAliveTime = 5000;
 
+    @Parameter(value = "outputbuffer_processor_batch_dispatch")
+    private boolean outputBufferProcessorBatchDispatch = false;
+
     @Parameter("rules_file")
     private String droolsRulesFile;
 
@@ -99,6 +105,9 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "allow_highlighting")
     private boolean allowHighlighting = false;
 
+    @Parameter(value = "search_aggregation_cache_max_size", validator = PositiveIntegerValidator.class)
+    private int searchAggregationCacheMaxSize = 1000;
+
     @Parameter(value = "lb_recognition_period_seconds", validator = PositiveIntegerValidator.class)
     private int loadBalancerRecognitionPeriodSeconds = 3;
 
@@ -138,6 +147,12 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "dashboard_widget_default_cache_time", validator = PositiveDurationValidator.class)
     private Duration dashboardWidgetDefaultCacheTime = Duration.seconds(10L);
 
+    @Parameter(value = "dashboard_widget_cache_max_size", validator = PositiveIntegerValidator.class)
+    private int dashboardWidgetCacheMaxSize = 1000;
+
+    @Parameter(value = "dashboard_widget_refresh_threads", validator = PositiveIntegerValidator.class)
+    private int dashboardWidgetRefreshThreads = 4;
+
     @Parameter(value = "user_password_default_algorithm")
     private String userPasswordDefaultAlgorithm = "bcrypt";
 
@@ -156,6 +171,9 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "index_ranges_cleanup_interval", validator = PositiveDurationValidator.class)
     private Duration indexRangesCleanupInterval = Duration.hours(1L);
 
+    @Parameter(value = "index_ranges_rebuild_concurrency", validator = PositiveIntegerValidator.class)
+    private int indexRangesRebuildConcurrency = 4;
+
     @Parameter(value = "trusted_proxies", converter = IPSubnetConverter.class)
     private Set<IpSubnet> trustedProxies = Collections.emptySet();
 
@@ -179,6 +197,10 @@ public class Configuration extends BaseConfiguration {
         return outputFlushInterval;
     }
 
+    public int getOutputFlushConcurrency() {
+        return outputFlushConcurrency;
+    }
+
     public int getOutputBufferProcessors() {
         return outputBufferProcessors;
     }
@@ -191,6 +213,10 @@ public class Configuration extends BaseConfiguration {
         return outputBufferProcessorThreadsMaxPoolSize;
     }
 
+    public boolean isOutputBufferProcessorBatchDispatch() {
+        return outputBufferProcessorBatchDispatch;
+    }
+
     public int getOutputBufferProcessorKeepAliveTime() {
         return outputBufferProcessorKeepAliveTime;
     }
@@ -238,6 +264,10 @@ public class Configuration extends BaseConfiguration {
         return allowHighlighting;
     }
 
+    public int getSearchAggregationCacheMaxSize() {
+        return searchAggregationCacheMaxSize;
+    }
+
     public int getLoadBalancerRecognitionPeriodSeconds() {
         return loadBalancerRecognitionPeriodSeconds;
     }
@@ -286,6 +316,14 @@ public class Configuration extends BaseConfiguration {
         return dashboardWidgetDefaultCacheTime;
     }
 
+    public int getDashboardWidgetCacheMaxSize() {
+        return dashboardWidgetCacheMaxSize;
+    }
+
+    public int getDashboardWidgetRefreshThreads() {
+        return dashboardWidgetRefreshThreads;
+    }
+
     public String getUserPasswordDefaultAlgorithm() {
         return userPasswordDefaultAlgorithm;
     }
@@ -310,6 +348,10 @@ public class Configuration extends BaseConfiguration {
         return indexRangesCleanupInterval;
     }
 
+    public int getIndexRangesRebuildConcurrency() {
+        return indexRangesRebuildConcurrency;
+    }
+
     public Set<IpSubnet> getTrustedProxies() {
         return trustedProxies;
     }
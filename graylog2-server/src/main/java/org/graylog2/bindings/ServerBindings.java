@@ -39,6 +39,7 @@ import org.graylog2.bindings.providers.MongoConnectionProvider;
 import org.graylog2.bindings.providers.RulesEngineProvider;
 import org.graylog2.bindings.providers.SystemJobFactoryProvider;
 import org.graylog2.bindings.providers.SystemJobManagerProvider;
+import org.graylog2.buffers.processors.BatchedOutputBufferProcessor;
 import org.graylog2.bundles.BundleService;
 import org.graylog2.cluster.ClusterConfigServiceImpl;
 import org.graylog2.dashboards.widgets.WidgetCacheTime;
@@ -67,6 +68,7 @@ import org.graylog2.plugin.inject.Graylog2Module;
 import org.graylog2.plugin.streams.DefaultStream;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.rest.NotFoundExceptionMapper;
+import org.graylog2.rest.ScrollChunkNdjsonWriter;
 import org.graylog2.rest.ScrollChunkWriter;
 import org.graylog2.rest.ValidationExceptionMapper;
 import org.graylog2.security.ldap.LdapConnector;
@@ -129,6 +131,7 @@ public class ServerBindings extends Graylog2Module {
     private void bindFactoryModules() {
         // System Jobs
         install(new FactoryModuleBuilder().build(RebuildIndexRangesJob.Factory.class));
+        install(new FactoryModuleBuilder().build(BatchedOutputBufferProcessor.Factory.class));
         install(new FactoryModuleBuilder().build(OptimizeIndexJob.Factory.class));
         install(new FactoryModuleBuilder().build(SetIndexReadOnlyJob.Factory.class));
         install(new FactoryModuleBuilder().build(IndexSetCleanupJob.Factory.class));
@@ -204,6 +207,7 @@ public class ServerBindings extends Graylog2Module {
 
     private void bindAdditionalJerseyComponents() {
         jerseyAdditionalComponentsBinder().addBinding().toInstance(ScrollChunkWriter.class);
+        jerseyAdditionalComponentsBinder().addBinding().toInstance(ScrollChunkNdjsonWriter.class);
     }
 
     private void bindEventBusListeners() {
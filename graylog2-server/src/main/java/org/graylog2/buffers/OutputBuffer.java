@@ -24,6 +24,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import org.graylog2.buffers.processors.BatchedOutputBufferProcessor;
 import org.graylog2.buffers.processors.OutputBufferProcessor;
 import org.graylog2.plugin.GlobalMetricNames;
 import org.graylog2.plugin.Message;
@@ -52,7 +53,9 @@ public class OutputBuffer extends Buffer {
     @Inject
     public OutputBuffer(MetricRegistry metricRegistry,
                         Provider<OutputBufferProcessor> processorProvider,
+                        BatchedOutputBufferProcessor.Factory batchedProcessorFactory,
                         @Named("outputbuffer_processors") int processorCount,
+                        @Named("outputbuffer_processor_batch_dispatch") boolean batchDispatch,
                         @Named("ring_size") int ringSize,
                         @Named("processor_wait_strategy") String waitStrategyName) {
         this.ringBufferSize = ringSize;
@@ -77,16 +80,24 @@ public class OutputBuffer extends Buffer {
         );
         disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler(LOG));
 
-        LOG.info("Initialized OutputBuffer with ring size <{}> and wait strategy <{}>.",
-                ringBufferSize, waitStrategy.getClass().getSimpleName());
+        LOG.info("Initialized OutputBuffer with ring size <{}>, wait strategy <{}> and batch dispatch <{}>.",
+                ringBufferSize, waitStrategy.getClass().getSimpleName(), batchDispatch);
 
-        final OutputBufferProcessor[] processors = new OutputBufferProcessor[processorCount];
+        if (batchDispatch) {
+            final BatchedOutputBufferProcessor[] processors = new BatchedOutputBufferProcessor[processorCount];
+            for (int i = 0; i < processorCount; i++) {
+                processors[i] = batchedProcessorFactory.create(i, processorCount);
+            }
+            disruptor.handleEventsWith(processors);
+        } else {
+            final OutputBufferProcessor[] processors = new OutputBufferProcessor[processorCount];
 
-        for (int i = 0; i < processorCount; i++) {
-            processors[i] = processorProvider.get();
-        }
+            for (int i = 0; i < processorCount; i++) {
+                processors[i] = processorProvider.get();
+            }
 
-        disruptor.handleEventsWithWorkerPool(processors);
+            disruptor.handleEventsWithWorkerPool(processors);
+        }
 
         ringBuffer = disruptor.start();
     }
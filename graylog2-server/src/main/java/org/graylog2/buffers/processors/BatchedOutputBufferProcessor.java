@@ -0,0 +1,242 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import com.lmax.disruptor.EventHandler;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.DefaultMessageOutput;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.GlobalMetricNames;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Writes messages of the output buffer to the outputs in batches instead of one by one like the
+ * {@link OutputBufferProcessor} does.
+ * <p>
+ * Every processor handles the sequences of the ring buffer which belong to its ordinal and collects their messages
+ * until the end of the batch the Disruptor made available, or until {@code output_batch_size} messages have been
+ * collected. The messages are then grouped per output and every output receives its messages in a single
+ * {@link MessageOutput#write(List)} call.
+ * </p>
+ * <p>
+ * The default output is written to on the processor thread itself, so it still exerts back pressure on the processing
+ * pipeline without a thread handoff. Stream outputs are written to on the executor and are subject to the
+ * {@code output_module_timeout}, so one bad output does not block the others.
+ * </p>
+ */
+public class BatchedOutputBufferProcessor implements EventHandler<MessageEvent> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedOutputBufferProcessor.class);
+
+    private static final String INCOMING_MESSAGES_METRICNAME = name(OutputBufferProcessor.class, "incomingMessages");
+    private static final String PROCESS_TIME_METRICNAME = name(OutputBufferProcessor.class, "processTime");
+
+    // Output classes which throw an UnsupportedOperationException when writing lists of messages.
+    private static final Set<Class<?>> SINGLE_MESSAGE_OUTPUTS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public interface Factory {
+        BatchedOutputBufferProcessor create(@Assisted("ordinal") int ordinal,
+                                            @Assisted("numberOfConsumers") int numberOfConsumers);
+    }
+
+    private final ExecutorService executor;
+    private final Configuration configuration;
+    private final ServerStatus serverStatus;
+    private final OutputRouter outputRouter;
+    private final MessageOutput defaultMessageOutput;
+    private final int ordinal;
+    private final int numberOfConsumers;
+    private final int maxBatchSize;
+
+    private final Meter incomingMessages;
+    private final Counter outputThroughput;
+    private final Timer processTime;
+    private final Histogram batchSize;
+
+    // only accessed by the thread running this processor
+    private List<Message> batch;
+
+    @AssistedInject
+    public BatchedOutputBufferProcessor(Configuration configuration,
+                                        MetricRegistry metricRegistry,
+                                        ServerStatus serverStatus,
+                                        OutputRouter outputRouter,
+                                        @DefaultMessageOutput MessageOutput defaultMessageOutput,
+                                        @Assisted("ordinal") int ordinal,
+                                        @Assisted("numberOfConsumers") int numberOfConsumers) {
+        this.configuration = configuration;
+        this.serverStatus = serverStatus;
+        this.outputRouter = outputRouter;
+        this.defaultMessageOutput = defaultMessageOutput;
+        this.ordinal = ordinal;
+        this.numberOfConsumers = numberOfConsumers;
+        this.maxBatchSize = configuration.getOutputBatchSize();
+        this.batch = new ArrayList<>(maxBatchSize);
+
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                configuration.getOutputBufferProcessorThreadsCorePoolSize(),
+                configuration.getOutputBufferProcessorThreadsMaxPoolSize(),
+                configuration.getOutputBufferProcessorKeepAliveTime(), TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("outputbuffer-processor-" + ordinal + "-executor-%d").build());
+        this.executor = new InstrumentedExecutorService(threadPoolExecutor, metricRegistry,
+                name(OutputBufferProcessor.class, "executor-service"));
+
+        this.incomingMessages = metricRegistry.meter(INCOMING_MESSAGES_METRICNAME);
+        this.outputThroughput = metricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT);
+        this.processTime = metricRegistry.timer(PROCESS_TIME_METRICNAME);
+        this.batchSize = metricRegistry.histogram(name(BatchedOutputBufferProcessor.class, "batchSize"));
+    }
+
+    @Override
+    public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (sequence % numberOfConsumers == ordinal) {
+            final Message msg = event.getMessage();
+            if (msg == null) {
+                LOG.debug("Skipping null message.");
+            } else {
+                incomingMessages.mark();
+                batch.add(msg);
+            }
+        }
+
+        if (!batch.isEmpty() && (endOfBatch || batch.size() >= maxBatchSize)) {
+            // outputs are free to keep the list, so start a new one instead of clearing it
+            final List<Message> messages = batch;
+            batch = new ArrayList<>(maxBatchSize);
+            writeBatch(messages);
+        }
+    }
+
+    private void writeBatch(List<Message> messages) throws InterruptedException {
+        LOG.debug("Processing batch of {} messages from OutputBuffer.", messages.size());
+        batchSize.update(messages.size());
+
+        // Group the messages by stream output, most batches are only written to the default output.
+        Map<MessageOutput, List<Message>> streamOutputMessages = null;
+        for (final Message msg : messages) {
+            final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
+            msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
+            for (final MessageOutput output : messageOutputs) {
+                if (streamOutputMessages == null) {
+                    streamOutputMessages = new IdentityHashMap<>();
+                }
+                streamOutputMessages.computeIfAbsent(output, k -> new ArrayList<>()).add(msg);
+            }
+        }
+
+        CountDownLatch streamOutputsDoneSignal = null;
+        if (streamOutputMessages != null) {
+            streamOutputsDoneSignal = new CountDownLatch(streamOutputMessages.size());
+            for (final Map.Entry<MessageOutput, List<Message>> entry : streamOutputMessages.entrySet()) {
+                submit(entry.getKey(), entry.getValue(), streamOutputsDoneSignal);
+            }
+        }
+
+        // the default output blocks the processor thread, this exerts the back pressure to the system
+        write(defaultMessageOutput, messages);
+
+        // Wait until all writer threads for stream outputs have finished or timeout is reached.
+        if (streamOutputsDoneSignal != null
+                && !streamOutputsDoneSignal.await(configuration.getOutputModuleTimeout(), TimeUnit.MILLISECONDS)) {
+            LOG.warn("Timeout reached. Not waiting any longer for stream output writer threads to complete.");
+        }
+
+        for (final Message msg : messages) {
+            if (msg.hasRecordings()) {
+                LOG.debug("Message event trace: {}", msg.recordingsAsString());
+            }
+        }
+
+        outputThroughput.inc(messages.size());
+
+        LOG.debug("Wrote batch of {} messages to all outputs. Finished handling.", messages.size());
+    }
+
+    private void submit(final MessageOutput output, final List<Message> messages, final CountDownLatch doneSignal) {
+        try {
+            executor.execute(() -> {
+                try {
+                    write(output, messages);
+                } finally {
+                    doneSignal.countDown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.error("Could not write message batch to output [" + output.getClass() + "].", e);
+            doneSignal.countDown();
+        }
+    }
+
+    private void write(final MessageOutput output, final List<Message> messages) {
+        if (output == null) {
+            LOG.error("Output was null!");
+            return;
+        }
+        if (!output.isRunning()) {
+            LOG.debug("Skipping stopped output {}", output.getClass().getName());
+            return;
+        }
+
+        LOG.debug("Writing {} messages to [{}].", messages.size(), output.getClass());
+        try (Timer.Context ignored = processTime.time()) {
+            if (!SINGLE_MESSAGE_OUTPUTS.contains(output.getClass())) {
+                try {
+                    output.write(messages);
+                    return;
+                } catch (UnsupportedOperationException e) {
+                    LOG.debug("Output [{}] does not support writing lists of messages, writing them one by one.", output.getClass());
+                    SINGLE_MESSAGE_OUTPUTS.add(output.getClass());
+                }
+            }
+            for (final Message message : messages) {
+                output.write(message);
+            }
+        } catch (Exception e) {
+            LOG.error("Error in output [" + output.getClass() + "].", e);
+        }
+    }
+}
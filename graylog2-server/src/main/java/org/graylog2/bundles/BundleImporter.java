@@ -19,13 +19,16 @@ package org.graylog2.bundles;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.bson.types.ObjectId;
 import org.graylog2.dashboards.DashboardImpl;
 import org.graylog2.dashboards.DashboardService;
 import org.graylog2.dashboards.widgets.DashboardWidgetCreator;
 import org.graylog2.dashboards.widgets.InvalidWidgetConfigurationException;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.grok.GrokPatternService;
+import org.graylog2.grok.GrokPatternsChangedEvent;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.inputs.InputService;
@@ -85,6 +88,7 @@ public class BundleImporter {
     private final InputLauncher inputLauncher;
     private final GrokPatternService grokPatternService;
     private final TimeRangeFactory timeRangeFactory;
+    private final ClusterEventBus clusterBus;
 
     private final Map<String, org.graylog2.grok.GrokPattern> createdGrokPatterns = new HashMap<>();
     private final Map<String, MessageInput> createdInputs = new HashMap<>();
@@ -108,7 +112,8 @@ public class BundleImporter {
                           final MessageInputFactory messageInputFactory,
                           final InputLauncher inputLauncher,
                           final GrokPatternService grokPatternService,
-                          final TimeRangeFactory timeRangeFactory) {
+                          final TimeRangeFactory timeRangeFactory,
+                          final ClusterEventBus clusterBus) {
         this.inputService = inputService;
         this.inputRegistry = inputRegistry;
         this.extractorFactory = extractorFactory;
@@ -123,6 +128,7 @@ public class BundleImporter {
         this.inputLauncher = inputLauncher;
         this.grokPatternService = grokPatternService;
         this.timeRangeFactory = timeRangeFactory;
+        this.clusterBus = clusterBus;
     }
 
     public void runImport(final ConfigurationBundle bundle, final String userName) {
@@ -194,6 +200,10 @@ public class BundleImporter {
                 LOG.debug("Couldn't find grok pattern \"{}\" in database", grokPatternName);
             }
         }
+
+        if (!createdGrokPatterns.isEmpty()) {
+            clusterBus.post(GrokPatternsChangedEvent.create(ImmutableSet.copyOf(createdGrokPatterns.keySet()), Collections.emptySet()));
+        }
     }
 
     private void deleteCreatedInputs() throws NotFoundException {
@@ -236,6 +246,11 @@ public class BundleImporter {
             final org.graylog2.grok.GrokPattern createdGrokPattern = createGrokPattern(bundleId, grokPattern);
             createdGrokPatterns.put(grokPattern.name(), createdGrokPattern);
         }
+
+        // The Grok extractors of the bundle need the new patterns, so every node has to reload them.
+        if (!createdGrokPatterns.isEmpty()) {
+            clusterBus.post(GrokPatternsChangedEvent.create(Collections.emptySet(), ImmutableSet.copyOf(createdGrokPatterns.keySet())));
+        }
     }
 
     private org.graylog2.grok.GrokPattern createGrokPattern(String bundleId, GrokPattern grokPattern) throws ValidationException {
@@ -46,6 +46,7 @@ public class JournalShow extends AbstractJournalCommand {
 
         sb.append("Graylog message journal in directory: ").append(kafkaJournalConfiguration.getMessageJournalDir().getAbsolutePath()).append(
                 "\n");
+        sb.append("\t").append("Number of partitions: ").append(journal.getPartitionCount()).append("\n");
         sb.append("\t").append("Total size in bytes: ").append(sizeInBytes).append("\n");
         sb.append("\t").append("Number of segments: ").append(numSegments).append("\n");
         sb.append("\t").append("Log start offset: ").append(startOffset).append("\n");
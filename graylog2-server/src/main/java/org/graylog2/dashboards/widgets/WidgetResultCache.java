@@ -16,88 +16,270 @@
  */
 package org.graylog2.dashboards.widgets;
 
-import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.google.common.base.Supplier;
-import com.google.common.base.Suppliers;
-import com.google.common.collect.Maps;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.graylog2.plugin.dashboards.widgets.ComputationResult;
 import org.graylog2.plugin.dashboards.widgets.WidgetStrategy;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.concurrent.ConcurrentMap;
+import javax.inject.Named;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+/**
+ * Caches the computation results of dashboard widgets.
+ * <p>
+ * Results are cached by the type, configuration, time range and cache time of a widget instead of its ID, so widgets
+ * showing the same thing share a single result. Concurrent requests for a result which is missing or expired wait for
+ * a single computation. Results which are requested in the last quarter of their cache time are recomputed in the
+ * background, so frequently refreshed dashboards don't wait for the computation.
+ * </p>
+ * <p>
+ * The number of results is bounded by {@code dashboard_widget_cache_max_size} and results of widgets which haven't
+ * been requested for a while are evicted.
+ * </p>
+ */
 public class WidgetResultCache {
-    private final ConcurrentMap<String, Supplier<ComputationResult>> cache;
-    private final MetricRegistry metricRegistry;
+    private static final Logger LOG = LoggerFactory.getLogger(WidgetResultCache.class);
+
+    // Results of deleted or unused widgets are dropped after this time.
+    private static final long EXPIRE_AFTER_ACCESS_MINUTES = 10L;
+
     private final WidgetStrategyFactory widgetStrategyFactory;
-    private final Counter counter;
+    private final Executor refreshExecutor;
+    private final Ticker ticker;
+    private final Cache<Key, CachedResult> cache;
+    // The cache key of every widget, to invalidate the result of a widget by its ID. The keys of deleted widgets are
+    // removed by their invalidation, or expire like their results if it has been missed.
+    private final Cache<String, Key> widgetKeys;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter refreshes;
+    private final Timer calculationTime;
 
     @Inject
-    public WidgetResultCache(MetricRegistry metricRegistry, WidgetStrategyFactory widgetStrategyFactory) {
-        this.metricRegistry = metricRegistry;
+    public WidgetResultCache(MetricRegistry metricRegistry,
+                             WidgetStrategyFactory widgetStrategyFactory,
+                             @Named("dashboard_widget_cache_max_size") int maxSize,
+                             @Named("dashboard_widget_refresh_threads") int refreshThreads) {
+        this(metricRegistry, widgetStrategyFactory, maxSize, executor(refreshThreads, maxSize), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    WidgetResultCache(MetricRegistry metricRegistry,
+                      WidgetStrategyFactory widgetStrategyFactory,
+                      int maxSize,
+                      Executor refreshExecutor,
+                      Ticker ticker) {
         this.widgetStrategyFactory = widgetStrategyFactory;
-        this.cache = Maps.newConcurrentMap();
-        this.counter = metricRegistry.counter(name(getClass(), "cacheEntries"));
+        this.refreshExecutor = refreshExecutor;
+        this.ticker = ticker;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .build();
+        this.widgetKeys = CacheBuilder.newBuilder()
+                .expireAfterAccess(EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .build();
+
+        this.hits = metricRegistry.meter(name(getClass(), "hits"));
+        this.misses = metricRegistry.meter(name(getClass(), "misses"));
+        this.refreshes = metricRegistry.meter(name(getClass(), "refreshes"));
+        this.calculationTime = metricRegistry.timer(name(getClass(), "calculationTime"));
+        metricRegistry.register(name(getClass(), "cacheEntries"), (Gauge<Long>) cache::size);
+    }
+
+    private static Executor executor(int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("widget-result-refresh-%d").setDaemon(true).build());
     }
 
     public ComputationResult getComputationResultForDashboardWidget(final DashboardWidget dashboardWidget) throws InvalidWidgetConfigurationException {
-        final String widgetId = dashboardWidget.getId();
-        if (!this.cache.containsKey(widgetId)) {
+        final Key key = Key.create(dashboardWidget);
+        widgetKeys.put(dashboardWidget.getId(), key);
+
+        CachedResult cachedResult = cache.getIfPresent(key);
+        if (cachedResult == null) {
             final WidgetStrategy widgetStrategy = this.widgetStrategyFactory.getWidgetForType(dashboardWidget.getType(),
-                    dashboardWidget.getConfig(), dashboardWidget.getTimeRange(), widgetId);
-            final Supplier<ComputationResult> supplier = this.cache.putIfAbsent(widgetId, Suppliers.memoizeWithExpiration(
-                    new ComputationResultSupplier(metricRegistry, dashboardWidget, widgetStrategy),
-                    dashboardWidget.getCacheTime(),
-                    TimeUnit.SECONDS
-            ));
-
-            if (supplier == null) {
-                // Only increment the counter if there has been no value for the widget ID before.
-                counter.inc();
-            }
+                    dashboardWidget.getConfig(), dashboardWidget.getTimeRange(), dashboardWidget.getId());
+            final CachedResult newResult = new CachedResult(widgetStrategy, TimeUnit.SECONDS.toNanos(key.cacheTime()));
+            final CachedResult existingResult = cache.asMap().putIfAbsent(key, newResult);
+            cachedResult = existingResult == null ? newResult : existingResult;
         }
-        return this.cache.get(widgetId).get();
+
+        return cachedResult.get();
     }
 
     public void invalidate(final String widgetId) {
-        this.cache.remove(widgetId);
-        this.counter.dec();
+        final Key key = widgetKeys.asMap().remove(widgetId);
+        if (key != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    @VisibleForTesting
+    long widgetCount() {
+        widgetKeys.cleanUp();
+        return widgetKeys.size();
+    }
+
+    @AutoValue
+    abstract static class Key {
+        abstract String type();
+
+        abstract Map<String, Object> config();
+
+        @Nullable
+        abstract TimeRange timeRange();
+
+        abstract int cacheTime();
+
+        static Key create(DashboardWidget dashboardWidget) {
+            return new AutoValue_WidgetResultCache_Key(
+                    dashboardWidget.getType().toUpperCase(Locale.ENGLISH),
+                    dashboardWidget.getConfig() == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(dashboardWidget.getConfig())),
+                    dashboardWidget.getTimeRange(),
+                    dashboardWidget.getCacheTime());
+        }
+    }
+
+    private static class RefreshRejectedException extends Exception {
+        private RefreshRejectedException() {
+            super("Background refresh has been rejected", null, false, false);
+        }
+    }
+
+    private static class Computed {
+        private final ComputationResult result;
+        private final long computedAt;
+
+        private Computed(ComputationResult result, long computedAt) {
+            this.result = result;
+            this.computedAt = computedAt;
+        }
     }
 
-    private static class ComputationResultSupplier implements Supplier<ComputationResult> {
-        private final MetricRegistry metricRegistry;
-        private final DashboardWidget dashboardWidget;
+    private class CachedResult {
         private final WidgetStrategy widgetStrategy;
+        private final long cacheTimeNanos;
+        private final long refreshAfterNanos;
 
-        public ComputationResultSupplier(MetricRegistry metricRegistry,
-                                         DashboardWidget dashboardWidget,
-                                         WidgetStrategy widgetStrategy) {
-            this.metricRegistry = metricRegistry;
-            this.dashboardWidget = dashboardWidget;
+        private volatile Computed computed = null;
+        // guarded by this
+        private CompletableFuture<ComputationResult> pendingComputation = null;
+
+        private CachedResult(WidgetStrategy widgetStrategy, long cacheTimeNanos) {
             this.widgetStrategy = widgetStrategy;
+            this.cacheTimeNanos = cacheTimeNanos;
+            this.refreshAfterNanos = cacheTimeNanos - cacheTimeNanos / 4;
         }
 
-        @Override
-        public ComputationResult get() {
-            try (Timer.Context timer = getCalculationTimer().time()) {
-                return this.widgetStrategy.compute();
-            } finally {
-                getCalculationMeter().mark();
+        private ComputationResult get() {
+            final Computed current = computed;
+            if (current != null) {
+                final long age = ticker.read() - current.computedAt;
+                if (age < cacheTimeNanos) {
+                    hits.mark();
+                    if (age >= refreshAfterNanos) {
+                        refresh();
+                    }
+                    return current.result;
+                }
+            }
+
+            misses.mark();
+            while (true) {
+                final CompletableFuture<ComputationResult> computation;
+                final boolean computeHere;
+                synchronized (this) {
+                    computeHere = pendingComputation == null;
+                    if (computeHere) {
+                        pendingComputation = new CompletableFuture<>();
+                    }
+                    computation = pendingComputation;
+                }
+                if (computeHere) {
+                    compute(computation);
+                }
+
+                try {
+                    return computation.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for widget computation", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RefreshRejectedException) {
+                        // the background refresh this request has been waiting for didn't start, compute it here
+                        continue;
+                    }
+                    Throwables.throwIfUnchecked(e.getCause());
+                    throw new RuntimeException(e.getCause());
+                }
             }
         }
 
-        private Timer getCalculationTimer() {
-            return metricRegistry.timer(name(this.getClass(), this.dashboardWidget.getId(), "calculationTime"));
+        private void refresh() {
+            final CompletableFuture<ComputationResult> computation;
+            synchronized (this) {
+                if (pendingComputation != null) {
+                    return;
+                }
+                computation = pendingComputation = new CompletableFuture<>();
+            }
+
+            try {
+                refreshExecutor.execute(() -> compute(computation));
+                refreshes.mark();
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Too many widget results are being refreshed, not refreshing in the background.");
+                synchronized (this) {
+                    pendingComputation = null;
+                }
+                computation.completeExceptionally(new RefreshRejectedException());
+            }
         }
 
-        private Meter getCalculationMeter() {
-            return metricRegistry.meter(name(this.getClass(), this.dashboardWidget.getId(), "calculations"));
+        private void compute(CompletableFuture<ComputationResult> computation) {
+            try (Timer.Context ignored = calculationTime.time()) {
+                final ComputationResult result = widgetStrategy.compute();
+                computed = new Computed(result, ticker.read());
+                computation.complete(result);
+            } catch (Throwable t) {
+                LOG.debug("Widget computation failed", t);
+                computation.completeExceptionally(t);
+            } finally {
+                synchronized (this) {
+                    pendingComputation = null;
+                }
+            }
         }
     }
 }
@@ -16,7 +16,6 @@
  */
 package org.graylog2.filters;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import org.graylog2.database.NotFoundException;
@@ -33,7 +32,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -44,7 +42,7 @@ public class ExtractorFilter implements MessageFilter {
     private static final Logger LOG = LoggerFactory.getLogger(ExtractorFilter.class);
     private static final String NAME = "Extractor";
 
-    private final ConcurrentMap<String, List<Extractor>> extractors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ExtractorPlan> extractors = new ConcurrentHashMap<>();
 
     private final InputService inputService;
     private final ScheduledExecutorService scheduler;
@@ -68,19 +66,29 @@ public class ExtractorFilter implements MessageFilter {
             return false;
         }
 
-        for (final Extractor extractor : extractors.getOrDefault(msg.getSourceInputId(), Collections.emptyList())) {
-            try {
-                extractor.runExtractor(msg);
-            } catch (Exception e) {
-                extractor.incrementExceptions();
-                LOG.error("Could not apply extractor \"" + extractor.getTitle() + "\" (id=" + extractor.getId() + ") "
-                        + "to message " + msg.getId(), e);
-            }
-        }
+        extractors.getOrDefault(msg.getSourceInputId(), ExtractorPlan.empty()).apply(msg);
 
         return false;
     }
 
+    @Override
+    public void filter(List<Message> messages) {
+        // The messages of a batch usually come from the same input, so its extractors are only looked up once.
+        String inputId = null;
+        ExtractorPlan plan = ExtractorPlan.empty();
+        for (Message msg : messages) {
+            final String sourceInputId = msg.getSourceInputId();
+            if (sourceInputId == null) {
+                continue;
+            }
+            if (!sourceInputId.equals(inputId)) {
+                inputId = sourceInputId;
+                plan = extractors.getOrDefault(sourceInputId, ExtractorPlan.empty());
+            }
+            plan.apply(msg);
+        }
+    }
+
     @Subscribe
     @SuppressWarnings("unused")
     public void handleInputCreate(final InputCreated event) {
@@ -119,7 +127,7 @@ public class ExtractorFilter implements MessageFilter {
                     .sorted((e1, e2) -> e1.getOrder().intValue() - e2.getOrder().intValue())
                     .collect(Collectors.toList());
 
-            extractors.put(inputId, ImmutableList.copyOf(sortedExtractors));
+            extractors.put(inputId, ExtractorPlan.create(sortedExtractors));
         } catch (NotFoundException e) {
             LOG.warn("Unable to load input <{}>: {}", inputId, e.getMessage());
         }
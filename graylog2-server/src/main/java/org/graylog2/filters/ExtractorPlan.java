@@ -0,0 +1,269 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.AhoCorasick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the extractors of an input in their configured order, but evaluates their conditions per source field instead
+ * of per extractor.
+ *
+ * All distinct STRING conditions on a field are compiled into a single {@link AhoCorasick} automaton, so one pass over
+ * the field value decides all of them, and every REGEX condition shared by several extractors of a field is only
+ * evaluated once. The outcomes are kept until an extractor changes the value of the field, e.g. by cutting from it,
+ * so every extractor sees the same outcome of its condition as if it evaluated it on its own.
+ *
+ * Conditions which are not shared with another extractor are evaluated by the extractor itself.
+ *
+ * Instances are immutable and thread-safe.
+ */
+class ExtractorPlan {
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractorPlan.class);
+
+    private static final ExtractorPlan EMPTY = new ExtractorPlan(ImmutableList.of(), new int[0], new int[0], new FieldConditions[0]);
+
+    private final List<Extractor> extractors;
+    // Per extractor: index of the shared conditions of its source field (or -1) and of its condition in there.
+    private final int[] fieldIndices;
+    private final int[] conditionIndices;
+    private final FieldConditions[] fieldConditions;
+
+    private ExtractorPlan(List<Extractor> extractors, int[] fieldIndices, int[] conditionIndices, FieldConditions[] fieldConditions) {
+        this.extractors = extractors;
+        this.fieldIndices = fieldIndices;
+        this.conditionIndices = conditionIndices;
+        this.fieldConditions = fieldConditions;
+    }
+
+    static ExtractorPlan empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates the plan for the given extractors, which have to be sorted by their order already.
+     */
+    static ExtractorPlan create(List<Extractor> extractors) {
+        final int size = extractors.size();
+        final int[] fieldIndices = new int[size];
+        final int[] conditionIndices = new int[size];
+        Arrays.fill(fieldIndices, -1);
+
+        // Count the users of every condition to only share the ones which are used more than once.
+        final Map<String, Map<String, Integer>> stringConditionUsers = new LinkedHashMap<>();
+        final Map<String, Map<String, Integer>> regexConditionUsers = new LinkedHashMap<>();
+        for (Extractor extractor : extractors) {
+            final Map<String, Map<String, Integer>> users = conditionUsers(extractor, stringConditionUsers, regexConditionUsers);
+            if (users != null) {
+                users.computeIfAbsent(extractor.getSourceField(), k -> new LinkedHashMap<>())
+                        .merge(extractor.getConditionValue(), 1, Integer::sum);
+            }
+        }
+
+        final Map<String, FieldConditionsBuilder> builders = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            final Extractor extractor = extractors.get(i);
+            final Map<String, Map<String, Integer>> users = conditionUsers(extractor, stringConditionUsers, regexConditionUsers);
+            if (users == null) {
+                continue;
+            }
+            final String sourceField = extractor.getSourceField();
+            final String conditionValue = extractor.getConditionValue();
+            final boolean isString = extractor.getConditionType() == Extractor.ConditionType.STRING;
+            final Map<String, Integer> fieldUsers = users.get(sourceField);
+            // All STRING conditions of a field are found in one pass, so they are shared as soon as there are two.
+            final boolean shared = fieldUsers.get(conditionValue) > 1 || (isString && fieldUsers.size() > 1);
+            if (!shared) {
+                continue;
+            }
+
+            FieldConditionsBuilder builder = builders.get(sourceField);
+            if (builder == null) {
+                builder = new FieldConditionsBuilder(sourceField, builders.size());
+                builders.put(sourceField, builder);
+            }
+            fieldIndices[i] = builder.index;
+            conditionIndices[i] = isString ? builder.addSubstring(conditionValue) : builder.addRegex(conditionValue);
+        }
+
+        final FieldConditions[] fieldConditions = new FieldConditions[builders.size()];
+        for (FieldConditionsBuilder builder : builders.values()) {
+            fieldConditions[builder.index] = builder.build();
+        }
+
+        return new ExtractorPlan(ImmutableList.copyOf(extractors), fieldIndices, conditionIndices, fieldConditions);
+    }
+
+    private static Map<String, Map<String, Integer>> conditionUsers(Extractor extractor,
+                                                                     Map<String, Map<String, Integer>> stringConditionUsers,
+                                                                     Map<String, Map<String, Integer>> regexConditionUsers) {
+        if (extractor.getConditionValue() == null) {
+            return null;
+        }
+        switch (extractor.getConditionType()) {
+            case STRING:
+                return stringConditionUsers;
+            case REGEX:
+                return regexConditionUsers;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Runs all extractors on the given message.
+     */
+    void apply(Message msg) {
+        // Outcomes of the shared conditions for the current value of every field, created on first use.
+        FieldState[] states = null;
+
+        for (int i = 0; i < extractors.size(); i++) {
+            final Extractor extractor = extractors.get(i);
+            try {
+                // We can only work on Strings.
+                final Object value = msg.getField(extractor.getSourceField());
+                if (!(value instanceof String)) {
+                    continue;
+                }
+                final String field = (String) value;
+
+                final boolean conditionMatches;
+                final int fieldIndex = fieldIndices[i];
+                if (fieldIndex < 0) {
+                    conditionMatches = extractor.conditionMatches(field);
+                } else {
+                    if (states == null) {
+                        states = new FieldState[fieldConditions.length];
+                    }
+                    if (states[fieldIndex] == null) {
+                        states[fieldIndex] = new FieldState(fieldConditions[fieldIndex]);
+                    }
+                    conditionMatches = states[fieldIndex].matches(field, conditionIndices[i]);
+                }
+
+                if (conditionMatches) {
+                    extractor.runExtractor(msg, field);
+                }
+            } catch (Exception e) {
+                extractor.incrementExceptions();
+                LOG.error("Could not apply extractor \"" + extractor.getTitle() + "\" (id=" + extractor.getId() + ") "
+                        + "to message " + msg.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * The shared STRING and REGEX conditions of a single source field. STRING conditions are identified by their
+     * pattern index in the automaton, REGEX conditions by the bitwise complement of their index.
+     */
+    private static class FieldConditions {
+        private final AhoCorasick substrings;
+        private final Pattern[] regexes;
+
+        private FieldConditions(AhoCorasick substrings, Pattern[] regexes) {
+            this.substrings = substrings;
+            this.regexes = regexes;
+        }
+    }
+
+    private static class FieldConditionsBuilder {
+        private final String sourceField;
+        private final int index;
+        private final AhoCorasick.Builder substrings = AhoCorasick.builder();
+        private final Map<String, Integer> regexIndices = new HashMap<>();
+        private int substringCount = 0;
+
+        private FieldConditionsBuilder(String sourceField, int index) {
+            this.sourceField = sourceField;
+            this.index = index;
+        }
+
+        private int addSubstring(String substring) {
+            final int pattern = substrings.add(substring);
+            substringCount = Math.max(substringCount, pattern + 1);
+            return pattern;
+        }
+
+        private int addRegex(String regex) {
+            return ~regexIndices.computeIfAbsent(regex, k -> regexIndices.size());
+        }
+
+        private FieldConditions build() {
+            final Pattern[] regexes = new Pattern[regexIndices.size()];
+            regexIndices.forEach((regex, i) -> regexes[i] = Pattern.compile(regex, Pattern.DOTALL));
+            LOG.debug("Sharing {} STRING and {} REGEX extractor conditions of field <{}>",
+                    substringCount, regexes.length, sourceField);
+            return new FieldConditions(substringCount > 0 ? substrings.build() : null, regexes);
+        }
+    }
+
+    /**
+     * Outcomes of the shared conditions of a field for one message. They are evaluated lazily and discarded as soon
+     * as the field has a different value.
+     */
+    private static class FieldState {
+        private static final byte UNKNOWN = 0;
+        private static final byte MATCH = 1;
+        private static final byte NO_MATCH = 2;
+
+        private final FieldConditions conditions;
+        private String value;
+        private long[] substringMatches;
+        private byte[] regexMatches;
+
+        private FieldState(FieldConditions conditions) {
+            this.conditions = conditions;
+        }
+
+        private boolean matches(String field, int condition) {
+            // Extractors which change the field set a new string, so comparing the references is enough.
+            if (field != value) {
+                value = field;
+                substringMatches = null;
+                regexMatches = null;
+            }
+
+            if (condition >= 0) {
+                if (substringMatches == null) {
+                    substringMatches = new long[conditions.substrings.getBitSetWords()];
+                    conditions.substrings.findAll(field, substringMatches);
+                }
+                return (substringMatches[condition >>> 6] & (1L << condition)) != 0L;
+            }
+
+            final int regex = ~condition;
+            if (regexMatches == null) {
+                regexMatches = new byte[conditions.regexes.length];
+            }
+            if (regexMatches[regex] == UNKNOWN) {
+                regexMatches[regex] = conditions.regexes[regex].matcher(field).find() ? MATCH : NO_MATCH;
+            }
+            return regexMatches[regex] == MATCH;
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.graylog2.filters;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.filters.blacklist.BlacklistMatcher;
+import org.graylog2.filters.blacklist.FilterDescription;
 import org.graylog2.filters.events.FilterDescriptionUpdateEvent;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.RulesEngine;
@@ -26,30 +28,45 @@ import org.graylog2.plugin.filters.MessageFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+
 /**
+ * Drops messages matching the blacklist filter descriptions with a {@link BlacklistMatcher}. The rules engine is only
+ * run if a rules file has been configured, its sessions contain the filter descriptions as facts for these rules.
+ *
  * @author Lennart Koopmann <lennart@socketfeed.com>
  */
 public class RulesFilter implements MessageFilter {
     private static final Logger LOG = LoggerFactory.getLogger(RulesFilter.class);
 
-    private final RulesEngine rulesEngine;
     private final FilterService filterService;
     private final ScheduledExecutorService scheduler;
-    private final AtomicReference<RulesEngine.RulesSession> privateSession = new AtomicReference<>(null);
+    private final AtomicReference<BlacklistMatcher> blacklist = new AtomicReference<>(BlacklistMatcher.empty());
+    @Nullable
+    private final RulesEngine rulesEngine;
+    // The filter descriptions which have been inserted into the rules engine.
+    private List<FilterDescription> filterFacts = Collections.emptyList();
 
     @Inject
     public RulesFilter(final RulesEngine rulesEngine,
                        final FilterService filterService,
                        final EventBus serverEventBus,
-                       @Named("daemonScheduler") ScheduledExecutorService scheduler) {
-        this.rulesEngine = rulesEngine;
+                       @Named("daemonScheduler") ScheduledExecutorService scheduler,
+                       @Named("rules_file") @Nullable String rulesFile) {
         this.filterService = filterService;
         this.scheduler = scheduler;
+        // The blacklist is matched without the rules engine, so it's only needed for the rules from the rules file.
+        this.rulesEngine = isNullOrEmpty(rulesFile) ? null : rulesEngine;
 
         loadRules();
 
@@ -59,8 +76,31 @@ public class RulesFilter implements MessageFilter {
 
     @Override
     public boolean filter(Message msg) {
-        // Always run the rules engine to make sure rules from the external rules file will be run.
-        privateSession.get().evaluate(msg, true);
+        return filter(msg, blacklist.get());
+    }
+
+    @Override
+    public void filter(List<Message> messages) {
+        final BlacklistMatcher matcher = blacklist.get();
+        for (Message msg : messages) {
+            try {
+                filter(msg, matcher);
+            } catch (Exception e) {
+                LOG.error("Could not apply rules on message <" + msg.getId() + ">: ", e);
+            }
+        }
+    }
+
+    private boolean filter(Message msg, BlacklistMatcher matcher) {
+        if (matcher.matches(msg)) {
+            msg.setFilterOut(true);
+            return true;
+        }
+
+        if (rulesEngine != null) {
+            // uses a separate session for every processor thread
+            rulesEngine.evaluateInSharedSession(msg);
+        }
 
         // false if not explicitly set to true in the rules.
         return msg.getFilterOut();
@@ -73,22 +113,33 @@ public class RulesFilter implements MessageFilter {
         scheduler.submit(this::loadRules);
     }
 
-    private void loadRules() {
+    private synchronized void loadRules() {
         LOG.debug("Loading rule filters");
         try {
-            final RulesEngine.RulesSession newSession = rulesEngine.createPrivateSession();
-
-            filterService.loadAll().forEach(filterDescription -> {
-                LOG.debug("Insert filter description: {}", filterDescription);
-                newSession.insertFact(filterDescription);
-            });
-
-            privateSession.set(newSession);
+            final Set<FilterDescription> filterDescriptions = filterService.loadAll();
+            blacklist.set(BlacklistMatcher.create(filterDescriptions));
+            if (rulesEngine != null) {
+                updateFilterFacts(rulesEngine, filterDescriptions);
+            }
         } catch (NotFoundException e) {
             LOG.error("No filters found", e);
         }
     }
 
+    private void updateFilterFacts(RulesEngine rulesEngine, Set<FilterDescription> filterDescriptions) {
+        // The new filter descriptions are inserted first, so the rules never run without any of them.
+        final List<FilterDescription> newFacts = new ArrayList<>(filterDescriptions.size());
+        for (FilterDescription filterDescription : filterDescriptions) {
+            LOG.debug("Insert filter description: {}", filterDescription);
+            rulesEngine.insertFact(filterDescription);
+            newFacts.add(filterDescription);
+        }
+        for (FilterDescription filterDescription : filterFacts) {
+            rulesEngine.deleteFact(filterDescription);
+        }
+        filterFacts = newFacts;
+    }
+
     @Override
     public String getName() {
         return "Rulesfilter";
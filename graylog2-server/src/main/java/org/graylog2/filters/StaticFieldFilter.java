@@ -71,15 +71,41 @@ public class StaticFieldFilter implements MessageFilter {
         if (msg.getSourceInputId() == null)
             return false;
 
-        for(final Map.Entry<String, String> field : staticFields.getOrDefault(msg.getSourceInputId(), Collections.emptyList())) {
+        addStaticFields(msg, staticFields.getOrDefault(msg.getSourceInputId(), Collections.emptyList()));
+
+        return false;
+    }
+
+    @Override
+    public void filter(List<Message> messages) {
+        // The messages of a batch usually come from the same input, so its static fields are only looked up once.
+        String inputId = null;
+        List<Map.Entry<String, String>> fields = Collections.emptyList();
+        for (Message msg : messages) {
+            final String sourceInputId = msg.getSourceInputId();
+            if (sourceInputId == null) {
+                continue;
+            }
+            if (!sourceInputId.equals(inputId)) {
+                inputId = sourceInputId;
+                fields = staticFields.getOrDefault(sourceInputId, Collections.emptyList());
+            }
+            try {
+                addStaticFields(msg, fields);
+            } catch (Exception e) {
+                LOG.error("Could not add static fields to message <" + msg.getId() + ">: ", e);
+            }
+        }
+    }
+
+    private static void addStaticFields(Message msg, List<Map.Entry<String, String>> fields) {
+        for(final Map.Entry<String, String> field : fields) {
             if(!msg.hasField(field.getKey())) {
                 msg.addField(field.getKey(), field.getValue());
             } else {
                 LOG.debug("Message already contains field [{}]. Not overwriting.", field.getKey());
             }
         }
-
-        return false;
     }
 
     @Subscribe
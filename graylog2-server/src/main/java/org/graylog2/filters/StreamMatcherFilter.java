@@ -47,6 +47,17 @@ public class StreamMatcherFilter implements MessageFilter {
         return false;
     }
 
+    @Override
+    public void filter(List<Message> messages) {
+        for (Message msg : messages) {
+            try {
+                filter(msg);
+            } catch (Exception e) {
+                LOG.error("Could not route message <" + msg.getId() + "> to streams: ", e);
+            }
+        }
+    }
+
     @Override
     public String getName() {
         return "StreamMatcher";
@@ -0,0 +1,297 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters.blacklist;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Ints;
+import org.graylog2.plugin.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches messages against blacklist filter descriptions without the rules engine, with the same results as the rules
+ * in {@code blacklist.drl}.
+ * <ul>
+ * <li>{@link BlacklistFieldEqualityCondition String conditions} of a field are looked up in a hash set of their
+ * case-folded patterns.</li>
+ * <li>{@link BlacklistPatternCondition Regex conditions} of a field are combined into a single alternation, unless they
+ * use constructs which change their meaning when being combined, like back references.</li>
+ * <li>{@link BlacklistIpMatcherCondition IP range conditions} in CIDR notation are stored in a binary prefix trie per
+ * address family. Other notations, and addresses of the other family, are matched by the conditions themselves.</li>
+ * </ul>
+ * Instances are immutable and thread-safe.
+ */
+public class BlacklistMatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(BlacklistMatcher.class);
+
+    // Back references, named groups, comments and quotes don't survive being put into an alternation with other patterns.
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?<[a-zA-Z]|\\(\\?[a-zA-Z-]*x");
+
+    private static final BlacklistMatcher EMPTY = new BlacklistMatcher(new FieldConditions[0], new PrefixTrie(), new PrefixTrie(), new ArrayList<>());
+
+    private final FieldConditions[] fieldConditions;
+    private final PrefixTrie ipv4Ranges;
+    private final PrefixTrie ipv6Ranges;
+    private final List<BlacklistIpMatcherCondition> otherIpConditions;
+
+    private BlacklistMatcher(FieldConditions[] fieldConditions,
+                             PrefixTrie ipv4Ranges,
+                             PrefixTrie ipv6Ranges,
+                             List<BlacklistIpMatcherCondition> otherIpConditions) {
+        this.fieldConditions = fieldConditions;
+        this.ipv4Ranges = ipv4Ranges;
+        this.ipv6Ranges = ipv6Ranges;
+        this.otherIpConditions = otherIpConditions;
+    }
+
+    public static BlacklistMatcher empty() {
+        return EMPTY;
+    }
+
+    public static BlacklistMatcher create(Collection<FilterDescription> filterDescriptions) {
+        final Map<String, FieldConditionsBuilder> builders = new LinkedHashMap<>();
+        final PrefixTrie ipv4Ranges = new PrefixTrie();
+        final PrefixTrie ipv6Ranges = new PrefixTrie();
+        final List<BlacklistIpMatcherCondition> otherIpConditions = new ArrayList<>();
+
+        for (FilterDescription filterDescription : filterDescriptions) {
+            if (filterDescription.pattern == null) {
+                continue;
+            }
+            if (filterDescription instanceof BlacklistIpMatcherCondition) {
+                final BlacklistIpMatcherCondition condition = (BlacklistIpMatcherCondition) filterDescription;
+                if (!addIpRange(condition, ipv4Ranges, ipv6Ranges)) {
+                    otherIpConditions.add(condition);
+                }
+            } else if (filterDescription.fieldName != null) {
+                final FieldConditionsBuilder builder = builders.computeIfAbsent(filterDescription.fieldName, FieldConditionsBuilder::new);
+                if (filterDescription instanceof BlacklistFieldEqualityCondition) {
+                    builder.values.add(caseFold(filterDescription.pattern));
+                } else if (filterDescription instanceof BlacklistPatternCondition) {
+                    builder.regexes.add(filterDescription.pattern);
+                }
+            }
+        }
+
+        final FieldConditions[] fieldConditions = new FieldConditions[builders.size()];
+        int i = 0;
+        for (FieldConditionsBuilder builder : builders.values()) {
+            fieldConditions[i++] = builder.build();
+        }
+
+        return new BlacklistMatcher(fieldConditions, ipv4Ranges, ipv6Ranges, otherIpConditions);
+    }
+
+    /**
+     * Returns {@code true} if the message matches any of the blacklist filter descriptions.
+     */
+    public boolean matches(Message msg) {
+        for (FieldConditions conditions : fieldConditions) {
+            if (conditions.matches(msg.getField(conditions.fieldName))) {
+                return true;
+            }
+        }
+
+        if ((ipv4Ranges.isEmpty() && ipv6Ranges.isEmpty() && otherIpConditions.isEmpty()) || !msg.getIsSourceInetAddress()) {
+            return false;
+        }
+        final InetAddress address = msg.getInetAddress();
+        if (address == null) {
+            return false;
+        }
+
+        final boolean isIpv4 = address instanceof Inet4Address;
+        final PrefixTrie sameFamilyRanges = isIpv4 ? ipv4Ranges : ipv6Ranges;
+        final PrefixTrie otherFamilyRanges = isIpv4 ? ipv6Ranges : ipv4Ranges;
+        // Ranges of the other address family are rare, leave their semantics to the conditions.
+        return sameFamilyRanges.containsPrefixOf(address.getAddress())
+                || matchesAny(otherFamilyRanges.conditions, address)
+                || matchesAny(otherIpConditions, address);
+    }
+
+    private static boolean matchesAny(List<BlacklistIpMatcherCondition> conditions, InetAddress address) {
+        for (BlacklistIpMatcherCondition condition : conditions) {
+            if (condition.matchesInetAddress(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a range in CIDR notation with a prefix length to the trie of its address family.
+     *
+     * @return {@code false} if the pattern has any other format
+     */
+    private static boolean addIpRange(BlacklistIpMatcherCondition condition, PrefixTrie ipv4Ranges, PrefixTrie ipv6Ranges) {
+        final String pattern = condition.pattern;
+        final int slash = pattern.indexOf('/');
+        if (slash < 0) {
+            return false;
+        }
+        final String addressString = pattern.substring(0, slash).trim();
+        final Integer prefixLength = Ints.tryParse(pattern.substring(slash + 1).trim());
+        if (prefixLength == null || !InetAddresses.isInetAddress(addressString)) {
+            return false;
+        }
+
+        final InetAddress address = InetAddresses.forString(addressString);
+        final boolean isIpv4 = address instanceof Inet4Address;
+        // IPv4 addresses in IPv6 notation are parsed as IPv4 addresses, keep them out of the tries.
+        if (isIpv4 == addressString.contains(":") || prefixLength < 0 || prefixLength > address.getAddress().length * 8) {
+            return false;
+        }
+
+        (isIpv4 ? ipv4Ranges : ipv6Ranges).add(address.getAddress(), prefixLength, condition);
+        return true;
+    }
+
+    /**
+     * Folds the case of a string so that two strings are equal after folding iff
+     * {@link String#equalsIgnoreCase(String)} considers them equal.
+     */
+    private static String caseFold(String value) {
+        final char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static class FieldConditionsBuilder {
+        private final String fieldName;
+        private final Set<String> values = new HashSet<>();
+        private final Set<String> regexes = new HashSet<>();
+
+        private FieldConditionsBuilder(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        private FieldConditions build() {
+            final List<Pattern> patterns = new ArrayList<>();
+            final StringBuilder combined = new StringBuilder();
+            for (String regex : regexes) {
+                final Pattern pattern;
+                try {
+                    pattern = Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    LOG.warn("Ignoring invalid blacklist pattern <{}> of field <{}>", regex, fieldName);
+                    continue;
+                }
+                if (NOT_COMBINABLE.matcher(regex).find()) {
+                    patterns.add(pattern);
+                } else {
+                    if (combined.length() > 0) {
+                        combined.append('|');
+                    }
+                    combined.append("(?:").append(regex).append(')');
+                }
+            }
+            if (combined.length() > 0) {
+                patterns.add(Pattern.compile(combined.toString()));
+            }
+
+            return new FieldConditions(fieldName, values, patterns.toArray(new Pattern[patterns.size()]));
+        }
+    }
+
+    private static class FieldConditions {
+        private final String fieldName;
+        private final Set<String> values;
+        private final Pattern[] patterns;
+
+        private FieldConditions(String fieldName, Set<String> values, Pattern[] patterns) {
+            this.fieldName = fieldName;
+            this.values = values;
+            this.patterns = patterns;
+        }
+
+        private boolean matches(Object value) {
+            if (value != null && !values.isEmpty() && values.contains(caseFold(String.valueOf(value)))) {
+                return true;
+            }
+            if (patterns.length > 0) {
+                // Missing fields are matched as "null", like the rules engine does.
+                final String stringValue = String.valueOf(value);
+                for (Pattern pattern : patterns) {
+                    if (pattern.matcher(stringValue).matches()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Binary trie over the bits of network prefixes. A node is terminal if a prefix ends there, every address which
+     * passes a terminal node on its path is contained in that prefix.
+     */
+    private static class PrefixTrie {
+        private final Node root = new Node();
+        // The conditions of the prefixes, to match addresses of the other address family.
+        private final List<BlacklistIpMatcherCondition> conditions = new ArrayList<>();
+
+        private void add(byte[] address, int prefixLength, BlacklistIpMatcherCondition condition) {
+            Node node = root;
+            for (int i = 0; i < prefixLength && !node.terminal; i++) {
+                final int bit = (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+                if (node.children[bit] == null) {
+                    node.children[bit] = new Node();
+                }
+                node = node.children[bit];
+            }
+            node.terminal = true;
+            conditions.add(condition);
+        }
+
+        private boolean isEmpty() {
+            return conditions.isEmpty();
+        }
+
+        private boolean containsPrefixOf(byte[] address) {
+            Node node = root;
+            for (int i = 0; node != null; i++) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i >= address.length * 8) {
+                    return false;
+                }
+                node = node.children[(address[i >>> 3] >>> (7 - (i & 7))) & 1];
+            }
+            return false;
+        }
+
+        private static class Node {
+            private final Node[] children = new Node[2];
+            private boolean terminal;
+        }
+    }
+}
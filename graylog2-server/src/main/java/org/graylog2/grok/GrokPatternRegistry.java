@@ -16,13 +16,17 @@
  */
 package org.graylog2.grok;
 
+import com.google.auto.value.AutoValue;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import oi.thekraken.grok.api.Grok;
+import oi.thekraken.grok.api.exception.GrokException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,9 +49,14 @@ public class GrokPatternRegistry {
 
     private final GrokPatternService grokPatternService;
 
-    private final AtomicReference<Set<GrokPattern>> patterns = new AtomicReference<>(Collections.emptySet());
-    private final LoadingCache<String, Grok> grokCache;
-    private final LoadingCache<String, Grok> grokCacheNamedOnly;
+    // The patterns are replaced together with their version, so a Grok can never be cached for the wrong pattern set.
+    private final AtomicReference<LoadedPatterns> loadedPatterns =
+            new AtomicReference<>(LoadedPatterns.create(0L, Collections.emptySet()));
+    // The latest version whose patterns have been compared with the stored patterns after a failed compilation.
+    private long checkedVersion = -1L;
+    private final LoadingCache<GrokKey, Grok> grokCache;
+    // Keeps compiled Groks which are still referenced, e.g. by extractors, after they expired from the grokCache.
+    private final Cache<GrokKey, Grok> compiledGroks;
 
     @Inject
     public GrokPatternRegistry(EventBus serverEventBus,
@@ -55,13 +64,13 @@ public class GrokPatternRegistry {
                                @Named("daemonScheduler") ScheduledExecutorService daemonExecutor) {
         this.grokPatternService = grokPatternService;
 
-        grokCache = CacheBuilder.newBuilder()
-                .expireAfterAccess(1, TimeUnit.MINUTES) // prevent from hanging on to memory forever
-                .build(asyncReloading(new GrokReloader(false), daemonExecutor));
+        compiledGroks = CacheBuilder.newBuilder()
+                .weakValues()
+                .build();
 
-        grokCacheNamedOnly = CacheBuilder.newBuilder()
+        grokCache = CacheBuilder.newBuilder()
                 .expireAfterAccess(1, TimeUnit.MINUTES) // prevent from hanging on to memory forever
-                .build(asyncReloading(new GrokReloader(true), daemonExecutor));
+                .build(asyncReloading(new GrokReloader(), daemonExecutor));
 
         // trigger initial loading
         reload();
@@ -79,46 +88,110 @@ public class GrokPatternRegistry {
         return cachedGrokForPattern(pattern, false);
     }
 
+    /**
+     * Returns the compiled {@link Grok} for the given pattern using the current set of Grok patterns.
+     * The returned instance is shared and must not be modified.
+     */
     public Grok cachedGrokForPattern(String pattern, boolean namedCapturesOnly) {
+        final LoadedPatterns loaded = loadedPatterns.get();
         try {
-            if (namedCapturesOnly) {
-                return grokCacheNamedOnly.get(pattern);
-            } else {
-                return grokCache.get(pattern);
+            return grokCache.get(GrokKey.create(pattern, namedCapturesOnly, loaded.version()));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // Patterns which have just been created, e.g. by a content pack, might be used before their
+            // GrokPatternsChangedEvent has been delivered, so give newer patterns a try before failing.
+            final LoadedPatterns current = reloadIfOutdated(loaded);
+            if (current.version() != loaded.version()) {
+                log.debug("Compiling grok pattern {} again with patterns which haven't been loaded before", pattern);
+                try {
+                    return grokCache.get(GrokKey.create(pattern, namedCapturesOnly, current.version()));
+                } catch (ExecutionException | UncheckedExecutionException retryException) {
+                    throw unableToLoad(pattern, retryException);
+                }
             }
-        } catch (ExecutionException e) {
-            final Throwable rootCause = Throwables.getRootCause(e);
-            log.error("Unable to load grok pattern {} into cache", pattern, rootCause);
-            throw new RuntimeException(rootCause);
+            throw unableToLoad(pattern, e);
         }
     }
 
-    private void reload() {
-        final Set<GrokPattern> grokPatterns = grokPatternService.loadAll();
-        patterns.set(grokPatterns);
-        grokCache.invalidateAll();
-        grokCacheNamedOnly.invalidateAll();
+    private RuntimeException unableToLoad(String pattern, Exception e) {
+        final Throwable rootCause = Throwables.getRootCause(e);
+        log.error("Unable to load grok pattern {} into cache", pattern, rootCause);
+        return new RuntimeException(rootCause);
     }
 
-    public Set<GrokPattern> patterns() {
-        return patterns.get();
+    private synchronized void reload() {
+        load(grokPatternService.loadAll());
     }
 
-    private class GrokReloader extends CacheLoader<String, Grok> {
-        private final boolean namedCapturesOnly;
+    /**
+     * Loads the stored patterns if they differ from the given patterns, which failed to compile a Grok. The stored
+     * patterns are only compared once per version.
+     *
+     * @return the current patterns
+     */
+    private synchronized LoadedPatterns reloadIfOutdated(LoadedPatterns failed) {
+        final LoadedPatterns current = loadedPatterns.get();
+        if (current.version() != failed.version() || checkedVersion == current.version()) {
+            return current;
+        }
 
-        GrokReloader(boolean namedCapturesOnly) {
-            this.namedCapturesOnly = namedCapturesOnly;
+        checkedVersion = current.version();
+        final Set<GrokPattern> storedPatterns = grokPatternService.loadAll();
+        if (storedPatterns.equals(current.patterns())) {
+            return current;
         }
+        return load(storedPatterns);
+    }
+
+    private LoadedPatterns load(Set<GrokPattern> grokPatterns) {
+        final LoadedPatterns loaded = LoadedPatterns.create(loadedPatterns.get().version() + 1, grokPatterns);
+        loadedPatterns.set(loaded);
+        grokCache.invalidateAll();
+        compiledGroks.invalidateAll();
+        return loaded;
+    }
+
+    public Set<GrokPattern> patterns() {
+        return loadedPatterns.get().patterns();
+    }
 
+    private class GrokReloader extends CacheLoader<GrokKey, Grok> {
         @Override
-        public Grok load(@Nonnull String pattern) throws Exception {
+        public Grok load(@Nonnull GrokKey key) throws Exception {
+            return compiledGroks.get(key, () -> compile(key));
+        }
+
+        private Grok compile(GrokKey key) throws GrokException {
+            // Keys of older versions are only requested by lookups which were running while the patterns were replaced.
             final Grok grok = new Grok();
             for (GrokPattern grokPattern : patterns()) {
                 grok.addPattern(grokPattern.name(), grokPattern.pattern());
             }
-            grok.compile(pattern, namedCapturesOnly);
+            grok.compile(key.pattern(), key.namedCapturesOnly());
             return grok;
         }
     }
+
+    @AutoValue
+    abstract static class LoadedPatterns {
+        abstract long version();
+
+        abstract Set<GrokPattern> patterns();
+
+        static LoadedPatterns create(long version, Set<GrokPattern> patterns) {
+            return new AutoValue_GrokPatternRegistry_LoadedPatterns(version, patterns);
+        }
+    }
+
+    @AutoValue
+    abstract static class GrokKey {
+        abstract String pattern();
+
+        abstract boolean namedCapturesOnly();
+
+        abstract long patternsVersion();
+
+        static GrokKey create(String pattern, boolean namedCapturesOnly, long patternsVersion) {
+            return new AutoValue_GrokPatternRegistry_GrokKey(pattern, namedCapturesOnly, patternsVersion);
+        }
+    }
 }
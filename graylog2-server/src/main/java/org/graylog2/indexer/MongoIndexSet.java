@@ -312,7 +312,8 @@ public class MongoIndexSet implements IndexSet {
     }
 
     private void addDeflectorIndexRange(String indexName) {
-        final IndexRange deflectorRange = indexRangeService.createUnknownRange(indexName);
+        // The new index is still empty, so its range can be tracked while messages are being indexed into it.
+        final IndexRange deflectorRange = indexRangeService.createLiveRange(indexName);
         indexRangeService.save(deflectorRange);
     }
 
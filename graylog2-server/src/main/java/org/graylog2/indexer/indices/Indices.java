@@ -424,6 +424,31 @@ public class Indices {
                 .orElse(false);
     }
 
+    /**
+     * Returns the given indices which have been set to read-only with {@link #setReadOnly(String)}. Indices which
+     * don't exist or are closed are never read-only.
+     */
+    public Set<String> getReadOnlyIndices(Collection<String> indexNames) {
+        final ClusterStateRequest csr = new ClusterStateRequest()
+                .nodes(false)
+                .routingTable(false)
+                .blocks(false)
+                .metaData(true)
+                .indices(indexNames.toArray(new String[indexNames.size()]));
+
+        final ClusterState state = c.admin().cluster().state(csr).actionGet().getState();
+
+        final Set<String> readOnlyIndices = Sets.newHashSet();
+        for (ObjectObjectCursor<String, IndexMetaData> m : state.getMetaData().indices()) {
+            final IndexMetaData indexMeta = m.value;
+            if (indexMeta.getState() == IndexMetaData.State.OPEN
+                    && indexMeta.getSettings().getAsBoolean("index.blocks.write", false)) {
+                readOnlyIndices.add(indexMeta.getIndex());
+            }
+        }
+        return readOnlyIndices;
+    }
+
     public Set<String> getClosedIndices(final IndexSet indexSet) {
         final Set<String> closedIndices = Sets.newHashSet();
 
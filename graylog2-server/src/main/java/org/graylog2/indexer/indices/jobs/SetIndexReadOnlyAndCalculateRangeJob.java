@@ -20,6 +20,7 @@ import com.google.inject.assistedinject.Assisted;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.SetIndexReadOnlyJob;
 import org.graylog2.indexer.ranges.CreateNewSingleIndexRangeJob;
+import org.graylog2.indexer.ranges.WriteIndexRangeTracker;
 import org.graylog2.system.jobs.SystemJob;
 
 import javax.inject.Inject;
@@ -32,16 +33,19 @@ public class SetIndexReadOnlyAndCalculateRangeJob extends SystemJob {
     private final SetIndexReadOnlyJob.Factory setIndexReadOnlyJobFactory;
     private final CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory;
     private final IndexSetRegistry indexSetRegistry;
+    private final WriteIndexRangeTracker writeIndexRangeTracker;
     private final String indexName;
 
     @Inject
     public SetIndexReadOnlyAndCalculateRangeJob(SetIndexReadOnlyJob.Factory setIndexReadOnlyJobFactory,
                                                 CreateNewSingleIndexRangeJob.Factory createNewSingleIndexRangeJobFactory,
                                                 IndexSetRegistry indexSetRegistry,
+                                                WriteIndexRangeTracker writeIndexRangeTracker,
                                                 @Assisted String indexName) {
         this.setIndexReadOnlyJobFactory = setIndexReadOnlyJobFactory;
         this.createNewSingleIndexRangeJobFactory = createNewSingleIndexRangeJobFactory;
         this.indexSetRegistry = indexSetRegistry;
+        this.writeIndexRangeTracker = writeIndexRangeTracker;
         this.indexName = indexName;
     }
 
@@ -49,9 +53,11 @@ public class SetIndexReadOnlyAndCalculateRangeJob extends SystemJob {
     public void execute() {
         final SystemJob setIndexReadOnlyJob = setIndexReadOnlyJobFactory.create(indexName);
         setIndexReadOnlyJob.execute();
-        final SystemJob createNewSingleIndexRangeJob = createNewSingleIndexRangeJobFactory.create(indexSetRegistry, indexName);
-        createNewSingleIndexRangeJob.execute();
-
+        // The range tracked while the index was the write index is complete now, it's only calculated if there is none.
+        if (!writeIndexRangeTracker.finalizeRange(indexName)) {
+            final SystemJob createNewSingleIndexRangeJob = createNewSingleIndexRangeJobFactory.create(indexSetRegistry, indexName);
+            createNewSingleIndexRangeJob.execute();
+        }
     }
 
     @Override
@@ -16,6 +16,7 @@
  */
 package org.graylog2.indexer.messages;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.github.joschi.jadconfig.util.Duration;
@@ -37,17 +38,28 @@ import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.graylog2.indexer.IndexFailure;
 import org.graylog2.indexer.IndexFailureImpl;
 import org.graylog2.indexer.IndexMapping;
 import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.ranges.WriteIndexRangeTracker;
 import org.graylog2.indexer.results.ResultMessage;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -69,15 +81,24 @@ public class Messages {
             .withWaitStrategy(WaitStrategies.exponentialWait(MAX_WAIT_TIME.getQuantity(), MAX_WAIT_TIME.getUnit()))
             .build();
 
+    // Bulk request bodies of up to this size are kept for reuse by the indexing thread.
+    private static final int MAX_RETAINED_BULK_BUFFER_SIZE = 16 * 1024 * 1024;
+
     private final Client c;
     private final Meter invalidTimestampMeter;
+    private final Histogram bulkRequestSize;
+    private final ThreadLocal<BulkBuffer> bulkBuffers = ThreadLocal.withInitial(BulkBuffer::new);
     private final LinkedBlockingQueue<List<IndexFailure>> indexFailureQueue;
+    private final WriteIndexRangeTracker writeIndexRangeTracker;
 
     @Inject
     public Messages(Client client,
-                    MetricRegistry metricRegistry) {
+                    MetricRegistry metricRegistry,
+                    WriteIndexRangeTracker writeIndexRangeTracker) {
         this.c = client;
+        this.writeIndexRangeTracker = writeIndexRangeTracker;
         invalidTimestampMeter = metricRegistry.meter(name(Messages.class, "invalid-timestamps"));
+        bulkRequestSize = metricRegistry.histogram(name(Messages.class, "bulk-request-size"));
 
         // TODO: Magic number
         this.indexFailureQueue =  new LinkedBlockingQueue<>(1000);
@@ -113,15 +134,45 @@ public class Messages {
             return true;
         }
 
+        // The sources of all messages are serialized into one reused buffer. The buffer must not be reused before
+        // the bulk request has been completed, which is guaranteed because the request is executed synchronously.
+        final BulkBuffer buffer = bulkBuffers.get();
+        final int[] sourceOffsets = new int[messageList.size() + 1];
+        final DateTime serializedAt = Tools.nowUTC();
+        try {
+            buffer.reset();
+            for (int i = 0; i < messageList.size(); i++) {
+                sourceOffsets[i] = buffer.size();
+                writeSource(messageList.get(i).getValue(), buffer);
+            }
+            sourceOffsets[messageList.size()] = buffer.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't serialize messages", e);
+        }
+        bulkRequestSize.update(buffer.size());
+
         final BulkRequestBuilder requestBuilder = c.prepareBulk().setConsistencyLevel(WriteConsistencyLevel.ONE);
-        for (Map.Entry<IndexSet, Message> entry : messageList) {
-            requestBuilder.add(buildIndexRequest(entry.getKey().getWriteIndexAlias(), entry.getValue().toElasticSearchObject(invalidTimestampMeter), entry.getValue().getId()));
+        for (int i = 0; i < messageList.size(); i++) {
+            final Map.Entry<IndexSet, Message> entry = messageList.get(i);
+            final BytesReference source = buffer.slice(sourceOffsets[i], sourceOffsets[i + 1] - sourceOffsets[i]);
+            requestBuilder.add(c.prepareIndex(entry.getKey().getWriteIndexAlias(), IndexMapping.TYPE_MESSAGE, entry.getValue().getId())
+                    .setSource(source)
+                    .setConsistencyLevel(WriteConsistencyLevel.ONE)
+                    .request());
         }
 
-        final BulkResponse response = runBulkRequest(requestBuilder.request());
+        final BulkResponse response;
+        try {
+            response = runBulkRequest(requestBuilder.request());
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BULK_BUFFER_SIZE) {
+                bulkBuffers.remove();
+            }
+        }
 
         LOG.debug("Index: Bulk indexed {} messages, took {} ms, failures: {}",
                 response.getItems().length, response.getTookInMillis(), response.hasFailures());
+        writeIndexRangeTracker.track(response.getItems(), messageList, serializedAt);
         if (response.hasFailures()) {
             propagateFailure(response.getItems(), messageList, response.buildFailureMessage());
         }
@@ -129,6 +180,24 @@ public class Messages {
         return !response.hasFailures();
     }
 
+    /**
+     * Writes the Elasticsearch document of the message. Like {@link #buildIndexRequest(String, Map, String)}, the
+     * message id is not part of the source, it is only used as the id of the document.
+     */
+    private void writeSource(Message message, OutputStream outputStream) throws IOException {
+        try (final XContentBuilder builder = XContentFactory.jsonBuilder(outputStream)) {
+            builder.startObject();
+            message.forEachElasticSearchField((key, value) -> {
+                try {
+                    builder.field(key, value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, invalidTimestampMeter);
+            builder.endObject();
+        }
+    }
+
     private BulkResponse runBulkRequest(final BulkRequest request) {
         try {
             return c.bulk(request).actionGet();
@@ -188,6 +257,26 @@ public class Messages {
         return indexFailureQueue;
     }
 
+    /**
+     * Growable buffer for the sources of a bulk request which keeps its capacity when being reset.
+     */
+    private static class BulkBuffer extends ByteArrayOutputStream {
+        private BulkBuffer() {
+            super(64 * 1024);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * Returns a view on a part of the buffer. The view becomes invalid once more bytes are written to the buffer.
+         */
+        private BytesReference slice(int offset, int length) {
+            return new BytesArray(buf, offset, length);
+        }
+    }
+
     private static class BulkRequestCallable implements Callable<BulkResponse> {
         private final Client client;
         private final BulkRequest request;
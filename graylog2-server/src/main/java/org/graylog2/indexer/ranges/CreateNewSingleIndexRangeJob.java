@@ -19,10 +19,13 @@ package org.graylog2.indexer.ranges;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.plugin.cluster.ClusterConfigService;
 import org.graylog2.shared.system.activities.ActivityWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Named;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class CreateNewSingleIndexRangeJob extends RebuildIndexRangesJob {
@@ -37,8 +40,10 @@ public class CreateNewSingleIndexRangeJob extends RebuildIndexRangesJob {
     public CreateNewSingleIndexRangeJob(@Assisted IndexSetRegistry indexSetRegistry,
                                         @Assisted String indexName,
                                         ActivityWriter activityWriter,
-                                        IndexRangeService indexRangeService) {
-        super(indexSetRegistry, activityWriter, indexRangeService);
+                                        IndexRangeService indexRangeService,
+                                        ClusterConfigService clusterConfigService,
+                                        @Named("index_ranges_rebuild_concurrency") int concurrency) {
+        super(indexSetRegistry, activityWriter, indexRangeService, clusterConfigService, concurrency);
         this.indexName = checkNotNull(indexName);
     }
 
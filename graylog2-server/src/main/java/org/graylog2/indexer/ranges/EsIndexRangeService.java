@@ -43,6 +43,7 @@ import org.mongojack.WriteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.concurrent.ExecutionException;
@@ -189,6 +190,16 @@ public class EsIndexRangeService implements IndexRangeService {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public IndexRange createLiveRange(String index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void extendLiveRange(String index, DateTime begin, DateTime end, Collection<String> streamIds) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public WriteResult<MongoIndexRange, ObjectId> save(IndexRange indexRange) {
         throw new UnsupportedOperationException();
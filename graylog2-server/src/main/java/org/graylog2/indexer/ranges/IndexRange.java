@@ -29,6 +29,17 @@ public interface IndexRange {
     String FIELD_INDEX_NAME = "index_name";
     String FIELD_STREAM_IDS = "stream_ids";
     Comparator<IndexRange> COMPARATOR = new IndexRangeComparator();
+    /**
+     * Calculation duration of the index ranges of write indices, which are extended while messages are being indexed
+     * instead of being calculated. These ranges include messages newer than their end.
+     */
+    int LIVE_RANGE_CALCULATION_DURATION = -1;
+    /**
+     * Calculation duration of the index ranges of former write indices, whose live range has become their final range
+     * on rotation instead of being calculated. These ranges are still extended by late updates, and they are calculated
+     * by the next rebuild of the index ranges.
+     */
+    int TRACKED_RANGE_CALCULATION_DURATION = -2;
 
     String indexName();
 
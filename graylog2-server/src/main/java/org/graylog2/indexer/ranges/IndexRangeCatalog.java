@@ -0,0 +1,180 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.joda.time.DateTime;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Node-local catalog of index ranges which answers time range lookups without a database round trip.
+ *
+ * The index ranges are kept in an immutable interval tree over their begin and end. Index ranges change rarely compared
+ * to how often they are looked up, so every change builds a new tree and lookups never block. The catalog is loaded
+ * lazily on the first lookup; changes before that are ignored because the initial load picks them up anyway.
+ */
+class IndexRangeCatalog {
+    private final Supplier<? extends Collection<? extends IndexRange>> loader;
+
+    // guarded by this
+    private final Map<String, IndexRange> indexRanges = new HashMap<>();
+    private volatile IntervalTree tree;
+
+    IndexRangeCatalog(Supplier<? extends Collection<? extends IndexRange>> loader) {
+        this.loader = requireNonNull(loader);
+    }
+
+    /**
+     * Returns the index ranges which overlap the given time range, and the index ranges which contain the epoch, like
+     * the ranges created by {@link IndexRangeService#createUnknownRange(String)}. Live ranges of write indices are
+     * returned for every time range which ends after their begin, because newer messages may have been indexed already.
+     */
+    SortedSet<IndexRange> find(DateTime begin, DateTime end) {
+        IntervalTree currentTree = tree;
+        if (currentTree == null) {
+            currentTree = load();
+        }
+
+        final ImmutableSortedSet.Builder<IndexRange> result = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+        currentTree.collect(begin.getMillis(), end.getMillis(), result);
+        currentTree.collect(0L, 0L, result);
+        return result.build();
+    }
+
+    private synchronized IntervalTree load() {
+        if (tree == null) {
+            indexRanges.clear();
+            for (IndexRange indexRange : loader.get()) {
+                indexRanges.put(indexRange.indexName(), indexRange);
+            }
+            tree = new IntervalTree(indexRanges.values());
+        }
+        return tree;
+    }
+
+    synchronized void put(IndexRange indexRange) {
+        if (tree != null) {
+            indexRanges.put(indexRange.indexName(), indexRange);
+            tree = new IntervalTree(indexRanges.values());
+        }
+    }
+
+    synchronized void remove(String indexName) {
+        if (tree != null && indexRanges.remove(indexName) != null) {
+            tree = new IntervalTree(indexRanges.values());
+        }
+    }
+
+    /**
+     * Replaces the index range of the given index with the one returned by the loader, or removes it if the loader
+     * returns {@code null}. The index range is loaded while holding the lock, so it can't overwrite concurrent changes
+     * with an older state.
+     */
+    synchronized void refresh(String indexName, Supplier<? extends IndexRange> rangeLoader) {
+        if (tree != null) {
+            final IndexRange indexRange = rangeLoader.get();
+            if (indexRange == null) {
+                remove(indexName);
+            } else {
+                put(indexRange);
+            }
+        }
+    }
+
+    private static boolean isLive(IndexRange indexRange) {
+        return indexRange.calculationDuration() == IndexRange.LIVE_RANGE_CALCULATION_DURATION;
+    }
+
+    /**
+     * Interval tree stored as a balanced binary search tree over an array sorted by begin. The node of the sub-array
+     * {@code [lo, hi)} is its middle element, and {@code maxEnds} holds the latest end of every sub-array.
+     * There are only a few live ranges, one per write index, so they are kept in a plain array.
+     */
+    private static class IntervalTree {
+        private final IndexRange[] liveRanges;
+        private final IndexRange[] ranges;
+        private final long[] begins;
+        private final long[] ends;
+        private final long[] maxEnds;
+
+        IntervalTree(Collection<IndexRange> indexRanges) {
+            final Map<Boolean, List<IndexRange>> partitions = indexRanges.stream()
+                    .collect(Collectors.partitioningBy(IndexRangeCatalog::isLive));
+            this.liveRanges = partitions.get(true).toArray(new IndexRange[0]);
+            this.ranges = partitions.get(false).toArray(new IndexRange[0]);
+            Arrays.sort(ranges, Comparator.comparingLong(indexRange -> indexRange.begin().getMillis()));
+
+            this.begins = new long[ranges.length];
+            this.ends = new long[ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                begins[i] = ranges[i].begin().getMillis();
+                ends[i] = ranges[i].end().getMillis();
+            }
+            this.maxEnds = new long[ranges.length];
+            computeMaxEnds(0, ranges.length);
+        }
+
+        private long computeMaxEnds(int lo, int hi) {
+            if (lo >= hi) {
+                return Long.MIN_VALUE;
+            }
+            final int mid = (lo + hi) >>> 1;
+            final long maxEnd = Math.max(ends[mid], Math.max(computeMaxEnds(lo, mid), computeMaxEnds(mid + 1, hi)));
+            maxEnds[mid] = maxEnd;
+            return maxEnd;
+        }
+
+        void collect(long from, long to, ImmutableSortedSet.Builder<IndexRange> result) {
+            for (IndexRange liveRange : liveRanges) {
+                if (liveRange.begin().getMillis() <= to) {
+                    result.add(liveRange);
+                }
+            }
+            collect(0, ranges.length, from, to, result);
+        }
+
+        private void collect(int lo, int hi, long from, long to, ImmutableSortedSet.Builder<IndexRange> result) {
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                // No range of this sub-array ends at or after the requested begin.
+                if (maxEnds[mid] < from) {
+                    return;
+                }
+                collect(lo, mid, from, to, result);
+                // This range and all ranges to its right begin after the requested end.
+                if (begins[mid] > to) {
+                    return;
+                }
+                if (ends[mid] >= from) {
+                    result.add(ranges[mid]);
+                }
+                lo = mid + 1;
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.graylog2.database.NotFoundException;
 import org.joda.time.DateTime;
 import org.mongojack.WriteResult;
 
+import java.util.Collection;
 import java.util.SortedSet;
 
 public interface IndexRangeService {
@@ -34,4 +35,17 @@ public interface IndexRangeService {
 
     IndexRange calculateRange(String index);
     IndexRange createUnknownRange(String index);
+
+    /**
+     * Creates the live range of a new and still empty write index, which is extended by
+     * {@link #extendLiveRange(String, DateTime, DateTime, Collection)} while messages are being indexed into it.
+     */
+    IndexRange createLiveRange(String index);
+
+    /**
+     * Extends the live range of a write index so it contains the given time range and stream IDs. Unknown index ranges
+     * and index ranges which have been calculated already are not changed, because the index might contain messages
+     * which haven't been tracked.
+     */
+    void extendLiveRange(String index, DateTime begin, DateTime end, Collection<String> streamIds);
 }
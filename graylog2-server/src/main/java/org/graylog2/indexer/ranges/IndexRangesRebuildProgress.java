@@ -0,0 +1,54 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+
+import java.util.Set;
+
+/**
+ * Progress of a running {@link RebuildIndexRangesJob}, stored in the cluster configuration until the job is done so an
+ * interrupted rebuild can be resumed by a rebuild covering the same index sets.
+ */
+@JsonAutoDetect
+@AutoValue
+public abstract class IndexRangesRebuildProgress {
+    @JsonProperty("started_at")
+    public abstract DateTime startedAt();
+
+    @JsonProperty("index_set_ids")
+    public abstract Set<String> indexSetIds();
+
+    @JsonProperty("indices_total")
+    public abstract int indicesTotal();
+
+    @JsonProperty("indices_calculated")
+    public abstract int indicesCalculated();
+
+    @JsonCreator
+    public static IndexRangesRebuildProgress create(@JsonProperty("started_at") DateTime startedAt,
+                                                    @JsonProperty("index_set_ids") Set<String> indexSetIds,
+                                                    @JsonProperty("indices_total") int indicesTotal,
+                                                    @JsonProperty("indices_calculated") int indicesCalculated) {
+        return new AutoValue_IndexRangesRebuildProgress(startedAt, ImmutableSet.copyOf(indexSetIds), indicesTotal, indicesCalculated);
+    }
+}
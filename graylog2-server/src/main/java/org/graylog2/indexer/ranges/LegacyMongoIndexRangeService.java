@@ -32,6 +32,7 @@ import org.mongojack.WriteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
 
@@ -117,6 +118,16 @@ public class LegacyMongoIndexRangeService extends PersistedServiceImpl implement
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public IndexRange createLiveRange(String index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void extendLiveRange(String index, DateTime begin, DateTime end, Collection<String> streamIds) {
+        throw new UnsupportedOperationException();
+    }
+
     public int delete(String index) {
         return destroy(new BasicDBObject(FIELD_INDEX, index), COLLECTION_NAME);
     }
@@ -17,6 +17,7 @@
 package org.graylog2.indexer.ranges;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.eventbus.AllowConcurrentEvents;
@@ -38,23 +39,28 @@ import org.graylog2.audit.AuditEventSender;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnection;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.esplugin.IndexChangeMonitor;
 import org.graylog2.indexer.esplugin.IndicesClosedEvent;
 import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
 import org.graylog2.indexer.esplugin.IndicesReopenedEvent;
 import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.system.NodeId;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.mongojack.DBCursor;
 import org.mongojack.DBQuery;
+import org.mongojack.DBUpdate;
 import org.mongojack.JacksonDBCollection;
 import org.mongojack.WriteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.concurrent.TimeUnit;
 
@@ -71,6 +77,8 @@ public class MongoIndexRangeService implements IndexRangeService {
     private final AuditEventSender auditEventSender;
     private final NodeId nodeId;
     private final JacksonDBCollection<MongoIndexRange, ObjectId> collection;
+    private final ClusterEventBus clusterEventBus;
+    private final IndexRangeCatalog catalog;
 
     @Inject
     public MongoIndexRangeService(MongoConnection mongoConnection,
@@ -78,10 +86,13 @@ public class MongoIndexRangeService implements IndexRangeService {
                                   Indices indices,
                                   AuditEventSender auditEventSender,
                                   NodeId nodeId,
-                                  EventBus eventBus) {
+                                  EventBus eventBus,
+                                  ClusterEventBus clusterEventBus) {
         this.indices = indices;
         this.auditEventSender = auditEventSender;
         this.nodeId = nodeId;
+        this.clusterEventBus = clusterEventBus;
+        this.catalog = new IndexRangeCatalog(this::findAll);
         this.collection = JacksonDBCollection.wrap(
             mongoConnection.getDatabase().getCollection(COLLECTION_NAME),
             MongoIndexRange.class,
@@ -112,24 +123,15 @@ public class MongoIndexRangeService implements IndexRangeService {
         return indexRange;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The index ranges are looked up in a node-local catalog, which is kept up to date with
+     * {@link IndexRangesUpdatedEvent cluster events} and the index events of Elasticsearch.
+     */
     @Override
     public SortedSet<IndexRange> find(DateTime begin, DateTime end) {
-        final DBCursor<MongoIndexRange> indexRanges = collection.find(
-            DBQuery.or(
-                DBQuery.and(
-                    DBQuery.notExists("start"),  // "start" has been used by the old index ranges in MongoDB
-                    DBQuery.lessThanEquals(IndexRange.FIELD_BEGIN, end.getMillis()),
-                    DBQuery.greaterThanEquals(IndexRange.FIELD_END, begin.getMillis())
-                ),
-                DBQuery.and(
-                    DBQuery.notExists("start"),  // "start" has been used by the old index ranges in MongoDB
-                    DBQuery.lessThanEquals(IndexRange.FIELD_BEGIN, 0L),
-                    DBQuery.greaterThanEquals(IndexRange.FIELD_END, 0L)
-                )
-            )
-        );
-
-        return ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, (Iterator<? extends IndexRange>) indexRanges);
+        return catalog.find(begin, end);
     }
 
     @Override
@@ -157,22 +159,95 @@ public class MongoIndexRangeService implements IndexRangeService {
         return MongoIndexRange.create(index, begin, end, now, 0);
     }
 
+    @Override
+    public IndexRange createLiveRange(String index) {
+        final DateTime now = DateTime.now(DateTimeZone.UTC);
+        return MongoIndexRange.create(index, now, now, now, IndexRange.LIVE_RANGE_CALCULATION_DURATION, Collections.emptyList());
+    }
+
+    @Override
+    public void extendLiveRange(String index, DateTime begin, DateTime end, Collection<String> streamIds) {
+        final IndexRange current;
+        try {
+            current = get(index);
+        } catch (NotFoundException e) {
+            LOG.debug("No index range found for index <{}>, not extending it.", index);
+            return;
+        }
+
+        // Only the ranges of indices which were empty when they were created are tracked. Unknown ranges of write
+        // indices which already contained messages keep being unknown until the range is calculated on rotation.
+        // Tracked ranges of former write indices are still extended by updates which arrive after the rotation.
+        final boolean live = current.calculationDuration() == IndexRange.LIVE_RANGE_CALCULATION_DURATION;
+        if (!live && current.calculationDuration() != IndexRange.TRACKED_RANGE_CALCULATION_DURATION) {
+            LOG.debug("Index range of index <{}> is not a live range, not extending it.", index);
+            return;
+        }
+
+        final long beginMillis = begin.getMillis();
+        final long endMillis = end.getMillis();
+        final List<String> newStreamIds = ImmutableList.copyOf(streamIds);
+        final boolean newStreams = !newStreamIds.isEmpty()
+            && (current.streamIds() == null || !current.streamIds().containsAll(newStreamIds));
+        if (beginMillis >= current.begin().getMillis() && endMillis <= current.end().getMillis() && !newStreams) {
+            return;
+        }
+
+        final DBQuery.Query indexRange = DBQuery.and(
+            DBQuery.notExists("start"),
+            DBQuery.is(IndexRange.FIELD_INDEX_NAME, index));
+
+        // The updates only ever extend the range, so concurrent updates of several nodes can't shrink it.
+        final DBQuery.Query trackedRange = DBQuery.and(indexRange,
+            DBQuery.in(IndexRange.FIELD_TOOK_MS, IndexRange.LIVE_RANGE_CALCULATION_DURATION, IndexRange.TRACKED_RANGE_CALCULATION_DURATION));
+        final boolean beginChanged = collection.update(DBQuery.and(trackedRange, DBQuery.greaterThan(IndexRange.FIELD_BEGIN, beginMillis)),
+            DBUpdate.set(IndexRange.FIELD_BEGIN, beginMillis)).getN() > 0;
+        final boolean endChanged = collection.update(DBQuery.and(trackedRange, DBQuery.lessThan(IndexRange.FIELD_END, endMillis)),
+            DBUpdate.set(IndexRange.FIELD_END, endMillis)
+                .set(IndexRange.FIELD_CALCULATED_AT, DateTime.now(DateTimeZone.UTC).getMillis())).getN() > 0;
+        if (newStreams) {
+            collection.update(trackedRange, DBUpdate.addToSet(IndexRange.FIELD_STREAM_IDS, newStreamIds));
+        }
+
+        // Searches include live ranges regardless of their end, so the other nodes only have to reload them if their
+        // begin or their streams have changed. The end of a live range changes with almost every update.
+        if (beginChanged || newStreams || (!live && endChanged)) {
+            catalog.refresh(index, () -> {
+                try {
+                    return get(index);
+                } catch (NotFoundException e) {
+                    return null;
+                }
+            });
+            clusterEventBus.post(IndexRangesUpdatedEvent.create(index));
+        }
+    }
+
     @Override
     public WriteResult<MongoIndexRange, ObjectId> save(IndexRange indexRange) {
         collection.remove(DBQuery.in(IndexRange.FIELD_INDEX_NAME, indexRange.indexName()));
         final WriteResult<MongoIndexRange, ObjectId> save = collection.save(MongoIndexRange.create(indexRange));
+        catalog.put(save.getSavedObject());
+        clusterEventBus.post(IndexRangesUpdatedEvent.create(indexRange.indexName()));
         return save;
     }
 
+    private void remove(String index) {
+        final WriteResult<MongoIndexRange, ObjectId> remove = collection.remove(DBQuery.in(IndexRange.FIELD_INDEX_NAME, index));
+        // Every node receives the index events of Elasticsearch, so only the node which actually removed the range tells the others.
+        catalog.remove(index);
+        if (remove.getN() > 0) {
+            clusterEventBus.post(IndexRangesUpdatedEvent.create(index));
+            auditEventSender.success(AuditActor.system(nodeId), ES_INDEX_RANGE_DELETE, ImmutableMap.of("index_name", index));
+        }
+    }
+
     @Subscribe
     @AllowConcurrentEvents
     public void handleIndexDeletion(IndicesDeletedEvent event) {
         for (String index : event.indices()) {
             LOG.debug("Index \"{}\" has been deleted. Removing index range.");
-            final WriteResult<MongoIndexRange, ObjectId> remove = collection.remove(DBQuery.in(IndexRange.FIELD_INDEX_NAME, index));
-            if (remove.getN() > 0) {
-                auditEventSender.success(AuditActor.system(nodeId), ES_INDEX_RANGE_DELETE, ImmutableMap.of("index_name", index));
-            }
+            remove(index);
         }
     }
 
@@ -181,10 +256,7 @@ public class MongoIndexRangeService implements IndexRangeService {
     public void handleIndexClosing(IndicesClosedEvent event) {
         for (String index : event.indices()) {
             LOG.debug("Index \"{}\" has been closed. Removing index range.");
-            final WriteResult<MongoIndexRange, ObjectId> remove = collection.remove(DBQuery.in(IndexRange.FIELD_INDEX_NAME, index));
-            if (remove.getN() > 0) {
-                auditEventSender.success(AuditActor.system(nodeId), ES_INDEX_RANGE_DELETE, ImmutableMap.of("index_name", index));
-            }
+            remove(index);
         }
     }
 
@@ -220,4 +292,19 @@ public class MongoIndexRangeService implements IndexRangeService {
             save(indexRange);
         }
     }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexRangesUpdate(IndexRangesUpdatedEvent event) {
+        for (final String index : event.indices()) {
+            LOG.debug("Index range of \"{}\" has been updated. Reloading index range.", index);
+            catalog.refresh(index, () -> {
+                try {
+                    return get(index);
+                } catch (NotFoundException e) {
+                    return null;
+                }
+            });
+        }
+    }
 }
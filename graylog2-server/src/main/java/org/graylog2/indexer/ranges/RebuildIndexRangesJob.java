@@ -19,6 +19,7 @@ package org.graylog2.indexer.ranges;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 
@@ -26,15 +27,43 @@ import org.graylog2.database.NotFoundException;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.indices.TooManyAliasesException;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.cluster.ClusterConfigService;
 import org.graylog2.shared.system.activities.Activity;
 import org.graylog2.shared.system.activities.ActivityWriter;
 import org.graylog2.system.jobs.SystemJob;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Recalculates the index ranges of all managed indices.
+ * <p>
+ * The ranges are calculated by up to {@code index_ranges_rebuild_concurrency} indices at once.
+ * </p>
+ * <p>
+ * The progress of the rebuild is stored in the cluster configuration until it's done, together with the index sets it
+ * covers. If the rebuild is interrupted, e. g. by a restart, the next rebuild covering these index sets resumes it and
+ * skips the ranges which have been calculated since the interrupted rebuild has been started. A rebuild which doesn't
+ * cover the index sets of an interrupted rebuild leaves its progress alone and can't be resumed itself.
+ * </p>
+ */
 public class RebuildIndexRangesJob extends SystemJob {
     public interface Factory {
         RebuildIndexRangesJob create(IndexSetRegistry indexSetRegistry);
@@ -42,22 +71,32 @@ public class RebuildIndexRangesJob extends SystemJob {
 
     private static final Logger LOG = LoggerFactory.getLogger(RebuildIndexRangesJob.class);
     private static final int MAX_CONCURRENCY = 1;
+    // Number of calculated index ranges after which the progress is stored.
+    private static final int PROGRESS_INTERVAL = 20;
 
     private volatile boolean cancelRequested = false;
     private volatile int indicesToCalculate = 0;
-    private volatile int indicesCalculated = 0;
+    private final AtomicInteger indicesCalculated = new AtomicInteger();
+    private final AtomicInteger indicesSkipped = new AtomicInteger();
+    private volatile Stopwatch calculationTime = Stopwatch.createUnstarted();
 
     protected final IndexSetRegistry indexSetRegistry;
     private final ActivityWriter activityWriter;
     protected final IndexRangeService indexRangeService;
+    private final ClusterConfigService clusterConfigService;
+    private final int concurrency;
 
     @AssistedInject
     public RebuildIndexRangesJob(@Assisted IndexSetRegistry indexSetRegistry,
                                  ActivityWriter activityWriter,
-                                 IndexRangeService indexRangeService) {
+                                 IndexRangeService indexRangeService,
+                                 ClusterConfigService clusterConfigService,
+                                 @Named("index_ranges_rebuild_concurrency") int concurrency) {
         this.indexSetRegistry = indexSetRegistry;
         this.activityWriter = activityWriter;
         this.indexRangeService = indexRangeService;
+        this.clusterConfigService = clusterConfigService;
+        this.concurrency = concurrency;
     }
 
     @Override
@@ -72,7 +111,22 @@ public class RebuildIndexRangesJob extends SystemJob {
         }
 
         // lolwtfbbqcasting
-        return (int) Math.floor(((float) indicesCalculated / (float) indicesToCalculate) * 100);
+        return (int) Math.floor(((float) indicesCalculated.get() / (float) indicesToCalculate) * 100);
+    }
+
+    @Override
+    public String getInfo() {
+        if (indicesToCalculate <= 0) {
+            return super.getInfo();
+        }
+
+        // Skipped indices don't take any time, so they are left out of the throughput.
+        final int skipped = indicesSkipped.get();
+        final int calculated = indicesCalculated.get() - skipped;
+        final long elapsedMillis = calculationTime.elapsed(TimeUnit.MILLISECONDS);
+        final double indicesPerSecond = elapsedMillis == 0L ? 0.0d : calculated * 1000.0d / elapsedMillis;
+        return String.format(Locale.ENGLISH, "Calculated %d of %d index ranges (%d up to date) at %.2f indices/s.",
+                calculated + skipped, indicesToCalculate, skipped, indicesPerSecond);
     }
 
     @Override
@@ -87,7 +141,9 @@ public class RebuildIndexRangesJob extends SystemJob {
         // for each index set we know about
         final ListMultimap<IndexSet, String> indexSets = MultimapBuilder.hashKeys().arrayListValues().build();
         final Set<IndexSet> allIndexSets = indexSetRegistry.getAllIndexSets();
+        final Set<String> indexSetIds = new HashSet<>();
         for (IndexSet indexSet : allIndexSets) {
+            indexSetIds.add(indexSet.getConfig().id());
             final String[] managedIndicesNames = indexSet.getManagedIndicesNames();
             for (String name : managedIndicesNames) {
                 indexSets.put(indexSet, name);
@@ -100,55 +156,141 @@ public class RebuildIndexRangesJob extends SystemJob {
         }
         indicesToCalculate = indexSets.values().size();
 
-        Stopwatch sw = Stopwatch.createStarted();
-        for (IndexSet indexSet : indexSets.keySet()) {
-            LOG.info("Recalculating index ranges for index set {} ({}): {} indices affected.",
-                    indexSet.getConfig().title(),
-                    indexSet.getWriteIndexWildcard(),
-                    indexSets.get(indexSet).size());
-            for (String index : indexSets.get(indexSet)) {
+        final IndexRangesRebuildProgress interrupted = clusterConfigService.get(IndexRangesRebuildProgress.class);
+        final DateTime startedAt;
+        final boolean resumable;
+        if (interrupted == null) {
+            startedAt = Tools.nowUTC();
+            resumable = true;
+        } else if (indexSetIds.containsAll(interrupted.indexSetIds())) {
+            startedAt = interrupted.startedAt();
+            resumable = true;
+            info("Resuming recalculation of index ranges started at " + startedAt + ", " + interrupted.indicesCalculated()
+                    + " of " + interrupted.indicesTotal() + " indices had been calculated.");
+        } else {
+            // The progress of the interrupted rebuild is kept, so it's resumed later.
+            startedAt = Tools.nowUTC();
+            resumable = false;
+            LOG.info("Interrupted recalculation of index ranges of other index sets found, this recalculation can't be resumed.");
+        }
+        if (resumable) {
+            clusterConfigService.write(IndexRangesRebuildProgress.create(startedAt, indexSetIds, indicesToCalculate, 0));
+        }
+
+        final Map<String, IndexRange> existingRanges = new HashMap<>();
+        for (IndexRange indexRange : indexRangeService.findAll()) {
+            existingRanges.put(indexRange.indexName(), indexRange);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("index-range-rebuild-%d").setDaemon(true).build());
+        final List<Future<?>> calculations = new ArrayList<>();
+        calculationTime = Stopwatch.createStarted();
+        try {
+            for (IndexSet indexSet : indexSets.keySet()) {
+                final List<String> indexNames = indexSets.get(indexSet);
+                LOG.info("Recalculating index ranges for index set {} ({}): {} indices affected.",
+                        indexSet.getConfig().title(),
+                        indexSet.getWriteIndexWildcard(),
+                        indexNames.size());
+
+                final String writeIndex;
                 try {
-                    if (index.equals(indexSet.getCurrentActualTargetIndex())) {
-                        LOG.debug("{} is current write target, do not calculate index range for it", index);
-                        final IndexRange emptyRange = indexRangeService.createUnknownRange(index);
-                        try {
-                            final IndexRange indexRange = indexRangeService.get(index);
-                            if (indexRange.begin().getMillis() != 0 || indexRange.end().getMillis() != 0) {
-                                LOG.info("Invalid date ranges for write index {}, resetting it.", index);
-                                indexRangeService.save(emptyRange);
-                            }
-                        } catch (NotFoundException e) {
-                            LOG.info("No index range found for write index {}, recreating it.", index);
-                            indexRangeService.save(emptyRange);
-                        }
-
-                        indicesCalculated++;
-                        continue;
-                    }
+                    writeIndex = indexSet.getCurrentActualTargetIndex();
                 } catch (TooManyAliasesException e) {
                     LOG.error("Multiple write alias targets found, this is a bug.");
-                    indicesCalculated++;
+                    indicesCalculated.addAndGet(indexNames.size());
                     continue;
                 }
-                if (cancelRequested) {
-                    info("Stop requested. Not calculating next index range, not updating ranges.");
-                    sw.stop();
-                    return;
+
+                for (String index : indexNames) {
+                    if (index.equals(writeIndex)) {
+                        LOG.debug("{} is current write target, do not calculate index range for it", index);
+                        resetWriteIndexRange(index);
+                        indicesCalculated.incrementAndGet();
+                    } else if (isUpToDate(existingRanges.get(index), startedAt)) {
+                        LOG.debug("Index range of {} is up to date, not calculating it again.", index);
+                        indicesSkipped.incrementAndGet();
+                        indicesCalculated.incrementAndGet();
+                    } else {
+                        calculations.add(executor.submit(() -> calculateRange(index)));
+                    }
                 }
+            }
 
-                try {
-                    final IndexRange indexRange = indexRangeService.calculateRange(index);
-                    indexRangeService.save(indexRange);
-                    LOG.info("Created ranges for index {}: {}", index, indexRange);
-                } catch (Exception e) {
-                    LOG.info("Could not calculate range of index [" + index + "]. Skipping.", e);
-                } finally {
-                    indicesCalculated++;
+            for (int i = 0; i < calculations.size(); i++) {
+                calculations.get(i).get();
+                if (resumable && (i + 1) % PROGRESS_INTERVAL == 0 && !cancelRequested) {
+                    clusterConfigService.write(IndexRangesRebuildProgress.create(startedAt, indexSetIds, indicesToCalculate, indicesCalculated.get()));
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while recalculating index ranges, the recalculation will be resumed by the next rebuild.");
+            return;
+        } catch (ExecutionException e) {
+            LOG.error("Couldn't recalculate index ranges.", e.getCause());
+            return;
+        } finally {
+            executor.shutdownNow();
+            calculationTime.stop();
+        }
+
+        // A cancelled rebuild is not resumed.
+        if (resumable) {
+            clusterConfigService.remove(IndexRangesRebuildProgress.class);
+        }
+
+        if (cancelRequested) {
+            info("Stop requested. Not calculating remaining index ranges, " + indicesCalculated.get() + " of "
+                    + indicesToCalculate + " indices have been calculated.");
+            return;
+        }
+
+        info("Done calculating index ranges for " + indicesToCalculate + " indices (" + indicesSkipped.get()
+                + " up to date). Took " + calculationTime.elapsed(TimeUnit.MILLISECONDS) + "ms.");
+    }
+
+    private void resetWriteIndexRange(String index) {
+        final IndexRange emptyRange = indexRangeService.createUnknownRange(index);
+        try {
+            final IndexRange indexRange = indexRangeService.get(index);
+            final boolean live = indexRange.calculationDuration() == IndexRange.LIVE_RANGE_CALCULATION_DURATION;
+            if (!live && (indexRange.begin().getMillis() != 0 || indexRange.end().getMillis() != 0)) {
+                LOG.info("Invalid date ranges for write index {}, resetting it.", index);
+                indexRangeService.save(emptyRange);
+            }
+        } catch (NotFoundException e) {
+            LOG.info("No index range found for write index {}, recreating it.", index);
+            indexRangeService.save(emptyRange);
+        }
+    }
+
+    private static boolean isUpToDate(@Nullable IndexRange indexRange, DateTime startedAt) {
+        // live and tracked ranges of former write indices haven't been calculated
+        if (indexRange == null
+                || indexRange.calculationDuration() == IndexRange.LIVE_RANGE_CALCULATION_DURATION
+                || indexRange.calculationDuration() == IndexRange.TRACKED_RANGE_CALCULATION_DURATION) {
+            return false;
         }
+        // calculated since this rebuild, or the interrupted rebuild which is resumed, has been started
+        return !indexRange.calculatedAt().isBefore(startedAt);
+    }
 
-        info("Done calculating index ranges for " + indicesToCalculate + " indices. Took " + sw.stop().elapsed(TimeUnit.MILLISECONDS) + "ms.");
+    private void calculateRange(String index) {
+        if (cancelRequested) {
+            return;
+        }
+
+        try {
+            final IndexRange indexRange = indexRangeService.calculateRange(index);
+            indexRangeService.save(indexRange);
+            LOG.info("Created ranges for index {}: {}", index, indexRange);
+        } catch (Exception e) {
+            LOG.info("Could not calculate range of index [" + index + "]. Skipping.", e);
+        } finally {
+            indicesCalculated.incrementAndGet();
+        }
     }
 
     protected void info(String what) {
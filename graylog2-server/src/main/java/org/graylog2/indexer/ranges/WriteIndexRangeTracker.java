@@ -0,0 +1,198 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the time range and the stream IDs of the messages indexed by this node into every write index.
+ * <p>
+ * The tracked ranges are merged into the live index ranges of the write indices by {@link #publish()}, so searches
+ * only include write indices which may contain messages of their time range. When an index is rotated, its live
+ * range becomes its final index range with {@link #finalizeRange(String)}, so it doesn't need to be calculated. The
+ * final range is still extended by late updates and calculated by the next rebuild of the index ranges.
+ * </p>
+ */
+@Singleton
+public class WriteIndexRangeTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteIndexRangeTracker.class);
+
+    // Indexing messages is a dependency of the index range service, so it's looked up lazily.
+    private final Provider<IndexRangeService> indexRangeService;
+    // The ranges of the messages indexed since they have been published the last time.
+    private final ConcurrentMap<String, TrackedRange> trackedRanges = new ConcurrentHashMap<>();
+
+    @Inject
+    public WriteIndexRangeTracker(Provider<IndexRangeService> indexRangeService) {
+        this.indexRangeService = indexRangeService;
+    }
+
+    /**
+     * Tracks the successfully indexed messages of a bulk request.
+     *
+     * @param items        the items of the bulk response
+     * @param messageList  the messages of the bulk request
+     * @param serializedAt the time the messages have been serialized, invalid timestamps have been replaced with it
+     */
+    public void track(BulkItemResponse[] items, List<Map.Entry<IndexSet, Message>> messageList, DateTime serializedAt) {
+        // The messages of a bulk request are merged locally first, so there is only one update per index.
+        final Map<String, TrackedRange.Builder> builders = new HashMap<>();
+        for (BulkItemResponse item : items) {
+            if (item.isFailed()) {
+                continue;
+            }
+            final Message message = messageList.get(item.getItemId()).getValue();
+            builders.computeIfAbsent(item.getIndex(), index -> new TrackedRange.Builder())
+                    .add(message, serializedAt.getMillis());
+        }
+
+        for (Map.Entry<String, TrackedRange.Builder> entry : builders.entrySet()) {
+            trackedRanges.merge(entry.getKey(), entry.getValue().build(), TrackedRange::merge);
+        }
+    }
+
+    /**
+     * Extends the live index ranges by the ranges tracked since the last call.
+     */
+    public void publish() {
+        for (String index : trackedRanges.keySet()) {
+            publish(index);
+        }
+    }
+
+    private void publish(String index) {
+        final TrackedRange trackedRange = trackedRanges.remove(index);
+        if (trackedRange == null) {
+            return;
+        }
+
+        try {
+            indexRangeService.get().extendLiveRange(index,
+                    new DateTime(trackedRange.begin, DateTimeZone.UTC),
+                    new DateTime(trackedRange.end, DateTimeZone.UTC),
+                    trackedRange.streamIds);
+        } catch (Exception e) {
+            LOG.warn("Couldn't extend index range of index <" + index + ">, retrying later.", e);
+            trackedRanges.merge(index, trackedRange, TrackedRange::merge);
+        }
+    }
+
+    /**
+     * Replaces the live index range of a former write index with its final index range.
+     *
+     * @return {@code true} if the index range has been finalized, {@code false} if the index has no live range and
+     * its index range has to be calculated
+     */
+    public boolean finalizeRange(String index) {
+        publish(index);
+
+        final IndexRange indexRange;
+        try {
+            indexRange = indexRangeService.get().get(index);
+        } catch (NotFoundException e) {
+            return false;
+        }
+        if (indexRange.calculationDuration() != IndexRange.LIVE_RANGE_CALCULATION_DURATION) {
+            return false;
+        }
+
+        // Updates of other nodes may still arrive, so the range stays extendable and is marked as not calculated.
+        final IndexRange finalRange = MongoIndexRange.create(index, indexRange.begin(), indexRange.end(),
+                Tools.nowUTC(), IndexRange.TRACKED_RANGE_CALCULATION_DURATION, indexRange.streamIds());
+        indexRangeService.get().save(finalRange);
+        LOG.info("Finalized index range of index <{}>: {}", index, finalRange);
+        return true;
+    }
+
+    private static class TrackedRange {
+        private final long begin;
+        private final long end;
+        private final Set<String> streamIds;
+
+        private TrackedRange(long begin, long end, Set<String> streamIds) {
+            this.begin = begin;
+            this.end = end;
+            this.streamIds = streamIds;
+        }
+
+        private static TrackedRange merge(TrackedRange range1, TrackedRange range2) {
+            return new TrackedRange(Math.min(range1.begin, range2.begin), Math.max(range1.end, range2.end),
+                    ImmutableSet.<String>builder().addAll(range1.streamIds).addAll(range2.streamIds).build());
+        }
+
+        private static class Builder {
+            private long begin = Long.MAX_VALUE;
+            private long end = Long.MIN_VALUE;
+            private final Set<String> streamIds = new HashSet<>();
+
+            private void add(Message message, long serializedAt) {
+                // Messages.writeSource() replaces invalid timestamps with the current time, which is at least the time
+                // serializing started and at most now.
+                final long timestamp = timestampMillis(message.getField(Message.FIELD_TIMESTAMP));
+                if (timestamp == Long.MIN_VALUE) {
+                    begin = Math.min(begin, serializedAt);
+                    end = Math.max(end, Tools.nowUTC().getMillis());
+                } else {
+                    begin = Math.min(begin, timestamp);
+                    end = Math.max(end, timestamp);
+                }
+                streamIds.addAll(message.getStreamIds());
+            }
+
+            private TrackedRange build() {
+                return new TrackedRange(begin, end, ImmutableSet.copyOf(streamIds));
+            }
+        }
+
+        // Long.MIN_VALUE for invalid timestamps
+        private static long timestampMillis(Object timestamp) {
+            if (timestamp instanceof DateTime) {
+                return ((DateTime) timestamp).getMillis();
+            } else if (timestamp instanceof Date) {
+                return ((Date) timestamp).getTime();
+            } else if (timestamp instanceof String) {
+                try {
+                    return Tools.ES_DATE_FORMAT_FORMATTER.parseMillis((String) timestamp);
+                } catch (IllegalArgumentException e) {
+                    return Long.MIN_VALUE;
+                }
+            }
+            return Long.MIN_VALUE;
+        }
+    }
+}
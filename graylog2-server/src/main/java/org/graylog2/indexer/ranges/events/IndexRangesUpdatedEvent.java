@@ -0,0 +1,45 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges.events;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Published on the cluster event bus after index ranges have been saved or removed, so every node can refresh the
+ * index ranges it keeps in memory.
+ */
+@AutoValue
+@JsonAutoDetect
+public abstract class IndexRangesUpdatedEvent {
+    private static final String FIELD_INDICES = "indices";
+
+    @JsonProperty(FIELD_INDICES)
+    public abstract ImmutableSet<String> indices();
+
+    @JsonCreator
+    public static IndexRangesUpdatedEvent create(@JsonProperty(FIELD_INDICES) ImmutableSet<String> indices) {
+        return new AutoValue_IndexRangesUpdatedEvent(indices);
+    }
+
+    public static IndexRangesUpdatedEvent create(String index) {
+        return create(ImmutableSet.of(index));
+    }
+}
@@ -17,28 +17,41 @@
 package org.graylog2.indexer.results;
 
 import org.apache.shiro.crypto.hash.Md5Hash;
+import org.elasticsearch.action.ActionFuture;
 import org.elasticsearch.action.search.ClearScrollResponse;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
+/**
+ * Iterates over the result of a scroll search in chunks.
+ * <p>
+ * The next chunk is requested from Elasticsearch as soon as the current one has been handed out, so it is fetched
+ * while the current chunk is being written to the client. At most one chunk is prefetched, so slow clients don't cause
+ * results to pile up in memory.
+ * </p>
+ */
 public class ScrollResult extends IndexQueryResult {
     private static final Logger LOG = LoggerFactory.getLogger(ScrollResult.class);
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
 
     private final Client client;
     private final List<String> fields;
     private final String queryHash; // used in log output only
     private final long totalHits;
     private SearchResponse firstResponse;
+    private ActionFuture<SearchResponse> nextResponse;
 
     private String scrollId;
     private int chunkId = 0;
+    private long fetchedHits = 0;
 
     public ScrollResult(Client client,
                         String originalQuery,
@@ -61,14 +74,14 @@ public class ScrollResult extends IndexQueryResult {
 
         final SearchResponse search;
         // make sure to return the initial hits, see https://github.com/Graylog2/graylog2-server/issues/2126
-        if (firstResponse == null) {
-            search = client.prepareSearchScroll(scrollId)
-                    .setScroll(TimeValue.timeValueMinutes(1))
-                    .execute()
-                    .actionGet();
-        } else {
+        if (firstResponse != null) {
             search = firstResponse;
             firstResponse = null;
+        } else if (nextResponse != null) {
+            search = nextResponse.actionGet();
+            nextResponse = null;
+        } else {
+            search = requestNextChunk().actionGet();
         }
 
         final SearchHits hits = search.getHits();
@@ -79,10 +92,22 @@ public class ScrollResult extends IndexQueryResult {
         }
         LOG.debug("[{}][{}] New scroll id {}, number of hits in chunk: {}", queryHash, chunkId, search.getScrollId(), hits.getHits().length);
         scrollId = search.getScrollId(); // save the id for the next request.
+        fetchedHits += hits.getHits().length;
+
+        // fetch the next chunk while the caller is busy with this one, unless we know there are no more hits
+        if (fetchedHits < totalHits) {
+            nextResponse = requestNextChunk();
+        }
 
         return new ScrollChunk(hits, fields, chunkId++);
     }
 
+    private ActionFuture<SearchResponse> requestNextChunk() {
+        return client.prepareSearchScroll(scrollId)
+                .setScroll(SCROLL_KEEP_ALIVE)
+                .execute();
+    }
+
     public String getQueryHash() {
         return queryHash;
     }
@@ -92,20 +117,23 @@ public class ScrollResult extends IndexQueryResult {
     }
 
     public void cancel() {
+        // a prefetch which is still running fails once the scroll has been cleared, nobody waits for it anymore
+        nextResponse = null;
         final ClearScrollResponse clearScrollResponse = client.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
         LOG.debug("[{}] clearScroll for query successful: {}", queryHash, clearScrollResponse.isSucceeded());
     }
 
     public class ScrollChunk {
 
-        private final List<ResultMessage> resultMessages;
-        private List<String> fields;
-        private int chunkNumber;
+        private final SearchHits hits;
+        private final List<String> fields;
+        private final int chunkNumber;
+        private List<ResultMessage> resultMessages;
 
         public ScrollChunk(SearchHits hits, List<String> fields, int chunkId) {
+            this.hits = hits;
             this.fields = fields;
             this.chunkNumber = chunkId;
-            resultMessages = buildResults(hits);
         }
 
         public List<String> getFields() {
@@ -120,7 +148,22 @@ public class ScrollResult extends IndexQueryResult {
             return getChunkNumber() == 0;
         }
 
+        public int size() {
+            return hits.getHits().length;
+        }
+
+        /**
+         * The raw hits of this chunk. Writers should prefer these over {@link #getMessages()} to serialize the hits
+         * without building a {@link ResultMessage} for each of them.
+         */
+        public SearchHit[] getHits() {
+            return hits.getHits();
+        }
+
         public List<ResultMessage> getMessages() {
+            if (resultMessages == null) {
+                resultMessages = buildResults(hits);
+            }
             return resultMessages;
         }
     }
@@ -0,0 +1,279 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.graylog2.indexer.esplugin.IndicesClosedEvent;
+import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Caches the results of aggregation searches which can't change anymore.
+ * <p>
+ * A result is cached if the search uses an absolute time range which ends in the past and all affected indices are
+ * read-only, which is the case for every index which has been rotated. Results are cached by their type, query,
+ * filter, time range, affected indices and the parameters of the aggregation.
+ * </p>
+ * <p>
+ * The results of an index are dropped when the index is deleted or closed, or its index range has been updated, e. g.
+ * because it has been recalculated or the index has been reopened.
+ * </p>
+ */
+@Singleton
+public class AggregationResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(AggregationResultCache.class);
+
+    // Results which aren't requested anymore are dropped after this time.
+    private static final long EXPIRE_AFTER_ACCESS_MINUTES = 60L;
+
+    private final Indices indices;
+    private final Cache<Key, Object> cache;
+    // Whether an index is read-only, until its index range is updated or the index is deleted. Invalidating an index
+    // removes its state, so results of searches of the index which were running meanwhile aren't cached.
+    private final ConcurrentMap<String, ReadOnlyState> readOnlyStates = new ConcurrentHashMap<>();
+
+    private final Meter hits;
+    private final Meter misses;
+
+    @Inject
+    public AggregationResultCache(Indices indices,
+                                  @Named("search_aggregation_cache_max_size") int maxSize,
+                                  MetricRegistry metricRegistry,
+                                  EventBus serverEventBus) {
+        this.indices = indices;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(EXPIRE_AFTER_ACCESS_MINUTES, TimeUnit.MINUTES)
+                .build();
+
+        this.hits = metricRegistry.meter(name(AggregationResultCache.class, "hits"));
+        this.misses = metricRegistry.meter(name(AggregationResultCache.class, "misses"));
+        metricRegistry.register(name(AggregationResultCache.class, "size"), (Gauge<Long>) cache::size);
+
+        serverEventBus.register(this);
+    }
+
+    /**
+     * Returns the cached result of the given aggregation search, or runs the search and caches its result if possible.
+     *
+     * @param type       the kind of aggregation, e. g. {@code "terms"}
+     * @param parameters all other parameters which have an influence on the result
+     * @param search     runs the search
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String type,
+                     @Nullable String query,
+                     @Nullable String filter,
+                     TimeRange range,
+                     Set<String> affectedIndices,
+                     List<?> parameters,
+                     Supplier<T> search) {
+        final Collection<ReadOnlyState> states = getReadOnlyStates(range, affectedIndices);
+        if (states == null) {
+            return search.get();
+        }
+
+        final Key key = Key.create(type, query, filter, range, affectedIndices, parameters);
+        final Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.mark();
+            return (T) cached;
+        }
+
+        misses.mark();
+        final T result = search.get();
+        if (result != null) {
+            cache.put(key, result);
+            if (!isCurrent(states)) {
+                cache.invalidate(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the read-only states of the affected indices if the result of the search can be cached, {@code null}
+     * otherwise.
+     */
+    @Nullable
+    private Collection<ReadOnlyState> getReadOnlyStates(TimeRange range, Set<String> affectedIndices) {
+        if (!(range instanceof AbsoluteRange) || !range.getTo().isBefore(Tools.nowUTC()) || affectedIndices.isEmpty()) {
+            return null;
+        }
+
+        final List<ReadOnlyState> states = new ArrayList<>(affectedIndices.size());
+        final List<String> unknownIndices = new ArrayList<>();
+        for (String index : affectedIndices) {
+            final ReadOnlyState state = readOnlyStates.get(index);
+            if (state == null || state.isChecking()) {
+                unknownIndices.add(index);
+            } else if (!state.readOnly) {
+                return null;
+            } else {
+                states.add(state);
+            }
+        }
+
+        if (!unknownIndices.isEmpty()) {
+            // Marks the indices as being checked, so a concurrent invalidation prevents storing their outdated state.
+            final Map<String, ReadOnlyState> checkedIndices = new HashMap<>(unknownIndices.size());
+            for (String index : unknownIndices) {
+                final ReadOnlyState checking = ReadOnlyState.checking(index);
+                if (readOnlyStates.putIfAbsent(index, checking) == null) {
+                    checkedIndices.put(index, checking);
+                }
+            }
+
+            final Set<String> readOnly;
+            try {
+                readOnly = indices.getReadOnlyIndices(unknownIndices);
+            } catch (Exception e) {
+                LOG.debug("Couldn't check if indices are read-only, not caching result.", e);
+                checkedIndices.forEach(readOnlyStates::remove);
+                return null;
+            }
+
+            // Indices which are being checked by another search can't be cached by this one.
+            boolean cacheable = readOnly.containsAll(unknownIndices) && checkedIndices.size() == unknownIndices.size();
+            for (Map.Entry<String, ReadOnlyState> entry : checkedIndices.entrySet()) {
+                final String index = entry.getKey();
+                final ReadOnlyState state = ReadOnlyState.checked(index, readOnly.contains(index));
+                if (readOnlyStates.replace(index, entry.getValue(), state)) {
+                    states.add(state);
+                } else {
+                    // invalidated while it was being checked
+                    cacheable = false;
+                }
+            }
+            return cacheable ? states : null;
+        }
+
+        return states;
+    }
+
+    private boolean isCurrent(Collection<ReadOnlyState> states) {
+        for (ReadOnlyState state : states) {
+            if (readOnlyStates.get(state.index) != state) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @VisibleForTesting
+    void invalidate(Set<String> changedIndices) {
+        readOnlyStates.keySet().removeAll(changedIndices);
+        cache.asMap().keySet().removeIf(key -> !Collections.disjoint(key.indices(), changedIndices));
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndexRangesUpdate(IndexRangesUpdatedEvent event) {
+        invalidate(event.indices());
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndexDeletion(IndicesDeletedEvent event) {
+        invalidate(event.indices());
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndexClosing(IndicesClosedEvent event) {
+        invalidate(event.indices());
+    }
+
+    private static final class ReadOnlyState {
+        private final String index;
+        // null while the index is being checked
+        @Nullable
+        private final Boolean readOnly;
+
+        private ReadOnlyState(String index, @Nullable Boolean readOnly) {
+            this.index = index;
+            this.readOnly = readOnly;
+        }
+
+        static ReadOnlyState checking(String index) {
+            return new ReadOnlyState(index, null);
+        }
+
+        static ReadOnlyState checked(String index, boolean readOnly) {
+            return new ReadOnlyState(index, readOnly);
+        }
+
+        boolean isChecking() {
+            return readOnly == null;
+        }
+    }
+
+    @AutoValue
+    abstract static class Key {
+        abstract String type();
+
+        @Nullable
+        abstract String query();
+
+        @Nullable
+        abstract String filter();
+
+        abstract TimeRange range();
+
+        abstract ImmutableSet<String> indices();
+
+        abstract List<Object> parameters();
+
+        static Key create(String type, @Nullable String query, @Nullable String filter, TimeRange range, Set<String> indices, List<?> parameters) {
+            return new AutoValue_AggregationResultCache_Key(type, query, filter, range, ImmutableSet.copyOf(indices),
+                    Collections.unmodifiableList(new ArrayList<>(parameters)));
+        }
+    }
+}
@@ -18,6 +18,8 @@ package org.graylog2.indexer.searches;
 
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
@@ -45,6 +47,8 @@ import org.graylog2.Configuration;
 import org.graylog2.database.NotFoundException;
 import org.graylog2.indexer.IndexHelper;
 import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.indexset.events.IndexSetCreatedEvent;
+import org.graylog2.indexer.indexset.events.IndexSetDeletedEvent;
 import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.indexer.ranges.IndexRangeService;
 import org.graylog2.indexer.results.CountResult;
@@ -60,16 +64,23 @@ import org.graylog2.indexer.searches.timeranges.TimeRanges;
 import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.streams.StreamService;
+import org.graylog2.streams.events.StreamDeletedEvent;
+import org.graylog2.streams.events.StreamsChangedEvent;
 import org.joda.time.Period;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -161,13 +172,20 @@ public class Searches {
     private final Timer esRequestTimer;
     private final Histogram esTimeRangeHistogram;
     private final StreamService streamService;
+    private final AggregationResultCache aggregationResultCache;
+
+    // The index sets of the streams used in searches, invalidated whenever a stream or index set changes.
+    private final ConcurrentMap<String, Optional<IndexSet>> streamIndexSets = new ConcurrentHashMap<>();
+    private final AtomicLong streamIndexSetsGeneration = new AtomicLong();
 
     @Inject
     public Searches(Configuration configuration,
                     IndexRangeService indexRangeService,
                     Client client,
                     MetricRegistry metricRegistry,
-                    StreamService streamService) {
+                    StreamService streamService,
+                    AggregationResultCache aggregationResultCache,
+                    EventBus serverEventBus) {
         this.configuration = checkNotNull(configuration);
         this.indexRangeService = checkNotNull(indexRangeService);
         this.c = checkNotNull(client);
@@ -175,6 +193,9 @@ public class Searches {
         this.esRequestTimer = metricRegistry.timer(name(Searches.class, "elasticsearch", "requests"));
         this.esTimeRangeHistogram = metricRegistry.histogram(name(Searches.class, "elasticsearch", "ranges"));
         this.streamService = streamService;
+        this.aggregationResultCache = aggregationResultCache;
+
+        serverEventBus.register(this);
     }
 
     public CountResult count(String query, TimeRange range) {
@@ -182,8 +203,12 @@ public class Searches {
     }
 
     public CountResult count(String query, TimeRange range, String filter) {
-        Set<String> indices = determineAffectedIndices(range, filter);
+        final Set<String> indices = determineAffectedIndices(range, filter);
+        return aggregationResultCache.get("count", query, filter, range, indices, Collections.emptyList(),
+                () -> count(query, range, filter, indices));
+    }
 
+    private CountResult count(String query, TimeRange range, String filter, Set<String> indices) {
         final SearchRequestBuilder srb;
         if (filter == null) {
             srb = standardSearchRequest(query, indices, range);
@@ -202,17 +227,13 @@ public class Searches {
 
         // only request the fields we asked for otherwise we can't figure out which fields will be in the result set
         // until we've scrolled through the entire set.
-        // TODO: Check if we can get away without loading the _source field.
-        // http://www.elasticsearch.org/guide/en/elasticsearch/reference/current/search-request-fields.html#search-request-fields
-        // "For backwards compatibility, if the fields parameter specifies fields which are not stored , it will
-        // load the _source and extract it from it. This functionality has been replaced by the source filtering
-        // parameter." -- So we should look at the source filtering parameter once we switched to ES 1.x.
+        // Source filtering makes Elasticsearch only return the requested fields of the _source, so the hits can be
+        // written to the client without parsing or transferring the rest of the message.
         final SearchRequest request = standardSearchRequest(query, indices, limit, offset, range, filter, null, false)
                 .setScroll(new TimeValue(1, TimeUnit.MINUTES))
                 .setSize(500) // TODO magic numbers
                 .addSort(SortBuilders.fieldSort(SortParseElement.DOC_FIELD_NAME))
-                .addFields(fields.toArray(new String[fields.size()]))
-                .addField("_source") // always request the _source field because otherwise we can't access non-stored values
+                .setFetchSource(fields.toArray(new String[fields.size()]), null)
                 .request();
 
         if (LOG.isDebugEnabled()) {
@@ -261,15 +282,18 @@ public class Searches {
     }
 
     public TermsResult terms(String field, int size, String query, String filter, TimeRange range) {
-        if (size == 0) {
-            size = 50;
-        }
+        final int termsSize = size == 0 ? 50 : size;
+        final Set<String> indices = determineAffectedIndices(range, filter);
+        return aggregationResultCache.get("terms", query, filter, range, indices, Arrays.asList(field, termsSize),
+                () -> terms(field, termsSize, query, filter, range, indices));
+    }
 
+    private TermsResult terms(String field, int size, String query, String filter, TimeRange range, Set<String> indices) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, determineAffectedIndices(range, null), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, determineAffectedIndices(range, filter), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
@@ -304,16 +328,19 @@ public class Searches {
     }
 
     public TermsStatsResult termsStats(String keyField, String valueField, TermsStatsOrder order, int size, String query, String filter, TimeRange range) {
+        final int termsSize = size == 0 ? 50 : size;
+        final Set<String> indices = determineAffectedIndices(range, filter);
+        return aggregationResultCache.get("termsStats", query, filter, range, indices,
+                Arrays.asList(keyField, valueField, order, termsSize),
+                () -> termsStats(keyField, valueField, order, termsSize, query, filter, range, indices));
+    }
 
-        if (size == 0) {
-            size = 50;
-        }
-
+    private TermsStatsResult termsStats(String keyField, String valueField, TermsStatsOrder order, int size, String query, String filter, TimeRange range, Set<String> indices) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, determineAffectedIndices(range, filter), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, determineAffectedIndices(range, filter), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
 
@@ -404,11 +431,29 @@ public class Searches {
                                        boolean includeStats,
                                        boolean includeCount)
             throws FieldTypeException {
+        final Set<String> indices = determineAffectedIndices(range, filter);
+        try {
+            return aggregationResultCache.get("fieldStats", query, filter, range, indices,
+                    Arrays.asList(field, includeCardinality, includeStats, includeCount),
+                    () -> fieldStats(field, query, filter, range, includeCardinality, includeStats, includeCount, indices));
+        } catch (org.elasticsearch.action.search.SearchPhaseExecutionException e) {
+            throw new FieldTypeException(e);
+        }
+    }
+
+    private FieldStatsResult fieldStats(String field,
+                                        String query,
+                                        String filter,
+                                        TimeRange range,
+                                        boolean includeCardinality,
+                                        boolean includeStats,
+                                        boolean includeCount,
+                                        Set<String> indices) {
         SearchRequestBuilder srb;
         if (filter == null) {
-            srb = standardSearchRequest(query, determineAffectedIndices(range, filter), range);
+            srb = standardSearchRequest(query, indices, range);
         } else {
-            srb = filteredSearchRequest(query, filter, determineAffectedIndices(range, filter), range);
+            srb = filteredSearchRequest(query, filter, indices, range);
         }
 
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
@@ -425,14 +470,8 @@ public class Searches {
 
         srb.addAggregation(builder);
 
-        SearchResponse r;
-        final SearchRequest request;
-        try {
-            request = srb.request();
-            r = c.search(request).actionGet();
-        } catch (org.elasticsearch.action.search.SearchPhaseExecutionException e) {
-            throw new FieldTypeException(e);
-        }
+        final SearchRequest request = srb.request();
+        final SearchResponse r = c.search(request).actionGet();
         recordEsMetrics(r, range);
 
         final Filter f = r.getAggregations().get(AGG_FILTER);
@@ -452,6 +491,12 @@ public class Searches {
     }
 
     public HistogramResult histogram(String query, DateHistogramInterval interval, String filter, TimeRange range) {
+        final Set<String> indices = determineAffectedIndices(range, filter);
+        return aggregationResultCache.get("histogram", query, filter, range, indices, Collections.singletonList(interval),
+                () -> histogram(query, interval, filter, range, indices));
+    }
+
+    private HistogramResult histogram(String query, DateHistogramInterval interval, String filter, TimeRange range, Set<String> affectedIndices) {
         FilterAggregationBuilder builder = AggregationBuilders.filter(AGG_FILTER)
                 .subAggregation(
                         AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
@@ -462,7 +507,6 @@ public class Searches {
         QueryStringQueryBuilder qs = queryStringQuery(query);
         qs.allowLeadingWildcard(configuration.isAllowLeadingWildcardSearches());
 
-        final Set<String> affectedIndices = determineAffectedIndices(range, filter);
         final SearchRequestBuilder srb = c.prepareSearch(affectedIndices.toArray(new String[affectedIndices.size()]))
                 .setIndicesOptions(IndicesOptions.lenientExpandOpen())
                 .setQuery(qs)
@@ -487,6 +531,23 @@ public class Searches {
                                           String filter,
                                           TimeRange range,
                                           boolean includeCardinality) throws FieldTypeException {
+        final Set<String> indices = determineAffectedIndices(range, filter);
+        try {
+            return aggregationResultCache.get("fieldHistogram", query, filter, range, indices,
+                    Arrays.asList(field, interval, includeCardinality),
+                    () -> fieldHistogram(query, field, interval, filter, range, includeCardinality, indices));
+        } catch (org.elasticsearch.action.search.SearchPhaseExecutionException e) {
+            throw new FieldTypeException(e);
+        }
+    }
+
+    private HistogramResult fieldHistogram(String query,
+                                           String field,
+                                           DateHistogramInterval interval,
+                                           String filter,
+                                           TimeRange range,
+                                           boolean includeCardinality,
+                                           Set<String> affectedIndices) {
         final DateHistogramBuilder dateHistogramBuilder = AggregationBuilders.dateHistogram(AGG_HISTOGRAM)
                 .field("timestamp")
                 .subAggregation(AggregationBuilders.stats(AGG_STATS).field(field))
@@ -504,18 +565,12 @@ public class Searches {
         qs.allowLeadingWildcard(configuration.isAllowLeadingWildcardSearches());
 
         SearchRequestBuilder srb = c.prepareSearch();
-        final Set<String> affectedIndices = determineAffectedIndices(range, filter);
         srb.setIndices(affectedIndices.toArray(new String[affectedIndices.size()]));
         srb.setQuery(qs);
         srb.addAggregation(builder);
 
-        SearchResponse r;
         final SearchRequest request = srb.request();
-        try {
-            r = c.search(request).actionGet();
-        } catch (org.elasticsearch.action.search.SearchPhaseExecutionException e) {
-            throw new FieldTypeException(e);
-        }
+        final SearchResponse r = c.search(request).actionGet();
         recordEsMetrics(r, range);
 
         final Filter f = r.getAggregations().get(AGG_FILTER);
@@ -709,11 +764,7 @@ public class Searches {
         // additional index ranges that match, this can happen with restored archives or when the index set for
         // a stream has changed: a stream only knows about its currently configured index set, no the history
         if (streamId.isPresent()) {
-            try {
-                final Stream stream = streamService.load(streamId.get());
-                indexSet = stream.getIndexSet();
-            } catch (NotFoundException ignored) {
-            }
+            indexSet = getStreamIndexSet(streamId.get()).orElse(null);
         }
 
         final ImmutableSortedSet.Builder<IndexRange> indices = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
@@ -740,4 +791,55 @@ public class Searches {
         return indices.build();
     }
 
+    private Optional<IndexSet> getStreamIndexSet(String streamId) {
+        final Optional<IndexSet> cachedIndexSet = streamIndexSets.get(streamId);
+        if (cachedIndexSet != null) {
+            return cachedIndexSet;
+        }
+
+        final long generation = streamIndexSetsGeneration.get();
+        Optional<IndexSet> indexSet;
+        try {
+            final Stream stream = streamService.load(streamId);
+            indexSet = Optional.ofNullable(stream.getIndexSet());
+        } catch (NotFoundException ignored) {
+            indexSet = Optional.empty();
+        }
+
+        // Don't keep what we loaded if the streams have been changed in the meantime.
+        streamIndexSets.put(streamId, indexSet);
+        if (streamIndexSetsGeneration.get() != generation) {
+            streamIndexSets.remove(streamId);
+        }
+        return indexSet;
+    }
+
+    private void invalidateStreamIndexSets() {
+        streamIndexSetsGeneration.incrementAndGet();
+        streamIndexSets.clear();
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleStreamsChanged(StreamsChangedEvent event) {
+        invalidateStreamIndexSets();
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleStreamDeletion(StreamDeletedEvent event) {
+        invalidateStreamIndexSets();
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndexSetCreation(IndexSetCreatedEvent event) {
+        invalidateStreamIndexSets();
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleIndexSetDeletion(IndexSetDeletedEvent event) {
+        invalidateStreamIndexSets();
+    }
 }
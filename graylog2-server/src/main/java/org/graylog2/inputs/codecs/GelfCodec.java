@@ -16,7 +16,10 @@
  */
 package org.graylog2.inputs.codecs;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.assistedinject.Assisted;
@@ -43,8 +46,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.util.Iterator;
-import java.util.Map;
+import java.io.IOException;
 
 @Codec(name = "gelf", displayName = "GELF")
 public class GelfCodec extends AbstractCodec {
@@ -64,158 +66,209 @@ public class GelfCodec extends AbstractCodec {
         this.decompressSizeLimit = configuration.getInt(CK_DECOMPRESS_SIZE_LIMIT, DEFAULT_DECOMPRESS_SIZE_LIMIT);
     }
 
-    private static String stringValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asText();
-            }
-        }
-        return null;
+    private static String stringValue(final JsonNode value) {
+        return value.asText();
     }
 
-    private static long longValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asLong(-1L);
-            }
-        }
-        return -1L;
+    private static long longValue(final JsonNode value) {
+        return value.asLong(-1L);
     }
 
-    private static int intValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asInt(-1);
-            }
-        }
-        return -1;
+    private static int intValue(final JsonNode value) {
+        return value.asInt(-1);
     }
 
-    private static double doubleValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asDouble(-1.0);
-            }
-        }
-        return -1.0;
+    private static double doubleValue(final JsonNode value) {
+        return value.asDouble(-1.0);
     }
 
+    /**
+     * Decodes the GELF message while its (decompressed) payload is being parsed, without building the JSON payload as
+     * string or tree first.
+     */
     @Nullable
     @Override
     public Message decode(@Nonnull final RawMessage rawMessage) {
         final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayload(), rawMessage.getRemoteAddress());
-        final String json = gelfMessage.getJSON(decompressSizeLimit);
 
-        final JsonNode node;
-
-        try {
-            node = objectMapper.readTree(json);
-        } catch (final Exception e) {
+        try (final JsonParser parser = createParser(gelfMessage)) {
+            return decode(parser, rawMessage.getTimestamp());
+        } catch (final JsonProcessingException e) {
             log.error("Could not parse JSON, first 400 characters: " +
-                              StringUtils.abbreviate(json, 403), e);
+                              StringUtils.abbreviate(getJSONForLogging(gelfMessage), 403), e);
             throw new IllegalStateException("JSON is null/could not be parsed (invalid JSON)", e);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to decompress the GELF message payload", e);
         }
+    }
 
-        // Timestamp.
-        final double messageTimestamp = doubleValue(node, "timestamp");
-        final DateTime timestamp;
-        if (messageTimestamp <= 0) {
-            timestamp = rawMessage.getTimestamp();
-        } else {
-            // we treat this as a unix timestamp
-            timestamp = Tools.dateTimeFromDouble(messageTimestamp);
+    private JsonParser createParser(final GELFMessage gelfMessage) throws IOException {
+        if (gelfMessage.getGELFType() == GELFMessage.Type.UNCOMPRESSED) {
+            return objectMapper.getFactory().createParser(gelfMessage.getPayload());
         }
+        // The size limit is enforced while the payload is decompressed, the truncated JSON will fail to parse.
+        return objectMapper.getFactory().createParser(gelfMessage.getJSONStream(decompressSizeLimit));
+    }
 
-        final Message message = new Message(
-                stringValue(node, "short_message"),
-                stringValue(node, "host"),
-                timestamp
-        );
-
-        message.addField("full_message", stringValue(node, "full_message"));
-
-        final String file = stringValue(node, "file");
-
-        if (file != null && !file.isEmpty()) {
-            message.addField("file", file);
+    @Nullable
+    private String getJSONForLogging(final GELFMessage gelfMessage) {
+        try {
+            return gelfMessage.getJSON(decompressSizeLimit);
+        } catch (final IllegalStateException e) {
+            return null;
         }
+    }
 
-        final long line = longValue(node, "line");
-        if (line > -1) {
-            message.addField("line", line);
+    private Message decode(final JsonParser parser, final DateTime receivedTimestamp) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "GELF message is not a JSON object");
         }
 
-        // Level is set by server if not specified by client.
-        final int level = intValue(node, "level");
-        if (level > -1) {
-            message.addField("level", level);
-        }
+        // The standard GELF fields can come after the additional fields, so they are set when they are read and
+        // overwrite additional fields of the same name.
+        final Message message = new Message(null, null, receivedTimestamp);
+        boolean hasShortMessage = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String key = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            final JsonNode value;
+            switch (key) {
+                case "short_message":
+                    message.addField(Message.FIELD_MESSAGE, stringValue(objectMapper.readTree(parser)));
+                    hasShortMessage = true;
+                    continue;
+                case "host":
+                    message.setSource(stringValue(objectMapper.readTree(parser)).trim());
+                    continue;
+                case "timestamp":
+                    final double messageTimestamp = doubleValue(objectMapper.readTree(parser));
+                    if (messageTimestamp > 0) {
+                        // we treat this as a unix timestamp
+                        message.addField(Message.FIELD_TIMESTAMP, Tools.dateTimeFromDouble(messageTimestamp));
+                    }
+                    continue;
+                case "full_message":
+                    value = objectMapper.readTree(parser);
+                    message.addField("full_message", stringValue(value));
+                    break;
+                case "file":
+                    value = objectMapper.readTree(parser);
+                    final String file = stringValue(value);
+                    if (!file.isEmpty()) {
+                        message.addField("file", file);
+                    }
+                    break;
+                case "line":
+                    value = objectMapper.readTree(parser);
+                    final long line = longValue(value);
+                    if (line > -1) {
+                        message.addField("line", line);
+                    }
+                    break;
+                case "level":
+                    // Level is set by server if not specified by client.
+                    value = objectMapper.readTree(parser);
+                    final int level = intValue(value);
+                    if (level > -1) {
+                        message.addField("level", level);
+                    }
+                    break;
+                case "facility":
+                    // Facility is set by server if not specified by client.
+                    value = objectMapper.readTree(parser);
+                    final String facility = stringValue(value);
+                    if (!facility.isEmpty()) {
+                        message.addField("facility", facility);
+                    }
+                    break;
+                default:
+                    final String fieldKey = additionalFieldKey(message, key, hasShortMessage);
+                    if (fieldKey == null) {
+                        parser.skipChildren();
+                    } else {
+                        message.addField(fieldKey, additionalFieldValue(fieldKey, parser, token));
+                    }
+                    continue;
+            }
 
-        // Facility is set by server if not specified by client.
-        final String facility = stringValue(node, ("facility"));
-        if (facility != null && !facility.isEmpty()) {
-            message.addField("facility", facility);
+            // Standard fields with values which could not be used are added like additional fields.
+            final String fieldKey = additionalFieldKey(message, key, hasShortMessage);
+            if (fieldKey != null) {
+                message.addField(fieldKey, additionalFieldValue(fieldKey, value));
+            }
         }
 
-        // Add additional data if there is some.
-        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        return message;
+    }
 
-        while (fields.hasNext()) {
-            final Map.Entry<String, JsonNode> entry = fields.next();
+    @Nullable
+    private static String additionalFieldKey(final Message message, final String key, final boolean hasShortMessage) {
+        // Do not index useless GELF "version" field.
+        if ("version".equals(key)) {
+            return null;
+        }
 
-            String key = entry.getKey();
-            // Do not index useless GELF "version" field.
-            if ("version".equals(key)) {
-                continue;
-            }
+        // Don't include GELF syntax underscore in message field key.
+        final String fieldKey = key.startsWith("_") && key.length() > 1 ? key.substring(1) : key;
 
-            // Don't include GELF syntax underscore in message field key.
-            if (key.startsWith("_") && key.length() > 1) {
-                key = key.substring(1);
-            }
+        // We already set short_message and host as message and source. Do not add as fields again.
+        if (fieldKey.equals("short_message") || fieldKey.equals("host")
+                || (hasShortMessage && fieldKey.equals(Message.FIELD_MESSAGE))) {
+            return null;
+        }
 
-            // We already set short_message and host as message and source. Do not add as fields again.
-            if (key.equals("short_message") || key.equals("host")) {
-                continue;
-            }
+        // Skip standard or already set fields.
+        if (message.getField(fieldKey) != null || (Message.RESERVED_FIELDS.contains(fieldKey) && !Message.RESERVED_SETTABLE_FIELDS.contains(fieldKey))) {
+            return null;
+        }
 
-            // Skip standard or already set fields.
-            if (message.getField(key) != null || (Message.RESERVED_FIELDS.contains(key) && !Message.RESERVED_SETTABLE_FIELDS.contains(key))) {
-                continue;
-            }
+        return fieldKey;
+    }
 
-            // Convert JSON containers to Strings, and pick a suitable number representation.
-            final JsonNode value = entry.getValue();
-
-            final Object fieldValue;
-            if (value.isContainerNode()) {
-                fieldValue = value.toString();
-            } else if (value.isFloatingPointNumber()) {
-                fieldValue = value.asDouble();
-            } else if (value.isIntegralNumber()) {
-                fieldValue = value.asLong();
-            } else if (value.isNull()) {
+    // Convert JSON containers to Strings, and pick a suitable number representation.
+    @Nullable
+    private Object additionalFieldValue(final String key, final JsonParser parser, final JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+            case START_ARRAY:
+                return objectMapper.readTree(parser).toString();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    return parser.getBigIntegerValue().longValue();
+                }
+                return parser.getLongValue();
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NULL:
                 log.debug("Field [{}] is NULL. Skipping.", key);
-                continue;
-            } else if (value.isTextual()) {
-                fieldValue = value.asText();
-            } else {
+                return null;
+            default:
                 log.debug("Field [{}] has unknown value type. Skipping.", key);
-                continue;
-            }
-
-            message.addField(key, fieldValue);
+                return null;
         }
+    }
 
-        return message;
+    @Nullable
+    private static Object additionalFieldValue(final String key, final JsonNode value) {
+        if (value.isContainerNode()) {
+            return value.toString();
+        } else if (value.isFloatingPointNumber()) {
+            return value.asDouble();
+        } else if (value.isIntegralNumber()) {
+            return value.asLong();
+        } else if (value.isNull()) {
+            log.debug("Field [{}] is NULL. Skipping.", key);
+            return null;
+        } else if (value.isTextual()) {
+            return value.asText();
+        } else {
+            log.debug("Field [{}] has unknown value type. Skipping.", key);
+            return null;
+        }
     }
 
     @Nullable
@@ -58,7 +58,7 @@ public class RandomHttpMessageCodec extends AbstractCodec {
             return null;
         }
         try {
-            final GeneratorState state = objectMapper.readValue(rawMessage.getPayload(), GeneratorState.class);
+            final GeneratorState state = objectMapper.readValue(rawMessage.getPayloadStream(), GeneratorState.class);
             final Message message = FakeHttpRawMessageGenerator.generateMessage(state);
             return message;
         } catch (IOException e) {
@@ -49,7 +49,7 @@ public class RawCodec extends AbstractCodec {
     public Message decode(@Nonnull RawMessage raw) {
         final ResolvableInetSocketAddress rawRemoteAddress = raw.getRemoteAddress();
         final InetAddress remoteAddress = rawRemoteAddress == null ? null : rawRemoteAddress.getAddress();
-        return new Message(new String(raw.getPayload(), StandardCharsets.UTF_8), null, raw.getTimestamp());
+        return new Message(raw.getPayloadAsString(StandardCharsets.UTF_8), null, raw.getTimestamp());
     }
 
     @Nullable
@@ -34,6 +34,7 @@ import org.graylog2.plugin.inputs.codecs.AbstractCodec;
 import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 import org.graylog2.plugin.inputs.transports.NettyTransport;
 import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.utilities.ReverseDnsResolver;
 import org.graylog2.syslog4j.server.SyslogServerEventIF;
 import org.graylog2.syslog4j.server.impl.event.SyslogServerEvent;
 import org.graylog2.syslog4j.server.impl.event.structured.StructuredSyslogServerEvent;
@@ -46,7 +47,6 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
@@ -64,16 +64,21 @@ public class SyslogCodec extends AbstractCodec {
     private static final Pattern STRUCTURED_SYSLOG_PATTERN = Pattern.compile("<\\d+>\\d.*", Pattern.DOTALL);
 
     public static final String CK_FORCE_RDNS = "force_rdns";
+    public static final String CK_RDNS_NON_BLOCKING = "rdns_non_blocking";
     public static final String CK_ALLOW_OVERRIDE_DATE = "allow_override_date";
     public static final String CK_EXPAND_STRUCTURED_DATA = "expand_structured_data";
     public static final String CK_STORE_FULL_MESSAGE = "store_full_message";
 
+    private final ReverseDnsResolver reverseDnsResolver;
     private final Timer resolveTime;
     private final Timer decodeTime;
 
     @AssistedInject
-    public SyslogCodec(@Assisted Configuration configuration, MetricRegistry metricRegistry) {
+    public SyslogCodec(@Assisted Configuration configuration,
+                       ReverseDnsResolver reverseDnsResolver,
+                       MetricRegistry metricRegistry) {
         super(configuration);
+        this.reverseDnsResolver = reverseDnsResolver;
         this.resolveTime = metricRegistry.timer(name(SyslogCodec.class, "resolveTime"));
         this.decodeTime = metricRegistry.timer(name(SyslogCodec.class, "decodeTime"));
     }
@@ -81,7 +86,7 @@ public class SyslogCodec extends AbstractCodec {
     @Nullable
     @Override
     public Message decode(@Nonnull RawMessage rawMessage) {
-        final String msg = new String(rawMessage.getPayload(), StandardCharsets.UTF_8);
+        final String msg = rawMessage.getPayloadAsString(StandardCharsets.UTF_8);
         try (Timer.Context ignored = this.decodeTime.time()) {
             final ResolvableInetSocketAddress address = rawMessage.getRemoteAddress();
             final InetSocketAddress remoteAddress;
@@ -178,11 +183,19 @@ public class SyslogCodec extends AbstractCodec {
 
     private String parseHost(SyslogServerEventIF msg, InetAddress remoteAddress) {
         if (remoteAddress != null && configuration.getBoolean(CK_FORCE_RDNS)) {
+            final String hostname;
             try (Timer.Context ignored = this.resolveTime.time()) {
-                return Tools.rdnsLookup(remoteAddress);
-            } catch (UnknownHostException e) {
-                LOG.warn("Reverse DNS lookup failed. Falling back to parsed hostname.", e);
+                if (configuration.getBoolean(CK_RDNS_NON_BLOCKING)) {
+                    hostname = reverseDnsResolver.resolveNonBlocking(remoteAddress);
+                } else {
+                    hostname = reverseDnsResolver.resolve(remoteAddress);
+                }
+            }
+            // Addresses without hostname resolve to their textual IP address, only pending non-blocking lookups don't.
+            if (hostname != null) {
+                return hostname;
             }
+            LOG.debug("Reverse DNS lookup of {} is pending. Falling back to parsed hostname.", remoteAddress);
         }
 
         return msg.getHost();
@@ -238,6 +251,15 @@ public class SyslogCodec extends AbstractCodec {
                     )
             );
 
+            r.addField(
+                    new BooleanField(
+                            CK_RDNS_NON_BLOCKING,
+                            "Non-blocking rDNS?",
+                            false,
+                            "Don't wait for rDNS lookups which are not cached yet? Messages keep the parsed hostname until the lookup of their address has finished."
+                    )
+            );
+
             r.addField(
                     new BooleanField(
                             CK_ALLOW_OVERRIDE_DATE,
@@ -16,12 +16,17 @@
  */
 package org.graylog2.inputs.codecs.gelf;
 
+import com.google.common.io.ByteStreams;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class GELFMessage {
 
@@ -88,6 +93,29 @@ public class GELFMessage {
         return null;
     }
 
+    /**
+     * Return a stream of the JSON payload of the GELF message, which decompresses the payload while it is being read.
+     *
+     * @param maxBytes The maximum number of bytes to read from a compressed GELF payload.
+     * @return A stream of the JSON payload of the GELF message, which has to be closed by the caller.
+     * @throws IOException if the header of a compressed payload is invalid
+     * @see #getJSON(long)
+     */
+    public InputStream getJSONStream(long maxBytes) throws IOException {
+        switch (getGELFType()) {
+            case ZLIB:
+                return ByteStreams.limit(new InflaterInputStream(new ByteArrayInputStream(payload)), maxBytes);
+            case GZIP:
+                return ByteStreams.limit(new GZIPInputStream(new ByteArrayInputStream(payload)), maxBytes);
+            case UNCOMPRESSED:
+                return new ByteArrayInputStream(payload);
+            case CHUNKED:
+            case UNSUPPORTED:
+            default:
+                throw new IllegalStateException("Unknown GELF type. Not supported.");
+        }
+    }
+
     public byte[] getPayload() {
         return payload;
     }
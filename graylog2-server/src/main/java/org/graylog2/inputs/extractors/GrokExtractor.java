@@ -21,9 +21,8 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import oi.thekraken.grok.api.Grok;
 import oi.thekraken.grok.api.Match;
-import oi.thekraken.grok.api.exception.GrokException;
 import org.graylog2.ConfigurationException;
-import org.graylog2.grok.GrokPattern;
+import org.graylog2.grok.GrokPatternRegistry;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
 import org.slf4j.Logger;
@@ -31,15 +30,15 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class GrokExtractor extends Extractor {
     private static final Logger log = LoggerFactory.getLogger(GrokExtractor.class);
 
-    private final Grok grok = new Grok();
+    // shared with all other users of the same pattern, see GrokPatternRegistry
+    private final Grok grok;
 
     public GrokExtractor(MetricRegistry metricRegistry,
-                         Set<GrokPattern> grokPatterns,
+                         GrokPatternRegistry grokPatternRegistry,
                          String id,
                          String title,
                          long order,
@@ -71,13 +70,8 @@ public class GrokExtractor extends Extractor {
         final boolean namedCapturesOnly = (boolean) extractorConfig.getOrDefault("named_captures_only", false);
 
         try {
-            // TODO we should really share this somehow, but unfortunately the extractors are reloaded every second.
-            for (final GrokPattern grokPattern : grokPatterns) {
-                grok.addPattern(grokPattern.name(), grokPattern.pattern());
-            }
-
-            grok.compile((String) extractorConfig.get("grok_pattern"), namedCapturesOnly);
-        } catch (GrokException e) {
+            grok = grokPatternRegistry.cachedGrokForPattern((String) extractorConfig.get("grok_pattern"), namedCapturesOnly);
+        } catch (RuntimeException e) {
             log.error("Unable to parse grok patterns", e);
             throw new ConfigurationException("Unable to parse grok patterns");
         }
@@ -28,11 +28,12 @@ import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.filters.MessageFilter;
 import org.graylog2.plugin.messageprocessors.MessageProcessor;
 import org.graylog2.shared.buffers.processors.ProcessBufferProcessor;
-import org.graylog2.shared.journal.Journal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -55,18 +56,16 @@ public class MessageFilterChainProcessor implements MessageProcessor {
     }
 
     private final List<MessageFilter> filterRegistry;
-    private final MetricRegistry metricRegistry;
-    private final Journal journal;
+    // The execution timer and its name of every filter, in the order of the filter registry.
+    private final Timer[] timers;
+    private final String[] timerNames;
     private final ServerStatus serverStatus;
     private final Meter filteredOutMessages;
 
     @Inject
     public MessageFilterChainProcessor(MetricRegistry metricRegistry,
                                        Set<MessageFilter> filterRegistry,
-                                       Journal journal,
                                        ServerStatus serverStatus) {
-        this.metricRegistry = metricRegistry;
-        this.journal = journal;
         this.serverStatus = serverStatus;
         // we need to keep this sorted properly, so that the filters run in the correct order
         this.filterRegistry = Ordering.from(new Comparator<MessageFilter>() {
@@ -82,41 +81,67 @@ public class MessageFilterChainProcessor implements MessageProcessor {
         if (filterRegistry.size() == 0)
             throw new RuntimeException("Empty filter registry!");
 
+        this.timers = new Timer[this.filterRegistry.size()];
+        this.timerNames = new String[this.filterRegistry.size()];
+        for (int i = 0; i < timers.length; i++) {
+            timerNames[i] = name(this.filterRegistry.get(i).getClass(), "executionTime");
+            timers[i] = metricRegistry.timer(timerNames[i]);
+        }
+
         this.filteredOutMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "filteredOutMessages"));
     }
 
     @Override
     public Messages process(Messages messages) {
+        final List<Message> batch = new ArrayList<>();
+        for (Message msg : messages) {
+            batch.add(msg);
+        }
+        // Per message timings are only recorded if message recordings are enabled, otherwise every filter
+        // processes the whole batch at once.
+        final boolean recordTimings = serverStatus.getDetailedMessageRecordingStrategy() != ServerStatus.MessageDetailRecordingStrategy.NEVER;
 
-        for (final MessageFilter filter : filterRegistry) {
-            for (Message msg : messages) {
-                final String timerName = name(filter.getClass(), "executionTime");
-                final Timer timer = metricRegistry.timer(timerName);
-                final Timer.Context timerContext = timer.time();
-
-                try {
-                    LOG.debug("Applying filter [{}] on message <{}>.", filter.getName(), msg.getId());
-
-                    if (filter.filter(msg)) {
-                        LOG.debug("Filter [{}] marked message <{}> to be discarded. Dropping message.",
-                                filter.getName(),
-                                msg.getId());
-                        msg.setFilterOut(true);
-                        filteredOutMessages.mark();
-                        journal.markJournalOffsetCommitted(msg.getJournalOffset());
-                    }
-                } catch (Exception e) {
-                    LOG.error("Could not apply filter [" + filter.getName() + "] on message <" + msg.getId() + ">: ",
-                            e);
-                } finally {
-                    final long elapsedNanos = timerContext.stop();
-                    msg.recordTiming(serverStatus, timerName, elapsedNanos);
+        for (int i = 0; i < filterRegistry.size() && !batch.isEmpty(); i++) {
+            final MessageFilter filter = filterRegistry.get(i);
+            if (recordTimings) {
+                for (Message msg : batch) {
+                    final long elapsedNanos = applyFilter(filter, timers[i], Collections.singletonList(msg));
+                    msg.recordTiming(serverStatus, timerNames[i], elapsedNanos);
                 }
+            } else {
+                applyFilter(filter, timers[i], batch);
             }
+            removeFilteredOut(filter, batch);
         }
         return messages;
     }
 
+    private long applyFilter(MessageFilter filter, Timer timer, List<Message> batch) {
+        final Timer.Context timerContext = timer.time();
+        try {
+            LOG.debug("Applying filter [{}] on {} messages.", filter.getName(), batch.size());
+            filter.filter(batch);
+        } catch (Exception e) {
+            LOG.error("Could not apply filter [" + filter.getName() + "] on " + batch.size() + " messages: ", e);
+        }
+        return timerContext.stop();
+    }
+
+    // Drops the messages the filter marked to be discarded, so the subsequent filters don't process them anymore.
+    // Their journal offsets are committed by the ProcessBufferProcessor, like those of all dropped messages.
+    private void removeFilteredOut(MessageFilter filter, List<Message> batch) {
+        int size = 0;
+        for (Message msg : batch) {
+            if (msg.getFilterOut()) {
+                LOG.debug("Filter [{}] marked message <{}> to be discarded. Dropping message.", filter.getName(), msg.getId());
+                filteredOutMessages.mark();
+            } else {
+                batch.set(size++, msg);
+            }
+        }
+        batch.subList(size, batch.size()).clear();
+    }
+
     @VisibleForTesting
     protected List<MessageFilter> getFilterRegistry() {
         return filterRegistry;
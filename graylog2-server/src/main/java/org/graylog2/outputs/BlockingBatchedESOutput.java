@@ -17,11 +17,14 @@
 package org.graylog2.outputs;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.InstrumentedExecutorService;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import org.graylog2.indexer.IndexSet;
@@ -35,18 +38,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * Elasticsearch output which collects messages into batches and writes them with bulk requests.
+ *
+ * Messages are collected in one batch per outputbuffer processor thread ("shard") so that the writing threads do not
+ * contend on a single buffer. Full batches are handed to a dedicated flush executor which keeps at most
+ * {@code output_flush_concurrency} bulk requests in flight. If that limit is reached, the writing threads block until
+ * a bulk request has finished, which exerts back pressure on the {@link org.graylog2.buffers.processors.OutputBufferProcessor}.
+ */
 // Singleton class
 public class BlockingBatchedESOutput extends ElasticSearchOutput {
     private static final Logger log = LoggerFactory.getLogger(BlockingBatchedESOutput.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30L;
     private final Cluster cluster;
     private final int maxBufferSize;
     private final Timer processTime;
@@ -54,10 +73,13 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
     private final Meter bufferFlushes;
     private final Meter bufferFlushesRequested;
 
-    private volatile List<Map.Entry<IndexSet, Message>> buffer;
-
-    private static final AtomicInteger activeFlushThreads = new AtomicInteger(0);
-    private final AtomicLong lastFlushTime = new AtomicLong();
+    private final Shard[] shards;
+    // Every thread sticks to the shard assigned on its first write, the shards are assigned round-robin.
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ThreadLocal<Shard> threadShard = ThreadLocal.withInitial(this::assignShard);
+    private final int flushConcurrency;
+    private final Semaphore flushPermits;
+    private final ExecutorService flushExecutor;
     private final int outputFlushInterval;
 
     @AssistedInject
@@ -77,6 +99,17 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
                                    Cluster cluster,
                                    org.graylog2.Configuration serverConfiguration,
                                    Journal journal) {
+        this(metricRegistry, messages, cluster, serverConfiguration, journal,
+                flushExecutor(metricRegistry, serverConfiguration.getOutputFlushConcurrency()));
+    }
+
+    @VisibleForTesting
+    BlockingBatchedESOutput(MetricRegistry metricRegistry,
+                            Messages messages,
+                            Cluster cluster,
+                            org.graylog2.Configuration serverConfiguration,
+                            Journal journal,
+                            ExecutorService flushExecutor) {
         super(metricRegistry, messages, journal);
         this.cluster = cluster;
         this.maxBufferSize = serverConfiguration.getOutputBatchSize();
@@ -86,36 +119,100 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
         this.bufferFlushes = metricRegistry.meter(name(this.getClass(), "bufferFlushes"));
         this.bufferFlushesRequested = metricRegistry.meter(name(this.getClass(), "bufferFlushesRequested"));
 
-        buffer = Lists.newArrayListWithCapacity(maxBufferSize);
+        this.shards = new Shard[serverConfiguration.getOutputBufferProcessors()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(metricRegistry, name(this.getClass(), "shard-" + i), maxBufferSize);
+        }
+        this.flushConcurrency = serverConfiguration.getOutputFlushConcurrency();
+        this.flushPermits = new Semaphore(flushConcurrency);
+        this.flushExecutor = flushExecutor;
+    }
+
+    private static ExecutorService flushExecutor(MetricRegistry metricRegistry, int flushConcurrency) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(flushConcurrency, flushConcurrency,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("blocking-batched-es-output-flush-%d").setDaemon(true).build());
+        // Only the default output is kept for the lifetime of the server, don't keep idle threads of others around.
+        executor.allowCoreThreadTimeOut(true);
+        return new InstrumentedExecutorService(executor, metricRegistry, name(BlockingBatchedESOutput.class, "flush-executor-service"));
+    }
 
+    private Shard assignShard() {
+        return shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)];
     }
 
     @Override
     public void write(Message message) throws Exception {
-        for (IndexSet indexSet : message.getIndexSets()) {
-            writeMessageEntry(Maps.immutableEntry(indexSet, message));
+        write(Collections.singletonList(message));
+    }
+
+    /**
+     * Adds all messages to the buffer of the current thread's shard while holding its lock only once. The entries of
+     * all index sets of a message end up in the same batch, so its journal offset is committed once all are written.
+     */
+    @Override
+    public void write(List<Message> messages) throws Exception {
+        final Shard shard = threadShard.get();
+        List<List<Map.Entry<IndexSet, Message>>> flushBatches = null;
+        synchronized (shard) {
+            for (final Message message : messages) {
+                if (message.getIndexSets().isEmpty()) {
+                    commitNotIndexedMessage(message);
+                    continue;
+                }
+                final List<Map.Entry<IndexSet, Message>> flushBatch = shard.add(message);
+                if (flushBatch != null) {
+                    if (flushBatches == null) {
+                        flushBatches = new ArrayList<>(1);
+                    }
+                    flushBatches.add(flushBatch);
+                }
+            }
+        }
+        if (flushBatches != null) {
+            for (final List<Map.Entry<IndexSet, Message>> flushBatch : flushBatches) {
+                dispatch(shard, flushBatch);
+            }
         }
     }
 
     public void writeMessageEntry(Map.Entry<IndexSet, Message> entry) throws Exception {
-        List<Map.Entry<IndexSet, Message>> flushBatch = null;
-        synchronized (this) {
-            buffer.add(entry);
-
-            if (buffer.size() >= maxBufferSize) {
-                flushBatch = buffer;
-                buffer = Lists.newArrayListWithCapacity(maxBufferSize);
-            }
+        // Every outputbuffer processor thread has its own shard, so the lock is usually uncontended.
+        final Shard shard = threadShard.get();
+        final List<Map.Entry<IndexSet, Message>> flushBatch;
+        synchronized (shard) {
+            flushBatch = shard.add(entry);
         }
-        // if the current thread found it had to flush any messages, it does so but blocks.
-        // this ensures we don't flush more than 'processorCount' in parallel.
+        // if the current thread found it had to flush any messages, it hands them to the flush executor but blocks
+        // as long as there are already too many flushes in progress.
         // TODO this will still be time limited by the OutputBufferProcessor and thus be called more often than it should
         if (flushBatch != null) {
-            flush(flushBatch);
+            dispatch(shard, flushBatch);
         }
     }
 
-    private void flush(List<Map.Entry<IndexSet, Message>> messages) {
+    private void dispatch(Shard shard, List<Map.Entry<IndexSet, Message>> messages) {
+        // never try to flush an empty buffer
+        if (messages.isEmpty()) {
+            return;
+        }
+        flushPermits.acquireUninterruptibly();
+        try {
+            flushExecutor.execute(() -> {
+                try {
+                    flush(shard, messages);
+                } finally {
+                    flushPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            flushPermits.release();
+            throw e;
+        }
+    }
+
+    private void flush(Shard shard, List<Map.Entry<IndexSet, Message>> messages) {
         if (!cluster.isConnected() || !cluster.isDeflectorHealthy()) {
             try {
                 cluster.waitForConnectedAndDeflectorHealthy();
@@ -124,23 +221,20 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
                 return;
             }
         }
-        // never try to flush an empty buffer
-        if (messages.size() == 0) {
-            return;
-        }
         log.debug("Starting flushing {} messages, flush threads active {}",
                  messages.size(),
-                 activeFlushThreads.incrementAndGet());
+                 flushConcurrency - flushPermits.availablePermits());
 
-        try (Timer.Context ignored = processTime.time()) {
-            lastFlushTime.set(System.nanoTime());
+        try (Timer.Context ignored = processTime.time();
+             Timer.Context ignoredShard = shard.processTime.time()) {
             writeMessageEntries(messages);
             batchSize.update(messages.size());
+            shard.batchSize.update(messages.size());
             bufferFlushes.mark();
+            shard.bufferFlushes.mark();
         } catch (Exception e) {
             log.error("Unable to flush message buffer", e);
         }
-        activeFlushThreads.decrementAndGet();
         log.debug("Flushing {} messages completed", messages.size());
     }
 
@@ -151,20 +245,95 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
             log.debug("Cluster unavailable, but not blocking for periodic flush attempt. This will try again.");
             return;
         }
-        // if we shouldn't flush at all based on the last flush time, no need to synchronize on this.
-        if (lastFlushTime.get() != 0 &&
-                outputFlushInterval > NANOSECONDS.toSeconds(System.nanoTime() - lastFlushTime.get())) {
-                    return;
-                }
-        // flip buffer quickly and initiate flush
-        final List<Map.Entry<IndexSet, Message>> flushBatch;
-        synchronized (this) {
-            flushBatch = buffer;
-            buffer = Lists.newArrayListWithCapacity(maxBufferSize);
+        for (Shard shard : shards) {
+            // if we shouldn't flush at all based on the last flush time, no need to synchronize on the shard.
+            final long lastFlushTime = shard.lastFlushTime;
+            if (lastFlushTime != 0 &&
+                    outputFlushInterval > NANOSECONDS.toSeconds(System.nanoTime() - lastFlushTime)) {
+                continue;
+            }
+            // flip buffer quickly and initiate flush
+            final List<Map.Entry<IndexSet, Message>> flushBatch;
+            synchronized (shard) {
+                flushBatch = shard.buffer.isEmpty() ? null : shard.flip();
+            }
+            if (flushBatch != null) {
+                bufferFlushesRequested.mark();
+                dispatch(shard, flushBatch);
+            }
         }
-        if (flushBatch != null) {
-            bufferFlushesRequested.mark();
-            flush(flushBatch);
+    }
+
+    /**
+     * Flushes the buffers of all shards and waits for all bulk requests to finish, so that no buffered messages are lost
+     * on shutdown.
+     */
+    @Override
+    public void stop() {
+        for (Shard shard : shards) {
+            final List<Map.Entry<IndexSet, Message>> flushBatch;
+            synchronized (shard) {
+                flushBatch = shard.buffer.isEmpty() ? null : shard.flip();
+            }
+            if (flushBatch != null) {
+                dispatch(shard, flushBatch);
+            }
+        }
+
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Flushing the message buffers didn't finish within {} seconds.", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for the message buffers to be flushed.");
+            Thread.currentThread().interrupt();
+        }
+        super.stop();
+    }
+
+    private static class Shard {
+        private final int maxBufferSize;
+        private final Timer processTime;
+        private final Histogram batchSize;
+        private final Meter bufferFlushes;
+
+        // guarded by "this"
+        private List<Map.Entry<IndexSet, Message>> buffer;
+        private volatile long lastFlushTime;
+
+        private Shard(MetricRegistry metricRegistry, String metricPrefix, int maxBufferSize) {
+            this.maxBufferSize = maxBufferSize;
+            this.processTime = metricRegistry.timer(name(metricPrefix, "processTime"));
+            this.batchSize = metricRegistry.histogram(name(metricPrefix, "batchSize"));
+            this.bufferFlushes = metricRegistry.meter(name(metricPrefix, "bufferFlushes"));
+            this.buffer = Lists.newArrayListWithCapacity(maxBufferSize);
+        }
+
+        /**
+         * Adds the entry and returns the full batch if it has to be flushed, {@code null} otherwise.
+         */
+        private List<Map.Entry<IndexSet, Message>> add(Map.Entry<IndexSet, Message> entry) {
+            buffer.add(entry);
+            return buffer.size() >= maxBufferSize ? flip() : null;
+        }
+
+        /**
+         * Adds the entries of all index sets of the message and returns the full batch if it has to be flushed,
+         * {@code null} otherwise.
+         */
+        private List<Map.Entry<IndexSet, Message>> add(Message message) {
+            for (final IndexSet indexSet : message.getIndexSets()) {
+                buffer.add(Maps.immutableEntry(indexSet, message));
+            }
+            return buffer.size() >= maxBufferSize ? flip() : null;
+        }
+
+        private List<Map.Entry<IndexSet, Message>> flip() {
+            final List<Map.Entry<IndexSet, Message>> flushBatch = buffer;
+            buffer = Lists.newArrayListWithCapacity(maxBufferSize);
+            lastFlushTime = System.nanoTime();
+            return flushBatch;
         }
     }
 
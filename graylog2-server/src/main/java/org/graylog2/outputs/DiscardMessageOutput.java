@@ -71,13 +71,9 @@ public class DiscardMessageOutput implements MessageOutput {
 
     @Override
     public void write(List<Message> messages) throws Exception {
-        long maxOffset = Long.MIN_VALUE;
-
         for (final Message message : messages) {
-            maxOffset = Math.max(message.getJournalOffset(), maxOffset);
+            journal.markJournalOffsetCommitted(message.getJournalOffset());
         }
-
-        journal.markJournalOffsetCommitted(maxOffset);
         messagesDiscarded.mark(messages.size());
     }
 
@@ -20,6 +20,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
@@ -35,9 +36,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -89,9 +93,31 @@ public class ElasticSearchOutput implements MessageOutput {
 
     @Override
     public void write(List<Message> messageList) throws Exception {
-        throw new UnsupportedOperationException("Method not supported!");
+        final List<Map.Entry<IndexSet, Message>> entries = new ArrayList<>(messageList.size());
+        for (final Message message : messageList) {
+            if (message.getIndexSets().isEmpty()) {
+                commitNotIndexedMessage(message);
+            }
+            for (final IndexSet indexSet : message.getIndexSets()) {
+                entries.add(Maps.immutableEntry(indexSet, message));
+            }
+        }
+        writeMessageEntries(entries);
+    }
+
+    /**
+     * Commits the journal offset of a message which is not written to any index set, nothing else would commit it.
+     */
+    protected void commitNotIndexedMessage(Message message) {
+        LOG.debug("Message <{}> is not written to any index set.", message.getId());
+        journal.markJournalOffsetCommitted(message.getJournalOffset());
     }
 
+    /**
+     * Writes the messages to their index sets and commits their journal offsets. A message with several index sets
+     * has one entry per index set, all of them have to be written in the same call, because the journal offset of
+     * the message is committed once they have been written.
+     */
     public void writeMessageEntries(List<Map.Entry<IndexSet, Message>> messageList) throws Exception {
         if (LOG.isTraceEnabled()) {
             final List<String> sortedIds = Ordering.natural().sortedCopy(messageList.stream()
@@ -104,8 +130,13 @@ public class ElasticSearchOutput implements MessageOutput {
         try (final Timer.Context ignored = processTime.time()) {
             messages.bulkIndex(messageList);
         }
+        // every message is committed once, no matter how many index sets it has been written to
+        final Set<Message> committedMessages = Collections.newSetFromMap(new IdentityHashMap<>(messageList.size()));
         for (final Map.Entry<IndexSet, Message> entry : messageList) {
-            journal.markJournalOffsetCommitted(entry.getValue().getJournalOffset());
+            final Message message = entry.getValue();
+            if (committedMessages.add(message)) {
+                journal.markJournalOffsetCommitted(message.getJournalOffset());
+            }
         }
     }
 
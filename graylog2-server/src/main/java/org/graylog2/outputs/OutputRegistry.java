@@ -46,6 +46,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 public class OutputRegistry {
@@ -60,6 +61,8 @@ public class OutputRegistry {
     private final LoadingCache<String, AtomicInteger> faultCounters;
     private final long faultCountThreshold;
     private final long faultPenaltySeconds;
+    // incremented whenever outputs are removed or disabled, see getGeneration()
+    private final AtomicLong generation = new AtomicLong();
 
     @Inject
     public OutputRegistry(@DefaultMessageOutput MessageOutput defaultMessageOutput,
@@ -106,6 +109,7 @@ public class OutputRegistry {
                 final int number = faultCount.addAndGet(1);
                 LOG.error("Unable to fetch output " + id + ", fault #" + number, e);
                 if (number >= faultCountThreshold) {
+                    generation.incrementAndGet();
                     LOG.error("Output {} has crossed threshold of {} faults in {} seconds. Disabling for {} seconds.",
                             id,
                             faultCountThreshold,
@@ -170,5 +174,14 @@ public class OutputRegistry {
 
         runningMessageOutputs.invalidate(output.getId());
         faultCounters.invalidate(output.getId());
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns a number which changes whenever outputs returned by {@link #getOutputForIdAndStream(String, Stream)}
+     * before are not valid anymore, because they have been removed or disabled for the fault penalty.
+     */
+    public long getGeneration() {
+        return generation.get();
     }
 }
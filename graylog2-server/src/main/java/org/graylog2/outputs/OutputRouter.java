@@ -16,21 +16,27 @@
  */
 package org.graylog2.outputs;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.outputs.MessageOutput;
 import org.graylog2.plugin.streams.Output;
 import org.graylog2.plugin.streams.Stream;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 public class OutputRouter {
     private final MessageOutput defaultMessageOutput;
     private final OutputRegistry outputRegistry;
 
+    // The resolved outputs by stream. Streams are compared by identity and only weakly referenced, so the entries of
+    // outdated stream instances disappear once the stream router has loaded the changed streams.
+    private final ConcurrentMap<Stream, ResolvedOutputs> resolvedOutputs = new MapMaker().weakKeys().makeMap();
+
     @Inject
     public OutputRouter(@DefaultMessageOutput MessageOutput defaultMessageOutput,
                         OutputRegistry outputRegistry) {
@@ -50,20 +56,58 @@ public class OutputRouter {
         return result;
     }
 
-    public Set<MessageOutput> getOutputsForMessage(final Message msg) {
-        final Set<MessageOutput> result = getStreamOutputsForMessage(msg);
-        result.add(defaultMessageOutput);
+    private Set<MessageOutput> getCachedMessageOutputsForStream(Stream stream) {
+        // read the generation first, a change while resolving the outputs makes the new entry outdated right away
+        final long generation = outputRegistry.getGeneration();
+        final ResolvedOutputs cached = resolvedOutputs.get(stream);
+        if (cached != null && cached.generation == generation) {
+            return cached.outputs;
+        }
 
-        return result;
+        final ImmutableSet<MessageOutput> outputs = ImmutableSet.copyOf(getMessageOutputsForStream(stream));
+        // Only remember the outputs if all of them could be resolved. Outputs which failed to start are retried with
+        // the next message, which also keeps counting their faults towards the fault penalty.
+        if (outputs.size() == stream.getOutputs().size()) {
+            resolvedOutputs.put(stream, new ResolvedOutputs(generation, outputs));
+        }
+        return outputs;
     }
 
+    public Set<MessageOutput> getOutputsForMessage(final Message msg) {
+        return ImmutableSet.<MessageOutput>builder()
+                .addAll(getStreamOutputsForMessage(msg))
+                .add(defaultMessageOutput)
+                .build();
+    }
+
+    /**
+     * Returns the outputs of all streams of the message, without the default output.
+     *
+     * @return an immutable set of outputs, which is shared between messages with the same outputs
+     */
     public Set<MessageOutput> getStreamOutputsForMessage(final Message msg) {
-        final Set<MessageOutput> result = new HashSet<>();
+        Set<MessageOutput> result = ImmutableSet.of();
 
         for (Stream stream : msg.getStreams()) {
-            result.addAll(getMessageOutputsForStream(stream));
+            final Set<MessageOutput> outputs = getCachedMessageOutputsForStream(stream);
+            // usually at most one of the streams has outputs, only build a new set if the outputs really differ
+            if (result.isEmpty()) {
+                result = outputs;
+            } else if (!outputs.isEmpty() && !result.containsAll(outputs)) {
+                result = Sets.union(result, outputs).immutableCopy();
+            }
         }
 
         return result;
     }
+
+    private static class ResolvedOutputs {
+        private final long generation;
+        private final ImmutableSet<MessageOutput> outputs;
+
+        private ResolvedOutputs(long generation, ImmutableSet<MessageOutput> outputs) {
+            this.generation = generation;
+            this.outputs = outputs;
+        }
+    }
 }
@@ -0,0 +1,120 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.indexer.cluster.Cluster;
+import org.graylog2.indexer.ranges.IndexRangesRebuildProgress;
+import org.graylog2.indexer.ranges.RebuildIndexRangesJob;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.system.jobs.SystemJobConcurrencyException;
+import org.graylog2.system.jobs.SystemJobManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link Periodical} to resume a {@link RebuildIndexRangesJob} which has been interrupted, e. g. by a restart.
+ */
+public class IndexRangesRebuildResumePeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexRangesRebuildResumePeriodical.class);
+
+    private final Cluster cluster;
+    private final IndexSetRegistry indexSetRegistry;
+    private final ClusterConfigService clusterConfigService;
+    private final RebuildIndexRangesJob.Factory rebuildIndexRangesJobFactory;
+    private final SystemJobManager systemJobManager;
+
+    @Inject
+    public IndexRangesRebuildResumePeriodical(final Cluster cluster,
+                                              final IndexSetRegistry indexSetRegistry,
+                                              final ClusterConfigService clusterConfigService,
+                                              final RebuildIndexRangesJob.Factory rebuildIndexRangesJobFactory,
+                                              final SystemJobManager systemJobManager) {
+        this.cluster = checkNotNull(cluster);
+        this.indexSetRegistry = checkNotNull(indexSetRegistry);
+        this.clusterConfigService = checkNotNull(clusterConfigService);
+        this.rebuildIndexRangesJobFactory = checkNotNull(rebuildIndexRangesJobFactory);
+        this.systemJobManager = checkNotNull(systemJobManager);
+    }
+
+    @Override
+    public void doRun() {
+        final IndexRangesRebuildProgress progress = clusterConfigService.get(IndexRangesRebuildProgress.class);
+        if (progress == null) {
+            LOG.debug("No interrupted rebuild of index ranges found.");
+            return;
+        }
+
+        while (!cluster.isConnected() || !cluster.isHealthy()) {
+            Uninterruptibles.sleepUninterruptibly(5, TimeUnit.SECONDS);
+        }
+
+        LOG.info("Resuming rebuild of index ranges started at {}.", progress.startedAt());
+        try {
+            systemJobManager.submit(rebuildIndexRangesJobFactory.create(indexSetRegistry));
+        } catch (SystemJobConcurrencyException e) {
+            LOG.warn("Couldn't resume rebuild of index ranges: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean runsForever() {
+        return true;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return false;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return true;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return true;
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 0;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 0;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.periodical;
+
+import org.graylog2.indexer.ranges.WriteIndexRangeTracker;
+import org.graylog2.plugin.periodical.Periodical;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+
+/**
+ * A {@link Periodical} to extend the live index ranges of the write indices by the messages indexed by this node.
+ */
+public class WriteIndexRangesPeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteIndexRangesPeriodical.class);
+
+    private final WriteIndexRangeTracker writeIndexRangeTracker;
+
+    @Inject
+    public WriteIndexRangesPeriodical(WriteIndexRangeTracker writeIndexRangeTracker) {
+        this.writeIndexRangeTracker = writeIndexRangeTracker;
+    }
+
+    @Override
+    public void doRun() {
+        writeIndexRangeTracker.publish();
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean masterOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return true;
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 5;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return 5;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+}
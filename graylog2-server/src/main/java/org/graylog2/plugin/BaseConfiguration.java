@@ -106,6 +106,18 @@ public abstract class BaseConfiguration {
     @Parameter(value = "udp_recvbuffer_sizes", required = true, validator = PositiveIntegerValidator.class)
     private int udpRecvBufferSizes = 1048576;
 
+    @Parameter(value = "rdns_cache_size", validator = PositiveIntegerValidator.class)
+    private int rdnsCacheSize = 10000;
+
+    @Parameter(value = "rdns_cache_ttl", validator = PositiveDurationValidator.class)
+    private Duration rdnsCacheTtl = Duration.hours(1L);
+
+    @Parameter(value = "rdns_cache_negative_ttl", validator = PositiveDurationValidator.class)
+    private Duration rdnsCacheNegativeTtl = Duration.minutes(1L);
+
+    @Parameter(value = "rdns_resolver_threads", validator = PositiveIntegerValidator.class)
+    private int rdnsResolverThreads = 2;
+
     @Parameter("message_journal_enabled")
     private boolean messageJournalEnabled = true;
 
@@ -349,6 +361,22 @@ public abstract class BaseConfiguration {
         return udpRecvBufferSizes;
     }
 
+    public int getRdnsCacheSize() {
+        return rdnsCacheSize;
+    }
+
+    public Duration getRdnsCacheTtl() {
+        return rdnsCacheTtl;
+    }
+
+    public Duration getRdnsCacheNegativeTtl() {
+        return rdnsCacheNegativeTtl;
+    }
+
+    public int getRdnsResolverThreads() {
+        return rdnsResolverThreads;
+    }
+
     public boolean isMessageRecordingsEnabled() {
         return messageRecordingsEnable;
     }
@@ -21,6 +21,7 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.util.Size;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.joda.time.Duration;
 
 import javax.validation.constraints.NotNull;
@@ -38,7 +39,8 @@ public class KafkaJournalConfiguration {
                                      @JsonProperty("max_size") long messageJournalMaxSize,
                                      @JsonProperty("max_age") Duration messageJournalMaxAge,
                                      @JsonProperty("flush_interval") long messageJournalFlushInterval,
-                                     @JsonProperty("flush_age") Duration messageJournalFlushAge) {
+                                     @JsonProperty("flush_age") Duration messageJournalFlushAge,
+                                     @JsonProperty("partitions") int messageJournalPartitions) {
         this.messageJournalDir = Objects.requireNonNull(messageJournalDir);
         this.messageJournalSegmentSize = Size.bytes(messageJournalSegmentSize);
         this.messageJournalSegmentAge = messageJournalSegmentAge;
@@ -46,6 +48,7 @@ public class KafkaJournalConfiguration {
         this.messageJournalMaxAge = messageJournalMaxAge;
         this.messageJournalFlushInterval = messageJournalFlushInterval;
         this.messageJournalFlushAge = messageJournalFlushAge;
+        this.messageJournalPartitions = Math.max(1, messageJournalPartitions);
     }
 
     @Parameter(value = "message_journal_dir", required = true)
@@ -79,6 +82,10 @@ public class KafkaJournalConfiguration {
     @JsonProperty("flush_age")
     private Duration messageJournalFlushAge = Duration.standardMinutes(1L);
 
+    @Parameter(value = "message_journal_partitions", validator = PositiveIntegerValidator.class)
+    @JsonProperty("partitions")
+    private int messageJournalPartitions = 1;
+
     public File getMessageJournalDir() {
         return messageJournalDir;
     }
@@ -106,4 +113,8 @@ public class KafkaJournalConfiguration {
     public Duration getMessageJournalFlushAge() {
         return messageJournalFlushAge;
     }
+
+    public int getMessageJournalPartitions() {
+        return messageJournalPartitions;
+    }
 }
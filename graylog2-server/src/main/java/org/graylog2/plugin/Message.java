@@ -45,8 +45,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
 
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Predicates.not;
@@ -65,7 +64,8 @@ public class Message implements Messages {
     public static final String FIELD_LEVEL = "level";
     public static final String FIELD_STREAMS = "streams";
 
-    private static final Pattern VALID_KEY_CHARS = Pattern.compile("^[\\w\\.\\-@]*$");
+    // The characters allowed in keys, equivalent to the regular expression "^[\\w\\.\\-@]*$".
+    private static final boolean[] VALID_KEY_CHARS = new boolean[128];
     private static final char KEY_REPLACEMENT_CHAR = '_';
 
     public static final ImmutableSet<String> RESERVED_FIELDS = ImmutableSet.of(
@@ -113,10 +113,41 @@ public class Message implements Messages {
             FIELD_MESSAGE, FIELD_ID
     );
 
+    // Fields which are always written explicitly to the Elasticsearch document, or not at all.
+    private static final ImmutableSet<String> ELASTICSEARCH_OVERRIDDEN_FIELDS = ImmutableSet.of(
+            FIELD_ID, FIELD_MESSAGE, FIELD_SOURCE, FIELD_TIMESTAMP, FIELD_STREAMS
+    );
+
+    // Keys of fields most messages have, used to share one key instance between all messages.
+    private static final ImmutableMap<String, String> WELL_KNOWN_KEYS;
+
+    // The number of fields a new message is sized for, it grows when more fields are added.
+    private static final int DEFAULT_EXPECTED_FIELD_COUNT = 16;
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            VALID_KEY_CHARS[c] = true;
+            VALID_KEY_CHARS[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            VALID_KEY_CHARS[c] = true;
+        }
+        for (char c : new char[]{'_', '.', '-', '@'}) {
+            VALID_KEY_CHARS[c] = true;
+        }
+
+        final Set<String> wellKnownKeys = Sets.newHashSet(RESERVED_FIELDS);
+        wellKnownKeys.addAll(RESERVED_SETTABLE_FIELDS);
+        wellKnownKeys.addAll(ImmutableSet.of(FIELD_FULL_MESSAGE, FIELD_LEVEL, FIELD_STREAMS, "facility", "file", "line"));
+        WELL_KNOWN_KEYS = Maps.toMap(wellKnownKeys, key -> key);
+    }
+
     public static final Function<Message, String> ID_FUNCTION = new MessageIdFunction();
 
-    private final Map<String, Object> fields = Maps.newHashMap();
+    private final MessageFields fields;
     private Set<Stream> streams = Sets.newHashSet();
+    // immutable copy of the streams handed out by getStreams(), reset whenever the streams change
+    private ImmutableSet<Stream> streamsCopy;
     private Set<IndexSet> indexSets = Sets.newHashSet();
     private String sourceInputId;
 
@@ -131,6 +162,7 @@ public class Message implements Messages {
     private ArrayList<Recording> recordings;
 
     public Message(final String message, final String source, final DateTime timestamp) {
+        fields = new MessageFields(DEFAULT_EXPECTED_FIELD_COUNT);
         fields.put(FIELD_ID, new UUID().toString());
         addRequiredField(FIELD_MESSAGE, message);
         addRequiredField(FIELD_SOURCE, source);
@@ -143,6 +175,7 @@ public class Message implements Messages {
 
     private Message(String id, Map<String, Object> newFields) {
         Preconditions.checkArgument(id != null, "message id cannot be null");
+        fields = new MessageFields(newFields.size() + 1);
         fields.put(FIELD_ID, id);
         addFields(newFields);
     }
@@ -182,40 +215,61 @@ public class Message implements Messages {
 
     public Map<String, Object> toElasticSearchObject(@Nonnull final Meter invalidTimestampMeter) {
         final Map<String, Object> obj = Maps.newHashMapWithExpectedSize(REQUIRED_FIELDS.size() + fields.size());
+        obj.put(FIELD_ID, fields.get(FIELD_ID));
+        forEachElasticSearchField(obj::put, invalidTimestampMeter);
+        return obj;
+    }
 
-        for (Map.Entry<String, Object> entry : fields.entrySet()) {
-            final String key = entry.getKey();
+    /**
+     * Passes every field of the Elasticsearch document of this message to the given consumer in a single pass and
+     * without building an intermediate map. Every key is passed at most once, keys containing "." are rewritten and
+     * the timestamp is formatted like {@link #toElasticSearchObject(Meter)} does. The message id is not passed.
+     *
+     * @param consumer              the consumer for the keys and values of the document
+     * @param invalidTimestampMeter meter which is marked for every invalid timestamp
+     */
+    public void forEachElasticSearchField(@Nonnull final BiConsumer<String, Object> consumer, @Nonnull final Meter invalidTimestampMeter) {
+        // Only needed for the rare case that two keys with "." characters map to the same Elasticsearch key.
+        Map<String, String> rewrittenKeys = null;
+
+        for (int slot = 0; slot < fields.slots(); slot++) {
+            final String key = fields.keyAt(slot);
+            if (key == null || ELASTICSEARCH_OVERRIDDEN_FIELDS.contains(key)) {
+                continue;
+            }
+            final Object value = fields.valueAt(slot);
 
             // Elasticsearch does not allow "." characters in keys since version 2.0.
             // See: https://www.elastic.co/guide/en/elasticsearch/reference/2.0/breaking_20_mapping_changes.html#_field_names_may_not_contain_dots
-            if (key != null && key.contains(".")) {
+            if (key.indexOf('.') >= 0) {
                 final String newKey = key.replace('.', KEY_REPLACEMENT_CHAR);
 
                 // If the message already contains the transformed key, we skip the field and emit a warning.
                 // This is still not optimal but better than implementing expensive logic with multiple replacement
                 // character options. Conflicts should be rare...
-                if (!obj.containsKey(newKey)) {
-                    obj.put(newKey, entry.getValue());
+                final String conflictingKey;
+                if (fields.containsKey(newKey)) {
+                    conflictingKey = newKey;
                 } else {
-                    LOG.warn("Keys must not contain a \".\" character! Ignoring field \"{}\"=\"{}\" in message [{}] - Unable to replace \".\" with a \"{}\" because of key conflict: \"{}\"=\"{}\"",
-                            key, entry.getValue(), getId(), KEY_REPLACEMENT_CHAR, newKey, obj.get(newKey));
-                    LOG.debug("Full message with \".\" in message key: {}", this);
+                    if (rewrittenKeys == null) {
+                        rewrittenKeys = Maps.newHashMap();
+                    }
+                    conflictingKey = rewrittenKeys.putIfAbsent(newKey, key);
                 }
-            } else {
-                if (key != null && obj.containsKey(key)) {
-                    final String newKey = key.replace(KEY_REPLACEMENT_CHAR, '.');
-                    // Deliberate warning duplicates because the key with the "." might be transformed before reaching
-                    // the duplicate original key with a "_". Otherwise we would silently overwrite the transformed key.
+                if (conflictingKey != null) {
                     LOG.warn("Keys must not contain a \".\" character! Ignoring field \"{}\"=\"{}\" in message [{}] - Unable to replace \".\" with a \"{}\" because of key conflict: \"{}\"=\"{}\"",
-                            newKey, fields.get(newKey), getId(), KEY_REPLACEMENT_CHAR, key, entry.getValue());
+                            key, value, getId(), KEY_REPLACEMENT_CHAR, newKey, fields.get(conflictingKey));
                     LOG.debug("Full message with \".\" in message key: {}", this);
+                } else {
+                    consumer.accept(newKey, value);
                 }
-                obj.put(key, entry.getValue());
+            } else {
+                consumer.accept(key, value);
             }
         }
 
-        obj.put(FIELD_MESSAGE, getMessage());
-        obj.put(FIELD_SOURCE, getSource());
+        consumer.accept(FIELD_MESSAGE, getMessage());
+        consumer.accept(FIELD_SOURCE, getSource());
 
         final Object timestampValue = getField(FIELD_TIMESTAMP);
         DateTime dateTime;
@@ -240,21 +294,19 @@ public class Message implements Messages {
             dateTime = Tools.nowUTC();
         }
         if (dateTime != null) {
-            obj.put(FIELD_TIMESTAMP, buildElasticSearchTimeFormat(dateTime.withZone(UTC)));
+            consumer.accept(FIELD_TIMESTAMP, buildElasticSearchTimeFormat(dateTime.withZone(UTC)));
         }
 
         // Manually converting stream ID to string - caused strange problems without it.
-        if (getStreams().isEmpty()) {
-            obj.put(FIELD_STREAMS, Collections.emptyList());
+        if (streams.isEmpty()) {
+            consumer.accept(FIELD_STREAMS, Collections.emptyList());
         } else {
             final List<String> streamIds = Lists.newArrayListWithCapacity(streams.size());
             for (Stream stream : streams) {
                 streamIds.add(stream.getId());
             }
-            obj.put(FIELD_STREAMS, streamIds);
+            consumer.accept(FIELD_STREAMS, streamIds);
         }
-
-        return obj;
     }
 
     @Override
@@ -305,7 +357,7 @@ public class Message implements Messages {
     }
 
     private void addField(final String key, final Object value, final boolean isRequiredField) {
-        final String trimmedKey = key.trim();
+        final String trimmedKey = wellKnownKey(key.trim());
 
         // Don't accept protected keys. (some are allowed though lol)
         if (RESERVED_FIELDS.contains(trimmedKey) && !RESERVED_SETTABLE_FIELDS.contains(trimmedKey) || !validKey(trimmedKey)) {
@@ -328,8 +380,19 @@ public class Message implements Messages {
         }
     }
 
+    private static String wellKnownKey(final String key) {
+        final String wellKnownKey = WELL_KNOWN_KEYS.get(key);
+        return wellKnownKey == null ? key : wellKnownKey;
+    }
+
     public static boolean validKey(final String key) {
-        return VALID_KEY_CHARS.matcher(key).matches();
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c >= VALID_KEY_CHARS.length || !VALID_KEY_CHARS[c]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void addFields(final Map<String, Object> fields) {
@@ -409,6 +472,7 @@ public class Message implements Messages {
     @Deprecated
     public void setStreams(final List<Stream> streams) {
         this.streams = Sets.newHashSet(streams);
+        this.streamsCopy = null;
     }
 
     /**
@@ -416,7 +480,10 @@ public class Message implements Messages {
      * @return an immutable copy of the current set of assigned streams, empty if no streams have been assigned
      */
     public Set<Stream> getStreams() {
-        return ImmutableSet.copyOf(this.streams);
+        if (streamsCopy == null) {
+            streamsCopy = ImmutableSet.copyOf(this.streams);
+        }
+        return streamsCopy;
     }
 
     /**
@@ -426,7 +493,9 @@ public class Message implements Messages {
      */
     public void addStream(Stream stream) {
         indexSets.add(stream.getIndexSet());
-        streams.add(stream);
+        if (streams.add(stream)) {
+            streamsCopy = null;
+        }
     }
 
     /**
@@ -448,6 +517,7 @@ public class Message implements Messages {
         final boolean removed = streams.remove(stream);
 
         if (removed) {
+            streamsCopy = null;
             indexSets.clear();
             for (Stream s : streams) {
                 indexSets.add(s.getIndexSet());
@@ -468,7 +538,11 @@ public class Message implements Messages {
 
     public List<String> getStreamIds() {
         if (!hasField(FIELD_STREAMS)) {
-            return streams.stream().map(Stream::getId).collect(Collectors.toList());
+            final List<String> streamIds = new ArrayList<>(streams.size());
+            for (Stream stream : streams) {
+                streamIds.add(stream.getId());
+            }
+            return streamIds;
         }
         try {
             @SuppressWarnings("unchecked")
@@ -0,0 +1,293 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.plugin;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compact map of the fields of a {@link Message}.
+ *
+ * The keys and values are stored in two arrays using open addressing with linear probing, so no entry objects are
+ * allocated when adding fields. Removing a field moves the following entries of its probe sequence back instead of
+ * leaving a tombstone behind.
+ *
+ * Null keys are not supported. Removing entries through the iterators of the views is not supported either.
+ * This class is NOT thread-safe, just like the {@link Message} it belongs to.
+ */
+final class MessageFields extends AbstractMap<String, Object> {
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    private int modCount;
+    private Set<Entry<String, Object>> entrySet;
+
+    MessageFields(int expectedSize) {
+        final int capacity = capacityFor(expectedSize);
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+    }
+
+    // Keep the load factor at or below 2/3.
+    private static int capacityFor(int expectedSize) {
+        final int minimumCapacity = Math.max(MINIMUM_CAPACITY, expectedSize + (expectedSize >>> 1) + 1);
+        return Integer.highestOneBit(minimumCapacity - 1) << 1;
+    }
+
+    private static int hash(String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        final String[] keys = this.keys;
+        final int mask = keys.length - 1;
+        int slot = hash((String) key) & mask;
+        while (true) {
+            final String candidate = keys[slot];
+            if (candidate == null) {
+                return -1;
+            }
+            if (candidate == key || candidate.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slotOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        final int slot = slotOf(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        requireNonNull(key, "key");
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            final String candidate = keys[slot];
+            if (candidate == null) {
+                break;
+            }
+            if (candidate == key || candidate.equals(key)) {
+                final Object previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        modCount++;
+        if (++size * 3 > keys.length * 2) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        final int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        final Object previous = values[slot];
+        removeSlot(slot);
+        return previous;
+    }
+
+    private void removeSlot(int slot) {
+        final String[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+
+        // Move back every following entry of the cluster whose home slot does not lie between the gap and itself.
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != null) {
+            final int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = null;
+        values[gap] = null;
+        size--;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns the number of slots, which can be iterated with {@link #keyAt(int)} and {@link #valueAt(int)} without
+     * allocating an iterator and entries.
+     */
+    int slots() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key in the given slot or {@code null} if the slot is empty.
+     */
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+
+    Object valueAt(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        final String[] keys = this.keys;
+        final Object[] values = this.values;
+        final int expectedModCount = modCount;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                action.accept(keys[slot], values[slot]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    private void resize(int capacity) {
+        final String[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final String[] newKeys = new String[capacity];
+        final Object[] newValues = new Object[capacity];
+        final int mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            final String key = oldKeys[i];
+            if (key != null) {
+                int slot = hash(key) & mask;
+                while (newKeys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                newKeys[slot] = key;
+                newValues[slot] = oldValues[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            final Entry<?, ?> entry = (Entry<?, ?>) o;
+            final int slot = slotOf(entry.getKey());
+            return slot >= 0 && Objects.equals(values[slot], entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            MessageFields.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private final int expectedModCount = modCount;
+        private int slot = advance(0);
+
+        private int advance(int from) {
+            int i = from;
+            while (i < keys.length && keys[i] == null) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return slot < keys.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[slot], values[slot]);
+            slot = advance(slot + 1);
+            return entry;
+        }
+    }
+}
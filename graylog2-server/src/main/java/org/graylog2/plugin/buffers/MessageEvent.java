@@ -23,6 +23,7 @@ import org.graylog2.plugin.journal.RawMessage;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 /**
@@ -39,6 +40,8 @@ public class MessageEvent {
     };
 
     private RawMessage raw;
+    private ByteBuffer journalPayload;
+    private long journalOffset;
     private Message msg;
     private Collection<Message> messages;
 
@@ -79,11 +82,36 @@ public class MessageEvent {
      */
     public void setRaw(@Nonnull RawMessage raw) {
         this.raw = raw;
+        this.journalPayload = null;
+        clearMessages();
+    }
+
+    /**
+     * Sets the still encoded raw message as read from the journal, which will be decoded by the processor handling
+     * this event. Like {@link #setRaw(RawMessage)} this clears out all other references of this event.
+     *
+     * @param journalPayload the encoded raw message
+     * @param journalOffset  the offset of the raw message in the journal
+     */
+    public void setJournalPayload(@Nonnull ByteBuffer journalPayload, long journalOffset) {
+        this.raw = null;
+        this.journalPayload = journalPayload;
+        this.journalOffset = journalOffset;
         clearMessages();
     }
 
     public void clearRaw() {
         this.raw = null;
+        this.journalPayload = null;
+    }
+
+    @Nullable
+    public ByteBuffer getJournalPayload() {
+        return journalPayload;
+    }
+
+    public long getJournalOffset() {
+        return journalOffset;
     }
 
     @Nonnull
@@ -95,6 +123,7 @@ public class MessageEvent {
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("raw", raw)
+                .add("journalPayload", journalPayload)
                 .add("message", msg)
                 .add("messages", messages)
                 .toString();
@@ -17,6 +17,9 @@
 package org.graylog2.plugin.filters;
 
 import org.graylog2.plugin.Message;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
 
 /**
  * 
@@ -31,6 +34,30 @@ public interface MessageFilter {
      */
     public boolean filter(Message msg);
 
+    /**
+     * Process a batch of messages, with the same result as calling {@link #filter(Message)} for every message.
+     * <p>
+     * Implementations have to mark every message which should not further be handled with
+     * {@link Message#setFilterOut(boolean)} and must not modify the list itself. A failure of a single message has to
+     * be handled by the implementation, so the other messages of the batch are still filtered. An exception thrown
+     * by this method leaves the rest of the batch unfiltered by this filter.
+     * <p>
+     * The default implementation calls {@link #filter(Message)} for every message and logs its failures.
+     *
+     * @param messages the messages to process, none of them has been marked to be filtered out
+     */
+    default void filter(List<Message> messages) {
+        for (Message msg : messages) {
+            try {
+                if (filter(msg)) {
+                    msg.setFilterOut(true);
+                }
+            } catch (Exception e) {
+                LoggerFactory.getLogger(getClass()).error("Could not apply filter [" + getName() + "] on message <" + msg.getId() + ">: ", e);
+            }
+        }
+    }
+
     /**
      * @return The name of this filter. Should not include whitespaces or special characters.
      */
@@ -172,16 +172,28 @@ public abstract class Extractor implements EmbeddedPersistable {
         final String field = (String) msg.getField(sourceField);
 
         // Decide if to extract at all.
+        if (conditionMatches(field)) {
+            runExtractor(msg, field);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the condition of this extractor allows it to run on the given value of its source field.
+     */
+    public boolean conditionMatches(String field) {
         if (conditionType.equals(ConditionType.STRING)) {
-            if (!field.contains(conditionValue)) {
-                return;
-            }
+            return field.contains(conditionValue);
         } else if (conditionType.equals(ConditionType.REGEX)) {
-            if (!regexConditionPattern.matcher(field).find()) {
-                return;
-            }
+            return regexConditionPattern.matcher(field).find();
         }
+        return true;
+    }
 
+    /**
+     * Runs this extractor on the given value of its source field without evaluating its condition. This is used by
+     * callers which evaluate the conditions of several extractors at once.
+     */
+    public void runExtractor(Message msg, String field) {
         final Timer.Context timerContext = metricRegistry.timer(getTotalTimerName()).time();
 
         final Result[] results = run(field);
@@ -324,7 +324,7 @@ public abstract class MessageInput implements Stoppable {
     }
 
     public void processRawMessage(RawMessage rawMessage) {
-        if (rawMessage.getPayload().length == 0) {
+        if (rawMessage.getPayloadSize() == 0) {
             LOG.debug("Discarding empty message {} from input [{}/{}] (remote address {}). Turn logger org.graylog2.plugin.journal.RawMessage to TRACE to see originating stack trace.",
                       rawMessage.getId(),
                       getTitle(),
@@ -343,7 +343,7 @@ public abstract class MessageInput implements Stoppable {
 
         incomingMessages.mark();
         globalIncomingMessages.inc();
-        rawSize.mark(rawMessage.getPayload().length);
+        rawSize.mark(rawMessage.getPayloadSize());
     }
 
     public String getType() {
@@ -20,7 +20,9 @@ import com.eaio.uuid.UUID;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.UnsafeByteOperations;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
@@ -33,11 +35,13 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,6 +72,8 @@ public class RawMessage implements Serializable {
     private final UUID id;
     private final long journalOffset;
     private Configuration codecConfig;
+    // The codec configuration of messages read from the journal is only deserialized on first access.
+    private String codecConfigJson;
 
     public RawMessage(@Nonnull byte[] payload) {
         this(payload, (ResolvableInetSocketAddress)null);
@@ -124,7 +130,25 @@ public class RawMessage implements Serializable {
         this.journalOffset = journalOffset;
         id = new UUID(journalMessage.getUuidTime(), journalMessage.getUuidClockseq());
         msgBuilder = JournalMessage.newBuilder(journalMessage);
-        codecConfig = Configuration.deserializeFromJson(journalMessage.getCodec().getConfig());
+        codecConfigJson = journalMessage.getCodec().getConfig();
+    }
+
+    /**
+     * Decodes a raw message from a journal buffer without copying the payload. The byte strings of the decoded message
+     * share the content of the buffer, so it must not be modified afterwards.
+     */
+    @Nullable
+    public static RawMessage decode(final ByteBuffer buffer, final long journalOffset) {
+        try {
+            final CodedInputStream input = UnsafeByteOperations.unsafeWrap(buffer).newCodedInput();
+            input.enableAliasing(true);
+            final JournalMessage journalMessage = JournalMessage.parseFrom(input);
+
+            return new RawMessage(journalMessage, journalOffset);
+        } catch (IOException e) {
+            log.error("Cannot read raw message from journal, ignoring this message.", e);
+            return null;
+        }
     }
 
     @Nullable
@@ -146,7 +170,7 @@ public class RawMessage implements Serializable {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
             final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
 
-            final String codecConfigJson = codecConfig.serializeToJson();
+            final String codecConfigJson = this.codecConfigJson != null ? this.codecConfigJson : codecConfig.serializeToJson();
             if (codecConfigJson != null) {
                 builder.setConfig(codecConfigJson);
             }
@@ -170,8 +194,40 @@ public class RawMessage implements Serializable {
         return new DateTime(msgBuilder.getTimestamp(), DateTimeZone.UTC); // TODO PERFORMANCE object creation
     }
 
+    /**
+     * Returns a copy of the payload. Prefer {@link #getPayloadBuffer()}, {@link #getPayloadStream()} or
+     * {@link #getPayloadAsString(Charset)} which don't copy the payload.
+     */
     public byte[] getPayload() {
-        return msgBuilder.getPayload().toByteArray(); // TODO PERFORMANCE array copy
+        return msgBuilder.getPayload().toByteArray();
+    }
+
+    /**
+     * Returns a read-only view of the payload.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return msgBuilder.getPayload().asReadOnlyByteBuffer();
+    }
+
+    /**
+     * Returns a stream over the payload.
+     */
+    public InputStream getPayloadStream() {
+        return msgBuilder.getPayload().newInput();
+    }
+
+    /**
+     * Returns the payload decoded with the given charset, without copying the payload first.
+     */
+    public String getPayloadAsString(Charset charset) {
+        return msgBuilder.getPayload().toString(charset);
+    }
+
+    /**
+     * Returns the size of the payload in bytes.
+     */
+    public int getPayloadSize() {
+        return msgBuilder.getPayload().size();
     }
 
     public UUID getId() {
@@ -229,11 +285,25 @@ public class RawMessage implements Serializable {
     }
 
     public Configuration getCodecConfig() {
+        if (codecConfig == null && codecConfigJson != null) {
+            codecConfig = Configuration.deserializeFromJson(codecConfigJson);
+        }
         return codecConfig;
     }
 
     public void setCodecConfig(Configuration codecConfig) {
         this.codecConfig = codecConfig;
+        this.codecConfigJson = null;
+    }
+
+    /**
+     * Returns the serialized codec configuration of a message which has been read from the journal.
+     *
+     * @return the codec configuration as JSON or {@code null} if the message has not been read from the journal
+     */
+    @Nullable
+    public String getCodecConfigJson() {
+        return codecConfigJson;
     }
 
     public List<SourceNode> getSourceNodes() {
@@ -252,7 +322,7 @@ public class RawMessage implements Serializable {
         helper.add("id", getId())
                 .add("journalOffset", getJournalOffset())
                 .add("codec", getCodecName())
-                .add("payloadSize", getPayload().length)
+                .add("payloadSize", getPayloadSize())
                 .add("timestamp", getTimestamp());
         if (getRemoteAddress() != null) {
             helper.add("remoteAddress", getRemoteAddress().getInetSocketAddress().toString());
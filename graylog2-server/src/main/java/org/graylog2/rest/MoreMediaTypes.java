@@ -47,4 +47,14 @@ public abstract class MoreMediaTypes {
      * A {@link MediaType} constant representing {@value #TEXT_CSV} media type.
      */
     public final static MediaType TEXT_CSV_TYPE = new MediaType("text", "csv");
+    /**
+     * A {@code String} constant representing {@value #APPLICATION_NDJSON} media type.
+     */
+    public final static String APPLICATION_NDJSON = "application/x-ndjson";
+    /**
+     * A {@link MediaType} constant representing {@value #APPLICATION_NDJSON} media type.
+     *
+     * @see <a href="http://ndjson.org/">Newline delimited JSON</a>
+     */
+    public final static MediaType APPLICATION_NDJSON_TYPE = new MediaType("application", "x-ndjson");
 }
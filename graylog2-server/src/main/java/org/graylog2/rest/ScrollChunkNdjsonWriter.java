@@ -0,0 +1,105 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.graylog2.indexer.results.ScrollResult;
+import org.graylog2.plugin.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes scroll chunks as newline delimited JSON, one message per line.
+ * <p>
+ * Every line is the {@code _source} of the hit as returned by Elasticsearch, which only contains the requested fields.
+ * The bytes are copied to the client as they are, the message ID is added in front of them if it has been requested.
+ * </p>
+ */
+@Provider
+@Produces(MoreMediaTypes.APPLICATION_NDJSON)
+public class ScrollChunkNdjsonWriter implements MessageBodyWriter<ScrollResult.ScrollChunk> {
+    private static final Logger LOG = LoggerFactory.getLogger(ScrollChunkNdjsonWriter.class);
+
+    private static final byte[] ID_PREFIX = ("{\"" + Message.FIELD_ID + "\":\"").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY_OBJECT = "{}".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return ScrollResult.ScrollChunk.class.equals(type) && MoreMediaTypes.APPLICATION_NDJSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(ScrollResult.ScrollChunk scrollChunk,
+                        Class<?> type,
+                        Type genericType,
+                        Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(ScrollResult.ScrollChunk scrollChunk,
+                        Class<?> type,
+                        Type genericType,
+                        Annotation[] annotations,
+                        MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException, WebApplicationException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[{}] Writing chunk {}", Thread.currentThread().getId(), scrollChunk.getChunkNumber());
+        }
+
+        final boolean includeId = scrollChunk.getFields().contains(Message.FIELD_ID);
+        for (SearchHit hit : scrollChunk.getHits()) {
+            final BytesReference source = hit.sourceRef();
+            if (!includeId) {
+                if (source == null) {
+                    entityStream.write(EMPTY_OBJECT);
+                } else {
+                    source.writeTo(entityStream);
+                }
+            } else {
+                entityStream.write(ID_PREFIX);
+                entityStream.write(JsonStringEncoder.getInstance().quoteAsUTF8(hit.getId()));
+                entityStream.write('"');
+                if (source != null && source.length() > 2 && source.get(0) == '{') {
+                    // append the members of the source object, including its closing brace
+                    entityStream.write(',');
+                    source.slice(1, source.length() - 1).writeTo(entityStream);
+                } else {
+                    entityStream.write('}');
+                }
+            }
+            entityStream.write('\n');
+        }
+        entityStream.flush();
+    }
+}
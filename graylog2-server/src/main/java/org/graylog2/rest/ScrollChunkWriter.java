@@ -17,8 +17,9 @@
 package org.graylog2.rest;
 
 import au.com.bytecode.opencsv.CSVWriter;
-import org.graylog2.indexer.results.ResultMessage;
+import org.elasticsearch.search.SearchHit;
 import org.graylog2.indexer.results.ScrollResult;
+import org.graylog2.plugin.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,7 +35,11 @@ import java.io.OutputStreamWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+
+import static org.graylog2.plugin.Tools.ES_DATE_FORMAT_FORMATTER;
 
 @Provider
 @Produces(MoreMediaTypes.TEXT_CSV)
@@ -78,18 +83,16 @@ public class ScrollChunkWriter implements MessageBodyWriter<ScrollResult.ScrollC
         }
         // write result set in same order as the header row
         final String[] fieldValues = new String[numberOfFields];
-        for (ResultMessage message : scrollChunk.getMessages()) {
+        for (SearchHit hit : scrollChunk.getHits()) {
+            final Map<String, Object> source = hit.getSource() == null ? Collections.emptyMap() : hit.getSource();
             int idx = 0;
             // first collect all values from the current message
             for (String fieldName : fields) {
-                final Object val = message.getMessage().getField(fieldName);
+                final Object val = fieldValue(hit, source, fieldName);
                 if (val == null) {
                     fieldValues[idx] = null;
                 } else {
-                    String stringVal = val.toString();
-                    fieldValues[idx] = stringVal
-                            .replaceAll("\n", "\\\\n")
-                            .replaceAll("\r", "\\\\r");
+                    fieldValues[idx] = escapeLineBreaks(val.toString());
                 }
                 idx++;
             }
@@ -102,4 +105,50 @@ public class ScrollChunkWriter implements MessageBodyWriter<ScrollResult.ScrollC
         }
         csvWriter.close();
     }
+
+    /**
+     * Returns the value of a field the same way as a {@link org.graylog2.indexer.results.ResultMessage} built from
+     * the hit would, without copying the whole message.
+     */
+    private static Object fieldValue(SearchHit hit, Map<String, Object> source, String fieldName) {
+        if (Message.FIELD_ID.equals(fieldName)) {
+            return hit.getId();
+        }
+
+        final Object val = source.get(fieldName);
+        if (val instanceof String) {
+            final String str = ((String) val).trim();
+            if (str.isEmpty()) {
+                return null;
+            }
+            if (Message.FIELD_TIMESTAMP.equals(fieldName)) {
+                try {
+                    return ES_DATE_FORMAT_FORMATTER.parseDateTime(str);
+                } catch (IllegalArgumentException e) {
+                    // could not parse date string, leave the original value alone
+                    return str;
+                }
+            }
+            return str;
+        }
+        return val;
+    }
+
+    private static String escapeLineBreaks(String value) {
+        if (value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        final StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
 }
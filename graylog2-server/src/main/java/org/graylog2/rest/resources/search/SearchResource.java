@@ -349,7 +349,7 @@ public abstract class SearchResource extends RestResource {
                     while (chunk != null) {
                         LOG.debug("[{}] Writing scroll chunk with {} messages",
                             scroll.getQueryHash(),
-                            chunk.getMessages().size());
+                            chunk.size());
                         if (output.isClosed()) {
                             LOG.debug("[{}] Client connection is closed, client disconnected. Aborting scroll.",
                                 scroll.getQueryHash());
@@ -357,7 +357,7 @@ public abstract class SearchResource extends RestResource {
                             return;
                         }
                         output.write(chunk);
-                        collectedHits += chunk.getMessages().size();
+                        collectedHits += chunk.size();
                         if (limit != 0 && collectedHits >= limit) {
                             scroll.cancel();
                             output.close();
@@ -16,6 +16,9 @@
  */
 package org.graylog2.rules;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
@@ -47,35 +50,62 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Rules engine based on Drools.
+ * <p>
+ * {@link #evaluateInSharedSession(Message)} borrows a session from a pool for every evaluation, because a
+ * {@link KieSession} can't be used by several threads at the same time. The pool grows to the number of concurrently
+ * evaluating threads. All sessions contain the facts added with {@link #insertFact(Object)}. Whenever the rules or
+ * facts change, the idle sessions are replaced with new ones right away, and the sessions which are in use are
+ * disposed when they are returned.
+ * </p>
+ */
 @Singleton
 public class DroolsEngine implements RulesEngine {
     private static final Logger LOG = LoggerFactory.getLogger(DroolsEngine.class);
 
     private final KieServices kieServices;
     private final Set<URI> builtinRuleUrls;
-    private KieContainer kieContainer;
-    private final AtomicReference<KieSession> session = new AtomicReference<>();
+    private volatile KieContainer kieContainer;
+
+    // The facts of the shared sessions, every change increments the version of the sessions.
+    private final List<Object> facts = new CopyOnWriteArrayList<>();
+    private final AtomicLong sessionVersion = new AtomicLong();
+    private final Queue<PooledSession> idleSessions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final Timer evaluationTime;
 
     private final List<String> liveRules = Lists.newArrayList();
     private int version = 0;
     private ReleaseId currentReleaseId;
 
     @Inject
-    public DroolsEngine(Set<URI> builtinRuleUrls) {
+    public DroolsEngine(Set<URI> builtinRuleUrls, MetricRegistry metricRegistry) {
         this.builtinRuleUrls = ImmutableSet.copyOf(builtinRuleUrls);
         this.kieServices = KieServices.Factory.get();
+        this.evaluationTime = metricRegistry.timer(name(DroolsEngine.class, "sessions", "evaluationTime"));
         this.liveRules.add("// placeholder rule");
         commitRules();
+
+        metricRegistry.register(name(DroolsEngine.class, "sessions"), (Gauge<Integer>) sessionCount::get);
     }
 
     public void stop() {
-        LOG.debug("Stopping drools session and removing all rules.");
-        final KieSession activeSession = session.getAndSet(null);
-        if (activeSession != null) {
-            activeSession.dispose();
+        LOG.debug("Stopping drools sessions and removing all rules.");
+        // sessions which are still in use are disposed when they are returned
+        sessionVersion.incrementAndGet();
+        PooledSession session;
+        while ((session = idleSessions.poll()) != null) {
+            session.dispose();
         }
         if (currentReleaseId != null) {
             kieServices.getRepository().removeKieModule(currentReleaseId);
@@ -108,12 +138,25 @@ public class DroolsEngine implements RulesEngine {
 
     @Override
     public int evaluateInSharedSession(Message message) {
-        final KieSession kieSession = session.get();
-        if (kieSession != null) {
-            kieSession.insert(message);
-            return kieSession.fireAllRules();
+        PooledSession session = idleSessions.poll();
+        while (session != null && session.version != sessionVersion.get()) {
+            session.dispose();
+            session = idleSessions.poll();
+        }
+        if (session == null) {
+            final long version = sessionVersion.get();
+            session = new PooledSession(kieContainer.newKieSession(), version);
+        }
+
+        try {
+            return session.evaluate(message);
+        } finally {
+            if (session.version == sessionVersion.get()) {
+                idleSessions.offer(session);
+            } else {
+                session.dispose();
+            }
         }
-        return 0;
     }
 
     @Override
@@ -127,19 +170,36 @@ public class DroolsEngine implements RulesEngine {
 
     @Override
     public Object insertFact(Object fact) {
-        return session.get().insert(fact);
+        facts.add(fact);
+        replaceSessions();
+        return fact;
     }
 
     @Override
     public boolean deleteFact(Object fact) {
-        final FactHandle factHandle = session.get().getFactHandle(fact);
-        if (factHandle == null) {
+        if (!facts.remove(fact)) {
             return false;
         }
-        session.get().delete(factHandle);
+        replaceSessions();
         return true;
     }
 
+    /**
+     * Replaces the idle shared sessions with sessions using the current rules and facts. Sessions which are in use are
+     * replaced as well, and disposed when they are returned.
+     */
+    private synchronized void replaceSessions() {
+        final int size = sessionCount.get();
+        final long version = sessionVersion.incrementAndGet();
+        PooledSession session;
+        while ((session = idleSessions.poll()) != null) {
+            session.dispose();
+        }
+        for (int i = 0; i < size; i++) {
+            idleSessions.offer(new PooledSession(kieContainer.newKieSession(), version));
+        }
+    }
+
     private boolean commitRules() {
         final ReleaseId previousReleaseId = currentReleaseId;
         final ReleaseId newReleaseId = nextRulesPackageVersion();
@@ -171,11 +231,10 @@ public class DroolsEngine implements RulesEngine {
                     drls);
             if (kieContainer == null) {
                 kieContainer = kieServices.newKieContainer(newReleaseId);
-                final KieSession session = kieContainer.newKieSession();
-                this.session.set(session);
-                session.setGlobal("log", LOG);
             }
             kieContainer.updateToVersion(newReleaseId);
+            // replace all shared sessions, so they are all running the new rules
+            replaceSessions();
             return true;
         } catch (RulesCompilationException e) {
             LOG.warn("Unable to add rules due to compilation errors.", e);
@@ -241,4 +300,37 @@ public class DroolsEngine implements RulesEngine {
         final Resource jarRes = ks.getResources().newByteArrayResource(jar);
         return ks.getRepository().addKieModule(jarRes);
     }
+
+    /**
+     * A shared session which is used by a single thread at a time.
+     */
+    private class PooledSession {
+        private final KieSession kieSession;
+        private final long version;
+
+        private PooledSession(KieSession kieSession, long version) {
+            this.kieSession = kieSession;
+            this.version = version;
+            sessionCount.incrementAndGet();
+
+            kieSession.setGlobal("log", LOG);
+            for (Object fact : facts) {
+                kieSession.insert(fact);
+            }
+        }
+
+        private int evaluate(Message message) {
+            try (Timer.Context ignored = evaluationTime.time()) {
+                final FactHandle handle = kieSession.insert(message);
+                final int rulesFired = kieSession.fireAllRules();
+                kieSession.delete(handle);
+                return rulesFired;
+            }
+        }
+
+        private void dispose() {
+            kieSession.dispose();
+            sessionCount.decrementAndGet();
+        }
+    }
 }
@@ -33,10 +33,12 @@ import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.buffers.processors.DecodingProcessor;
 import org.graylog2.shared.buffers.processors.ProcessBufferProcessor;
+import org.graylog2.shared.journal.Journal;
 import org.graylog2.shared.metrics.MetricUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 import javax.annotation.Nonnull;
@@ -112,6 +114,29 @@ public class ProcessBuffer extends Buffer {
         afterInsert(1);
     }
 
+    /**
+     * Inserts the still encoded raw messages read from the journal. The messages are decoded by the processors.
+     *
+     * Instead of claiming one slot of the ring buffer per message, the slots for all messages are claimed and
+     * published at once, in chunks of at most the ring buffer size.
+     *
+     * @param entries the encoded raw messages with their journal offsets
+     */
+    public void insertBlocking(@Nonnull List<Journal.JournalReadEntry> entries) {
+        int index = 0;
+        while (index < entries.size()) {
+            final int length = Math.min(entries.size() - index, ringBufferSize);
+            final long hi = ringBuffer.next(length);
+            final long lo = hi - (length - 1);
+            for (long sequence = lo; sequence <= hi; sequence++) {
+                final Journal.JournalReadEntry entry = entries.get(index++);
+                ringBuffer.get(sequence).setJournalPayload(entry.getPayloadBuffer(), entry.getOffset());
+            }
+            ringBuffer.publish(lo, hi);
+            afterInsert(length);
+        }
+    }
+
     @Override
     protected void afterInsert(int n) {
         incomingMessages.mark(n);
@@ -17,11 +17,14 @@
 
 package org.graylog2.shared.buffers.processors;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.net.InetAddresses;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
@@ -30,6 +33,9 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.events.inputs.IOStateChangedEvent;
+import org.graylog2.plugin.inputs.MessageInput;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.inputs.codecs.MultiMessageCodec;
 import org.graylog2.plugin.journal.RawMessage;
@@ -39,14 +45,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.MoreObjects.firstNonNull;
 
 public class DecodingProcessor implements EventHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(DecodingProcessor.class);
@@ -63,11 +73,15 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
     private final Journal journal;
     private final Timer parseTime;
 
+    // Built codecs by input ID. Only the owning processor thread adds entries, input state changes remove them.
+    private final ConcurrentMap<String, CachedCodec> codecCache = new ConcurrentHashMap<>();
+
     @AssistedInject
     public DecodingProcessor(Map<String, Codec.Factory<? extends Codec>> codecFactory,
                              final ServerStatus serverStatus,
                              final MetricRegistry metricRegistry,
                              final Journal journal,
+                             final EventBus eventBus,
                              @Assisted("decodeTime") Timer decodeTime,
                              @Assisted("parseTime") Timer parseTime) {
         this.codecFactory = codecFactory;
@@ -78,10 +92,26 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         // these metrics are global to all processors, thus they are passed in directly to avoid relying on the class name
         this.parseTime = parseTime;
         this.decodeTime = decodeTime;
+
+        eventBus.register(this);
+    }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void handleInputStateChange(IOStateChangedEvent<MessageInput> event) {
+        // Restarted or reconfigured inputs get a fresh codec instance, just like a new input.
+        final MessageInput input = event.changedState().getStoppable();
+        if (input != null && input.getId() != null) {
+            codecCache.remove(input.getId());
+        }
     }
 
     @Override
     public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (!decodeJournalPayload(event)) {
+            return;
+        }
+
         final Timer.Context context = decodeTime.time();
         try {
             processMessage(event);
@@ -108,6 +138,33 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
         }
     }
 
+    /**
+     * Decodes the raw message of events which have been filled directly from the journal. This is done here instead of
+     * in the journal reader, so that decoding is spread over all processor threads.
+     *
+     * @return {@code false} if the event does not contain a raw message to be processed
+     */
+    private boolean decodeJournalPayload(MessageEvent event) {
+        final ByteBuffer journalPayload = event.getJournalPayload();
+        if (journalPayload == null) {
+            return true;
+        }
+
+        final long journalOffset = event.getJournalOffset();
+        final RawMessage rawMessage = RawMessage.decode(journalPayload, journalOffset);
+        if (rawMessage == null) {
+            // never process null objects, as that is useless
+            LOG.error("Found null raw message!");
+            journal.markJournalOffsetCommitted(journalOffset);
+            event.clearRaw();
+            event.clearMessages();
+            return false;
+        }
+
+        event.setRaw(rawMessage);
+        return true;
+    }
+
     private void processMessage(final MessageEvent event) throws ExecutionException {
         final RawMessage raw = event.getRaw();
 
@@ -122,15 +179,15 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             inputIdOnCurrentNode = null;
         }
 
-        final Codec.Factory<? extends Codec> factory = codecFactory.get(raw.getCodecName());
-        if (factory == null) {
+        final CachedCodec cachedCodec = getCodec(raw, inputIdOnCurrentNode);
+        if (cachedCodec == null) {
             LOG.warn("Couldn't find factory for codec <{}>, skipping message {} on input <{}>.",
                     raw.getCodecName(), raw, inputIdOnCurrentNode);
+            journal.markJournalOffsetCommitted(raw.getJournalOffset());
             return;
         }
 
-        final Codec codec = factory.create(raw.getCodecConfig());
-        final String baseMetricName = name(codec.getClass(), inputIdOnCurrentNode);
+        final Codec codec = cachedCodec.codec;
 
         Message message = null;
         Collection<Message> messages = null;
@@ -147,37 +204,49 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             }
         } catch (RuntimeException e) {
             LOG.error("Unable to decode raw message {} on input <{}>.", raw, inputIdOnCurrentNode);
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            cachedCodec.failures.mark();
             throw e;
         } finally {
             decodeTime = decodeTimeCtx.stop();
         }
 
-        if (message != null) {
-            event.setMessage(postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, message, decodeTime));
-        } else if (messages != null && !messages.isEmpty()) {
+        if (messages == null) {
+            final Message processedMessage = postProcessMessage(raw, cachedCodec, inputIdOnCurrentNode, message, decodeTime);
+            if (processedMessage == null) {
+                // Dropped messages are never written to an output, so they have to be committed here.
+                journal.markJournalOffsetCommitted(raw.getJournalOffset());
+            }
+            event.setMessage(processedMessage);
+        } else {
             final List<Message> processedMessages = Lists.newArrayListWithCapacity(messages.size());
 
             for (final Message msg : messages) {
-                final Message processedMessage = postProcessMessage(raw, codec, inputIdOnCurrentNode, baseMetricName, msg, decodeTime);
+                final Message processedMessage = postProcessMessage(raw, cachedCodec, inputIdOnCurrentNode, msg, decodeTime);
 
                 if (processedMessage != null) {
                     processedMessages.add(processedMessage);
                 }
             }
 
+            // Codecs like NetFlow don't return any messages for some raw messages, e.g. for templates.
+            if (processedMessages.isEmpty()) {
+                journal.markJournalOffsetCommitted(raw.getJournalOffset());
+            } else {
+                // All messages share the offset of the raw message, which must only be committed after the last one.
+                journal.markJournalOffsetShared(raw.getJournalOffset(), processedMessages.size());
+            }
             event.setMessages(processedMessages);
         }
     }
 
     @Nullable
-    private Message postProcessMessage(RawMessage raw, Codec codec, String inputIdOnCurrentNode, String baseMetricName, Message message, long decodeTime) {
+    private Message postProcessMessage(RawMessage raw, CachedCodec cachedCodec, String inputIdOnCurrentNode, Message message, long decodeTime) {
         if (message == null) {
-            metricRegistry.meter(name(baseMetricName, "failures")).mark();
+            cachedCodec.failures.mark();
             return null;
         }
         if (!message.isComplete()) {
-            metricRegistry.meter(name(baseMetricName, "incomplete")).mark();
+            cachedCodec.incomplete.mark();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping incomplete message {} on input <{}>. Parsed fields: [{}]",
                         raw, inputIdOnCurrentNode, message.getFields());
@@ -187,7 +256,7 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
 
         message.setJournalOffset(raw.getJournalOffset());
         message.recordTiming(serverStatus, "parse", decodeTime);
-        metricRegistry.timer(name(baseMetricName, "parseTime")).update(decodeTime, TimeUnit.NANOSECONDS);
+        cachedCodec.parseTime.update(decodeTime, TimeUnit.NANOSECONDS);
 
         for (final RawMessage.SourceNode node : raw.getSourceNodes()) {
             switch (node.type) {
@@ -236,8 +305,8 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             }
         }
 
-        if (codec.getConfiguration() != null && codec.getConfiguration().stringIsSet(Codec.Config.CK_OVERRIDE_SOURCE)) {
-            message.setSource(codec.getConfiguration().getString(Codec.Config.CK_OVERRIDE_SOURCE));
+        if (cachedCodec.overrideSource != null) {
+            message.setSource(cachedCodec.overrideSource);
         }
 
         // Make sure that there is a value for the source field.
@@ -245,7 +314,78 @@ public class DecodingProcessor implements EventHandler<MessageEvent> {
             message.setSource("unknown");
         }
 
-        metricRegistry.meter(name(baseMetricName, "processedMessages")).mark();
+        cachedCodec.processedMessages.mark();
         return message;
     }
+
+    @Nullable
+    private CachedCodec getCodec(RawMessage raw, @Nullable String inputId) {
+        final String key = firstNonNull(inputId, "");
+        final CachedCodec cachedCodec = codecCache.get(key);
+        if (cachedCodec != null && cachedCodec.isFor(raw)) {
+            return cachedCodec;
+        }
+
+        final Codec.Factory<? extends Codec> factory = codecFactory.get(raw.getCodecName());
+        if (factory == null) {
+            return null;
+        }
+
+        final CachedCodec newCodec = new CachedCodec(raw, factory.create(raw.getCodecConfig()), inputId);
+        codecCache.put(key, newCodec);
+        return newCodec;
+    }
+
+    /**
+     * A codec built for the codec configuration of an input together with its resolved metrics.
+     */
+    private class CachedCodec {
+        private final String codecName;
+        @Nullable
+        private final String codecConfigJson;
+        @Nullable
+        private final Configuration codecConfig;
+        private final Codec codec;
+        @Nullable
+        private final String overrideSource;
+        private final Meter failures;
+        private final Meter incomplete;
+        private final Meter processedMessages;
+        private final Timer parseTime;
+
+        private CachedCodec(RawMessage raw, Codec codec, @Nullable String inputId) {
+            this.codecName = raw.getCodecName();
+            this.codecConfigJson = raw.getCodecConfigJson();
+            this.codecConfig = codecConfigJson == null ? raw.getCodecConfig() : null;
+            this.codec = codec;
+
+            final Configuration configuration = codec.getConfiguration();
+            if (configuration != null && configuration.stringIsSet(Codec.Config.CK_OVERRIDE_SOURCE)) {
+                this.overrideSource = configuration.getString(Codec.Config.CK_OVERRIDE_SOURCE);
+            } else {
+                this.overrideSource = null;
+            }
+
+            final String baseMetricName = name(codec.getClass(), inputId);
+            this.failures = metricRegistry.meter(name(baseMetricName, "failures"));
+            this.incomplete = metricRegistry.meter(name(baseMetricName, "incomplete"));
+            this.processedMessages = metricRegistry.meter(name(baseMetricName, "processedMessages"));
+            this.parseTime = metricRegistry.timer(name(baseMetricName, "parseTime"));
+        }
+
+        /**
+         * Messages from the journal are compared by their serialized codec configuration, messages handed over
+         * directly by an input share the configuration instance of the input.
+         */
+        private boolean isFor(RawMessage raw) {
+            if (!codecName.equals(raw.getCodecName())) {
+                return false;
+            }
+            final String rawConfigJson = raw.getCodecConfigJson();
+            if (codecConfigJson != null) {
+                return codecConfigJson.equals(rawConfigJson);
+            }
+            return rawConfigJson == null && codecConfig == raw.getCodecConfig();
+        }
+    }
 }
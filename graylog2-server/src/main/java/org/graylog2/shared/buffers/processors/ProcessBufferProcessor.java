@@ -33,10 +33,16 @@ import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.messageprocessors.MessageProcessor;
 import org.graylog2.plugin.streams.DefaultStream;
 import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.journal.Journal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -53,15 +59,17 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
     private final OrderedMessageProcessors orderedMessageProcessors;
 
     private final OutputBuffer outputBuffer;
+    private final Journal journal;
     private final DecodingProcessor decodingProcessor;
     private final Provider<Stream> defaultStreamProvider;
 
     @AssistedInject
     public ProcessBufferProcessor(MetricRegistry metricRegistry, OrderedMessageProcessors orderedMessageProcessors, OutputBuffer outputBuffer,
-                                  @Assisted DecodingProcessor decodingProcessor, @DefaultStream Provider<Stream> defaultStreamProvider) {
+                                  Journal journal, @Assisted DecodingProcessor decodingProcessor, @DefaultStream Provider<Stream> defaultStreamProvider) {
         this.metricRegistry = metricRegistry;
         this.orderedMessageProcessors = orderedMessageProcessors;
         this.outputBuffer = outputBuffer;
+        this.journal = journal;
         this.decodingProcessor = decodingProcessor;
         this.defaultStreamProvider = defaultStreamProvider;
 
@@ -112,13 +120,41 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
         Messages messages = msg;
 
         for (MessageProcessor messageProcessor : orderedMessageProcessors) {
-            messages = messageProcessor.process(messages);
+            final List<Message> processedMessages = new ArrayList<>();
+            for (Message message : messages) {
+                processedMessages.add(message);
+            }
+            try {
+                messages = messageProcessor.process(messages);
+            } catch (RuntimeException e) {
+                // none of the messages reach the outputs, which would have committed them
+                commitDroppedMessages(processedMessages, Collections.emptyList());
+                throw e;
+            }
+            commitDroppedMessages(processedMessages, messages);
         }
         for (Message message : messages) {
             outputBuffer.insertBlocking(message);
         }
     }
 
+    /**
+     * Commits the journal offsets of all messages a processor has dropped, no matter whether it marked them as
+     * filtered out or simply left them out of its result. Messages created by the processor have no journal offset.
+     */
+    private void commitDroppedMessages(List<Message> processedMessages, Iterable<Message> result) {
+        final Set<Message> remainingMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Message message : result) {
+            remainingMessages.add(message);
+        }
+        for (Message message : processedMessages) {
+            if (!remainingMessages.contains(message)) {
+                LOG.debug("Message <{}> has been dropped during processing.", message.getId());
+                journal.markJournalOffsetCommitted(message.getJournalOffset());
+            }
+        }
+    }
+
     public interface Factory {
         ProcessBufferProcessor create(DecodingProcessor decodingProcessor);
     }
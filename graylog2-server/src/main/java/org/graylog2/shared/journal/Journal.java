@@ -16,6 +16,7 @@
  */
 package org.graylog2.shared.journal;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Journal {
@@ -27,8 +28,38 @@ public interface Journal {
 
     List<JournalReadEntry> read(long maximumCount);
 
+    /**
+     * Returns the number of partitions of the journal, which can be read independently of each other.
+     */
+    int getPartitionCount();
+
+    /**
+     * Reads the next entries of the given partition. Every partition must only be read by a single thread.
+     *
+     * @param partition    the partition to read from, between 0 and {@link #getPartitionCount()} (exclusive)
+     * @param maximumCount the maximum number of entries to read
+     * @return the entries read
+     */
+    List<JournalReadEntry> read(int partition, long maximumCount);
+
+    /**
+     * Marks the entry with the given offset as fully processed. Every read entry has to be committed on its own, the
+     * journal only considers an offset committed once all entries before it have been committed, too.
+     *
+     * @param offset the offset of the processed entry
+     */
     void markJournalOffsetCommitted(long offset);
 
+    /**
+     * Marks the entry with the given offset as decoded into several messages, which are committed on their own. The
+     * entry is only considered committed once {@link #markJournalOffsetCommitted(long)} has been called for every one of
+     * them. Has to be called before any of the messages is handed over to the next processing stage.
+     *
+     * @param offset       the offset of the entry
+     * @param messageCount the number of messages decoded from the entry
+     */
+    void markJournalOffsetShared(long offset, int messageCount);
+
     public static class Entry {
         private final byte[] idBytes;
         private final byte[] messageBytes;
@@ -49,11 +80,20 @@ public interface Journal {
 
     public static class JournalReadEntry {
 
-        private final byte[] payload;
+        private final ByteBuffer payload;
         private final long offset;
 
         public JournalReadEntry(byte[] payload, long offset) {
-            this.payload = payload;
+            this(ByteBuffer.wrap(payload), offset);
+        }
+
+        /**
+         * Creates a read entry which shares the content of the given buffer without copying it. The buffer must not
+         * be modified afterwards.
+         */
+        public JournalReadEntry(ByteBuffer payload, long offset) {
+            // Not a read-only buffer, because protobuf can only share the content of buffers backed by an accessible array.
+            this.payload = payload.duplicate();
             this.offset = offset;
         }
 
@@ -61,8 +101,21 @@ public interface Journal {
             return offset;
         }
 
+        /**
+         * Returns a copy of the payload. Use {@link #getPayloadBuffer()} to avoid the copy.
+         */
         public byte[] getPayload() {
-            return payload;
+            final ByteBuffer buffer = payload.duplicate();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Returns a view of the payload, which must not be modified.
+         */
+        public ByteBuffer getPayloadBuffer() {
+            return payload.duplicate();
         }
     }
 }
@@ -0,0 +1,178 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Tracks the committed offsets of one journal partition.
+ *
+ * Messages are committed out of order because they are processed and written to the outputs in parallel. Instead of
+ * only remembering the highest committed offset, every committed offset is marked in a ring of completion bits and
+ * the low-water mark is only moved over contiguous ranges of committed offsets. All offsets below the low-water mark
+ * have been committed, so restarting from it never skips a message which has not been written yet.
+ *
+ * The ring covers {@link #getCapacity()} offsets starting at the low-water mark, readers must not hand out offsets
+ * beyond {@link #getWindowEnd()}.
+ *
+ * Committing offsets is lock-free: the bit of the offset is set and the thread which wins the right to move the
+ * low-water mark moves it for all threads, the other threads return immediately.
+ */
+class JournalCommitTracker {
+    private final int capacity;
+    private final AtomicLongArray completed;
+    // set while a thread is moving the low-water mark and clearing the bits it passed
+    private final AtomicBoolean advancing = new AtomicBoolean(false);
+
+    // all offsets below the low-water mark have been committed
+    private volatile long lowWaterMark;
+    // the bits of all offsets below this offset have been cleared and can be reused for offsets beyond the ring
+    private volatile long reclaimedOffset;
+
+    /**
+     * @param capacity     the number of offsets which can be tracked at once, must be a power of two and at least 64
+     * @param lowWaterMark the first offset which has not been committed yet
+     */
+    JournalCommitTracker(int capacity, long lowWaterMark) {
+        checkArgument(capacity >= Long.SIZE && Integer.bitCount(capacity) == 1,
+                "capacity must be a power of two and at least 64");
+        checkArgument(lowWaterMark >= 0, "lowWaterMark must not be negative");
+        this.capacity = capacity;
+        this.completed = new AtomicLongArray(capacity / Long.SIZE);
+        this.lowWaterMark = lowWaterMark;
+        this.reclaimedOffset = lowWaterMark;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the first offset which has not been committed yet.
+     */
+    public long getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    /**
+     * Returns the first offset which cannot be tracked yet, because the ring is still occupied by older offsets.
+     */
+    public long getWindowEnd() {
+        return reclaimedOffset + capacity;
+    }
+
+    /**
+     * Marks the offset as committed and moves the low-water mark if the offset closes a gap. Offsets below the
+     * low-water mark have already been committed and are ignored.
+     *
+     * @param offset the committed offset
+     * @return {@code false} if the offset is beyond the {@link #getWindowEnd() window} and could not be tracked
+     */
+    public boolean complete(long offset) {
+        if (offset < lowWaterMark) {
+            return true;
+        }
+        if (offset >= getWindowEnd()) {
+            return false;
+        }
+        final int word = wordIndex(offset);
+        final long bit = 1L << offset;
+        completed.getAndAccumulate(word, bit, (bits, mask) -> bits | mask);
+        if (offset < lowWaterMark) {
+            // An offset committed twice can race with moving the low-water mark past it, don't leave a stale bit
+            // behind which would mark the offset using the same bit in the next round of the ring as committed.
+            completed.getAndAccumulate(word, bit, (bits, mask) -> bits & ~mask);
+            return true;
+        }
+        advance();
+        return true;
+    }
+
+    /**
+     * Moves the low-water mark to the given offset, regardless of the offsets below it having been committed. This is
+     * only used when messages are gone from the journal before having been read.
+     *
+     * @param offset the new low-water mark, ignored if it is not beyond the current one
+     */
+    public void skipTo(long offset) {
+        while (!advancing.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+        try {
+            final long mark = lowWaterMark;
+            if (offset <= mark) {
+                return;
+            }
+            lowWaterMark = offset;
+            clear(mark, Math.min(offset, mark + capacity));
+            reclaimedOffset = offset;
+        } finally {
+            advancing.set(false);
+        }
+        advance();
+    }
+
+    private void advance() {
+        do {
+            if (!advancing.compareAndSet(false, true)) {
+                // the thread currently advancing will see our bit, either in its loop or when checking after it is done
+                return;
+            }
+            try {
+                long mark = lowWaterMark;
+                while (true) {
+                    final int shift = (int) (mark & (Long.SIZE - 1));
+                    // the number of contiguous committed offsets starting at the mark, limited to the current word
+                    final int run = Long.numberOfTrailingZeros(~(completed.get(wordIndex(mark)) >>> shift));
+                    if (run == 0) {
+                        break;
+                    }
+                    final long next = mark + run;
+                    // move the mark before clearing the bits, late duplicates of these offsets are ignored from now on
+                    lowWaterMark = next;
+                    clear(mark, next);
+                    reclaimedOffset = next;
+                    mark = next;
+                }
+            } finally {
+                advancing.set(false);
+            }
+        } while (isCompleted(lowWaterMark));
+    }
+
+    private boolean isCompleted(long offset) {
+        return (completed.get(wordIndex(offset)) & (1L << offset)) != 0;
+    }
+
+    private void clear(long from, long to) {
+        long offset = from;
+        while (offset < to) {
+            final int shift = (int) (offset & (Long.SIZE - 1));
+            final int count = (int) Math.min(Long.SIZE - shift, to - offset);
+            final long mask = count == Long.SIZE ? -1L : ((1L << count) - 1) << shift;
+            completed.getAndAccumulate(wordIndex(offset), mask, (bits, m) -> bits & ~m);
+            offset += count;
+        }
+    }
+
+    private int wordIndex(long offset) {
+        return (int) ((offset & (capacity - 1)) >>> 6);
+    }
+}
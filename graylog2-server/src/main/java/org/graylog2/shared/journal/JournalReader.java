@@ -23,8 +23,8 @@ import com.codahale.metrics.MetricRegistry;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
-import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.plugin.lifecycles.Lifecycle;
 import org.graylog2.shared.buffers.ProcessBuffer;
 import org.graylog2.shared.metrics.HdrHistogram;
@@ -34,10 +34,15 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class JournalReader extends AbstractExecutionThreadService {
     private static final Logger log = LoggerFactory.getLogger(JournalReader.class);
@@ -50,7 +55,9 @@ public class JournalReader extends AbstractExecutionThreadService {
     private volatile boolean shouldBeReading;
     private Histogram requestedReadCount;
     private final Counter readBlocked;
-    private Thread executionThread;
+    private volatile Thread executionThread;
+    private volatile ExecutorService partitionReaders;
+    private final AtomicReference<Exception> readerFailure = new AtomicReference<>();
 
     @Inject
     public JournalReader(Journal journal,
@@ -82,6 +89,10 @@ public class JournalReader extends AbstractExecutionThreadService {
     @Override
     protected void triggerShutdown() {
         executionThread.interrupt();
+        final ExecutorService readers = partitionReaders;
+        if (readers != null) {
+            readers.shutdownNow();
+        }
     }
 
     @Subscribe
@@ -126,6 +137,54 @@ public class JournalReader extends AbstractExecutionThreadService {
             throw e;
         }
 
+        // every partition of the journal gets its own reader thread, which all feed the process buffer
+        final int partitionCount = journal.getPartitionCount();
+        final Semaphore[] partitionFilled = new Semaphore[partitionCount];
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("journal-reader-partition-%d").build();
+        partitionReaders = Executors.newFixedThreadPool(partitionCount, threadFactory);
+        for (int partition = 0; partition < partitionCount; partition++) {
+            final int readPartition = partition;
+            partitionFilled[partition] = new Semaphore(0);
+            partitionReaders.execute(() -> {
+                try {
+                    readPartition(readPartition, partitionCount, partitionFilled[readPartition]);
+                } catch (Exception e) {
+                    log.error("Unable to read from journal partition " + readPartition, e);
+                    readerFailure.compareAndSet(null, e);
+                    executionThread.interrupt();
+                }
+            });
+        }
+
+        // this thread only passes the signal of the journal writer on to the readers of all partitions
+        while (isRunning() && readerFailure.get() == null) {
+            try {
+                journalFilled.acquire();
+            } catch (InterruptedException ignored) {
+                // this can happen when we are blocked but the system wants to shut down. We don't have to do anything in that case.
+                continue;
+            }
+            // we don't care how many messages were inserted in the meantime, we'll read all of them eventually
+            journalFilled.drainPermits();
+            for (final Semaphore filled : partitionFilled) {
+                if (filled.availablePermits() == 0) {
+                    filled.release();
+                }
+            }
+        }
+
+        partitionReaders.shutdownNow();
+        if (!partitionReaders.awaitTermination(10, SECONDS)) {
+            log.warn("Journal partition readers did not stop in time.");
+        }
+        final Exception failure = readerFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        log.info("Stopping.");
+    }
+
+    private void readPartition(int partition, int partitionCount, Semaphore partitionFilled) {
         while (isRunning()) {
             // TODO interfere with reading if we are not 100% certain we should be reading, see #listenForLifecycleChanges
             if (!shouldBeReading) {
@@ -133,42 +192,28 @@ public class JournalReader extends AbstractExecutionThreadService {
                 // don't read immediately, but check if we should be shutting down.
                 continue;
             }
-            // approximate count to read from the journal to backfill the processing chain
-            final long remainingCapacity = processBuffer.getRemainingCapacity();
+            // approximate count to read from the journal to backfill the processing chain, shared by all partitions
+            final long remainingCapacity = processBuffer.getRemainingCapacity() / partitionCount;
             requestedReadCount.update(remainingCapacity);
-            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(remainingCapacity);
+            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(partition, remainingCapacity);
             if (encodedRawMessages.isEmpty()) {
-                log.debug("No messages to read from Journal, waiting until the writer adds more messages.");
+                log.debug("No messages to read from journal partition {}, waiting until the writer adds more messages.", partition);
                 // block until something is written to the journal again
                 try {
                     readBlocked.inc();
-                    journalFilled.acquire();
+                    partitionFilled.acquire();
                 } catch (InterruptedException ignored) {
                     // this can happen when we are blocked but the system wants to shut down. We don't have to do anything in that case.
                     continue;
                 }
-                log.debug("Messages have been written to Journal, continuing to read.");
-                // we don't care how many messages were inserted in the meantime, we'll read all of them eventually
-                journalFilled.drainPermits();
+                log.debug("Messages have been written to Journal, continuing to read partition {}.", partition);
+                partitionFilled.drainPermits();
             } else {
                 readMessages.mark(encodedRawMessages.size());
-                log.debug("Processing {} messages from journal.", encodedRawMessages.size());
-                for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
-                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
-                                                                    encodedRawMessage.getOffset());
-                    if (rawMessage == null) {
-                        // never insert null objects into the ringbuffer, as that is useless
-                        log.error("Found null raw message!");
-                        journal.markJournalOffsetCommitted(encodedRawMessage.getOffset());
-                        continue;
-                    }
-
-                    processBuffer.insertBlocking(rawMessage);
-                }
+                log.debug("Processing {} messages from journal partition {}.", encodedRawMessages.size(), partition);
+                // the raw messages are decoded by the processors, so this thread only needs to move them into the buffer
+                processBuffer.insertBlocking(encodedRawMessages);
             }
         }
-        log.info("Stopping.");
     }
-
-
 }
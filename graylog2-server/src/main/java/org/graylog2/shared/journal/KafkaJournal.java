@@ -21,6 +21,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.github.joschi.jadconfig.util.Size;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -69,6 +70,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.SyncFailedException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
@@ -82,14 +84,17 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -102,7 +107,14 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private static final Logger LOG = LoggerFactory.getLogger(KafkaJournal.class);
     private static final int NUM_IO_THREADS = 1;
 
+    private static final String TOPIC = "messagejournal";
+    private static final String COMMITTED_READ_OFFSET_FILE = "graylog2-committed-read-offset";
+
     public static final long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
+    // The number of messages per partition which can be read but not yet committed, bounded by the buffer sizes in practice.
+    private static final int MAX_IN_FLIGHT_MESSAGES = 1 << 20;
+    // how long a reader sleeps before checking again whether messages in flight have been committed
+    private static final long IN_FLIGHT_WAIT_MILLIS = 10L;
     public static final int NOTIFY_ON_UTILIZATION_PERCENTAGE = 95;
     private final ServerStatus serverStatus;
 
@@ -126,9 +138,11 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     };
 
     private final LogManager logManager;
-    private final Log kafkaLog;
-    private final File committedReadOffsetFile;
-    private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+    private final Partition[] partitions;
+    private final AtomicInteger nextWritePartition = new AtomicInteger();
+    private final AtomicInteger nextReadPartition = new AtomicInteger();
+    // the number of uncommitted messages by offset of entries which have been decoded into several messages
+    private final ConcurrentMap<Long, AtomicInteger> sharedOffsets = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduler;
     private final Timer writeTime;
 
@@ -145,7 +159,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private final long maxSegmentSize;
     private final int maxMessageSize;
 
-    private long nextReadOffset = 0L;
     private ScheduledFuture<?> checkpointFlusherFuture;
     private ScheduledFuture<?> dirtyLogFlushFuture;
     private ScheduledFuture<?> logRetentionFuture;
@@ -156,6 +169,21 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     private final int throttleThresholdPercentage;
 
+    public KafkaJournal(File journalDirectory,
+                        ScheduledExecutorService scheduler,
+                        Size segmentSize,
+                        Duration segmentAge,
+                        Size retentionSize,
+                        Duration retentionAge,
+                        long flushInterval,
+                        Duration flushAge,
+                        int throttleThresholdPercentage,
+                        MetricRegistry metricRegistry,
+                        ServerStatus serverStatus) {
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+                1, throttleThresholdPercentage, metricRegistry, serverStatus);
+    }
+
     @Inject
     public KafkaJournal(@Named("message_journal_dir") File journalDirectory,
                         @Named("scheduler") ScheduledExecutorService scheduler,
@@ -165,6 +193,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         @Named("message_journal_max_age") Duration retentionAge,
                         @Named("message_journal_flush_interval") long flushInterval,
                         @Named("message_journal_flush_age") Duration flushAge,
+                        @Named("message_journal_partitions") int partitionCount,
                         @Named("lb_throttle_threshold_percentage") int throttleThresholdPercentage,
                         MetricRegistry metricRegistry,
                         ServerStatus serverStatus) {
@@ -243,24 +272,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             Throwables.propagate(new AccessDeniedException(journalDirectory.getAbsolutePath(), null, "Could not create journal directory."));
         }
 
-        // TODO add check for directory, etc
-        committedReadOffsetFile = new File(journalDirectory, "graylog2-committed-read-offset");
-        try {
-            if (!committedReadOffsetFile.createNewFile()) {
-                final String line = Files.readFirstLine(committedReadOffsetFile, StandardCharsets.UTF_8);
-                // the file contains the last offset graylog2 has successfully processed.
-                // thus the nextReadOffset is one beyond that number
-                if (line != null) {
-                    committedOffset.set(Long.parseLong(line.trim()));
-                    nextReadOffset = committedOffset.get() + 1;
-                }
-            }
-        } catch (IOException e) {
-            LOG.error("Cannot access offset file: {}", e.getMessage());
-            Throwables.propagate(new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(),
-                    null,
-                    e.getMessage()));
-        }
         try {
             final BrokerState brokerState = new BrokerState();
             brokerState.newState(RunningAsBroker.state());
@@ -279,14 +290,8 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     brokerState,
                     JODA_TIME);
 
-            final TopicAndPartition topicAndPartition = new TopicAndPartition("messagejournal", 0);
-            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
-            if (messageLog.isEmpty()) {
-                kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
-            } else {
-                kafkaLog = messageLog.get();
-            }
-            LOG.info("Initialized Kafka based journal at {}", journalDirectory);
+            partitions = openPartitions(journalDirectory, partitionCount);
+            LOG.info("Initialized Kafka based journal at {} with {} partition(s)", journalDirectory, partitions.length);
             setupKafkaLogMetrics(metricRegistry);
 
             offsetFlusher = new OffsetFileFlusher();
@@ -301,6 +306,42 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     }
 
+    /**
+     * Opens or creates the partitions of the journal.
+     * <p>
+     * The first partition uses the log directory and committed offset file of the single partition journal of earlier
+     * versions, so existing journals are picked up without any migration. Existing partitions are never dropped, even
+     * if fewer partitions are configured, because they might still contain unprocessed messages.
+     * </p>
+     */
+    private Partition[] openPartitions(File journalDirectory, int configuredPartitionCount) {
+        int partitionCount = Math.max(1, configuredPartitionCount);
+        for (final TopicAndPartition topicAndPartition : JavaConversions.mapAsJavaMap(logManager.logsByTopicPartition()).keySet()) {
+            if (TOPIC.equals(topicAndPartition.topic()) && topicAndPartition.partition() >= partitionCount) {
+                partitionCount = topicAndPartition.partition() + 1;
+            }
+        }
+        if (partitionCount != configuredPartitionCount) {
+            LOG.warn("Using {} journal partitions instead of the configured {}, because the journal at {} already contains them.",
+                    partitionCount, configuredPartitionCount, journalDirectory);
+        }
+
+        final Partition[] partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            final TopicAndPartition topicAndPartition = new TopicAndPartition(TOPIC, i);
+            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
+            final Log kafkaLog;
+            if (messageLog.isEmpty()) {
+                kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
+            } else {
+                kafkaLog = messageLog.get();
+            }
+            final String offsetFileName = i == 0 ? COMMITTED_READ_OFFSET_FILE : COMMITTED_READ_OFFSET_FILE + "-" + i;
+            partitions[i] = new Partition(i, kafkaLog, new File(journalDirectory, offsetFileName));
+        }
+        return partitions;
+    }
+
     /**
      * Ensures that an integer is within a given range.
      *
@@ -329,7 +370,13 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     private void registerUncommittedGauge(MetricRegistry metricRegistry, String name) {
         try {
             metricRegistry.register(name,
-                    (Gauge<Long>) () -> Math.max(0, getLogEndOffset() - 1 - committedOffset.get()));
+                    (Gauge<Long>) () -> {
+                        long uncommitted = 0;
+                        for (final Partition partition : partitions) {
+                            uncommitted += Math.max(0, partition.log.logEndOffset() - 1 - partition.committedOffset());
+                        }
+                        return uncommitted;
+                    });
         } catch (IllegalArgumentException ignored) {
             // already registered, we'll ignore that.
         }
@@ -340,12 +387,19 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     }
 
     private void setupKafkaLogMetrics(final MetricRegistry metricRegistry) {
-        metricRegistry.register(name(KafkaJournal.class, "size"), (Gauge<Long>) kafkaLog::size);
-        metricRegistry.register(name(KafkaJournal.class, "logEndOffset"), (Gauge<Long>) kafkaLog::logEndOffset);
-        metricRegistry.register(name(KafkaJournal.class, "numberOfSegments"), (Gauge<Integer>) kafkaLog::numberOfSegments);
-        metricRegistry.register(name(KafkaJournal.class, "unflushedMessages"), (Gauge<Long>) kafkaLog::unflushedMessages);
-        metricRegistry.register(name(KafkaJournal.class, "recoveryPoint"), (Gauge<Long>) kafkaLog::recoveryPoint);
-        metricRegistry.register(name(KafkaJournal.class, "lastFlushTime"), (Gauge<Long>) kafkaLog::lastFlushTime);
+        metricRegistry.register(name(KafkaJournal.class, "size"), (Gauge<Long>) this::size);
+        metricRegistry.register(name(KafkaJournal.class, "inFlightMessages"), (Gauge<Long>) this::getInFlightMessages);
+        metricRegistry.register(name(KafkaJournal.class, "logEndOffset"), (Gauge<Long>) this::getLogEndOffset);
+        metricRegistry.register(name(KafkaJournal.class, "numberOfSegments"), (Gauge<Integer>) this::numberOfSegments);
+        metricRegistry.register(name(KafkaJournal.class, "unflushedMessages"), (Gauge<Long>) () -> sumOverPartitions(Log::unflushedMessages));
+        metricRegistry.register(name(KafkaJournal.class, "recoveryPoint"), (Gauge<Long>) () -> sumOverPartitions(Log::recoveryPoint));
+        metricRegistry.register(name(KafkaJournal.class, "lastFlushTime"), (Gauge<Long>) () -> {
+            long lastFlushTime = Long.MAX_VALUE;
+            for (final Partition partition : partitions) {
+                lastFlushTime = Math.min(lastFlushTime, partition.log.lastFlushTime());
+            }
+            return lastFlushTime;
+        });
         // must not be a lambda, because the serialization cannot determine the proper Metric type :(
         metricRegistry.register(GlobalMetricNames.JOURNAL_OLDEST_SEGMENT, (Gauge<Date>) new Gauge<Date>() {
             @Override
@@ -381,6 +435,8 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      */
     @Override
     public long write(List<Entry> entries) {
+        // Spread the writes over all partitions, so they can be read in parallel.
+        final Partition partition = partitions[Math.floorMod(nextWritePartition.getAndIncrement(), partitions.length)];
         try (Timer.Context ignored = writeTime.time()) {
             long payloadSize = 0L;
             long messageSetSize = 0L;
@@ -412,7 +468,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         LOG.debug("Flushing {} bytes message set with {} messages to avoid overflowing segment with max size of {} bytes",
                                 messageSetSize, messages.size(), maxSegmentSize);
                     }
-                    lastWriteOffset = flushMessages(messages, payloadSize);
+                    lastWriteOffset = flushMessages(partition, messages, payloadSize);
                     // Reset the messages list and size counters to start a new batch.
                     messages.clear();
                     messageSetSize = 0;
@@ -428,14 +484,14 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
             // Flush the rest of the messages.
             if (messages.size() > 0) {
-                lastWriteOffset = flushMessages(messages, payloadSize);
+                lastWriteOffset = flushMessages(partition, messages, payloadSize);
             }
 
             return lastWriteOffset;
         }
     }
 
-    private long flushMessages(List<Message> messages, long payloadSize) {
+    private long flushMessages(Partition partition, List<Message> messages, long payloadSize) {
         if (messages.isEmpty()) {
             LOG.debug("No messages to flush, not trying to write an empty message set.");
             return -1L;
@@ -447,16 +503,16 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             LOG.debug("Trying to write ByteBufferMessageSet with size of {} bytes to journal", messageSet.sizeInBytes());
         }
 
-        final LogAppendInfo appendInfo = kafkaLog.append(messageSet, true);
+        final LogAppendInfo appendInfo = partition.log.append(messageSet, true);
         long lastWriteOffset = appendInfo.lastOffset();
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Wrote {} messages to journal: {} bytes (payload {} bytes), log position {} to {}",
-                    messages.size(), messageSet.sizeInBytes(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
+            LOG.debug("Wrote {} messages to journal partition {}: {} bytes (payload {} bytes), log position {} to {}",
+                    messages.size(), partition.id, messageSet.sizeInBytes(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
         }
         writtenMessages.mark(messages.size());
 
-        return lastWriteOffset;
+        return journalOffset(partition, lastWriteOffset);
     }
 
     /**
@@ -472,12 +528,63 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         return write(Collections.singletonList(journalEntry));
     }
 
+    /**
+     * Reads from the next partition which contains unread messages, serving the partitions in turn.
+     */
     @Override
     public List<JournalReadEntry> read(long requestedMaximumCount) {
-        return read(nextReadOffset, requestedMaximumCount);
+        final int firstPartition = nextReadPartition.getAndIncrement();
+        for (int i = 0; i < partitions.length; i++) {
+            final List<JournalReadEntry> entries = read(Math.floorMod(firstPartition + i, partitions.length), requestedMaximumCount);
+            if (!entries.isEmpty()) {
+                return entries;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    @Override
+    public List<JournalReadEntry> read(int partition, long requestedMaximumCount) {
+        final Partition journalPartition = partitions[partition];
+        final JournalCommitTracker commitTracker = journalPartition.commitTracker;
+        final long readOffset = journalPartition.nextReadOffset;
+
+        // Only hand out offsets which can be tracked until they are committed. Uncommitted offsets must never be
+        // skipped, they would not be read again after a restart, so reading waits for the oldest ones to be committed.
+        if (readOffset >= commitTracker.getWindowEnd()) {
+            final long lowWaterMark = commitTracker.getLowWaterMark();
+            LOG.warn("Journal partition {} has {} messages in flight, waiting for the oldest uncommitted message at " +
+                    "offset {} to be committed before reading more messages.", partition, readOffset - lowWaterMark, lowWaterMark);
+            while (readOffset >= commitTracker.getWindowEnd()) {
+                if (shuttingDown) {
+                    return Collections.emptyList();
+                }
+                try {
+                    MILLISECONDS.sleep(IN_FLIGHT_WAIT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Collections.emptyList();
+                }
+            }
+        }
+        final long maximumCount = Math.min(requestedMaximumCount, commitTracker.getWindowEnd() - readOffset);
+
+        return read(journalPartition, readOffset, maximumCount);
     }
 
+    /**
+     * Reads from the first partition of the journal, starting at the given offset within that partition.
+     */
     public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
+        return read(partitions[0], readOffset, requestedMaximumCount);
+    }
+
+    private List<JournalReadEntry> read(Partition partition, long readOffset, long requestedMaximumCount) {
         // Always read at least one!
         final long maximumCount = Math.max(1, requestedMaximumCount);
         long maxOffset = readOffset + maximumCount;
@@ -487,7 +594,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         }
         final List<JournalReadEntry> messages = new ArrayList<>(Ints.saturatedCast(maximumCount));
         try (Timer.Context ignored = readTime.time()) {
-            final long logStartOffset = getLogStartOffset();
+            final long logStartOffset = getLogStartOffset(partition.log);
 
             if (readOffset < logStartOffset) {
                 LOG.info(
@@ -496,12 +603,14 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                         logStartOffset);
                 readOffset = logStartOffset;
                 maxOffset = readOffset + maximumCount;
+                // the messages in between have been removed by the retention and will never be committed
+                partition.commitTracker.skipTo(logStartOffset);
             }
-            LOG.debug("Requesting to read a maximum of {} messages (or 5MB) from the journal, offset interval [{}, {})",
-                    maximumCount, readOffset, maxOffset);
+            LOG.debug("Requesting to read a maximum of {} messages (or 5MB) from journal partition {}, offset interval [{}, {})",
+                    maximumCount, partition.id, readOffset, maxOffset);
 
             // TODO benchmark and make read-ahead strategy configurable for performance tuning
-            final MessageSet messageSet = kafkaLog.read(readOffset,
+            final MessageSet messageSet = partition.log.read(readOffset,
                     5 * 1024 * 1024,
                     Option.<Object>apply(maxOffset)).messageSet();
 
@@ -516,15 +625,16 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                 // always remember the last seen offset for debug purposes below
                 lastOffset = messageAndOffset.offset();
 
-                final byte[] payloadBytes = ByteBufferUtils.readBytes(messageAndOffset.message().payload());
+                // The payload is a slice of the buffer Kafka read this message into, hand it out without copying it.
+                final ByteBuffer payload = messageAndOffset.message().payload();
                 if (LOG.isTraceEnabled()) {
                     final byte[] keyBytes = ByteBufferUtils.readBytes(messageAndOffset.message().key());
-                    LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(payloadBytes));
+                    LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(ByteBufferUtils.readBytes(payload)));
                 }
-                totalBytes += payloadBytes.length;
-                messages.add(new JournalReadEntry(payloadBytes, messageAndOffset.offset()));
+                totalBytes += payload.remaining();
+                messages.add(new JournalReadEntry(payload, journalOffset(partition, messageAndOffset.offset())));
                 // remember where to read from
-                nextReadOffset = messageAndOffset.nextOffset();
+                partition.nextReadOffset = messageAndOffset.nextOffset();
             }
             if (messages.isEmpty()) {
                 LOG.debug("No messages available to read for offset interval [{}, {}).", readOffset, maxOffset);
@@ -561,25 +671,74 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     }
 
     /**
-     * Upon fully processing, and persistently storing, a batch of messages, the system should mark the message with the
-     * highest offset as committed. A background job will write the last position to disk periodically.
+     * Upon fully processing, and persistently storing, a message, the system must mark the offset of the message as
+     * committed. Every offset has to be committed on its own, the committed offset of the journal only moves over
+     * contiguous ranges of committed messages. A background job will write the committed offset to disk periodically.
      *
-     * @param offset the offset of the latest committed message
+     * @param offset the offset of the committed message
      */
     @Override
     public void markJournalOffsetCommitted(long offset) {
-        long prev;
-        // the caller will not care about offsets going backwards, so we need to make sure we don't backtrack
-        int i = 0;
-        do {
-            prev = committedOffset.get();
-            // at least warn if this spins often, that would be a sign of very high contention, which should not happen
-            if (++i % 10 == 0) {
-                LOG.warn("Committing journal offset spins {} times now, this might be a bug. Continuing to try update.",
-                        i);
+        if (offset < 0) {
+            // not an offset handed out by this journal
+            return;
+        }
+        final AtomicInteger references = sharedOffsets.get(offset);
+        if (references != null) {
+            if (references.decrementAndGet() > 0) {
+                // other messages decoded from the same entry have not been committed yet
+                return;
             }
-        } while (!committedOffset.compareAndSet(prev, Math.max(offset, prev)));
+            sharedOffsets.remove(offset, references);
+        }
+        final Partition partition = partitions[partitionIndex(offset)];
+        if (!partition.commitTracker.complete(partitionOffset(offset))) {
+            LOG.debug("Ignoring commit of offset {} of journal partition {} which has never been read.",
+                    partitionOffset(offset), partition.id);
+        }
+    }
+
+    @Override
+    public void markJournalOffsetShared(long offset, int messageCount) {
+        if (offset < 0 || messageCount <= 1) {
+            return;
+        }
+        sharedOffsets.put(offset, new AtomicInteger(messageCount));
+    }
 
+    /**
+     * Removes the reference counts of shared offsets which are below the low-water mark of their partition. Those
+     * offsets are either committed or gone from the journal, because the retention removed them before all of their
+     * messages have been committed.
+     */
+    @VisibleForTesting
+    void removeSharedOffsetsBelowLowWaterMark() {
+        sharedOffsets.keySet().removeIf(offset ->
+                partitionOffset(offset) < partitions[partitionIndex(offset)].commitTracker.getLowWaterMark());
+    }
+
+    /**
+     * Journal offsets handed out to readers combine the partition and the offset within the partition, so that they
+     * can be committed with {@link #markJournalOffsetCommitted(long)}. With a single partition both are the same.
+     */
+    private long journalOffset(Partition partition, long partitionOffset) {
+        return partitionOffset * partitions.length + partition.id;
+    }
+
+    private int partitionIndex(long journalOffset) {
+        return (int) (journalOffset % partitions.length);
+    }
+
+    private long partitionOffset(long journalOffset) {
+        return journalOffset / partitions.length;
+    }
+
+    private long sumOverPartitions(ToLongFunction<Log> function) {
+        long sum = 0;
+        for (final Partition partition : partitions) {
+            sum += function.applyAsLong(partition.log);
+        }
+        return sum;
     }
 
     /**
@@ -609,14 +768,49 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * Returns the committed offset of the journal. The offsets of all partitions are added up, so that the difference to
+     * {@link #getLogEndOffset()} is the number of uncommitted messages.
+     *
+     * @return the committed offset or {@link #DEFAULT_COMMITTED_OFFSET} if nothing has been committed yet
+     */
     public long getCommittedOffset() {
-        return committedOffset.get();
+        long committedOffset = 0;
+        boolean committed = false;
+        for (final Partition partition : partitions) {
+            final long partitionCommittedOffset = partition.committedOffset();
+            if (partitionCommittedOffset == DEFAULT_COMMITTED_OFFSET) {
+                committedOffset += getLogStartOffset(partition.log);
+            } else {
+                committedOffset += partitionCommittedOffset + 1;
+                committed = true;
+            }
+        }
+        return committed ? committedOffset - 1 : DEFAULT_COMMITTED_OFFSET;
     }
 
+    /**
+     * Returns the next read offset of the journal, which is the sum of the next read offsets of all partitions.
+     */
     public long getNextReadOffset() {
+        long nextReadOffset = 0;
+        for (final Partition partition : partitions) {
+            nextReadOffset += partition.nextReadOffset;
+        }
         return nextReadOffset;
     }
 
+    /**
+     * Returns the number of messages which have been read from the journal but have not been committed yet.
+     */
+    public long getInFlightMessages() {
+        long inFlight = 0;
+        for (final Partition partition : partitions) {
+            inFlight += Math.max(0, partition.nextReadOffset - partition.commitTracker.getLowWaterMark());
+        }
+        return inFlight;
+    }
+
     @Override
     protected void startUp() throws Exception {
         // do NOT let Kafka's LogManager create its management threads, we will run them ourselves.
@@ -674,7 +868,11 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
 
     // default visibility for tests
     public Iterable<LogSegment> getSegments() {
-        return JavaConversions.asJavaIterable(kafkaLog.logSegments());
+        final List<LogSegment> segments = new ArrayList<>();
+        for (final Partition partition : partitions) {
+            Iterables.addAll(segments, JavaConversions.asJavaIterable(partition.log.logSegments()));
+        }
+        return segments;
     }
 
     /**
@@ -683,7 +881,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      * @return journal size in bytes
      */
     public long size() {
-        return kafkaLog.size();
+        return sumOverPartitions(Log::size);
     }
 
     /**
@@ -692,7 +890,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      * @return number of segments
      */
     public int numberOfSegments() {
-        return kafkaLog.numberOfSegments();
+        return Ints.saturatedCast(sumOverPartitions(Log::numberOfSegments));
     }
 
     /**
@@ -706,24 +904,33 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
      * @return the offset of the last message which has been successfully processed.
      */
     public long getCommittedReadOffset() {
-        return committedOffset.get();
+        return getCommittedOffset();
     }
 
     /**
-     * Discards all data in the journal prior to the given offset.
+     * Discards all data in the journal partition of the given journal offset after that offset.
      *
-     * @param offset offset to truncate to, so that no offset in the journal is larger than this.
+     * @param offset offset to truncate to, so that no offset in the journal partition is larger than this.
      */
     public void truncateTo(long offset) {
-        kafkaLog.truncateTo(offset);
+        checkArgument(offset >= 0, "offset must not be negative");
+        partitions[partitionIndex(offset)].log.truncateTo(partitionOffset(offset));
     }
 
     /**
-     * Returns the first valid offset in the entire journal.
+     * Returns the first valid offset in the entire journal, which is the sum of the first offsets of all partitions.
      *
      * @return first offset
      */
     public long getLogStartOffset() {
+        long logStartOffset = 0;
+        for (final Partition partition : partitions) {
+            logStartOffset += getLogStartOffset(partition.log);
+        }
+        return logStartOffset;
+    }
+
+    private static long getLogStartOffset(Log kafkaLog) {
         final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(kafkaLog.logSegments());
         final LogSegment segment = Iterables.getFirst(logSegments, null);
         if (segment == null) {
@@ -733,12 +940,13 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     }
 
     /**
-     * returns the offset for the next value to be inserted in the entire journal.
+     * returns the offset for the next value to be inserted in the entire journal, which is the sum of the end offsets
+     * of all partitions.
      *
      * @return the next offset value (last valid offset is this number - 1)
      */
     public long getLogEndOffset() {
-        return kafkaLog.logEndOffset();
+        return sumOverPartitions(Log::logEndOffset);
     }
 
     /**
@@ -755,15 +963,68 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
     }
 
 
+    private static class Partition {
+        private final int id;
+        private final Log log;
+        private final File committedReadOffsetFile;
+        private final JournalCommitTracker commitTracker;
+        // the committed offset read from the offset file, reported until the low-water mark has moved
+        private final long initialCommittedOffset;
+        private final long initialLowWaterMark;
+        // only updated by the thread reading this partition
+        private volatile long nextReadOffset = 0L;
+
+        private Partition(int id, Log log, File committedReadOffsetFile) {
+            this.id = id;
+            this.log = log;
+            this.committedReadOffsetFile = committedReadOffsetFile;
+
+            long committedOffset = DEFAULT_COMMITTED_OFFSET;
+            // TODO add check for directory, etc
+            try {
+                if (!committedReadOffsetFile.createNewFile()) {
+                    final String line = Files.readFirstLine(committedReadOffsetFile, StandardCharsets.UTF_8);
+                    // the file contains the last offset graylog2 has successfully processed.
+                    // thus the nextReadOffset is one beyond that number
+                    if (line != null) {
+                        committedOffset = Long.parseLong(line.trim());
+                        nextReadOffset = committedOffset + 1;
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot access offset file: {}", e.getMessage());
+                Throwables.propagate(new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(),
+                        null,
+                        e.getMessage()));
+            }
+            this.initialCommittedOffset = committedOffset;
+            this.initialLowWaterMark = committedOffset == DEFAULT_COMMITTED_OFFSET ? getLogStartOffset(log) : Math.max(0, committedOffset + 1);
+            this.commitTracker = new JournalCommitTracker(MAX_IN_FLIGHT_MESSAGES, initialLowWaterMark);
+            this.nextReadOffset = Math.max(nextReadOffset, initialLowWaterMark);
+        }
+
+        private long committedOffset() {
+            final long lowWaterMark = commitTracker.getLowWaterMark();
+            return lowWaterMark == initialLowWaterMark ? initialCommittedOffset : lowWaterMark - 1;
+        }
+    }
+
     public class OffsetFileFlusher implements Runnable {
         @Override
         public void run() {
+            for (final Partition partition : partitions) {
+                flush(partition.committedReadOffsetFile, partition.committedOffset());
+            }
+            removeSharedOffsetsBelowLowWaterMark();
+        }
+
+        private void flush(File committedReadOffsetFile, long committedOffset) {
             // Do not write the file if committedOffset has never been updated.
-            if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
+            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
                 return;
             }
             try (final FileOutputStream fos = new FileOutputStream(committedReadOffsetFile)) {
-                fos.write(String.valueOf(committedOffset.get()).getBytes(StandardCharsets.UTF_8));
+                fos.write(String.valueOf(committedOffset).getBytes(StandardCharsets.UTF_8));
                 // flush stream
                 fos.flush();
                 // actually sync to disk
@@ -798,12 +1059,19 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             loggerForCleaner.debug("Beginning log cleanup");
             int total = 0;
             final Timer.Context ctx = new Timer().time();
-            for (final Log kafkaLog : JavaConversions.asJavaIterable(logManager.allLogs())) {
-                if (kafkaLog.config().compact()) continue;
-                loggerForCleaner.debug("Garbage collecting {}", kafkaLog.name());
-                total += cleanupExpiredSegments(kafkaLog) +
-                        cleanupSegmentsToMaintainSize(kafkaLog) +
-                        cleanupSegmentsToRemoveCommitted(kafkaLog);
+            // counts the segments purged by time and by size in this run
+            KafkaJournal.this.purgedSegmentsInLastRetention.set(0);
+            int expiredSegments = 0;
+            for (final Partition partition : partitions) {
+                loggerForCleaner.debug("Garbage collecting {}", partition.log.name());
+                expiredSegments += cleanupExpiredSegments(partition.log);
+            }
+            KafkaJournal.this.purgedSegmentsInLastRetention.addAndGet(expiredSegments);
+            total += expiredSegments;
+            // the maximum size applies to the whole journal, not to the single partitions
+            total += cleanupSegmentsToMaintainSize();
+            for (final Partition partition : partitions) {
+                total += cleanupSegmentsToRemoveCommitted(partition);
             }
 
             loggerForCleaner.debug("Log cleanup completed. {} files deleted in {} seconds",
@@ -815,10 +1083,9 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
         private int cleanupExpiredSegments(final Log kafkaLog) {
             // don't run if nothing will be done
             if (kafkaLog.size() == 0 && kafkaLog.numberOfSegments() < 1) {
-                KafkaJournal.this.purgedSegmentsInLastRetention.set(0);
                 return 0;
             }
-            int deletedSegments = kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() {
+            return kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() {
                 @Override
                 public Object apply(LogSegment segment) {
                     final long segmentAge = JODA_TIME.milliseconds() - segment.lastModified();
@@ -832,8 +1099,6 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     return shouldDelete;
                 }
             });
-            KafkaJournal.this.purgedSegmentsInLastRetention.set(deletedSegments);
-            return deletedSegments;
         }
 
         /**
@@ -859,9 +1124,9 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             }
         }
 
-        private int cleanupSegmentsToMaintainSize(Log kafkaLog) {
-            final long retentionSize = kafkaLog.config().retentionSize();
-            final long currentSize = kafkaLog.size();
+        private int cleanupSegmentsToMaintainSize() {
+            final long retentionSize = partitions[0].log.config().retentionSize();
+            final long currentSize = size();
             final double utilizationPercentage = retentionSize > 0 ? (currentSize * 100) / retentionSize : 0.0;
             if (utilizationPercentage > KafkaJournal.NOTIFY_ON_UTILIZATION_PERCENTAGE) {
                 LOG.warn("Journal utilization ({}%) has gone over {}%.", utilizationPercentage,
@@ -870,11 +1135,21 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             updateLoadBalancerStatus(utilizationPercentage);
 
             if (retentionSize < 0 || currentSize < retentionSize) {
-                KafkaJournal.this.purgedSegmentsInLastRetention.set(0);
                 return 0;
             }
-            final long[] diff = {currentSize - retentionSize};
-            int deletedSegments = kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() { // sigh scala
+            int deletedSegments = 0;
+            for (final Partition partition : partitions) {
+                // every partition gives up its share of the excess, relative to its size
+                final long excess = (long) Math.ceil((double) (currentSize - retentionSize) * partition.log.size() / currentSize);
+                deletedSegments += shrinkLog(partition.log, excess, retentionSize);
+            }
+            KafkaJournal.this.purgedSegmentsInLastRetention.addAndGet(deletedSegments);
+            return deletedSegments;
+        }
+
+        private int shrinkLog(Log kafkaLog, long excess, long retentionSize) {
+            final long[] diff = {excess};
+            return kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() { // sigh scala
                 @Override
                 public Object apply(LogSegment segment) {
                     if (diff[0] - segment.size() >= 0) {
@@ -891,11 +1166,10 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
                     }
                 }
             });
-            KafkaJournal.this.purgedSegmentsInLastRetention.set(deletedSegments);
-            return deletedSegments;
         }
 
-        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog) {
+        private int cleanupSegmentsToRemoveCommitted(Partition partition) {
+            final Log kafkaLog = partition.log;
             if (kafkaLog.numberOfSegments() <= 1) {
                 loggerForCleaner.debug(
                         "[cleanup-committed] The journal is already minimal at {} segment(s), not trying to remove more segments.",
@@ -905,7 +1179,7 @@ public class KafkaJournal extends AbstractIdleService implements Journal {
             // we need to iterate through all segments to the find the cutoff point for the committed offset.
             // unfortunately finding the largest offset contained in a segment is expensive (it involves reading the entire file)
             // so we have to get a global view.
-            final long committedOffset = KafkaJournal.this.committedOffset.get();
+            final long committedOffset = partition.committedOffset();
             final HashSet<LogSegment> logSegments = Sets.newHashSet(
                     JavaConversions.asJavaIterable(kafkaLog.logSegments(committedOffset, Long.MAX_VALUE))
             );
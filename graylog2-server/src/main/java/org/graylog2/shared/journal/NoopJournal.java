@@ -47,11 +47,26 @@ public class NoopJournal extends AbstractIdleService implements Journal {
         throw new IllegalStateException("Invalid use of NoopJournal. Reading from this journal is always a programming error.");
     }
 
+    @Override
+    public int getPartitionCount() {
+        return 1;
+    }
+
+    @Override
+    public List<JournalReadEntry> read(int partition, long maximumCount) {
+        throw new IllegalStateException("Invalid use of NoopJournal. Reading from this journal is always a programming error.");
+    }
+
     @Override
     public void markJournalOffsetCommitted(long offset) {
         // nothing to do
     }
 
+    @Override
+    public void markJournalOffsetShared(long offset, int messageCount) {
+        // nothing to do
+    }
+
     @Override
     protected void startUp() throws Exception {
         // nothing to do
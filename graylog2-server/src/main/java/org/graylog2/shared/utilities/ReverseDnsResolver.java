@@ -0,0 +1,229 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.utilities;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog2.plugin.Tools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Node-wide cache for reverse DNS lookups of IP addresses.
+ * <p>
+ * Successful lookups are cached for {@code rdns_cache_ttl}, failed lookups for {@code rdns_cache_negative_ttl}.
+ * Concurrent lookups of the same address share a single name service request.
+ * </p>
+ * <p>
+ * {@link #resolve(InetAddress)} blocks until the hostname is known, {@link #resolveNonBlocking(InetAddress)} only
+ * returns cached hostnames and looks up the address in the background for subsequent calls otherwise.
+ * </p>
+ */
+@Singleton
+public class ReverseDnsResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(ReverseDnsResolver.class);
+
+    @VisibleForTesting
+    interface Lookup {
+        String lookup(InetAddress address) throws UnknownHostException;
+    }
+
+    private final Lookup lookup;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Cache<InetAddress, CachedHostname> cache;
+    private final ConcurrentMap<InetAddress, CompletableFuture<CachedHostname>> pendingLookups = new ConcurrentHashMap<>();
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Timer lookupTime;
+
+    @Inject
+    public ReverseDnsResolver(@Named("rdns_cache_size") int cacheSize,
+                              @Named("rdns_cache_ttl") Duration ttl,
+                              @Named("rdns_cache_negative_ttl") Duration negativeTtl,
+                              @Named("rdns_resolver_threads") int resolverThreads,
+                              MetricRegistry metricRegistry) {
+        this(cacheSize, ttl.toNanoseconds(), negativeTtl.toNanoseconds(), Tools::rdnsLookup,
+                executor(resolverThreads, cacheSize), Ticker.systemTicker(), metricRegistry);
+    }
+
+    @VisibleForTesting
+    ReverseDnsResolver(int cacheSize,
+                       long ttlNanos,
+                       long negativeTtlNanos,
+                       Lookup lookup,
+                       Executor executor,
+                       Ticker ticker,
+                       MetricRegistry metricRegistry) {
+        this.lookup = lookup;
+        this.executor = executor;
+        this.ticker = ticker;
+        this.ttlNanos = ttlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+        // Entries expire on their own TTL, the cache only drops them at the latest possible point in time.
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Math.max(ttlNanos, negativeTtlNanos), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+
+        this.hits = metricRegistry.meter(name(ReverseDnsResolver.class, "hits"));
+        this.misses = metricRegistry.meter(name(ReverseDnsResolver.class, "misses"));
+        this.lookupTime = metricRegistry.timer(name(ReverseDnsResolver.class, "lookupTime"));
+        metricRegistry.register(name(ReverseDnsResolver.class, "size"), (Gauge<Long>) cache::size);
+    }
+
+    private static Executor executor(int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("rdns-resolver-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Returns the hostname of the given address, looking it up if it isn't cached.
+     *
+     * @return the hostname or the textual IP address if the address could not be resolved, just like
+     * {@link InetAddress#getCanonicalHostName()}
+     */
+    public String resolve(InetAddress address) {
+        final CachedHostname cached = getCached(address);
+        if (cached != null) {
+            return cached.hostname;
+        }
+
+        CompletableFuture<CachedHostname> pending = pendingLookups.get(address);
+        if (pending == null) {
+            // Run the lookup on the calling thread instead of waiting for the executor.
+            final CompletableFuture<CachedHostname> future = new CompletableFuture<>();
+            pending = pendingLookups.putIfAbsent(address, future);
+            if (pending == null) {
+                return lookup(address, future).hostname;
+            }
+        }
+
+        try {
+            return pending.get().hostname;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return address.getHostAddress();
+        } catch (ExecutionException e) {
+            return address.getHostAddress();
+        }
+    }
+
+    /**
+     * Returns the hostname of the given address if it is cached. Otherwise the address is looked up in the background
+     * and the hostname will be returned by subsequent calls.
+     *
+     * @return the hostname, the textual IP address if the address could not be resolved or {@code null} if the
+     * address is not cached yet
+     */
+    @Nullable
+    public String resolveNonBlocking(InetAddress address) {
+        final CachedHostname cached = getCached(address);
+        if (cached != null) {
+            return cached.hostname;
+        }
+
+        if (!pendingLookups.containsKey(address)) {
+            final CompletableFuture<CachedHostname> future = new CompletableFuture<>();
+            if (pendingLookups.putIfAbsent(address, future) == null) {
+                try {
+                    executor.execute(() -> lookup(address, future));
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Too many pending reverse DNS lookups, not looking up {}.", address);
+                    pendingLookups.remove(address, future);
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private CachedHostname getCached(InetAddress address) {
+        final CachedHostname cached = cache.getIfPresent(address);
+        if (cached != null && cached.expiresAt - ticker.read() > 0) {
+            hits.mark();
+            return cached;
+        }
+        misses.mark();
+        return null;
+    }
+
+    private CachedHostname lookup(InetAddress address, CompletableFuture<CachedHostname> future) {
+        String hostname = null;
+        try (Timer.Context ignored = lookupTime.time()) {
+            hostname = lookup.lookup(address);
+        } catch (UnknownHostException | RuntimeException e) {
+            LOG.debug("Reverse DNS lookup of " + address + " failed.", e);
+        }
+
+        // The name service returns the textual IP address if there is no hostname for it.
+        final CachedHostname result;
+        if (isNullOrEmpty(hostname) || hostname.equals(address.getHostAddress())) {
+            result = new CachedHostname(address.getHostAddress(), ticker.read() + negativeTtlNanos);
+        } else {
+            result = new CachedHostname(hostname, ticker.read() + ttlNanos);
+        }
+
+        cache.put(address, result);
+        pendingLookups.remove(address, future);
+        future.complete(result);
+        return result;
+    }
+
+    private static class CachedHostname {
+        private final String hostname;
+        private final long expiresAt;
+
+        private CachedHostname(String hostname, long expiresAt) {
+            this.hostname = hostname;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
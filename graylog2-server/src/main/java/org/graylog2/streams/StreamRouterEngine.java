@@ -20,10 +20,6 @@ package org.graylog2.streams;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.SimpleTimeLimiter;
-import com.google.common.util.concurrent.TimeLimiter;
-import com.google.common.util.concurrent.UncheckedTimeoutException;
 import com.google.inject.assistedinject.Assisted;
 
 import com.codahale.metrics.Timer;
@@ -32,18 +28,16 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.streams.DefaultStream;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
-import org.graylog2.plugin.streams.StreamRuleType;
 import org.graylog2.streams.matchers.StreamRuleMatcher;
+import org.graylog2.utilities.TimeLimitedCharSequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.EnumSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -52,92 +46,97 @@ import javax.inject.Provider;
 /**
  * Stream routing engine to select matching streams for a message.
  *
- * This class is NOT thread-safe! Use one instance per thread.
+ * The stream rules are compiled into a {@link StreamRuleIndex} for all rule types which only depend on the value of
+ * a single field, including CONTAINS rules and REGEX rules with a literal pattern. Only the remaining REGEX rules of
+ * streams which are not yet decided by the indexed rules are evaluated one by one.
+ *
+ * All REGEX rules of a message share a time budget of {@link StreamFaultManager#getStreamProcessingTimeout()} and are
+ * evaluated on the calling thread. The rule which exhausts the budget is registered as a stream fault, any remaining
+ * REGEX rules of that message don't match.
+ *
+ * This class is thread-safe, the per-message match state is kept in thread-local buffers.
  */
 public class StreamRouterEngine {
     private static final Logger LOG = LoggerFactory.getLogger(StreamRouterEngine.class);
 
-    private final EnumSet<StreamRuleType> ruleTypesNotNeedingFieldPresence = EnumSet.of(StreamRuleType.PRESENCE, StreamRuleType.EXACT, StreamRuleType.REGEX, StreamRuleType.ALWAYS_MATCH);
     private final List<Stream> streams;
     private final StreamFaultManager streamFaultManager;
     private final StreamMetrics streamMetrics;
-    private final TimeLimiter timeLimiter;
     private final long streamProcessingTimeout;
     private final String fingerprint;
     private final Provider<Stream> defaultStreamProvider;
 
-    private final List<Rule> rulesList;
+    private final Stream[] indexedStreams;
+    private final boolean[] andMatching;
+    private final RegexRule[][] regexRules;
+    private final StreamRuleIndex ruleIndex;
+    // Streams which have to be evaluated even if none of their indexed rules changed its outcome.
+    private final long[] alwaysEvaluated;
+    private final ThreadLocal<MatchState> matchState;
 
     public interface Factory {
-        StreamRouterEngine create(List<Stream> streams, ExecutorService executorService);
+        StreamRouterEngine create(List<Stream> streams);
     }
 
     @Inject
     public StreamRouterEngine(@Assisted List<Stream> streams,
-                              @Assisted ExecutorService executorService,
                               StreamFaultManager streamFaultManager,
                               StreamMetrics streamMetrics,
                               @DefaultStream Provider<Stream> defaultStreamProvider) {
         this.streams = streams;
         this.streamFaultManager = streamFaultManager;
         this.streamMetrics = streamMetrics;
-        this.timeLimiter = new SimpleTimeLimiter(executorService);
         this.streamProcessingTimeout = streamFaultManager.getStreamProcessingTimeout();
         this.fingerprint = new StreamListFingerprint(streams).getFingerprint();
         this.defaultStreamProvider = defaultStreamProvider;
 
-        final List<Rule> alwaysMatchRules = Lists.newArrayList();
-        final List<Rule> presenceRules = Lists.newArrayList();
-        final List<Rule> exactRules = Lists.newArrayList();
-        final List<Rule> greaterRules = Lists.newArrayList();
-        final List<Rule> smallerRules = Lists.newArrayList();
-        final List<Rule> regexRules = Lists.newArrayList();
-        final List<Rule> containsRules = Lists.newArrayList();
+        final int streamCount = streams.size();
+        this.indexedStreams = streams.toArray(new Stream[streamCount]);
+        this.andMatching = new boolean[streamCount];
+        this.regexRules = new RegexRule[streamCount][];
+        this.alwaysEvaluated = new long[bitSetWords(streamCount)];
+
+        final StreamRuleIndex.Builder indexBuilder = new StreamRuleIndex.Builder(streamCount);
+        for (int i = 0; i < streamCount; i++) {
+            final Stream stream = indexedStreams[i];
+            final List<RegexRule> streamRegexRules = Lists.newArrayList();
 
-        for (Stream stream : streams) {
             for (StreamRule streamRule : stream.getStreamRules()) {
-                final Rule rule;
-                try {
-                    rule = new Rule(stream, streamRule, stream.getMatchingType());
-                } catch (InvalidStreamRuleTypeException e) {
-                    LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
-                    continue;
-                }
-                switch (streamRule.getType()) {
-                    case ALWAYS_MATCH:
-                        alwaysMatchRules.add(rule);
-                        break;
-                    case PRESENCE:
-                        presenceRules.add(rule);
-                        break;
-                    case EXACT:
-                        exactRules.add(rule);
-                        break;
-                    case GREATER:
-                        greaterRules.add(rule);
-                        break;
-                    case SMALLER:
-                        smallerRules.add(rule);
-                        break;
-                    case REGEX:
-                        regexRules.add(rule);
-                        break;
-                    case CONTAINS:
-                        containsRules.add(rule);
-                        break;
+                if (streamRule.getType() == null) {
+                    LOG.warn("Invalid stream rule type. Skipping matching for stream rule <{}>.", streamRule.getId());
+                } else if (StreamRuleIndex.isIndexed(streamRule)) {
+                    indexBuilder.add(i, streamRule);
+                } else {
+                    streamRegexRules.add(new RegexRule(stream, streamRule));
                 }
             }
+
+            regexRules[i] = streamRegexRules.toArray(new RegexRule[streamRegexRules.size()]);
+            andMatching[i] = stream.getMatchingType() == Stream.MatchingType.AND;
+        }
+        this.ruleIndex = indexBuilder.build();
+
+        for (int i = 0; i < streamCount; i++) {
+            final int defaultMatches = ruleIndex.getDefaultMatches(i);
+            final int indexedRules = ruleIndex.getRuleCount(i);
+            final boolean hasRegexRules = regexRules[i].length > 0;
+            final boolean evaluate;
+            if (andMatching[i]) {
+                evaluate = (indexedRules > 0 || hasRegexRules) && defaultMatches == indexedRules;
+            } else {
+                evaluate = defaultMatches > 0 || hasRegexRules;
+            }
+            if (evaluate) {
+                alwaysEvaluated[i >>> 6] |= 1L << i;
+            }
         }
 
-        final int size = alwaysMatchRules.size() + presenceRules.size() + exactRules.size() + greaterRules.size() + smallerRules.size() + containsRules.size() + regexRules.size();
-        this.rulesList = Lists.newArrayListWithCapacity(size);
-        this.rulesList.addAll(alwaysMatchRules);
-        this.rulesList.addAll(presenceRules);
-        this.rulesList.addAll(exactRules);
-        this.rulesList.addAll(greaterRules);
-        this.rulesList.addAll(smallerRules);
-        this.rulesList.addAll(containsRules);
-        this.rulesList.addAll(regexRules);
+        final int patternBitSetWords = ruleIndex.getPatternBitSetWords();
+        this.matchState = ThreadLocal.withInitial(() -> new MatchState(streamCount, patternBitSetWords));
+    }
+
+    private static int bitSetWords(int bits) {
+        return (bits + 63) >>> 6;
     }
 
     /**
@@ -165,69 +164,89 @@ public class StreamRouterEngine {
      * @return the list of matching streams
      */
     public List<Stream> match(Message message) {
-        final Set<Stream> result = Sets.newHashSet();
-        final Set<Stream> blackList = Sets.newHashSet();
+        final MatchState state = matchState.get();
+        try {
+            return match(message, state);
+        } catch (RuntimeException e) {
+            state.reset();
+            throw e;
+        }
+    }
 
-        for (final Rule rule : rulesList) {
-            if (blackList.contains(rule.getStream())) {
-                continue;
-            }
+    private List<Stream> match(Message message, MatchState state) {
+        final int[] deltas = state.deltas;
+        final long[] candidates = state.candidates;
 
-            final StreamRule streamRule = rule.getStreamRule();
-            final StreamRuleType streamRuleType = streamRule.getType();
-            final Stream.MatchingType matchingType = rule.getMatchingType();
-            if (!ruleTypesNotNeedingFieldPresence.contains(streamRuleType)
-                && !message.hasField(streamRule.getField())) {
-                if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
-                    // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStream());
-                }
+        ruleIndex.apply(message, deltas, candidates, state.patterns);
+        state.regexDeadline = 0L;
+        state.regexBudgetExhausted = false;
 
-                continue;
-            }
+        final ImmutableList.Builder<Stream> result = ImmutableList.builder();
+        final Stream defaultStream = defaultStreamProvider.get();
+        boolean alreadyRemovedDefaultStream = false;
 
-            final Stream stream;
-            if (streamRuleType != StreamRuleType.REGEX) {
-                stream = rule.match(message);
-            } else {
-                stream = rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS);
-            }
+        for (int word = 0; word < candidates.length; word++) {
+            long bits = candidates[word] | alwaysEvaluated[word];
+            candidates[word] = 0L;
 
-            if (stream == null) {
-                if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
-                    // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStream());
+            while (bits != 0L) {
+                final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                final int matchedRules = ruleIndex.getDefaultMatches(i) + deltas[i];
+                deltas[i] = 0;
+
+                if (!matches(i, matchedRules, message, state)) {
+                    continue;
                 }
-            } else {
+
+                final Stream stream = indexedStreams[i];
                 result.add(stream);
-                if (matchingType == Stream.MatchingType.OR) {
-                    // blacklist stream because it is already matched
-                    blackList.add(rule.getStream());
+
+                streamMetrics.markIncomingMeter(stream.getId());
+                if (stream.getRemoveMatchesFromDefaultStream()) {
+                    if (alreadyRemovedDefaultStream || message.removeStream(defaultStream)) {
+                        alreadyRemovedDefaultStream = true;
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("Successfully removed default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
+                        }
+                    } else {
+                        if (LOG.isWarnEnabled()) {
+                            LOG.warn("Couldn't remove default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
+                        }
+                    }
                 }
             }
         }
 
-        final Stream defaultStream = defaultStreamProvider.get();
-        boolean alreadyRemovedDefaultStream = false;
-        for (Stream stream : result) {
-            streamMetrics.markIncomingMeter(stream.getId());
-            if (stream.getRemoveMatchesFromDefaultStream()) {
-                if (alreadyRemovedDefaultStream || message.removeStream(defaultStream)) {
-                    alreadyRemovedDefaultStream = true;
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Successfully removed default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
-                    }
-                } else {
-                    if (LOG.isWarnEnabled()) {
-                        LOG.warn("Couldn't remove default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
-                    }
+        return result.build();
+    }
+
+    private boolean matches(int streamIndex, int matchedIndexedRules, Message message, MatchState state) {
+        final int indexedRules = ruleIndex.getRuleCount(streamIndex);
+        final RegexRule[] rules = regexRules[streamIndex];
+
+        if (andMatching[streamIndex]) {
+            if (matchedIndexedRules < indexedRules || indexedRules + rules.length == 0) {
+                return false;
+            }
+            for (RegexRule rule : rules) {
+                if (!rule.match(message, state)) {
+                    return false;
                 }
             }
+            return true;
+        } else {
+            if (matchedIndexedRules > 0) {
+                return true;
+            }
+            for (RegexRule rule : rules) {
+                if (rule.match(message, state)) {
+                    return true;
+                }
+            }
+            return false;
         }
-
-        return ImmutableList.copyOf(result);
     }
 
     /**
@@ -294,33 +313,98 @@ public class StreamRouterEngine {
             }
         }
 
+        public StreamRule getStreamRule() {
+            return rule;
+        }
+
+        public Stream getStream() {
+            return stream;
+        }
+    }
+
+    /**
+     * A REGEX stream rule which cannot be compiled into the {@link StreamRuleIndex}.
+     */
+    private class RegexRule {
+        private final Stream stream;
+        private final StreamRule rule;
+        private final Pattern pattern;
+        private final Timer executionTimer;
+
+        private RegexRule(Stream stream, StreamRule rule) {
+            this.stream = stream;
+            this.rule = rule;
+            this.pattern = compile(rule);
+            this.executionTimer = streamMetrics.getExecutionTimer(rule.getId());
+        }
+
         @Nullable
-        private Stream matchWithTimeOut(final Message message, long timeout, TimeUnit unit) {
-            Stream matchedStream = null;
-            try (final Timer.Context ignored = streamMetrics.getExecutionTimer(rule.getId()).time()) {
-                matchedStream = timeLimiter.callWithTimeout(new Callable<Stream>() {
-                    @Override
-                    @Nullable
-                    public Stream call() throws Exception {
-                        return match(message);
-                    }
-                }, timeout, unit, true);
-            } catch (UncheckedTimeoutException e) {
+        private Pattern compile(StreamRule rule) {
+            try {
+                return Pattern.compile(rule.getValue(), Pattern.DOTALL);
+            } catch (Exception e) {
+                LOG.warn("Invalid regular expression <{}> in stream rule <{}>. The rule will never match.", rule.getValue(), rule.getId());
+                return null;
+            }
+        }
+
+        private boolean match(Message message, MatchState state) {
+            final Object value = message.getField(rule.getField());
+            if (value == null) {
+                return rule.getInverted();
+            }
+            if (pattern == null) {
+                streamMetrics.markExceptionMeter(rule.getStreamId());
+                return false;
+            }
+            if (state.regexBudgetExhausted) {
+                return false;
+            }
+
+            final long now = System.nanoTime();
+            if (state.regexDeadline == 0L) {
+                state.regexDeadline = now + TimeUnit.MILLISECONDS.toNanos(streamProcessingTimeout);
+            }
+
+            final CharSequence charSequence = state.regexInput.reset(value.toString(), state.regexDeadline);
+            try {
+                return rule.getInverted() ^ pattern.matcher(charSequence).find();
+            } catch (TimeLimitedCharSequence.TimeLimitExceededException e) {
+                state.regexBudgetExhausted = true;
                 streamFaultManager.registerFailure(stream);
+                return false;
             } catch (Exception e) {
                 LOG.warn("Unexpected error during stream matching", e);
                 streamMetrics.markExceptionMeter(rule.getStreamId());
+                return false;
+            } finally {
+                executionTimer.update(System.nanoTime() - now, TimeUnit.NANOSECONDS);
+                state.regexInput.reset("", 0L);
             }
-
-            return matchedStream;
         }
+    }
 
-        public StreamRule getStreamRule() {
-            return rule;
+    /**
+     * Reusable per-thread buffers for {@link #match(Message)}. All of them are reset after every message.
+     */
+    private static class MatchState {
+        private final int[] deltas;
+        private final long[] candidates;
+        private final long[] patterns;
+        private final TimeLimitedCharSequence regexInput = new TimeLimitedCharSequence();
+        private long regexDeadline;
+        private boolean regexBudgetExhausted;
+
+        private MatchState(int streamCount, int patternBitSetWords) {
+            this.deltas = new int[streamCount];
+            this.candidates = new long[bitSetWords(streamCount)];
+            this.patterns = new long[patternBitSetWords];
         }
 
-        public Stream getStream() {
-            return stream;
+        private void reset() {
+            Arrays.fill(deltas, 0);
+            Arrays.fill(candidates, 0L);
+            Arrays.fill(patterns, 0L);
         }
     }
 
@@ -0,0 +1,582 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.streams;
+
+import com.google.common.primitives.Ints;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.utilities.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field-indexed representation of all EXACT, PRESENCE, GREATER, SMALLER and CONTAINS stream rules as well as all REGEX
+ * stream rules whose pattern is a plain literal.
+ *
+ * Every indexed rule has an outcome for a message which only depends on the value of its field. The index stores
+ * for each rule whether it matches a message <em>without</em> its field (the default outcome) and looks up the rules
+ * whose outcome flips for a given field value. Applying the index to a message therefore costs one field lookup per
+ * distinct rule field plus the rules which actually change their outcome, independent of the total number of rules.
+ *
+ * The outcome of a rule is recorded as a per-stream counter delta, because every rule flips at most once per message.
+ * All substring rules on a field are compiled into a single {@link AhoCorasick} automaton, so one pass over the field
+ * value finds every matching substring rule.
+ *
+ * Instances are immutable and thread-safe once built.
+ */
+class StreamRuleIndex {
+    private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final String[] fieldNames;
+    private final FieldRules[] fieldRules;
+    private final int[] defaultMatches;
+    private final int[] ruleCounts;
+    private final int patternBitSetWords;
+
+    private StreamRuleIndex(String[] fieldNames, FieldRules[] fieldRules, int[] defaultMatches, int[] ruleCounts) {
+        this.fieldNames = fieldNames;
+        this.fieldRules = fieldRules;
+        this.defaultMatches = defaultMatches;
+        this.ruleCounts = ruleCounts;
+
+        int words = 0;
+        for (FieldRules rules : fieldRules) {
+            if (rules.substrings != null) {
+                words = Math.max(words, rules.substrings.automaton.getBitSetWords());
+            }
+        }
+        this.patternBitSetWords = words;
+    }
+
+    /**
+     * Returns the size of the scratch bit set that has to be passed to {@link #apply(Message, int[], long[], long[])}.
+     */
+    int getPatternBitSetWords() {
+        return patternBitSetWords;
+    }
+
+    /**
+     * Returns the number of indexed rules of the given stream which match a message that has none of their fields.
+     */
+    int getDefaultMatches(int streamIndex) {
+        return defaultMatches[streamIndex];
+    }
+
+    /**
+     * Returns the number of indexed rules of the given stream.
+     */
+    int getRuleCount(int streamIndex) {
+        return ruleCounts[streamIndex];
+    }
+
+    /**
+     * Applies the index to the given message. For every rule whose outcome differs from its default outcome the
+     * counter of its stream in {@code deltas} is adjusted and the stream is marked in the {@code touched} bit set.
+     *
+     * @param message  the message
+     * @param deltas   per-stream match counter deltas, indexed by stream index
+     * @param touched  bit set of streams whose counter has been adjusted
+     * @param patterns scratch bit set with {@link #getPatternBitSetWords()} words, all zero
+     */
+    void apply(Message message, int[] deltas, long[] touched, long[] patterns) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            final Object value = message.getField(fieldNames[i]);
+            if (value != null) {
+                fieldRules[i].apply(value, deltas, touched, patterns);
+            } else if (fieldRules[i].substrings != null && message.hasField(fieldNames[i])) {
+                // CONTAINS rules only require the field to be present, a null value is not a string.
+                adjust(fieldRules[i].substrings.containsInverted, 1, deltas, touched);
+            }
+        }
+    }
+
+    static boolean isIndexed(StreamRule streamRule) {
+        switch (streamRule.getType()) {
+            case EXACT:
+            case PRESENCE:
+            case GREATER:
+            case SMALLER:
+            case CONTAINS:
+            case ALWAYS_MATCH:
+                return true;
+            case REGEX:
+                return isLiteral(streamRule.getValue());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the regular expression does not contain any meta characters, so finding it in a text is
+     * the same as a substring search.
+     */
+    static boolean isLiteral(String regex) {
+        if (regex == null) {
+            return false;
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_META_CHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void adjust(int[] streams, int delta, int[] deltas, long[] touched) {
+        for (int stream : streams) {
+            deltas[stream] += delta;
+            touched[stream >>> 6] |= 1L << stream;
+        }
+    }
+
+    static class Builder {
+        private final Map<String, FieldRulesBuilder> fields = new HashMap<>();
+        private final int[] defaultMatches;
+        private final int[] ruleCounts;
+
+        Builder(int streamCount) {
+            this.defaultMatches = new int[streamCount];
+            this.ruleCounts = new int[streamCount];
+        }
+
+        /**
+         * Adds the given rule to the index. Only rules for which {@link #isIndexed(StreamRule)} returns {@code true}
+         * are accepted.
+         */
+        Builder add(int streamIndex, StreamRule streamRule) {
+            final boolean inverted = streamRule.getInverted();
+            final String value = streamRule.getValue();
+
+            ruleCounts[streamIndex]++;
+
+            switch (streamRule.getType()) {
+                case ALWAYS_MATCH:
+                    defaultMatches[streamIndex]++;
+                    break;
+                case EXACT:
+                    if (inverted) {
+                        defaultMatches[streamIndex]++;
+                    }
+                    if (value != null) {
+                        field(streamRule).exact(value, inverted).add(streamIndex);
+                    }
+                    break;
+                case PRESENCE:
+                    if (inverted) {
+                        defaultMatches[streamIndex]++;
+                        field(streamRule).presenceInverted.add(streamIndex);
+                    } else {
+                        field(streamRule).presence.add(streamIndex);
+                    }
+                    break;
+                case GREATER:
+                    addThreshold(field(streamRule).greater, streamIndex, value, inverted);
+                    break;
+                case SMALLER:
+                    addThreshold(field(streamRule).smaller, streamIndex, value, inverted);
+                    break;
+                case CONTAINS:
+                    if (value != null) {
+                        field(streamRule).substrings.addContains(streamIndex, value, inverted);
+                    }
+                    break;
+                case REGEX:
+                    if (inverted) {
+                        defaultMatches[streamIndex]++;
+                    }
+                    field(streamRule).substrings.addRegex(streamIndex, value, inverted);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Stream rule type " + streamRule.getType() + " cannot be indexed");
+            }
+
+            return this;
+        }
+
+        private void addThreshold(ThresholdRulesBuilder builder, int streamIndex, String value, boolean inverted) {
+            final Double threshold = Tools.getDouble(value);
+            if (threshold == null) {
+                // A rule without a numeric value never matches, inverted or not.
+                return;
+            }
+            builder.add(streamIndex, threshold, inverted);
+        }
+
+        private FieldRulesBuilder field(StreamRule streamRule) {
+            return fields.computeIfAbsent(streamRule.getField(), k -> new FieldRulesBuilder());
+        }
+
+        StreamRuleIndex build() {
+            final String[] fieldNames = new String[fields.size()];
+            final FieldRules[] fieldRules = new FieldRules[fields.size()];
+            int i = 0;
+            for (Map.Entry<String, FieldRulesBuilder> entry : fields.entrySet()) {
+                fieldNames[i] = entry.getKey();
+                fieldRules[i] = entry.getValue().build();
+                i++;
+            }
+            return new StreamRuleIndex(fieldNames, fieldRules, defaultMatches, ruleCounts);
+        }
+    }
+
+    private static class FieldRules {
+        private static final int[] NONE = new int[0];
+
+        // trimmed value -> { non-inverted streams, inverted streams }
+        private final Map<String, int[][]> exact;
+        private final int[] presence;
+        private final int[] presenceInverted;
+        private final ThresholdRules greater;
+        private final ThresholdRules smaller;
+        private final SubstringRules substrings;
+
+        private FieldRules(Map<String, int[][]> exact,
+                           int[] presence,
+                           int[] presenceInverted,
+                           ThresholdRules greater,
+                           ThresholdRules smaller,
+                           SubstringRules substrings) {
+            this.exact = exact;
+            this.presence = presence;
+            this.presenceInverted = presenceInverted;
+            this.greater = greater;
+            this.smaller = smaller;
+            this.substrings = substrings;
+        }
+
+        void apply(Object value, int[] deltas, long[] touched, long[] patterns) {
+            if (presence.length > 0 || presenceInverted.length > 0) {
+                if (!(value instanceof String) || !((String) value).trim().isEmpty()) {
+                    adjust(presence, 1, deltas, touched);
+                    adjust(presenceInverted, -1, deltas, touched);
+                }
+            }
+
+            if (!exact.isEmpty()) {
+                final int[][] streams = exact.get(value.toString().trim());
+                if (streams != null) {
+                    adjust(streams[0], 1, deltas, touched);
+                    adjust(streams[1], -1, deltas, touched);
+                }
+            }
+
+            if (greater != null || smaller != null) {
+                final Double number = Tools.getDouble(value);
+                if (number != null) {
+                    final double v = number;
+                    if (greater != null) {
+                        greater.applyGreater(v, deltas, touched);
+                    }
+                    if (smaller != null) {
+                        smaller.applySmaller(v, deltas, touched);
+                    }
+                }
+            }
+
+            if (substrings != null) {
+                substrings.apply(value, deltas, touched, patterns);
+            }
+        }
+    }
+
+    /**
+     * CONTAINS rules and literal REGEX rules of a single field. CONTAINS rules only match string values while REGEX
+     * rules match against the string representation of any value.
+     */
+    private static class SubstringRules {
+        private final AhoCorasick automaton;
+        private final boolean hasRegexRules;
+        // Inverted CONTAINS rules match every present field which does not contain their value.
+        private final int[] containsInverted;
+        // Per pattern index: streams to increment and decrement if the pattern is found.
+        private final int[][] containsFound;
+        private final int[][] containsInvertedFound;
+        private final int[][] regexFound;
+        private final int[][] regexInvertedFound;
+
+        private SubstringRules(AhoCorasick automaton,
+                               boolean hasRegexRules,
+                               int[] containsInverted,
+                               int[][] containsFound,
+                               int[][] containsInvertedFound,
+                               int[][] regexFound,
+                               int[][] regexInvertedFound) {
+            this.automaton = automaton;
+            this.hasRegexRules = hasRegexRules;
+            this.containsInverted = containsInverted;
+            this.containsFound = containsFound;
+            this.containsInvertedFound = containsInvertedFound;
+            this.regexFound = regexFound;
+            this.regexInvertedFound = regexInvertedFound;
+        }
+
+        void apply(Object value, int[] deltas, long[] touched, long[] patterns) {
+            adjust(containsInverted, 1, deltas, touched);
+
+            final boolean isString = value instanceof String;
+            if (!isString && !hasRegexRules) {
+                return;
+            }
+
+            if (automaton.findAll(isString ? (String) value : value.toString(), patterns) == 0) {
+                return;
+            }
+
+            final int words = automaton.getBitSetWords();
+            for (int word = 0; word < words; word++) {
+                long bits = patterns[word];
+                patterns[word] = 0L;
+                while (bits != 0L) {
+                    final int pattern = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    if (isString) {
+                        adjust(containsFound[pattern], 1, deltas, touched);
+                        adjust(containsInvertedFound[pattern], -1, deltas, touched);
+                    }
+                    adjust(regexFound[pattern], 1, deltas, touched);
+                    adjust(regexInvertedFound[pattern], -1, deltas, touched);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorted thresholds of GREATER or SMALLER rules on a single field. The rules matching a given value always form a
+     * contiguous prefix or suffix of the sorted thresholds, which is found with a binary search.
+     */
+    private static class ThresholdRules {
+        private final double[] thresholds;
+        private final int[] streams;
+        private final double[] invertedThresholds;
+        private final int[] invertedStreams;
+        // Inverted rules with a NaN threshold match every numeric value.
+        private final int[] invertedNaN;
+
+        private ThresholdRules(double[] thresholds, int[] streams, double[] invertedThresholds, int[] invertedStreams, int[] invertedNaN) {
+            this.thresholds = thresholds;
+            this.streams = streams;
+            this.invertedThresholds = invertedThresholds;
+            this.invertedStreams = invertedStreams;
+            this.invertedNaN = invertedNaN;
+        }
+
+        // value > threshold
+        void applyGreater(double value, int[] deltas, long[] touched) {
+            adjust(invertedNaN, 1, deltas, touched);
+            if (Double.isNaN(value)) {
+                adjustRange(invertedStreams, 0, invertedStreams.length, deltas, touched);
+                return;
+            }
+
+            adjustRange(streams, 0, lowerBound(thresholds, value), deltas, touched);
+            adjustRange(invertedStreams, lowerBound(invertedThresholds, value), invertedStreams.length, deltas, touched);
+        }
+
+        // value < threshold
+        void applySmaller(double value, int[] deltas, long[] touched) {
+            adjust(invertedNaN, 1, deltas, touched);
+            if (Double.isNaN(value)) {
+                adjustRange(invertedStreams, 0, invertedStreams.length, deltas, touched);
+                return;
+            }
+
+            adjustRange(streams, upperBound(thresholds, value), streams.length, deltas, touched);
+            adjustRange(invertedStreams, 0, upperBound(invertedThresholds, value), deltas, touched);
+        }
+
+        private static void adjustRange(int[] streams, int from, int to, int[] deltas, long[] touched) {
+            for (int i = from; i < to; i++) {
+                final int stream = streams[i];
+                deltas[stream]++;
+                touched[stream >>> 6] |= 1L << stream;
+            }
+        }
+
+        // Index of the first threshold which is not smaller than the value.
+        private static int lowerBound(double[] thresholds, double value) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (thresholds[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Index of the first threshold which is greater than the value.
+        private static int upperBound(double[] thresholds, double value) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (thresholds[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static class FieldRulesBuilder {
+        private final Map<String, List<Integer>[]> exact = new HashMap<>();
+        private final List<Integer> presence = new ArrayList<>();
+        private final List<Integer> presenceInverted = new ArrayList<>();
+        private final ThresholdRulesBuilder greater = new ThresholdRulesBuilder();
+        private final ThresholdRulesBuilder smaller = new ThresholdRulesBuilder();
+        private final SubstringRulesBuilder substrings = new SubstringRulesBuilder();
+
+        @SuppressWarnings("unchecked")
+        List<Integer> exact(String value, boolean inverted) {
+            final List<Integer>[] streams = exact.computeIfAbsent(value, k -> new List[]{new ArrayList<>(), new ArrayList<>()});
+            return inverted ? streams[1] : streams[0];
+        }
+
+        FieldRules build() {
+            final Map<String, int[][]> exactStreams = new HashMap<>(exact.size() * 2);
+            for (Map.Entry<String, List<Integer>[]> entry : exact.entrySet()) {
+                exactStreams.put(entry.getKey(), new int[][]{toArray(entry.getValue()[0]), toArray(entry.getValue()[1])});
+            }
+            return new FieldRules(exactStreams, toArray(presence), toArray(presenceInverted), greater.build(), smaller.build(), substrings.build());
+        }
+    }
+
+    private static class SubstringRulesBuilder {
+        private final AhoCorasick.Builder automaton = AhoCorasick.builder();
+        private final List<Integer> containsInverted = new ArrayList<>();
+        private final Map<Integer, List<Integer>> containsFound = new HashMap<>();
+        private final Map<Integer, List<Integer>> containsInvertedFound = new HashMap<>();
+        private final Map<Integer, List<Integer>> regexFound = new HashMap<>();
+        private final Map<Integer, List<Integer>> regexInvertedFound = new HashMap<>();
+        private boolean empty = true;
+
+        void addContains(int streamIndex, String value, boolean inverted) {
+            final int pattern = automaton.add(value);
+            if (inverted) {
+                containsInverted.add(streamIndex);
+                add(containsInvertedFound, pattern, streamIndex);
+            } else {
+                add(containsFound, pattern, streamIndex);
+            }
+        }
+
+        void addRegex(int streamIndex, String value, boolean inverted) {
+            add(inverted ? regexInvertedFound : regexFound, automaton.add(value), streamIndex);
+        }
+
+        private void add(Map<Integer, List<Integer>> streams, int pattern, int streamIndex) {
+            streams.computeIfAbsent(pattern, k -> new ArrayList<>()).add(streamIndex);
+            empty = false;
+        }
+
+        SubstringRules build() {
+            if (empty) {
+                return null;
+            }
+            final AhoCorasick ahoCorasick = automaton.build();
+            final int patternCount = ahoCorasick.getPatternCount();
+            return new SubstringRules(
+                    ahoCorasick,
+                    !regexFound.isEmpty() || !regexInvertedFound.isEmpty(),
+                    toArray(containsInverted),
+                    toArrays(containsFound, patternCount),
+                    toArrays(containsInvertedFound, patternCount),
+                    toArrays(regexFound, patternCount),
+                    toArrays(regexInvertedFound, patternCount));
+        }
+
+        private static int[][] toArrays(Map<Integer, List<Integer>> streams, int patternCount) {
+            final int[][] arrays = new int[patternCount][];
+            for (int pattern = 0; pattern < patternCount; pattern++) {
+                arrays[pattern] = toArray(streams.getOrDefault(pattern, Collections.emptyList()));
+            }
+            return arrays;
+        }
+    }
+
+    private static class ThresholdRulesBuilder {
+        private static final Comparator<Threshold> BY_VALUE = (t1, t2) -> Double.compare(t1.value, t2.value);
+
+        private final List<Threshold> thresholds = new ArrayList<>();
+        private final List<Threshold> invertedThresholds = new ArrayList<>();
+        private final List<Integer> invertedNaN = new ArrayList<>();
+
+        void add(int streamIndex, double threshold, boolean inverted) {
+            if (Double.isNaN(threshold)) {
+                // Nothing is greater or smaller than NaN, so only the inverted rule can ever match.
+                if (inverted) {
+                    invertedNaN.add(streamIndex);
+                }
+            } else if (inverted) {
+                invertedThresholds.add(new Threshold(threshold, streamIndex));
+            } else {
+                thresholds.add(new Threshold(threshold, streamIndex));
+            }
+        }
+
+        ThresholdRules build() {
+            if (thresholds.isEmpty() && invertedThresholds.isEmpty() && invertedNaN.isEmpty()) {
+                return null;
+            }
+            thresholds.sort(BY_VALUE);
+            invertedThresholds.sort(BY_VALUE);
+            return new ThresholdRules(values(thresholds), streams(thresholds), values(invertedThresholds), streams(invertedThresholds), toArray(invertedNaN));
+        }
+
+        private static double[] values(List<Threshold> thresholds) {
+            final double[] values = new double[thresholds.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = thresholds.get(i).value;
+            }
+            return values;
+        }
+
+        private static int[] streams(List<Threshold> thresholds) {
+            final int[] streams = new int[thresholds.size()];
+            for (int i = 0; i < streams.length; i++) {
+                streams[i] = thresholds.get(i).streamIndex;
+            }
+            return streams;
+        }
+    }
+
+    private static class Threshold {
+        private final double value;
+        private final int streamIndex;
+
+        private Threshold(double value, int streamIndex) {
+            this.value = value;
+            this.streamIndex = streamIndex;
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.isEmpty() ? FieldRules.NONE : Ints.toArray(list);
+    }
+}
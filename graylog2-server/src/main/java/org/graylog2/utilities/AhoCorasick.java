@@ -0,0 +1,213 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.utilities;
+
+import com.google.common.primitives.Chars;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Aho-Corasick automaton to find all of a set of substrings in a text with a single pass over the text.
+ *
+ * Patterns are identified by the index in which they have been added to the {@link Builder}. Adding the same
+ * pattern more than once returns the same index.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class AhoCorasick {
+    private static final int[] NONE = new int[0];
+
+    private final int patternCount;
+    // Sorted transition characters and target states per state.
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+    private final int[] failure;
+    // Indices of all patterns ending in a state, including the ones reachable through failure links.
+    private final int[][] outputs;
+
+    private AhoCorasick(int patternCount, char[][] transitionChars, int[][] transitionTargets, int[] failure, int[][] outputs) {
+        this.patternCount = patternCount;
+        this.transitionChars = transitionChars;
+        this.transitionTargets = transitionTargets;
+        this.failure = failure;
+        this.outputs = outputs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the number of distinct patterns of the automaton.
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Returns the number of {@code long} words needed for a bit set of all patterns of the automaton.
+     */
+    public int getBitSetWords() {
+        return (patternCount + 63) >>> 6;
+    }
+
+    /**
+     * Searches the given text and sets the bit of every pattern which is contained in the text. Bits which are already
+     * set are left alone, so callers have to clear the bit set before reusing it.
+     *
+     * @param text    the text to search
+     * @param matches bit set with at least {@link #getBitSetWords()} words
+     * @return the number of pattern occurrences found, which is zero if and only if no pattern was found
+     */
+    public int findAll(CharSequence text, long[] matches) {
+        int found = mark(outputs[0], matches);
+        int state = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = next(state, text.charAt(i));
+            found += mark(outputs[state], matches);
+        }
+        return found;
+    }
+
+    /**
+     * Returns {@code true} if the text contains any of the patterns.
+     */
+    public boolean containsAny(CharSequence text) {
+        if (outputs[0].length > 0) {
+            return true;
+        }
+        int state = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = next(state, text.charAt(i));
+            if (outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            final int index = Arrays.binarySearch(transitionChars[state], c);
+            if (index >= 0) {
+                return transitionTargets[state][index];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    private static int mark(int[] patterns, long[] matches) {
+        for (int pattern : patterns) {
+            matches[pattern >>> 6] |= 1L << pattern;
+        }
+        return patterns.length;
+    }
+
+    public static class Builder {
+        private final Map<String, Integer> patterns = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds the pattern to the automaton.
+         *
+         * @param pattern the substring to search for
+         * @return the index of the pattern
+         */
+        public int add(String pattern) {
+            requireNonNull(pattern, "pattern");
+            return patterns.computeIfAbsent(pattern, k -> patterns.size());
+        }
+
+        public AhoCorasick build() {
+            final List<TreeMap<Character, Integer>> transitions = new ArrayList<>();
+            final List<List<Integer>> outputs = new ArrayList<>();
+            transitions.add(new TreeMap<>());
+            outputs.add(new ArrayList<>());
+
+            for (Map.Entry<String, Integer> entry : patterns.entrySet()) {
+                final String pattern = entry.getKey();
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    final Character c = pattern.charAt(i);
+                    Integer next = transitions.get(state).get(c);
+                    if (next == null) {
+                        next = transitions.size();
+                        transitions.add(new TreeMap<>());
+                        outputs.add(new ArrayList<>());
+                        transitions.get(state).put(c, next);
+                    }
+                    state = next;
+                }
+                outputs.get(state).add(entry.getValue());
+            }
+
+            // Breadth-first computation of the failure links, merging the outputs of the failure state.
+            final int stateCount = transitions.size();
+            final int[] failure = new int[stateCount];
+            final Deque<Integer> queue = new ArrayDeque<>();
+            for (int child : transitions.get(0).values()) {
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                final int state = queue.poll();
+                for (Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+                    final char c = transition.getKey();
+                    final int child = transition.getValue();
+
+                    int fallback = failure[state];
+                    while (fallback != 0 && !transitions.get(fallback).containsKey(c)) {
+                        fallback = failure[fallback];
+                    }
+                    final Integer target = transitions.get(fallback).get(c);
+                    failure[child] = target != null && target != child ? target : 0;
+                    outputs.get(child).addAll(outputs.get(failure[child]));
+
+                    queue.add(child);
+                }
+            }
+
+            final char[][] transitionChars = new char[stateCount][];
+            final int[][] transitionTargets = new int[stateCount][];
+            final int[][] stateOutputs = new int[stateCount][];
+            for (int state = 0; state < stateCount; state++) {
+                transitionChars[state] = Chars.toArray(transitions.get(state).keySet());
+                transitionTargets[state] = Ints.toArray(transitions.get(state).values());
+                final List<Integer> output = outputs.get(state);
+                stateOutputs[state] = output.isEmpty() ? NONE : Ints.toArray(output);
+            }
+
+            return new AhoCorasick(patterns.size(), transitionChars, transitionTargets, failure, stateOutputs);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.utilities;
+
+/**
+ * A reusable {@link CharSequence} which aborts a regular expression evaluation on the calling thread once a deadline
+ * has passed, without handing the evaluation off to another thread like {@link InterruptibleCharSequence} requires.
+ *
+ * The clock is only checked every {@value #CHECK_INTERVAL} character accesses to keep the overhead low.
+ *
+ * This class is NOT thread-safe! Use one instance per thread.
+ */
+public class TimeLimitedCharSequence implements CharSequence {
+    private static final int CHECK_INTERVAL = 1024;
+
+    private CharSequence inner = "";
+    private long deadlineNanos;
+    private int accesses;
+
+    /**
+     * Points this instance to a new character sequence.
+     *
+     * @param inner         the wrapped character sequence
+     * @param deadlineNanos the deadline in terms of {@link System#nanoTime()}
+     * @return this instance
+     */
+    public TimeLimitedCharSequence reset(CharSequence inner, long deadlineNanos) {
+        this.inner = inner;
+        this.deadlineNanos = deadlineNanos;
+        this.accesses = 0;
+        return this;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++accesses == CHECK_INTERVAL) {
+            accesses = 0;
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw new TimeLimitExceededException();
+            }
+        }
+        return inner.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return inner.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new TimeLimitedCharSequence().reset(inner.subSequence(start, end), deadlineNanos);
+    }
+
+    @Override
+    public String toString() {
+        return inner.toString();
+    }
+
+    public static class TimeLimitExceededException extends RuntimeException {
+        public TimeLimitExceededException() {
+            super("Time limit exceeded", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchedOutputBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private OutputRouter outputRouter;
+    @Mock
+    private MessageOutput defaultOutput;
+
+    private Configuration configuration;
+
+    @Before
+    public void setUp() throws Exception {
+        configuration = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 3;
+            }
+        };
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+        when(outputRouter.getStreamOutputsForMessage(any(Message.class))).thenReturn(Collections.emptySet());
+        when(defaultOutput.isRunning()).thenReturn(true);
+    }
+
+    private BatchedOutputBufferProcessor processor(int ordinal, int numberOfConsumers) {
+        return new BatchedOutputBufferProcessor(configuration, new MetricRegistry(), serverStatus, outputRouter,
+                defaultOutput, ordinal, numberOfConsumers);
+    }
+
+    private static MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        return event;
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "test", Tools.nowUTC());
+    }
+
+    @Test
+    public void writesOwnMessagesOnceAtEndOfBatch() throws Exception {
+        final BatchedOutputBufferProcessor processor = processor(1, 2);
+        final Message message0 = message("message0");
+        final Message message1 = message("message1");
+        final Message message2 = message("message2");
+        final Message message3 = message("message3");
+
+        processor.onEvent(event(message0), 0L, false);
+        processor.onEvent(event(message1), 1L, false);
+        processor.onEvent(event(message2), 2L, false);
+        verify(defaultOutput, never()).write(anyList());
+
+        processor.onEvent(event(message3), 3L, true);
+        verify(defaultOutput, times(1)).write(ImmutableList.of(message1, message3));
+        verify(defaultOutput, never()).write(any(Message.class));
+    }
+
+    @Test
+    public void writesFullBatchesBeforeEndOfBatch() throws Exception {
+        final BatchedOutputBufferProcessor processor = processor(0, 1);
+        final List<Message> messages = ImmutableList.of(message("message0"), message("message1"), message("message2"));
+
+        for (int i = 0; i < messages.size(); i++) {
+            processor.onEvent(event(messages.get(i)), i, false);
+        }
+
+        verify(defaultOutput, times(1)).write(messages);
+    }
+
+    @Test
+    public void groupsMessagesPerStreamOutput() throws Exception {
+        final MessageOutput streamOutput = mock(MessageOutput.class);
+        when(streamOutput.isRunning()).thenReturn(true);
+        final Message routed = message("routed");
+        final Message notRouted = message("not routed");
+        when(outputRouter.getStreamOutputsForMessage(routed)).thenReturn(ImmutableSet.of(streamOutput));
+
+        final BatchedOutputBufferProcessor processor = processor(0, 1);
+        processor.onEvent(event(routed), 0L, false);
+        processor.onEvent(event(notRouted), 1L, true);
+
+        verify(defaultOutput, times(1)).write(ImmutableList.of(routed, notRouted));
+        verify(streamOutput, times(1)).write(ImmutableList.of(routed));
+    }
+
+    @Test
+    public void fallsBackToSingleMessagesIfOutputDoesNotSupportLists() throws Exception {
+        final MessageOutput singleMessageOutput = mock(SingleMessageOutput.class);
+        when(singleMessageOutput.isRunning()).thenReturn(true);
+        doThrow(UnsupportedOperationException.class).when(singleMessageOutput).write(anyList());
+        final Message message0 = message("message0");
+        final Message message1 = message("message1");
+
+        final BatchedOutputBufferProcessor processor = new BatchedOutputBufferProcessor(configuration,
+                new MetricRegistry(), serverStatus, outputRouter, singleMessageOutput, 0, 1);
+        processor.onEvent(event(message0), 0L, false);
+        processor.onEvent(event(message1), 1L, true);
+
+        verify(singleMessageOutput, times(1)).write(message0);
+        verify(singleMessageOutput, times(1)).write(message1);
+    }
+
+    private interface SingleMessageOutput extends MessageOutput {
+    }
+}
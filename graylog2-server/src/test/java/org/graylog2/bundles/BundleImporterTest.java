@@ -0,0 +1,124 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.bundles;
+
+import org.graylog2.dashboards.DashboardService;
+import org.graylog2.dashboards.widgets.DashboardWidgetCreator;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.grok.GrokPatternService;
+import org.graylog2.grok.GrokPatternsChangedEvent;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.inputs.InputService;
+import org.graylog2.inputs.extractors.ExtractorFactory;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.shared.inputs.InputLauncher;
+import org.graylog2.shared.inputs.InputRegistry;
+import org.graylog2.shared.inputs.MessageInputFactory;
+import org.graylog2.streams.OutputService;
+import org.graylog2.streams.StreamRuleService;
+import org.graylog2.streams.StreamService;
+import org.graylog2.timeranges.TimeRangeFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BundleImporterTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private InputService inputService;
+    @Mock
+    private InputRegistry inputRegistry;
+    @Mock
+    private ExtractorFactory extractorFactory;
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private StreamRuleService streamRuleService;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private OutputService outputService;
+    @Mock
+    private DashboardService dashboardService;
+    @Mock
+    private DashboardWidgetCreator dashboardWidgetCreator;
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private MessageInputFactory messageInputFactory;
+    @Mock
+    private InputLauncher inputLauncher;
+    @Mock
+    private GrokPatternService grokPatternService;
+    @Mock
+    private TimeRangeFactory timeRangeFactory;
+    @Mock
+    private ClusterEventBus clusterBus;
+
+    private BundleImporter bundleImporter;
+
+    @Before
+    public void setUp() throws Exception {
+        when(grokPatternService.save(any(org.graylog2.grok.GrokPattern.class))).then(invocation -> invocation.getArguments()[0]);
+        bundleImporter = new BundleImporter(inputService, inputRegistry, extractorFactory, streamService,
+                streamRuleService, indexSetRegistry, outputService, dashboardService, dashboardWidgetCreator,
+                serverStatus, messageInputFactory, inputLauncher, grokPatternService, timeRangeFactory, clusterBus);
+    }
+
+    @Test
+    public void runImportAnnouncesCreatedGrokPatterns() throws Exception {
+        final ConfigurationBundle bundle = new ConfigurationBundle();
+        bundle.setId("bundle-id");
+        bundle.setGrokPatterns(Collections.singleton(GrokPattern.create("BUNDLE_PATTERN", "\\w+")));
+
+        bundleImporter.runImport(bundle, "admin");
+
+        final ArgumentCaptor<org.graylog2.grok.GrokPattern> grokPatternCaptor = ArgumentCaptor.forClass(org.graylog2.grok.GrokPattern.class);
+        verify(grokPatternService).save(grokPatternCaptor.capture());
+        assertThat(grokPatternCaptor.getValue().name()).isEqualTo("BUNDLE_PATTERN");
+        assertThat(grokPatternCaptor.getValue().contentPack()).isEqualTo("bundle-id");
+
+        final ArgumentCaptor<GrokPatternsChangedEvent> eventCaptor = ArgumentCaptor.forClass(GrokPatternsChangedEvent.class);
+        verify(clusterBus).post(eventCaptor.capture());
+        assertThat(eventCaptor.getValue().deletedPatterns()).isEmpty();
+        assertThat(eventCaptor.getValue().updatedPatterns()).containsExactly("BUNDLE_PATTERN");
+    }
+
+    @Test
+    public void runImportWithoutGrokPatternsDoesNotAnnounceChanges() throws Exception {
+        final ConfigurationBundle bundle = new ConfigurationBundle();
+        bundle.setId("bundle-id");
+
+        bundleImporter.runImport(bundle, "admin");
+
+        verify(clusterBus, never()).post(any());
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.dashboards.widgets;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.dashboards.widgets.ComputationResult;
+import org.graylog2.plugin.dashboards.widgets.WidgetStrategy;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WidgetResultCacheTest {
+    private static final Map<String, Object> CONFIG = ImmutableMap.of("query", "source:example.org");
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private WidgetStrategyFactory widgetStrategyFactory;
+    @Mock
+    private WidgetStrategy widgetStrategy;
+
+    private final AtomicLong time = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return time.get();
+        }
+    };
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private WidgetResultCache widgetResultCache;
+
+    @Before
+    public void setUp() throws Exception {
+        when(widgetStrategyFactory.getWidgetForType(anyString(), anyMap(), any(TimeRange.class), anyString())).thenReturn(widgetStrategy);
+        when(widgetStrategy.compute()).thenAnswer(invocation -> new ComputationResult(time.get(), 0L));
+        widgetResultCache = new WidgetResultCache(new MetricRegistry(), widgetStrategyFactory, 100, tasks::add, ticker);
+    }
+
+    private static DashboardWidget widget(String id, Map<String, Object> config) throws Exception {
+        return new DashboardWidget("SEARCH_RESULT_COUNT", id, RelativeRange.create(300), "description",
+                new WidgetCacheTime(Duration.seconds(10L), 10), config, "admin");
+    }
+
+    @Test
+    public void widgetsWithSameParametersShareResult() throws Exception {
+        final ComputationResult result1 = widgetResultCache.getComputationResultForDashboardWidget(widget("widget-1", CONFIG));
+        final ComputationResult result2 = widgetResultCache.getComputationResultForDashboardWidget(widget("widget-2", ImmutableMap.copyOf(CONFIG)));
+        final ComputationResult result3 = widgetResultCache.getComputationResultForDashboardWidget(widget("widget-3", ImmutableMap.of("query", "*")));
+
+        assertThat(result2).isSameAs(result1);
+        assertThat(result3).isNotSameAs(result1);
+        verify(widgetStrategy, times(2)).compute();
+    }
+
+    @Test
+    public void resultIsRefreshedInBackgroundBeforeExpiry() throws Exception {
+        final DashboardWidget widget = widget("widget-1", CONFIG);
+        final ComputationResult result = widgetResultCache.getComputationResultForDashboardWidget(widget);
+
+        time.set(TimeUnit.SECONDS.toNanos(5L));
+        assertThat(widgetResultCache.getComputationResultForDashboardWidget(widget)).isSameAs(result);
+        assertThat(tasks).isEmpty();
+
+        time.set(TimeUnit.SECONDS.toNanos(8L));
+        assertThat(widgetResultCache.getComputationResultForDashboardWidget(widget)).isSameAs(result);
+        assertThat(widgetResultCache.getComputationResultForDashboardWidget(widget)).isSameAs(result);
+        assertThat(tasks).hasSize(1);
+
+        tasks.poll().run();
+        final ComputationResult refreshed = widgetResultCache.getComputationResultForDashboardWidget(widget);
+        assertThat(refreshed).isNotSameAs(result);
+        assertThat(refreshed.getResult()).isEqualTo(TimeUnit.SECONDS.toNanos(8L));
+        verify(widgetStrategy, times(2)).compute();
+    }
+
+    @Test
+    public void expiredResultIsRecomputed() throws Exception {
+        final DashboardWidget widget = widget("widget-1", CONFIG);
+        final ComputationResult result = widgetResultCache.getComputationResultForDashboardWidget(widget);
+
+        time.set(TimeUnit.SECONDS.toNanos(10L));
+        assertThat(widgetResultCache.getComputationResultForDashboardWidget(widget)).isNotSameAs(result);
+        assertThat(tasks).isEmpty();
+        verify(widgetStrategy, times(2)).compute();
+    }
+
+    @Test
+    public void invalidateRemovesResultOfWidget() throws Exception {
+        final DashboardWidget widget = widget("widget-1", CONFIG);
+        final ComputationResult result = widgetResultCache.getComputationResultForDashboardWidget(widget);
+
+        widgetResultCache.invalidate("widget-1");
+        widgetResultCache.invalidate("unknown");
+
+        assertThat(widgetResultCache.getComputationResultForDashboardWidget(widget)).isNotSameAs(result);
+        verify(widgetStrategy, times(2)).compute();
+    }
+
+    @Test
+    public void invalidateRemovesDeletedWidget() throws Exception {
+        widgetResultCache.getComputationResultForDashboardWidget(widget("widget-1", CONFIG));
+        widgetResultCache.getComputationResultForDashboardWidget(widget("widget-2", CONFIG));
+        assertThat(widgetResultCache.widgetCount()).isEqualTo(2L);
+
+        widgetResultCache.invalidate("widget-1");
+        assertThat(widgetResultCache.widgetCount()).isEqualTo(1L);
+
+        // widgets whose invalidation has been missed expire
+        time.set(TimeUnit.MINUTES.toNanos(10L));
+        assertThat(widgetResultCache.widgetCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void rejectedRefreshDoesNotFailLaterRequests() throws Exception {
+        final WidgetResultCache rejectingCache = new WidgetResultCache(new MetricRegistry(), widgetStrategyFactory, 100,
+                task -> {
+                    throw new RejectedExecutionException();
+                }, ticker);
+        final DashboardWidget widget = widget("widget-1", CONFIG);
+        final ComputationResult result = rejectingCache.getComputationResultForDashboardWidget(widget);
+
+        time.set(TimeUnit.SECONDS.toNanos(8L));
+        assertThat(rejectingCache.getComputationResultForDashboardWidget(widget)).isSameAs(result);
+
+        time.set(TimeUnit.SECONDS.toNanos(10L));
+        final ComputationResult recomputed = rejectingCache.getComputationResultForDashboardWidget(widget);
+        assertThat(recomputed).isNotSameAs(result);
+        assertThat(recomputed.getResult()).isEqualTo(TimeUnit.SECONDS.toNanos(10L));
+        verify(widgetStrategy, times(2)).compute();
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.inputs.Extractor;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExtractorPlanTest {
+    private static final DateTime TIMESTAMP = new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final String[] SOURCE_FIELDS = {"message", "other"};
+    private static final String[] STRING_CONDITIONS = {"a", "ab", "ba", "cc", ""};
+    private static final String[] REGEX_CONDITIONS = {"^a", "b$", "a.c", "(ab|ca)"};
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    public void sharedConditionsAreReevaluatedAfterFieldHasBeenCut() throws Exception {
+        final FirstCharacterExtractor cutA = extractor(0, "message", Extractor.CursorStrategy.CUT, Extractor.ConditionType.STRING, "a");
+        final FirstCharacterExtractor copyA = extractor(1, "message", Extractor.CursorStrategy.COPY, Extractor.ConditionType.STRING, "a");
+        final FirstCharacterExtractor copyB = extractor(2, "message", Extractor.CursorStrategy.COPY, Extractor.ConditionType.STRING, "b");
+        final FirstCharacterExtractor copyRegex = extractor(3, "message", Extractor.CursorStrategy.COPY, Extractor.ConditionType.REGEX, "^b");
+        final FirstCharacterExtractor copyRegexAgain = extractor(4, "message", Extractor.CursorStrategy.COPY, Extractor.ConditionType.REGEX, "^b");
+
+        final Message message = message("ab", "");
+        ExtractorPlan.create(ImmutableList.of(cutA, copyA, copyB, copyRegex, copyRegexAgain)).apply(message);
+
+        assertThat(message.getMessage()).isEqualTo("b");
+        assertThat(message.getField("target0")).isEqualTo("a");
+        assertThat(message.hasField("target1")).isFalse();
+        assertThat(message.getField("target2")).isEqualTo("b");
+        assertThat(message.getField("target3")).isEqualTo("b");
+        assertThat(message.getField("target4")).isEqualTo("b");
+    }
+
+    @Test
+    public void appliesExtractorsLikeRunningThemOneByOne() throws Exception {
+        final Random random = new Random(42L);
+
+        for (int round = 0; round < 500; round++) {
+            final List<Extractor> extractors = new ArrayList<>();
+            final int count = random.nextInt(12);
+            for (int i = 0; i < count; i++) {
+                extractors.add(randomExtractor(random, i));
+            }
+            final ExtractorPlan plan = ExtractorPlan.create(extractors);
+
+            for (int i = 0; i < 20; i++) {
+                final String text = randomText(random);
+                final String other = randomText(random);
+
+                final Message expected = message(text, other);
+                for (Extractor extractor : extractors) {
+                    extractor.runExtractor(expected);
+                }
+
+                final Message actual = message(text, other);
+                plan.apply(actual);
+
+                assertThat(actual.getFields()).isEqualTo(expected.getFields());
+            }
+        }
+    }
+
+    @Test
+    public void emptyPlanDoesNothing() {
+        final Message message = message("text", "other");
+        ExtractorPlan.empty().apply(message);
+
+        assertThat(message.getFields()).isEqualTo(message("text", "other").getFields());
+    }
+
+    private FirstCharacterExtractor randomExtractor(Random random, int order) throws Exception {
+        final String sourceField = SOURCE_FIELDS[random.nextInt(SOURCE_FIELDS.length)];
+        final Extractor.CursorStrategy cursorStrategy = random.nextBoolean() ? Extractor.CursorStrategy.CUT : Extractor.CursorStrategy.COPY;
+        switch (random.nextInt(3)) {
+            case 0:
+                return extractor(order, sourceField, cursorStrategy, Extractor.ConditionType.NONE, null);
+            case 1:
+                return extractor(order, sourceField, cursorStrategy, Extractor.ConditionType.STRING,
+                        STRING_CONDITIONS[random.nextInt(STRING_CONDITIONS.length)]);
+            default:
+                return extractor(order, sourceField, cursorStrategy, Extractor.ConditionType.REGEX,
+                        REGEX_CONDITIONS[random.nextInt(REGEX_CONDITIONS.length)]);
+        }
+    }
+
+    private static String randomText(Random random) {
+        final int length = random.nextInt(8);
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static Message message(String text, String other) {
+        final Message message = new Message(text, "source", TIMESTAMP);
+        message.addField("other", other);
+        return message;
+    }
+
+    private FirstCharacterExtractor extractor(int order,
+                                              String sourceField,
+                                              Extractor.CursorStrategy cursorStrategy,
+                                              Extractor.ConditionType conditionType,
+                                              String conditionValue) throws Exception {
+        return new FirstCharacterExtractor(metricRegistry, "id" + order, order, cursorStrategy, sourceField,
+                "target" + order, conditionType, conditionValue);
+    }
+
+    /**
+     * Extracts the first character of its source field, cutting it from the field with the CUT cursor strategy.
+     */
+    private static class FirstCharacterExtractor extends Extractor {
+        FirstCharacterExtractor(MetricRegistry metricRegistry,
+                                String id,
+                                long order,
+                                CursorStrategy cursorStrategy,
+                                String sourceField,
+                                String targetField,
+                                ConditionType conditionType,
+                                String conditionValue) throws ReservedFieldException {
+            super(metricRegistry, id, "title", order, Type.SUBSTRING, cursorStrategy, sourceField, targetField,
+                    Collections.emptyMap(), "user", Collections.emptyList(), conditionType, conditionValue);
+        }
+
+        @Override
+        protected Result[] run(String field) {
+            if (field.isEmpty()) {
+                return null;
+            }
+            return new Result[]{new Result(field.substring(0, 1), 0, 1)};
+        }
+    }
+}
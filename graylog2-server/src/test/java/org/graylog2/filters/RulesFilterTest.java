@@ -0,0 +1,105 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import org.bson.types.ObjectId;
+import org.graylog2.filters.blacklist.BlacklistFieldEqualityCondition;
+import org.graylog2.filters.blacklist.FilterDescription;
+import org.graylog2.filters.events.FilterDescriptionUpdateEvent;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.RulesEngine;
+import org.graylog2.plugin.Tools;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RulesFilterTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private RulesEngine rulesEngine;
+    @Mock
+    private FilterService filterService;
+    @Mock
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        when(scheduler.submit(any(Runnable.class))).then(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        });
+    }
+
+    @Test
+    public void filterDescriptionsAreFactsOfRulesEngine() throws Exception {
+        final FilterDescription first = filterDescription("first.example.org");
+        final FilterDescription second = filterDescription("second.example.org");
+        when(filterService.loadAll()).thenReturn(ImmutableSet.of(first), ImmutableSet.of(second));
+
+        final RulesFilter filter = new RulesFilter(rulesEngine, filterService, new EventBus(), scheduler, "rules.drl");
+        verify(rulesEngine).insertFact(first);
+
+        filter.handleRulesUpdate(FilterDescriptionUpdateEvent.create("filter-id"));
+
+        final InOrder inOrder = inOrder(rulesEngine);
+        inOrder.verify(rulesEngine).insertFact(second);
+        inOrder.verify(rulesEngine).deleteFact(first);
+        assertThat(filter.filter(message("first.example.org"))).isFalse();
+        assertThat(filter.filter(message("second.example.org"))).isTrue();
+    }
+
+    @Test
+    public void filterDescriptionsAreNotInsertedWithoutRulesFile() throws Exception {
+        final FilterDescription filterDescription = filterDescription("example.org");
+        when(filterService.loadAll()).thenReturn(ImmutableSet.of(filterDescription));
+
+        final RulesFilter filter = new RulesFilter(rulesEngine, filterService, new EventBus(), scheduler, null);
+
+        verify(rulesEngine, never()).insertFact(any());
+        assertThat(filter.filter(message("example.org"))).isTrue();
+        verify(rulesEngine, never()).evaluateInSharedSession(any(Message.class));
+    }
+
+    private static FilterDescription filterDescription(String source) {
+        final BlacklistFieldEqualityCondition filterDescription = new BlacklistFieldEqualityCondition();
+        filterDescription._id = new ObjectId();
+        filterDescription.fieldName = "source";
+        filterDescription.pattern = source;
+        return filterDescription;
+    }
+
+    private static Message message(String source) {
+        return new Message("message", source, Tools.nowUTC());
+    }
+}
@@ -28,11 +28,14 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -75,4 +78,25 @@ public class StaticFieldFilterTest {
         assertEquals("junit", msg.getSource());
         assertEquals("IWILLSURVIVE", msg.getField("foo"));
     }
+
+    @Test
+    @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
+    public void testFilterBatchContinuesAfterFailingMessage() throws Exception {
+        final Message failing = mock(Message.class);
+        when(failing.getSourceInputId()).thenReturn("someid");
+        when(failing.hasField(anyString())).thenThrow(new IllegalStateException("Boom"));
+        final Message msg = new Message("hello", "junit", Tools.nowUTC());
+        msg.setSourceInputId("someid");
+
+        when(input.getId()).thenReturn("someid");
+        when(inputService.all()).thenReturn(Collections.singletonList(input));
+        when(inputService.find(eq("someid"))).thenReturn(input);
+        when(inputService.getStaticFields(eq(input)))
+                .thenReturn(Collections.singletonList(Maps.immutableEntry("foo", "bar")));
+
+        final StaticFieldFilter filter = new StaticFieldFilter(inputService, new EventBus(), Executors.newSingleThreadScheduledExecutor());
+        filter.filter(Arrays.asList(failing, msg));
+
+        assertEquals("bar", msg.getField("foo"));
+    }
 }
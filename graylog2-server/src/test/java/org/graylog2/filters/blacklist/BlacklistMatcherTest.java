@@ -0,0 +1,145 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.filters.blacklist;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlacklistMatcherTest {
+    private static final String[] VALUES = {"foo", "FOO", "Foo bar", "bar", "", "null", "ß", "SS"};
+    private static final String[] PATTERNS = {"foo", "(?i)foo.*", "b.r", "(f)(o)\\2", ".*", "null", "(?x) f o o # comment"};
+
+    @Test
+    public void matchesFieldEqualityIgnoringCase() {
+        final BlacklistMatcher matcher = BlacklistMatcher.create(ImmutableList.of(equality("source", "Example.org")));
+
+        assertThat(matcher.matches(message("example.ORG", null))).isTrue();
+        assertThat(matcher.matches(message("example.org.", null))).isFalse();
+    }
+
+    @Test
+    public void matchesPatternsLikeTheConditions() {
+        final BlacklistMatcher matcher = BlacklistMatcher.create(ImmutableList.of(
+                pattern("message", "(f)(o)\\2"),
+                pattern("message", "ba+r"),
+                pattern("missing", "null")));
+
+        final Message foo = message("source", null);
+        foo.addField("message", "foo");
+        assertThat(matcher.matches(foo)).isTrue();
+
+        final Message baaar = message("source", null);
+        baaar.addField("message", "baaar");
+        assertThat(matcher.matches(baaar)).isTrue();
+
+        // Missing fields are matched as "null"
+        assertThat(BlacklistMatcher.create(ImmutableList.of(pattern("missing", "nul+"))).matches(baaar)).isTrue();
+        assertThat(BlacklistMatcher.create(ImmutableList.of(pattern("message", "fo"))).matches(foo)).isFalse();
+    }
+
+    @Test
+    public void matchesIpRanges() {
+        final BlacklistMatcher matcher = BlacklistMatcher.create(ImmutableList.of(
+                ipRange("192.0.2.0/24"),
+                ipRange("198.51.100.7/32"),
+                ipRange("2001:DB8::/32")));
+
+        assertThat(matcher.matches(message("source", "192.0.2.42"))).isTrue();
+        assertThat(matcher.matches(message("source", "198.51.100.7"))).isTrue();
+        assertThat(matcher.matches(message("source", "2001:db8::42"))).isTrue();
+        assertThat(matcher.matches(message("source", "192.0.3.1"))).isFalse();
+        assertThat(matcher.matches(message("source", "198.51.100.8"))).isFalse();
+        assertThat(matcher.matches(message("source", "2001:db9::1"))).isFalse();
+        assertThat(matcher.matches(message("source", "::1"))).isFalse();
+        assertThat(matcher.matches(message("source", null))).isFalse();
+    }
+
+    @Test
+    public void emptyMatcherMatchesNothing() {
+        assertThat(BlacklistMatcher.empty().matches(message("source", "192.0.2.1"))).isFalse();
+        assertThat(BlacklistMatcher.create(ImmutableList.of()).matches(message("source", "192.0.2.1"))).isFalse();
+    }
+
+    @Test
+    public void matchesLikeTheConditions() {
+        final Random random = new Random(42L);
+        for (int round = 0; round < 200; round++) {
+            final List<FilterDescription> conditions = new ArrayList<>();
+            final int count = random.nextInt(6);
+            for (int i = 0; i < count; i++) {
+                if (random.nextBoolean()) {
+                    conditions.add(equality("message", VALUES[random.nextInt(VALUES.length)]));
+                } else {
+                    conditions.add(pattern("message", PATTERNS[random.nextInt(PATTERNS.length)]));
+                }
+            }
+            final BlacklistMatcher matcher = BlacklistMatcher.create(conditions);
+
+            for (String value : VALUES) {
+                final Message message = message("source", null);
+                message.addField("message", value);
+
+                boolean expected = false;
+                for (FilterDescription condition : conditions) {
+                    if (condition instanceof BlacklistFieldEqualityCondition) {
+                        expected |= ((BlacklistFieldEqualityCondition) condition).matchesFieldStringValue(message.getField("message"));
+                    } else {
+                        expected |= ((BlacklistPatternCondition) condition).matchesPattern(message.getField("message"));
+                    }
+                }
+
+                assertThat(matcher.matches(message)).as("%s on <%s>", conditions, value).isEqualTo(expected);
+            }
+        }
+    }
+
+    private static Message message(String source, String remoteIp) {
+        final Message message = new Message("message", source, Tools.nowUTC());
+        if (remoteIp != null) {
+            message.addField("gl2_remote_ip", remoteIp);
+        }
+        return message;
+    }
+
+    private static BlacklistFieldEqualityCondition equality(String fieldName, String value) {
+        final BlacklistFieldEqualityCondition condition = new BlacklistFieldEqualityCondition();
+        condition.fieldName = fieldName;
+        condition.pattern = value;
+        return condition;
+    }
+
+    private static BlacklistPatternCondition pattern(String fieldName, String regex) {
+        final BlacklistPatternCondition condition = new BlacklistPatternCondition();
+        condition.fieldName = fieldName;
+        condition.setPattern(regex);
+        return condition;
+    }
+
+    private static BlacklistIpMatcherCondition ipRange(String range) {
+        final BlacklistIpMatcherCondition condition = new BlacklistIpMatcherCondition();
+        condition.setPattern(range);
+        return condition;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.graylog2.grok;
 
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import oi.thekraken.grok.api.Grok;
@@ -35,6 +36,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class GrokPatternRegistryTest {
@@ -108,6 +112,49 @@ public class GrokPatternRegistryTest {
         grokPatternRegistry.cachedGrokForPattern("%{EMPTY}", true);
     }
 
+    @Test
+    public void cachedGrokForPatternReturnsSharedInstanceUntilPatternsChanged() throws Exception {
+        final Grok grok = grokPatternRegistry.cachedGrokForPattern("%{TESTNUM}");
+        assertThat(grokPatternRegistry.cachedGrokForPattern("%{TESTNUM}")).isSameAs(grok);
+        assertThat(grokPatternRegistry.cachedGrokForPattern("%{TESTNUM}", true)).isNotSameAs(grok);
+
+        final GrokPattern newPattern = GrokPattern.create("TESTNUM", "[0-9a-f]+");
+        when(grokPatternService.loadAll()).thenReturn(Collections.singleton(newPattern));
+        eventBus.post(GrokPatternsChangedEvent.create(Collections.emptySet(), Collections.singleton("TESTNUM")));
+
+        final Grok newGrok = grokPatternRegistry.cachedGrokForPattern("%{TESTNUM}");
+        assertThat(newGrok).isNotSameAs(grok);
+        assertThat(newGrok.getPatterns()).containsEntry(newPattern.name(), newPattern.pattern());
+    }
+
+    @Test
+    public void cachedGrokForPatternUsesStoredPatternsBeforeChangeEventArrived() throws Exception {
+        final GrokPattern newPattern = GrokPattern.create("NEW_PATTERN", "\\w+");
+        when(grokPatternService.loadAll()).thenReturn(Sets.newHashSet(GROK_PATTERN, newPattern));
+
+        final Grok grok = grokPatternRegistry.cachedGrokForPattern("%{NEW_PATTERN}");
+
+        assertThat(grok.getPatterns()).containsEntry(newPattern.name(), newPattern.pattern());
+        assertThat(grokPatternRegistry.patterns()).containsOnly(GROK_PATTERN, newPattern);
+        // cached for the loaded patterns
+        assertThat(grokPatternRegistry.cachedGrokForPattern("%{NEW_PATTERN}")).isSameAs(grok);
+        verify(grokPatternService, times(2)).loadAll();
+    }
+
+    @Test
+    public void cachedGrokForPatternComparesStoredPatternsOncePerVersion() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                grokPatternRegistry.cachedGrokForPattern("%{MISSING}");
+                fail("Pattern shouldn't compile without MISSING");
+            } catch (RuntimeException ignored) {
+                // expected
+            }
+        }
+
+        verify(grokPatternService, times(2)).loadAll();
+    }
+
     @Test
     public void patterns() throws Exception {
         assertThat(grokPatternRegistry.patterns()).isEqualTo(GROK_PATTERNS);
@@ -249,7 +249,7 @@ public class MongoIndexSetTest {
     }
 
     @Test
-    public void cycleAddsUnknownDeflectorRange() {
+    public void cycleAddsLiveDeflectorRange() {
         final String newIndexName = "graylog_1";
         final Map<String, Set<String>> indexNameAliases = ImmutableMap.of(
                 "graylog_0", Collections.singleton("graylog_deflector"));
@@ -261,7 +261,7 @@ public class MongoIndexSetTest {
         final MongoIndexSet mongoIndexSet = new MongoIndexSet(config, indices, nodeId, indexRangeService, auditEventSender, systemJobManager, jobFactory, activityWriter);
         mongoIndexSet.cycle();
 
-        verify(indexRangeService, times(1)).createUnknownRange(newIndexName);
+        verify(indexRangeService, times(1)).createLiveRange(newIndexName);
     }
 
     @Test
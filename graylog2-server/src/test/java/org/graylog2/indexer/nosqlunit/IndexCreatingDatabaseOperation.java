@@ -28,6 +28,7 @@ import org.graylog2.indexer.IndexMapping;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.messages.Messages;
+import org.graylog2.indexer.ranges.WriteIndexRangeTracker;
 import org.graylog2.plugin.system.NodeId;
 
 import java.io.InputStream;
@@ -61,7 +62,7 @@ public class IndexCreatingDatabaseOperation implements DatabaseOperation<Client>
                 client.admin().indices().prepareDelete(index).execute().actionGet();
             }
 
-            final Messages messages = new Messages(client, new MetricRegistry());
+            final Messages messages = new Messages(client, new MetricRegistry(), mock(WriteIndexRangeTracker.class));
             final Indices indices = new Indices(client, new IndexMapping(), messages, mock(NodeId.class), new NullAuditEventSender());
 
             if (!indices.create(index, indexSet)) {
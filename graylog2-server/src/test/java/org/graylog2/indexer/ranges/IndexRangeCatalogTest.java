@@ -0,0 +1,120 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexRangeCatalogTest {
+    private static IndexRange indexRange(String indexName, long begin, long end) {
+        return MongoIndexRange.create(indexName, new DateTime(begin, DateTimeZone.UTC), new DateTime(end, DateTimeZone.UTC),
+                new DateTime(0L, DateTimeZone.UTC), 0);
+    }
+
+    private static DateTime date(long millis) {
+        return new DateTime(millis, DateTimeZone.UTC);
+    }
+
+    @Test
+    public void findReturnsOverlappingAndUnknownRanges() {
+        final IndexRange first = indexRange("graylog_0", 1000L, 2000L);
+        final IndexRange second = indexRange("graylog_1", 2000L, 3000L);
+        final IndexRange third = indexRange("graylog_2", 3001L, 4000L);
+        final IndexRange unknown = indexRange("graylog_3", 0L, 0L);
+        final IndexRangeCatalog catalog = new IndexRangeCatalog(() -> Arrays.asList(first, second, third, unknown));
+
+        assertThat(catalog.find(date(2000L), date(2500L))).containsExactly(unknown, first, second);
+        assertThat(catalog.find(date(3500L), date(5000L))).containsExactly(unknown, third);
+        assertThat(catalog.find(date(5000L), date(6000L))).containsExactly(unknown);
+    }
+
+    @Test
+    public void findReturnsLiveRangesForTimeRangesEndingAfterTheirBegin() {
+        final IndexRange first = indexRange("graylog_0", 1000L, 2000L);
+        final IndexRange live = MongoIndexRange.create("graylog_1", date(2500L), date(3000L), date(3000L),
+                IndexRange.LIVE_RANGE_CALCULATION_DURATION);
+        final IndexRangeCatalog catalog = new IndexRangeCatalog(() -> Arrays.asList(first, live));
+
+        assertThat(catalog.find(date(1000L), date(2000L))).containsExactly(first);
+        assertThat(catalog.find(date(1500L), date(2500L))).containsExactly(first, live);
+        assertThat(catalog.find(date(5000L), date(6000L))).containsExactly(live);
+    }
+
+    @Test
+    public void changesAreVisibleToLookups() {
+        final IndexRange indexRange = indexRange("graylog_0", 1000L, 2000L);
+        final IndexRangeCatalog catalog = new IndexRangeCatalog(() -> Collections.singletonList(indexRange));
+        assertThat(catalog.find(date(1500L), date(1500L))).containsExactly(indexRange);
+
+        final IndexRange recalculated = indexRange("graylog_0", 1000L, 5000L);
+        catalog.put(recalculated);
+        assertThat(catalog.find(date(4000L), date(4500L))).containsExactly(recalculated);
+
+        catalog.refresh("graylog_0", () -> null);
+        assertThat(catalog.find(date(1500L), date(1500L))).isEmpty();
+
+        catalog.refresh("graylog_0", () -> indexRange);
+        assertThat(catalog.find(date(1500L), date(1500L))).containsExactly(indexRange);
+
+        catalog.remove("graylog_0");
+        assertThat(catalog.find(date(1500L), date(1500L))).isEmpty();
+    }
+
+    @Test
+    public void changesBeforeTheFirstLookupAreLeftToTheInitialLoad() {
+        final IndexRange indexRange = indexRange("graylog_0", 1000L, 2000L);
+        final IndexRangeCatalog catalog = new IndexRangeCatalog(Collections::emptyList);
+
+        catalog.put(indexRange);
+        assertThat(catalog.find(date(0L), date(5000L))).isEmpty();
+    }
+
+    @Test
+    public void findMatchesLinearScan() {
+        final Random random = new Random(42L);
+        final List<IndexRange> indexRanges = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            final long begin = 1L + random.nextInt(100_000);
+            indexRanges.add(indexRange("graylog_" + i, begin, begin + random.nextInt(5_000)));
+        }
+        final IndexRangeCatalog catalog = new IndexRangeCatalog(() -> indexRanges);
+
+        for (int i = 0; i < 1000; i++) {
+            final long from = random.nextInt(110_000);
+            final long to = from + random.nextInt(10_000);
+
+            final SortedSet<IndexRange> expected = new TreeSet<>(IndexRange.COMPARATOR);
+            for (IndexRange indexRange : indexRanges) {
+                if (indexRange.begin().getMillis() <= to && indexRange.end().getMillis() >= from) {
+                    expected.add(indexRange);
+                }
+            }
+            assertThat(catalog.find(date(from), date(to))).containsExactlyElementsOf(expected);
+        }
+    }
+}
@@ -29,10 +29,12 @@ import org.graylog2.audit.NullAuditEventSender;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoConnectionRule;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.esplugin.IndicesClosedEvent;
 import org.graylog2.indexer.esplugin.IndicesDeletedEvent;
 import org.graylog2.indexer.esplugin.IndicesReopenedEvent;
 import org.graylog2.indexer.indices.Indices;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.system.NodeId;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
@@ -53,6 +55,8 @@ import java.util.SortedSet;
 import static com.lordofthejars.nosqlunit.mongodb.InMemoryMongoDb.InMemoryMongoRuleBuilder.newInMemoryMongoDbRule;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -74,7 +78,7 @@ public class MongoIndexRangeServiceTest {
     @Before
     public void setUp() throws Exception {
         localEventBus = new EventBus("local-event-bus");
-        indexRangeService = new MongoIndexRangeService(mongoRule.getMongoConnection(), objectMapperProvider, indices, new NullAuditEventSender(), mock(NodeId.class), localEventBus);
+        indexRangeService = new MongoIndexRangeService(mongoRule.getMongoConnection(), objectMapperProvider, indices, new NullAuditEventSender(), mock(NodeId.class), localEventBus, new ClusterEventBus());
     }
 
     @Test
@@ -274,4 +278,121 @@ public class MongoIndexRangeServiceTest {
         assertThat(indexRanges.first().begin()).isEqualTo(begin);
         assertThat(indexRanges.first().end()).isEqualTo(end);
     }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void findIgnoresDeletedAndClosedIndices() throws Exception {
+        final DateTime begin = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2015, 1, 3, 0, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.find(begin, end)).hasSize(2);
+
+        localEventBus.post(IndicesDeletedEvent.create(Collections.singleton("graylog_1")));
+        assertThat(indexRangeService.find(begin, end))
+                .extracting(IndexRange::indexName)
+                .containsExactly("graylog_2");
+
+        localEventBus.post(IndicesClosedEvent.create(Collections.singleton("graylog_2")));
+        assertThat(indexRangeService.find(begin, end)).isEmpty();
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void findReturnsIndexRangesSavedByOtherNodes() throws Exception {
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 2, 0, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.find(begin, end)).isEmpty();
+
+        final MongoIndexRangeService otherIndexRangeService = new MongoIndexRangeService(mongoRule.getMongoConnection(),
+                objectMapperProvider, indices, new NullAuditEventSender(), mock(NodeId.class), new EventBus(), new ClusterEventBus());
+        otherIndexRangeService.save(MongoIndexRange.create("graylog_3", begin, end, DateTime.now(DateTimeZone.UTC), 42));
+        assertThat(indexRangeService.find(begin, end)).isEmpty();
+
+        localEventBus.post(IndexRangesUpdatedEvent.create("graylog_3"));
+        assertThat(indexRangeService.find(begin, end))
+                .extracting(IndexRange::indexName)
+                .containsExactly("graylog_3");
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void extendLiveRangeExtendsLiveRangeOfNewIndex() throws Exception {
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 2, 0, 0, DateTimeZone.UTC);
+        indexRangeService.save(MongoIndexRange.create("graylog_live", begin, begin, begin,
+                IndexRange.LIVE_RANGE_CALCULATION_DURATION, Collections.emptyList()));
+
+        indexRangeService.extendLiveRange("graylog_live", begin.minusHours(1), end, Collections.singleton("stream-id"));
+
+        final IndexRange result = indexRangeService.get("graylog_live");
+        assertThat(result.begin()).isEqualTo(begin.minusHours(1));
+        assertThat(result.end()).isEqualTo(end);
+        assertThat(result.streamIds()).containsExactly("stream-id");
+        assertThat(result.calculationDuration()).isEqualTo(IndexRange.LIVE_RANGE_CALCULATION_DURATION);
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void extendLiveRangeKeepsUnknownRangeOfWriteIndexWithExistingMessages() throws Exception {
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 2, 0, 0, DateTimeZone.UTC);
+        // The write index existed before its range was tracked and already contains older messages.
+        indexRangeService.save(indexRangeService.createUnknownRange("graylog_existing"));
+
+        indexRangeService.extendLiveRange("graylog_existing", begin, end, Collections.singleton("stream-id"));
+
+        final IndexRange result = indexRangeService.get("graylog_existing");
+        assertThat(result.begin()).isEqualTo(new DateTime(0L, DateTimeZone.UTC));
+        assertThat(result.end()).isEqualTo(new DateTime(0L, DateTimeZone.UTC));
+        assertThat(result.calculationDuration()).isNotEqualTo(IndexRange.LIVE_RANGE_CALCULATION_DURATION);
+        assertThat(indexRangeService.find(begin.minusYears(1), begin.minusYears(1)))
+                .extracting(IndexRange::indexName)
+                .containsExactly("graylog_existing");
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void extendLiveRangeExtendsTrackedRangeOfFormerWriteIndex() throws Exception {
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 2, 0, 0, DateTimeZone.UTC);
+        indexRangeService.save(MongoIndexRange.create("graylog_tracked", begin, end, end,
+                IndexRange.TRACKED_RANGE_CALCULATION_DURATION, Collections.singletonList("stream-id")));
+
+        // a late update of another node after the index has been rotated
+        indexRangeService.extendLiveRange("graylog_tracked", end, end.plusHours(1), Collections.singleton("stream-id"));
+
+        final IndexRange result = indexRangeService.get("graylog_tracked");
+        assertThat(result.begin()).isEqualTo(begin);
+        assertThat(result.end()).isEqualTo(end.plusHours(1));
+        assertThat(result.calculationDuration()).isEqualTo(IndexRange.TRACKED_RANGE_CALCULATION_DURATION);
+        assertThat(indexRangeService.find(end.plusMinutes(30), end.plusMinutes(30)))
+                .extracting(IndexRange::indexName)
+                .containsExactly("graylog_tracked");
+    }
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void extendLiveRangeAnnouncesOnlyChangesOfBeginAndStreams() throws Exception {
+        final ClusterEventBus clusterEventBus = mock(ClusterEventBus.class);
+        final MongoIndexRangeService service = new MongoIndexRangeService(mongoRule.getMongoConnection(),
+                objectMapperProvider, indices, new NullAuditEventSender(), mock(NodeId.class), new EventBus(), clusterEventBus);
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        service.save(MongoIndexRange.create("graylog_live", begin, begin, begin,
+                IndexRange.LIVE_RANGE_CALCULATION_DURATION, Collections.singletonList("stream-id")));
+        verify(clusterEventBus, times(1)).post(IndexRangesUpdatedEvent.create("graylog_live"));
+
+        // searches include live ranges regardless of their end
+        service.extendLiveRange("graylog_live", begin, begin.plusHours(1), Collections.singleton("stream-id"));
+        verify(clusterEventBus, times(1)).post(IndexRangesUpdatedEvent.create("graylog_live"));
+
+        service.extendLiveRange("graylog_live", begin.minusHours(1), begin, Collections.singleton("stream-id"));
+        verify(clusterEventBus, times(2)).post(IndexRangesUpdatedEvent.create("graylog_live"));
+
+        service.extendLiveRange("graylog_live", begin, begin, Collections.singleton("other-stream-id"));
+        verify(clusterEventBus, times(3)).post(IndexRangesUpdatedEvent.create("graylog_live"));
+
+        final IndexRange result = service.get("graylog_live");
+        assertThat(result.begin()).isEqualTo(begin.minusHours(1));
+        assertThat(result.end()).isEqualTo(begin.plusHours(1));
+        assertThat(result.streamIds()).containsOnly("stream-id", "other-stream-id");
+    }
 }
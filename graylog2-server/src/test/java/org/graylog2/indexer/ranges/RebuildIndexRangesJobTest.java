@@ -0,0 +1,141 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.shared.system.activities.ActivityWriter;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RebuildIndexRangesJobTest {
+    private static final DateTime EPOCH = new DateTime(0L, DateTimeZone.UTC);
+    private static final DateTime BEGIN = new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final DateTime END = new DateTime(2017, 1, 2, 0, 0, DateTimeZone.UTC);
+
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private IndexSet indexSet;
+    @Mock
+    private IndexSetConfig indexSetConfig;
+    @Mock
+    private ActivityWriter activityWriter;
+    @Mock
+    private IndexRangeService indexRangeService;
+    @Mock
+    private ClusterConfigService clusterConfigService;
+
+    private RebuildIndexRangesJob job;
+
+    @Before
+    public void setUp() throws Exception {
+        when(indexSetRegistry.getAllIndexSets()).thenReturn(ImmutableSet.of(indexSet));
+        when(indexSet.getManagedIndicesNames()).thenReturn(new String[]{"graylog_0", "graylog_1", "graylog_2", "graylog_3"});
+        when(indexSet.getCurrentActualTargetIndex()).thenReturn("graylog_3");
+        when(indexSet.getWriteIndexWildcard()).thenReturn("graylog_*");
+        when(indexSet.getConfig()).thenReturn(indexSetConfig);
+        when(indexSetConfig.title()).thenReturn("Default");
+        when(indexSetConfig.id()).thenReturn("index-set-id");
+        when(indexRangeService.get("graylog_3")).thenThrow(new NotFoundException());
+        when(indexRangeService.createUnknownRange("graylog_3")).thenReturn(MongoIndexRange.create("graylog_3", EPOCH, EPOCH, END, 0));
+        when(indexRangeService.calculateRange(anyString())).thenAnswer(invocation ->
+                MongoIndexRange.create((String) invocation.getArguments()[0], BEGIN, END, DateTime.now(DateTimeZone.UTC), 1));
+
+        job = new RebuildIndexRangesJob(indexSetRegistry, activityWriter, indexRangeService, clusterConfigService, 2);
+    }
+
+    @Test
+    public void rangesOfAllIndicesExceptWriteIndexAreCalculated() {
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.of(IndexRange.COMPARATOR,
+                MongoIndexRange.create("graylog_0", BEGIN, END, END, 1),
+                MongoIndexRange.create("graylog_1", EPOCH, EPOCH, END, 0)));
+
+        job.execute();
+
+        verify(indexRangeService).calculateRange("graylog_0");
+        verify(indexRangeService).calculateRange("graylog_1");
+        verify(indexRangeService).calculateRange("graylog_2");
+        verify(indexRangeService, never()).calculateRange("graylog_3");
+        verify(indexRangeService).save(MongoIndexRange.create("graylog_3", EPOCH, EPOCH, END, 0));
+        verify(clusterConfigService).remove(IndexRangesRebuildProgress.class);
+        assertThat(job.getProgress()).isEqualTo(100);
+        assertThat(job.getInfo()).startsWith("Calculated 4 of 4 index ranges (0 up to date)");
+    }
+
+    @Test
+    public void interruptedRebuildIsResumed() {
+        final DateTime startedAt = new DateTime(2017, 2, 1, 0, 0, DateTimeZone.UTC);
+        when(clusterConfigService.get(IndexRangesRebuildProgress.class))
+                .thenReturn(IndexRangesRebuildProgress.create(startedAt, ImmutableSet.of("index-set-id"), 4, 1));
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.of(IndexRange.COMPARATOR,
+                MongoIndexRange.create("graylog_0", BEGIN, END, startedAt.plusMinutes(1), 1),
+                MongoIndexRange.create("graylog_1", BEGIN, END, startedAt.minusMinutes(1), 1)));
+
+        job.execute();
+
+        verify(clusterConfigService).write(IndexRangesRebuildProgress.create(startedAt, ImmutableSet.of("index-set-id"), 4, 0));
+        verify(indexRangeService, never()).calculateRange("graylog_0");
+        verify(indexRangeService).calculateRange("graylog_1");
+        verify(indexRangeService).calculateRange("graylog_2");
+        verify(clusterConfigService).remove(IndexRangesRebuildProgress.class);
+    }
+
+    @Test
+    public void interruptedRebuildOfOtherIndexSetsIsKept() {
+        final DateTime startedAt = new DateTime(2017, 2, 1, 0, 0, DateTimeZone.UTC);
+        when(clusterConfigService.get(IndexRangesRebuildProgress.class))
+                .thenReturn(IndexRangesRebuildProgress.create(startedAt, ImmutableSet.of("index-set-id", "other-id"), 8, 1));
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.of(IndexRange.COMPARATOR,
+                MongoIndexRange.create("graylog_0", BEGIN, END, startedAt.plusMinutes(1), 1)));
+
+        job.execute();
+
+        verify(indexRangeService).calculateRange("graylog_0");
+        verify(clusterConfigService, never()).write(any(IndexRangesRebuildProgress.class));
+        verify(clusterConfigService, never()).remove(IndexRangesRebuildProgress.class);
+    }
+
+    @Test
+    public void cancelledRebuildDoesNotCalculateRanges() {
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.of(IndexRange.COMPARATOR));
+        job.requestCancel();
+
+        job.execute();
+
+        verify(indexRangeService, never()).calculateRange(anyString());
+        verify(clusterConfigService).remove(IndexRangesRebuildProgress.class);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.plugin.Message;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WriteIndexRangeTrackerTest {
+    private static final DateTime NOW = new DateTime(2017, 1, 1, 12, 0, DateTimeZone.UTC);
+
+    @Mock
+    private IndexRangeService indexRangeService;
+    @Mock
+    private IndexSet indexSet;
+
+    private WriteIndexRangeTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new WriteIndexRangeTracker(() -> indexRangeService);
+    }
+
+    @Test
+    public void publishExtendsLiveRangesByIndexedMessages() {
+        final List<Map.Entry<IndexSet, Message>> messages = ImmutableList.of(
+                message(NOW.minusMinutes(1)),
+                message(NOW.plusMinutes(1)),
+                message(NOW.minusMinutes(5)),
+                message(NOW));
+        final BulkItemResponse[] items = {
+                item(0, "graylog_0", false),
+                item(1, "graylog_0", false),
+                item(2, "graylog_0", true),
+                item(3, "graylog_1", false)
+        };
+
+        tracker.track(items, messages, NOW);
+        tracker.publish();
+
+        verify(indexRangeService).extendLiveRange("graylog_0", NOW.minusMinutes(1), NOW.plusMinutes(1), ImmutableSet.of());
+        verify(indexRangeService).extendLiveRange("graylog_1", NOW, NOW, ImmutableSet.of());
+
+        // Published ranges are not published again.
+        tracker.publish();
+        verify(indexRangeService).extendLiveRange(anyString(), any(DateTime.class), any(DateTime.class), anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void finalizeRangeSavesLiveRange() throws Exception {
+        final IndexRange liveRange = MongoIndexRange.create("graylog_0", NOW.minusHours(1), NOW, NOW,
+                IndexRange.LIVE_RANGE_CALCULATION_DURATION, ImmutableList.of("stream-id"));
+        when(indexRangeService.get("graylog_0")).thenReturn(liveRange);
+
+        assertThat(tracker.finalizeRange("graylog_0")).isTrue();
+
+        final ArgumentCaptor<IndexRange> captor = ArgumentCaptor.forClass(IndexRange.class);
+        verify(indexRangeService).save(captor.capture());
+        assertThat(captor.getValue().indexName()).isEqualTo("graylog_0");
+        assertThat(captor.getValue().begin()).isEqualTo(NOW.minusHours(1));
+        assertThat(captor.getValue().end()).isEqualTo(NOW);
+        assertThat(captor.getValue().streamIds()).containsExactly("stream-id");
+        assertThat(captor.getValue().calculationDuration()).isEqualTo(IndexRange.TRACKED_RANGE_CALCULATION_DURATION);
+    }
+
+    @Test
+    public void finalizeRangeIgnoresCalculatedAndMissingRanges() throws Exception {
+        when(indexRangeService.get("graylog_0")).thenReturn(MongoIndexRange.create("graylog_0", NOW.minusHours(1), NOW, NOW, 10));
+        when(indexRangeService.get("graylog_1")).thenThrow(new NotFoundException());
+
+        assertThat(tracker.finalizeRange("graylog_0")).isFalse();
+        assertThat(tracker.finalizeRange("graylog_1")).isFalse();
+        verify(indexRangeService, never()).save(any(IndexRange.class));
+    }
+
+    @Test
+    public void finalizeRangeIgnoresUnknownRangeOfWriteIndexWithExistingMessages() throws Exception {
+        final IndexRange unknownRange = MongoIndexRange.create("graylog_0", new DateTime(0L, DateTimeZone.UTC),
+                new DateTime(0L, DateTimeZone.UTC), NOW, 0);
+        when(indexRangeService.get("graylog_0")).thenReturn(unknownRange);
+
+        tracker.track(new BulkItemResponse[]{item(0, "graylog_0", false)}, ImmutableList.of(message(NOW)), NOW);
+
+        // The range has to be calculated, because the index contains messages which haven't been tracked.
+        assertThat(tracker.finalizeRange("graylog_0")).isFalse();
+        verify(indexRangeService, never()).save(any(IndexRange.class));
+    }
+
+    private Map.Entry<IndexSet, Message> message(DateTime timestamp) {
+        return Maps.immutableEntry(indexSet, new Message("message", "source", timestamp));
+    }
+
+    private static BulkItemResponse item(int itemId, String index, boolean failed) {
+        final BulkItemResponse item = mock(BulkItemResponse.class);
+        when(item.getItemId()).thenReturn(itemId);
+        when(item.getIndex()).thenReturn(index);
+        when(item.isFailed()).thenReturn(failed);
+        return item;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.results;
+
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScrollResultTest {
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(Client.class);
+    }
+
+    @Test
+    public void nextChunkPrefetchesNextChunkUntilAllHitsHaveBeenFetched() throws Exception {
+        final ListenableActionFuture<SearchResponse> secondChunk = scroll("scroll-1", response("scroll-2", 4L, 2));
+        final ListenableActionFuture<SearchResponse> end = scroll("scroll-2", response("scroll-3", 4L, 0));
+        final ScrollResult scrollResult = new ScrollResult(client, "*", null, response("scroll-1", 4L, 2), ImmutableList.of("message"));
+
+        final ScrollResult.ScrollChunk first = scrollResult.nextChunk();
+        assertThat(first.isFirstChunk()).isTrue();
+        assertThat(first.size()).isEqualTo(2);
+        // the second chunk has been requested, but nobody waited for it yet
+        verify(client).prepareSearchScroll("scroll-1");
+        verify(secondChunk, never()).actionGet();
+
+        final ScrollResult.ScrollChunk second = scrollResult.nextChunk();
+        assertThat(second.getChunkNumber()).isEqualTo(1);
+        assertThat(second.size()).isEqualTo(2);
+        verify(secondChunk).actionGet();
+        // all hits have been fetched, so there is nothing to prefetch
+        verify(client, never()).prepareSearchScroll("scroll-2");
+
+        assertThat(scrollResult.nextChunk()).isNull();
+        verify(end).actionGet();
+    }
+
+    @Test
+    public void nextChunkDoesNotPrefetchIfFirstResponseContainsAllHits() throws Exception {
+        final ScrollResult scrollResult = new ScrollResult(client, "*", null, response("scroll-1", 2L, 2), ImmutableList.of("message"));
+
+        assertThat(scrollResult.nextChunk().size()).isEqualTo(2);
+
+        verify(client, never()).prepareSearchScroll(anyString());
+    }
+
+    @Test
+    public void cancelClearsScrollAndDropsPrefetchedChunk() throws Exception {
+        final ListenableActionFuture<SearchResponse> secondChunk = scroll("scroll-1", response("scroll-2", 4L, 2));
+        final ClearScrollRequestBuilder clearScrollRequestBuilder = clearScroll();
+        final ScrollResult scrollResult = new ScrollResult(client, "*", null, response("scroll-1", 4L, 2), ImmutableList.of("message"));
+
+        scrollResult.nextChunk();
+        scrollResult.cancel();
+
+        verify(clearScrollRequestBuilder).addScrollId("scroll-1");
+        verify(clearScrollRequestBuilder, times(1)).execute();
+        verify(secondChunk, never()).actionGet();
+    }
+
+    private SearchResponse response(String scrollId, long totalHits, int hitCount) {
+        final SearchHit[] hits = new SearchHit[hitCount];
+        for (int i = 0; i < hitCount; i++) {
+            hits[i] = mock(SearchHit.class);
+        }
+        final SearchHits searchHits = mock(SearchHits.class);
+        when(searchHits.totalHits()).thenReturn(totalHits);
+        when(searchHits.getHits()).thenReturn(hits);
+
+        final SearchResponse response = mock(SearchResponse.class);
+        when(response.getTook()).thenReturn(TimeValue.timeValueMillis(1L));
+        when(response.getHits()).thenReturn(searchHits);
+        when(response.getScrollId()).thenReturn(scrollId);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ListenableActionFuture<SearchResponse> scroll(String scrollId, SearchResponse response) {
+        final ListenableActionFuture<SearchResponse> future = mock(ListenableActionFuture.class);
+        when(future.actionGet()).thenReturn(response);
+
+        final SearchScrollRequestBuilder requestBuilder = mock(SearchScrollRequestBuilder.class);
+        when(requestBuilder.setScroll(any(TimeValue.class))).thenReturn(requestBuilder);
+        when(requestBuilder.execute()).thenReturn(future);
+        when(client.prepareSearchScroll(scrollId)).thenReturn(requestBuilder);
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ClearScrollRequestBuilder clearScroll() {
+        final ListenableActionFuture<ClearScrollResponse> future = mock(ListenableActionFuture.class);
+        when(future.actionGet()).thenReturn(mock(ClearScrollResponse.class));
+
+        final ClearScrollRequestBuilder requestBuilder = mock(ClearScrollRequestBuilder.class);
+        when(requestBuilder.addScrollId(anyString())).thenReturn(requestBuilder);
+        when(requestBuilder.execute()).thenReturn(future);
+        when(client.prepareClearScroll()).thenReturn(requestBuilder);
+        return requestBuilder;
+    }
+}
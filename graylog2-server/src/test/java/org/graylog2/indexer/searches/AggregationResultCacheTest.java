@@ -0,0 +1,108 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.indexer.searches;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.indexer.indices.Indices;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.when;
+
+public class AggregationResultCacheTest {
+    private static final TimeRange RANGE = AbsoluteRange.create(
+            new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC),
+            new DateTime(2017, 1, 2, 0, 0, DateTimeZone.UTC));
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private Indices indices;
+
+    private AggregationResultCache cache;
+
+    @Before
+    public void setUp() {
+        when(indices.getReadOnlyIndices(anyCollection())).thenReturn(ImmutableSet.of("graylog_0", "graylog_1"));
+        cache = new AggregationResultCache(indices, 10, new MetricRegistry(), new EventBus());
+    }
+
+    @Test
+    public void getCachesResultOfReadOnlyIndices() {
+        final AtomicInteger searches = new AtomicInteger();
+
+        assertThat(get(ImmutableSet.of("graylog_0"), searches::incrementAndGet)).isEqualTo(1);
+        assertThat(get(ImmutableSet.of("graylog_0"), searches::incrementAndGet)).isEqualTo(1);
+    }
+
+    @Test
+    public void getDoesNotCacheResultOfWritableIndices() {
+        final AtomicInteger searches = new AtomicInteger();
+
+        assertThat(get(ImmutableSet.of("graylog_2"), searches::incrementAndGet)).isEqualTo(1);
+        assertThat(get(ImmutableSet.of("graylog_2"), searches::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    public void getCachesResultIfOtherIndicesAreInvalidatedDuringSearch() {
+        // the read-only state of the index is already known
+        cache.get("terms", "source:example.org", null, RANGE, ImmutableSet.of("graylog_0"), Collections.emptyList(), () -> 0);
+        final AtomicInteger searches = new AtomicInteger();
+
+        get(ImmutableSet.of("graylog_0"), () -> {
+            cache.invalidate(Collections.singleton("graylog_1"));
+            return searches.incrementAndGet();
+        });
+
+        assertThat(get(ImmutableSet.of("graylog_0"), searches::incrementAndGet)).isEqualTo(1);
+    }
+
+    @Test
+    public void getDoesNotCacheResultIfAffectedIndexIsInvalidatedDuringSearch() {
+        cache.get("terms", "source:example.org", null, RANGE, ImmutableSet.of("graylog_1"), Collections.emptyList(), () -> 0);
+        final AtomicInteger searches = new AtomicInteger();
+
+        get(ImmutableSet.of("graylog_0", "graylog_1"), () -> {
+            cache.invalidate(Collections.singleton("graylog_1"));
+            return searches.incrementAndGet();
+        });
+
+        assertThat(get(ImmutableSet.of("graylog_0", "graylog_1"), searches::incrementAndGet)).isEqualTo(2);
+    }
+
+    private Integer get(Set<String> affectedIndices, Supplier<Integer> search) {
+        return cache.get("terms", "*", null, RANGE, affectedIndices, Collections.emptyList(), search);
+    }
+}
@@ -17,6 +17,7 @@
 package org.graylog2.indexer.searches;
 
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
@@ -33,11 +34,13 @@ import org.graylog2.indexer.IndexHelper;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.TestIndexSet;
 import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.nosqlunit.IndexCreatingLoadStrategyFactory;
 import org.graylog2.indexer.ranges.IndexRange;
 import org.graylog2.indexer.ranges.IndexRangeComparator;
 import org.graylog2.indexer.ranges.IndexRangeService;
 import org.graylog2.indexer.ranges.MongoIndexRange;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.results.CountResult;
 import org.graylog2.indexer.results.FieldStatsResult;
 import org.graylog2.indexer.results.HistogramResult;
@@ -54,6 +57,7 @@ import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
 import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.streams.StreamService;
+import org.graylog2.streams.events.StreamsChangedEvent;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
@@ -80,6 +84,8 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -136,7 +142,11 @@ public class SearchesTest {
     @Mock
     private StreamService streamService;
 
+    @Mock
+    private Indices indices;
+
     private MetricRegistry metricRegistry;
+    private EventBus serverEventBus;
     private Searches searches;
 
     @Inject
@@ -166,7 +176,9 @@ public class SearchesTest {
     public void setUp() throws Exception {
         when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(INDEX_RANGES);
         metricRegistry = new MetricRegistry();
-        searches = new Searches(new Configuration(), indexRangeService, client, metricRegistry, streamService);
+        serverEventBus = new EventBus();
+        final AggregationResultCache aggregationResultCache = new AggregationResultCache(indices, 100, metricRegistry, serverEventBus);
+        searches = new Searches(new Configuration(), indexRangeService, client, metricRegistry, streamService, aggregationResultCache, serverEventBus);
     }
 
     @Test
@@ -179,6 +191,24 @@ public class SearchesTest {
         assertThat(result.count()).isEqualTo(10L);
     }
 
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void countCachesResultsOfReadOnlyIndices() throws Exception {
+        when(indices.getReadOnlyIndices(any())).thenReturn(Collections.singleton(INDEX_NAME));
+        final AbsoluteRange range = AbsoluteRange.create(
+                new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC),
+                new DateTime(2015, 1, 2, 0, 0, DateTimeZone.UTC));
+
+        assertThat(searches.count("*", range).count()).isEqualTo(10L);
+        assertThat(searches.count("*", range).count()).isEqualTo(10L);
+        assertThat(metricRegistry.timer(REQUEST_TIMER_NAME).getCount()).isEqualTo(1L);
+
+        serverEventBus.post(IndexRangesUpdatedEvent.create(INDEX_NAME));
+
+        assertThat(searches.count("*", range).count()).isEqualTo(10L);
+        assertThat(metricRegistry.timer(REQUEST_TIMER_NAME).getCount()).isEqualTo(2L);
+    }
+
     @Test
     @UsingDataSet(loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
     public void countRecordsMetrics() throws Exception {
@@ -584,4 +614,33 @@ public class SearchesTest {
         assertThat(searches.determineAffectedIndices(absoluteRange, "streams:123456789ABCDEF"))
                 .containsOnly(b0.indexName(), b1.indexName());
     }
+
+    @Test
+    public void determineAffectedIndicesCachesIndexSetOfStream() throws Exception {
+        final DateTime now = DateTime.now(DateTimeZone.UTC);
+        final MongoIndexRange indexRange0 = MongoIndexRange.create("graylog_0", now, now.plusDays(1), now, 0);
+        final MongoIndexRange b0 = MongoIndexRange.create("b_0", now.plusDays(1), now.plusDays(2), now, 0);
+        final SortedSet<IndexRange> indices = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR)
+                .add(indexRange0)
+                .add(b0)
+                .build();
+
+        final Stream bStream = mock(Stream.class);
+        final IndexSet indexSet = mock(IndexSet.class);
+        when(indexSet.isManagedIndex(startsWith("b_"))).thenReturn(true);
+        when(bStream.getIndexSet()).thenReturn(indexSet);
+        when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(indices);
+        when(streamService.load(eq("123456789ABCDEF"))).thenReturn(bStream);
+
+        final TimeRange absoluteRange = AbsoluteRange.create(now.minusDays(1), now.plusDays(1));
+
+        assertThat(searches.determineAffectedIndices(absoluteRange, "streams:123456789ABCDEF")).containsOnly(b0.indexName());
+        assertThat(searches.determineAffectedIndices(absoluteRange, "streams:123456789ABCDEF")).containsOnly(b0.indexName());
+        verify(streamService, times(1)).load("123456789ABCDEF");
+
+        serverEventBus.post(StreamsChangedEvent.create("123456789ABCDEF"));
+
+        assertThat(searches.determineAffectedIndices(absoluteRange, "streams:123456789ABCDEF")).containsOnly(b0.indexName());
+        verify(streamService, times(2)).load("123456789ABCDEF");
+    }
 }
@@ -21,6 +21,8 @@ import org.graylog2.inputs.TestHelper;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.journal.RawMessage;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -144,6 +146,62 @@ public class GelfCodecTest {
         codec.decode(rawMessage);
     }
 
+    @Test
+    public void decodeCompressedMessages() throws Exception {
+        final String json = "{"
+                + "\"version\": \"1.1\","
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message\","
+                + "\"_some_info\": \"foo\""
+                + "}";
+
+        for (byte[] payload : new byte[][]{TestHelper.zlibCompress(json), TestHelper.gzipCompress(json)}) {
+            final Message message = codec.decode(new RawMessage(payload));
+
+            assertThat(message).isNotNull();
+            assertThat(message.getField("source")).isEqualTo("example.org");
+            assertThat(message.getField("message")).isEqualTo("A short message");
+            assertThat(message.getField("some_info")).isEqualTo("foo");
+        }
+    }
+
+    @Test
+    public void decodeStandardFieldsOverrideAdditionalFieldsInAnyOrder() throws Exception {
+        final String json = "{"
+                + "\"_level\": 7,"
+                + "\"_file\": \"additional.c\","
+                + "\"_line\": 23,"
+                + "\"_source\": \"additional.example.org\","
+                + "\"_nested\": {\"foo\": [1, 2]},"
+                + "\"level\": 1,"
+                + "\"file\": \"standard.c\","
+                + "\"line\": \"not a number\","
+                + "\"timestamp\": 1385053862.3072,"
+                + "\"short_message\": \"A short message\","
+                + "\"host\": \"example.org\""
+                + "}";
+
+        final Message message = codec.decode(new RawMessage(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(message).isNotNull();
+        assertThat(message.getField("level")).isEqualTo(1);
+        assertThat(message.getField("file")).isEqualTo("standard.c");
+        assertThat(message.getField("line")).isEqualTo(23L);
+        assertThat(message.getField("source")).isEqualTo("example.org");
+        assertThat(message.getField("nested")).isEqualTo("{\"foo\":[1,2]}");
+        assertThat(message.getTimestamp()).isEqualTo(new DateTime(1385053862307L, DateTimeZone.UTC));
+    }
+
+    @Test
+    public void decodeFailsForCorruptCompressedMessage() throws Exception {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("Failed to decompress the GELF message payload");
+
+        // valid ZLIB header followed by an invalid block type
+        final byte[] payload = {(byte) 0x78, (byte) 0x9c, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        codec.decode(new RawMessage(payload));
+    }
+
     @Test
     public void getAggregatorReturnsGelfChunkAggregator() throws Exception {
         assertThat(codec.getAggregator()).isSameAs(aggregator);
@@ -20,6 +20,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableMap;
 import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.shared.utilities.ReverseDnsResolver;
 import org.graylog2.syslog4j.server.impl.event.structured.StructuredSyslogServerEvent;
 import org.junit.Before;
 import org.junit.Test;
@@ -57,6 +58,8 @@ public class StructuredSyslogTest {
     ));
     private SyslogCodec syslogCodec;
     @Mock
+    private ReverseDnsResolver reverseDnsResolver;
+    @Mock
     private MetricRegistry metricRegistry;
     @Mock
     private Timer mockedTimer;
@@ -64,7 +67,7 @@ public class StructuredSyslogTest {
     @Before
     public void setUp() {
         when(metricRegistry.timer(any(String.class))).thenReturn(mockedTimer);
-        syslogCodec = new SyslogCodec(configuration, metricRegistry);
+        syslogCodec = new SyslogCodec(configuration, reverseDnsResolver, metricRegistry);
     }
 
     private StructuredSyslogServerEvent newEvent(String message) {
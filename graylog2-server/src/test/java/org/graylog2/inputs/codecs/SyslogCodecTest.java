@@ -25,6 +25,7 @@ import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.inputs.codecs.Codec;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.shared.utilities.ReverseDnsResolver;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
@@ -33,6 +34,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
@@ -58,6 +60,8 @@ public class SyslogCodecTest {
     @Mock
     private Configuration configuration;
     @Mock
+    private ReverseDnsResolver reverseDnsResolver;
+    @Mock
     private MetricRegistry metricRegistry;
     @Mock
     private Timer mockedTimer;
@@ -69,7 +73,7 @@ public class SyslogCodecTest {
         when(metricRegistry.timer(any(String.class))).thenReturn(mockedTimer);
         when(mockedTimer.time()).thenReturn(mock(Timer.Context.class));
 
-        codec = new SyslogCodec(configuration, metricRegistry);
+        codec = new SyslogCodec(configuration, reverseDnsResolver, metricRegistry);
     }
 
     @Test
@@ -110,7 +114,7 @@ public class SyslogCodecTest {
     public void testDecodeStructuredIssue845WithExpandStructuredData() throws Exception {
         when(configuration.getBoolean(SyslogCodec.CK_EXPAND_STRUCTURED_DATA)).thenReturn(true);
 
-        final SyslogCodec codec = new SyslogCodec(configuration, metricRegistry);
+        final SyslogCodec codec = new SyslogCodec(configuration, reverseDnsResolver, metricRegistry);
         final Message message = codec.decode(buildRawMessage(STRUCTURED_ISSUE_845));
 
         assertNotNull(message);
@@ -196,6 +200,44 @@ public class SyslogCodecTest {
         assertNull(message.getField("full_message"));
     }
 
+    @Test
+    public void testDecodeUnstructuredWithForcedRdns() throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_FORCE_RDNS)).thenReturn(true);
+        when(reverseDnsResolver.resolve(any(InetAddress.class))).thenReturn("resolved.example.com");
+
+        final Message message = codec.decode(buildRawMessage(UNSTRUCTURED));
+
+        assertNotNull(message);
+        assertEquals(message.getField("source"), "resolved.example.com");
+    }
+
+    @Test
+    public void testDecodeUnstructuredWithForcedRdnsUsesAddressIfHostnameIsUnknown() throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_FORCE_RDNS)).thenReturn(true);
+        when(reverseDnsResolver.resolve(any(InetAddress.class)))
+                .thenAnswer(invocation -> ((InetAddress) invocation.getArguments()[0]).getHostAddress());
+
+        final Message message = codec.decode(buildRawMessage(UNSTRUCTURED));
+
+        assertNotNull(message);
+        assertEquals(message.getField("source"), "0.0.0.0");
+    }
+
+    @Test
+    public void testDecodeUnstructuredWithNonBlockingRdns() throws Exception {
+        when(configuration.getBoolean(SyslogCodec.CK_FORCE_RDNS)).thenReturn(true);
+        when(configuration.getBoolean(SyslogCodec.CK_RDNS_NON_BLOCKING)).thenReturn(true);
+        when(reverseDnsResolver.resolveNonBlocking(any(InetAddress.class))).thenReturn(null, "resolved.example.com");
+
+        final Message pending = codec.decode(buildRawMessage(UNSTRUCTURED));
+        final Message resolved = codec.decode(buildRawMessage(UNSTRUCTURED));
+
+        assertNotNull(pending);
+        assertEquals(pending.getField("source"), "c4dc57ba1ebb");
+        assertNotNull(resolved);
+        assertEquals(resolved.getField("source"), "resolved.example.com");
+    }
+
     @Test
     public void testDecodeUnstructuredWithFullMessage() throws Exception {
         when(configuration.getBoolean(SyslogCodec.CK_STORE_FULL_MESSAGE)).thenReturn(true);
@@ -18,13 +18,17 @@ package org.graylog2.inputs.extractors;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
 import org.graylog2.ConfigurationException;
 import org.graylog2.grok.GrokPattern;
+import org.graylog2.grok.GrokPatternRegistry;
+import org.graylog2.grok.GrokPatternService;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -32,18 +36,24 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class GrokExtractorTest {
 
     private Set<GrokPattern> patternSet;
+    private ScheduledExecutorService executor;
 
     @Before
     public void setUp() throws Exception {
+        executor = Executors.newSingleThreadScheduledExecutor();
         patternSet = Sets.newHashSet();
 
         final GrokPattern baseNum = GrokPattern.create("BASE10NUM", "(?<![0-9.+-])(?>[+-]?(?:(?:[0-9]+(?:\\.[0-9]+)?)|(?:\\.[0-9]+)))");
@@ -55,6 +65,11 @@ public class GrokExtractorTest {
         patternSet.add(data);
     }
 
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
     @Test
     public void testDatatypeExtraction() {
         final GrokExtractor extractor = makeExtractor("%{NUMBER:number;int}");
@@ -129,9 +144,13 @@ public class GrokExtractorTest {
     private GrokExtractor makeExtractor(String pattern, Map<String, Object> config) {
         config.put("grok_pattern", pattern);
 
+        final GrokPatternService grokPatternService = mock(GrokPatternService.class);
+        when(grokPatternService.loadAll()).thenReturn(patternSet);
+        final GrokPatternRegistry grokPatternRegistry = new GrokPatternRegistry(new EventBus(), grokPatternService, executor);
+
         try {
             return new GrokExtractor(new LocalMetricRegistry(),
-                                     patternSet,
+                                     grokPatternRegistry,
                                      "id",
                                      "title",
                                      0,
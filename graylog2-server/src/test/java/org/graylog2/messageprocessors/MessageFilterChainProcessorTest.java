@@ -17,15 +17,16 @@
 package org.graylog2.messageprocessors;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageCollection;
 import org.graylog2.plugin.Messages;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.filters.MessageFilter;
-import org.graylog2.shared.journal.Journal;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Assert;
@@ -36,6 +37,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -62,7 +64,6 @@ public class MessageFilterChainProcessorTest {
                 second);
         final MessageFilterChainProcessor processor = new MessageFilterChainProcessor(new MetricRegistry(),
                                                                                       filters,
-                                                                                      Mockito.mock(Journal.class),
                                                                                       serverStatus);
         final List<MessageFilter> filterRegistry = processor.getFilterRegistry();
 
@@ -76,7 +77,6 @@ public class MessageFilterChainProcessorTest {
         try {
             new MessageFilterChainProcessor(new MetricRegistry(),
                                             Sets.newHashSet(),
-                                            Mockito.mock(Journal.class),
                                             serverStatus);
             Assert.fail("A processor without message filters should fail on creation");
         } catch (RuntimeException ignored) {}
@@ -111,7 +111,6 @@ public class MessageFilterChainProcessorTest {
 
         final MessageFilterChainProcessor filterTest = new MessageFilterChainProcessor(new MetricRegistry(),
                                                                                        Sets.newHashSet(filterOnlyFirst),
-                                                                                       Mockito.mock(Journal.class),
                                                                                        serverStatus);
         Message filteredoutMessage = new Message("filtered out", "source", Tools.nowUTC());
         filteredoutMessage.setJournalOffset(1);
@@ -134,7 +133,6 @@ public class MessageFilterChainProcessorTest {
         final Set<MessageFilter> filters = ImmutableSet.of(first, second, third);
         final MessageFilterChainProcessor processor = new MessageFilterChainProcessor(new MetricRegistry(),
                 filters,
-                Mockito.mock(Journal.class),
                 serverStatus);
 
         final Message message = new Message("message", "source", new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC));
@@ -151,7 +149,6 @@ public class MessageFilterChainProcessorTest {
         final Set<MessageFilter> filters = ImmutableSet.of(first, second);
         final MessageFilterChainProcessor processor = new MessageFilterChainProcessor(new MetricRegistry(),
                 filters,
-                Mockito.mock(Journal.class),
                 serverStatus);
 
         final Message message = new Message("message", "source", new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC));
@@ -160,6 +157,128 @@ public class MessageFilterChainProcessorTest {
         assertThat(result).isEmpty();
     }
 
+    @Test
+    public void testFiltersProcessBatchesWithoutDroppedMessages() {
+        final MessageFilter dropFirst = new MessageFilter() {
+            @Override
+            public boolean filter(Message msg) {
+                return "first".equals(msg.getMessage());
+            }
+
+            @Override
+            public String getName() {
+                return "drop first";
+            }
+
+            @Override
+            public int getPriority() {
+                return 10;
+            }
+        };
+        final BatchRecordingFilter second = new BatchRecordingFilter(20);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final MessageFilterChainProcessor processor = new MessageFilterChainProcessor(metricRegistry,
+                ImmutableSet.of(dropFirst, second),
+                serverStatus);
+
+        final DateTime timestamp = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final Message first = new Message("first", "source", timestamp);
+        final Message other = new Message("other", "source", timestamp);
+        final Message another = new Message("another", "source", timestamp);
+        final Messages result = processor.process(new MessageCollection(ImmutableList.of(first, other, another)));
+
+        assertThat(result).containsExactly(other, another);
+        assertThat(second.batches).containsExactly(ImmutableList.of(other, another));
+        assertThat(metricRegistry.timer(MetricRegistry.name(BatchRecordingFilter.class, "executionTime")).getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testTimingsAreRecordedPerMessageIfEnabled() {
+        Mockito.when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.ALWAYS);
+        final BatchRecordingFilter filter = new BatchRecordingFilter(10);
+        final MessageFilterChainProcessor processor = new MessageFilterChainProcessor(new MetricRegistry(),
+                ImmutableSet.of(filter),
+                serverStatus);
+
+        final DateTime timestamp = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final Message first = new Message("first", "source", timestamp);
+        final Message second = new Message("second", "source", timestamp);
+        processor.process(new MessageCollection(ImmutableList.of(first, second)));
+
+        assertThat(filter.batches).containsExactly(ImmutableList.of(first), ImmutableList.of(second));
+        assertThat(first.hasRecordings()).isTrue();
+        assertThat(second.hasRecordings()).isTrue();
+    }
+
+    @Test
+    public void testFailingMessageDoesNotSkipFilterForRestOfBatch() {
+        final MessageFilter failOnFirst = new MessageFilter() {
+            @Override
+            public boolean filter(Message msg) {
+                if ("first".equals(msg.getMessage())) {
+                    throw new IllegalStateException("Boom");
+                }
+                msg.addField("filtered", true);
+                return false;
+            }
+
+            @Override
+            public String getName() {
+                return "fail on first";
+            }
+
+            @Override
+            public int getPriority() {
+                return 10;
+            }
+        };
+        final DummyFilter second = new DummyFilter(20);
+        final MessageFilterChainProcessor processor = new MessageFilterChainProcessor(new MetricRegistry(),
+                ImmutableSet.of(failOnFirst, second),
+                serverStatus);
+
+        final DateTime timestamp = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final Message first = new Message("first", "source", timestamp);
+        final Message other = new Message("other", "source", timestamp);
+        final Message another = new Message("another", "source", timestamp);
+        final Messages result = processor.process(new MessageCollection(ImmutableList.of(first, other, another)));
+
+        assertThat(result).containsExactly(first, other, another);
+        assertThat(first.hasField("filtered")).isFalse();
+        assertThat(other.hasField("filtered")).isTrue();
+        assertThat(another.hasField("filtered")).isTrue();
+        assertThat(first.getFields()).containsKey("prio-20");
+    }
+
+    private class BatchRecordingFilter implements MessageFilter {
+        private final int prio;
+        private final List<List<Message>> batches = new ArrayList<>();
+
+        private BatchRecordingFilter(int prio) {
+            this.prio = prio;
+        }
+
+        @Override
+        public boolean filter(Message msg) {
+            throw new UnsupportedOperationException("Only batches are supported");
+        }
+
+        @Override
+        public void filter(List<Message> messages) {
+            batches.add(ImmutableList.copyOf(messages));
+        }
+
+        @Override
+        public String getName() {
+            return "batch filter prio " + prio;
+        }
+
+        @Override
+        public int getPriority() {
+            return prio;
+        }
+    }
+
     private class DummyFilter implements MessageFilter {
         private final int prio;
 
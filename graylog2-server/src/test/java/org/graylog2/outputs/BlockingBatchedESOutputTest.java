@@ -19,12 +19,15 @@ package org.graylog2.outputs;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.graylog2.Configuration;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.cluster.Cluster;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.journal.Journal;
 import org.graylog2.shared.journal.NoopJournal;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,13 +35,24 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -64,6 +78,11 @@ public class BlockingBatchedESOutputTest {
             public int getOutputBatchSize() {
                 return 3;
             }
+
+            @Override
+            public int getOutputFlushConcurrency() {
+                return 1;
+            }
         };
     }
 
@@ -72,7 +91,7 @@ public class BlockingBatchedESOutputTest {
         when(cluster.isConnected()).thenReturn(true);
         when(cluster.isDeflectorHealthy()).thenReturn(true);
 
-        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
 
         final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(config.getOutputBatchSize());
 
@@ -83,13 +102,37 @@ public class BlockingBatchedESOutputTest {
         verify(messages, times(1)).bulkIndex(eq(messageList));
     }
 
+    @Test
+    public void writeListFlushesFullBatches() throws Exception {
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isDeflectorHealthy()).thenReturn(true);
+
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
+
+        final IndexSet indexSet = mock(IndexSet.class);
+        final Stream stream = mock(Stream.class);
+        when(stream.getIndexSet()).thenReturn(indexSet);
+
+        final List<Message> messageList = new ArrayList<>();
+        for (int i = 0; i < 2 * config.getOutputBatchSize() + 1; i++) {
+            final Message message = new Message("message" + i, "test", Tools.nowUTC());
+            message.addStream(stream);
+            messageList.add(message);
+        }
+
+        output.write(messageList);
+
+        // the remaining message stays in the buffer until the next write or the periodic flush
+        verify(messages, times(2)).bulkIndex(anyList());
+    }
+
     @Test
     public void writeDoesNotFlushIfClusterIsNotConnected() throws Exception {
         when(cluster.isConnected()).thenReturn(false);
 
         doThrow(RuntimeException.class).when(cluster).waitForConnectedAndDeflectorHealthy();
 
-        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
 
         final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(config.getOutputBatchSize());
 
@@ -110,7 +153,7 @@ public class BlockingBatchedESOutputTest {
 
         doThrow(RuntimeException.class).when(cluster).waitForConnectedAndDeflectorHealthy();
 
-        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
 
         final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(config.getOutputBatchSize());
 
@@ -129,7 +172,7 @@ public class BlockingBatchedESOutputTest {
         when(cluster.isConnected()).thenReturn(true);
         when(cluster.isDeflectorHealthy()).thenReturn(true);
 
-        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
 
         final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(config.getOutputBatchSize() - 1);
 
@@ -143,6 +186,129 @@ public class BlockingBatchedESOutputTest {
         verify(messages, times(1)).bulkIndex(eq(messageList));
     }
 
+    @Test
+    public void writeBlocksWhileTooManyFlushesAreInFlight() throws Exception {
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isDeflectorHealthy()).thenReturn(true);
+
+        final CountDownLatch bulkIndexStarted = new CountDownLatch(1);
+        final CountDownLatch bulkIndexReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            bulkIndexStarted.countDown();
+            bulkIndexReleased.await();
+            return true;
+        }).when(messages).bulkIndex(anyList());
+
+        final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, flushExecutor);
+
+            final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(2 * config.getOutputBatchSize());
+            final CountDownLatch writesDone = new CountDownLatch(1);
+            writer.execute(() -> {
+                try {
+                    for (Map.Entry<IndexSet, Message> entry : messageList) {
+                        output.writeMessageEntry(entry);
+                    }
+                } catch (Exception ignore) {
+                }
+                writesDone.countDown();
+            });
+
+            assertThat(bulkIndexStarted.await(10, TimeUnit.SECONDS)).isTrue();
+            // The second batch has to wait for the first one, because only one flush may be in flight.
+            assertThat(writesDone.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+            bulkIndexReleased.countDown();
+            assertThat(writesDone.await(10, TimeUnit.SECONDS)).isTrue();
+            verify(messages, timeout(10000).times(2)).bulkIndex(anyList());
+        } finally {
+            bulkIndexReleased.countDown();
+            writer.shutdownNow();
+            flushExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void writingThreadsUseSeparateShards() throws Exception {
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
+
+        final ExecutorService writers = Executors.newFixedThreadPool(config.getOutputBufferProcessors());
+        try {
+            final CountDownLatch writesDone = new CountDownLatch(config.getOutputBufferProcessors());
+            for (int i = 0; i < config.getOutputBufferProcessors(); i++) {
+                writers.execute(() -> {
+                    try {
+                        for (Map.Entry<IndexSet, Message> entry : buildMessages(config.getOutputBatchSize() - 1)) {
+                            output.writeMessageEntry(entry);
+                        }
+                    } catch (Exception ignore) {
+                    }
+                    writesDone.countDown();
+                });
+            }
+            assertThat(writesDone.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            writers.shutdownNow();
+        }
+
+        // No shard is shared by two threads, so none of them is full yet.
+        verify(messages, never()).bulkIndex(anyList());
+    }
+
+    @Test
+    public void stopFlushesBuffersAndWaitsForFlushes() throws Exception {
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isDeflectorHealthy()).thenReturn(true);
+
+        final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, flushExecutor);
+
+        final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(config.getOutputBatchSize() - 1);
+        for (Map.Entry<IndexSet, Message> entry : messageList) {
+            output.writeMessageEntry(entry);
+        }
+
+        output.stop();
+
+        assertThat(flushExecutor.isTerminated()).isTrue();
+        verify(messages, times(1)).bulkIndex(eq(messageList));
+    }
+
+    @Test
+    public void writeCommitsEveryMessageOnceAfterAllIndexSetsHaveBeenWritten() throws Exception {
+        when(cluster.isConnected()).thenReturn(true);
+        when(cluster.isDeflectorHealthy()).thenReturn(true);
+
+        final Journal journal = mock(Journal.class);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, cluster, config, journal, MoreExecutors.newDirectExecutorService());
+
+        final Stream stream1 = mock(Stream.class);
+        when(stream1.getIndexSet()).thenReturn(mock(IndexSet.class));
+        final Stream stream2 = mock(Stream.class);
+        when(stream2.getIndexSet()).thenReturn(mock(IndexSet.class));
+
+        final Message first = new Message("first", "test", Tools.nowUTC());
+        first.setJournalOffset(1L);
+        first.addStream(stream1);
+        first.addStream(stream2);
+        final Message second = new Message("second", "test", Tools.nowUTC());
+        second.setJournalOffset(2L);
+        second.addStream(stream1);
+        second.addStream(stream2);
+        final Message notIndexed = new Message("not indexed", "test", Tools.nowUTC());
+        notIndexed.setJournalOffset(3L);
+
+        // the batch size is exceeded in the middle of the second message, its entries are still flushed together
+        output.write(ImmutableList.of(first, notIndexed, second));
+
+        verify(messages, times(1)).bulkIndex(argThat(entries -> entries.size() == 4));
+        verify(journal, times(1)).markJournalOffsetCommitted(1L);
+        verify(journal, times(1)).markJournalOffsetCommitted(2L);
+        verify(journal, times(1)).markJournalOffsetCommitted(3L);
+    }
+
     private List<Map.Entry<IndexSet, Message>> buildMessages(final int count) {
         final ImmutableList.Builder<Map.Entry<IndexSet, Message>> builder = ImmutableList.builder();
         for (int i = 0; i < count; i++) {
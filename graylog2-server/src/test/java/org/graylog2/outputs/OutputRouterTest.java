@@ -36,6 +36,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -184,4 +186,44 @@ public class OutputRouterTest {
         assertTrue(result.contains(defaultMessageOutput));
         assertTrue(result.contains(messageOutput));
     }
+
+    @Test
+    public void testResolvedOutputsAreCachedPerStream() throws Exception {
+        final Stream stream = mock(Stream.class);
+        final Output output = mock(Output.class);
+        final MessageOutput messageOutput = mock(MessageOutput.class);
+        when(stream.getOutputs()).thenReturn(ImmutableSet.of(output));
+        when(output.getId()).thenReturn("foobar");
+        when(outputRegistry.getOutputForIdAndStream(eq("foobar"), eq(stream))).thenReturn(messageOutput);
+        final Message message1 = mock(Message.class);
+        final Message message2 = mock(Message.class);
+        when(message1.getStreams()).thenReturn(ImmutableSet.of(stream));
+        when(message2.getStreams()).thenReturn(ImmutableSet.of(stream));
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+
+        assertEquals(ImmutableSet.of(messageOutput), outputRouter.getStreamOutputsForMessage(message1));
+        assertEquals(ImmutableSet.of(messageOutput), outputRouter.getStreamOutputsForMessage(message2));
+        verify(outputRegistry, times(1)).getOutputForIdAndStream(eq("foobar"), eq(stream));
+
+        // removed or disabled outputs change the generation of the registry
+        when(outputRegistry.getGeneration()).thenReturn(1L);
+        assertEquals(ImmutableSet.of(messageOutput), outputRouter.getStreamOutputsForMessage(message1));
+        verify(outputRegistry, times(2)).getOutputForIdAndStream(eq("foobar"), eq(stream));
+    }
+
+    @Test
+    public void testUnresolvedOutputsAreNotCached() throws Exception {
+        final Stream stream = mock(Stream.class);
+        final Output output = mock(Output.class);
+        when(stream.getOutputs()).thenReturn(ImmutableSet.of(output));
+        when(output.getId()).thenReturn("foobar");
+        when(outputRegistry.getOutputForIdAndStream(eq("foobar"), eq(stream))).thenReturn(null);
+        final Message message = mock(Message.class);
+        when(message.getStreams()).thenReturn(ImmutableSet.of(stream));
+        final OutputRouter outputRouter = new OutputRouter(defaultMessageOutput, outputRegistry);
+
+        assertTrue(outputRouter.getStreamOutputsForMessage(message).isEmpty());
+        assertTrue(outputRouter.getStreamOutputsForMessage(message).isEmpty());
+        verify(outputRegistry, times(2)).getOutputForIdAndStream(eq("foobar"), eq(stream));
+    }
 }
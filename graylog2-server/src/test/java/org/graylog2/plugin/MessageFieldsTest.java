@@ -0,0 +1,91 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.plugin;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageFieldsTest {
+    @Test
+    public void putGetAndRemove() {
+        final MessageFields fields = new MessageFields(0);
+
+        assertThat(fields.put("foo", "bar")).isNull();
+        assertThat(fields.put("foo", "baz")).isEqualTo("bar");
+        assertThat(fields.put("null", null)).isNull();
+
+        assertThat(fields).hasSize(2);
+        assertThat(fields.get("foo")).isEqualTo("baz");
+        assertThat(fields.containsKey("null")).isTrue();
+        assertThat(fields.get("null")).isNull();
+        assertThat(fields.get(42)).isNull();
+
+        assertThat(fields.remove("foo")).isEqualTo("baz");
+        assertThat(fields.remove("foo")).isNull();
+        assertThat(fields).containsOnlyKeys("null");
+    }
+
+    @Test
+    public void growsBeyondExpectedSize() {
+        final MessageFields fields = new MessageFields(2);
+        for (int i = 0; i < 100; i++) {
+            fields.put("field" + i, i);
+        }
+
+        assertThat(fields).hasSize(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(fields.get("field" + i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        final Random random = new Random(42L);
+        final MessageFields fields = new MessageFields(4);
+        final Map<String, Object> expected = new HashMap<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            final String key = "key" + random.nextInt(50);
+            if (random.nextInt(3) == 0) {
+                assertThat(fields.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                assertThat(fields.put(key, i)).isEqualTo(expected.put(key, i));
+            }
+            assertThat(fields.size()).isEqualTo(expected.size());
+        }
+
+        assertThat(fields).isEqualTo(expected);
+        assertThat(fields.hashCode()).isEqualTo(expected.hashCode());
+
+        final Map<String, Object> iterated = new HashMap<>();
+        fields.forEach(iterated::put);
+        assertThat(iterated).isEqualTo(expected);
+
+        final Map<String, Object> slots = new HashMap<>();
+        for (int slot = 0; slot < fields.slots(); slot++) {
+            if (fields.keyAt(slot) != null) {
+                slots.put(fields.keyAt(slot), fields.valueAt(slot));
+            }
+        }
+        assertThat(slots).isEqualTo(expected);
+    }
+}
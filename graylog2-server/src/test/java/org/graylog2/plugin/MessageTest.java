@@ -34,6 +34,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -358,6 +359,16 @@ public class MessageTest {
         assertFalse(Message.validKey(" "));
     }
 
+    @Test
+    public void testValidKeyMatchesValidKeyPattern() throws Exception {
+        final Pattern validKeyChars = Pattern.compile("^[\\w\\.\\-@]*$");
+        for (char c = 0; c < 512; c++) {
+            final String key = "foo" + c + "bar";
+            assertEquals("Unexpected result for character " + (int) c,
+                    validKeyChars.matcher(key).matches(), Message.validKey(key));
+        }
+    }
+
     @Test
     public void testToElasticSearchObject() throws Exception {
         message.addField("field1", "wat");
@@ -413,6 +424,25 @@ public class MessageTest {
         assertEquals(Lists.newArrayList("stream-id"), object.get("streams"));
     }
 
+    @Test
+    public void testForEachElasticSearchFieldPassesEveryKeyOnce() throws Exception {
+        message.addField("field1", "wat");
+        message.addField("field.2", "dot");
+        message.addField("field_3", "underscore");
+        message.addField("field.3", "ignored");
+
+        final Map<String, Object> fields = new HashMap<>();
+        message.forEachElasticSearchField((key, value) -> assertNull("Duplicate key " + key, fields.put(key, value)), invalidTimestampMeter);
+
+        final Map<String, Object> object = message.toElasticSearchObject(invalidTimestampMeter);
+        object.remove(Message.FIELD_ID);
+
+        assertEquals(object, fields);
+        assertEquals("dot", fields.get("field_2"));
+        assertEquals("underscore", fields.get("field_3"));
+        assertFalse(fields.containsKey(Message.FIELD_ID));
+    }
+
     @Test
     public void testIsComplete() throws Exception {
         Message message = new Message("message", "source", Tools.nowUTC());
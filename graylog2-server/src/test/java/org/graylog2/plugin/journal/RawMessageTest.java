@@ -16,17 +16,22 @@
  */
 package org.graylog2.plugin.journal;
 
+import com.google.common.io.ByteStreams;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.NodeId;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class RawMessageTest {
     @Test
@@ -44,4 +49,54 @@ public class RawMessageTest {
         assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
         assertEquals("raw", decodedMsg.getCodecName());
     }
+
+    @Test
+    public void codecConfigIsDeserializedLazily() throws IOException {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        final File tempFile = File.createTempFile("node", "test");
+        rawMessage.addSourceNode("inputid", new NodeId(tempFile.getAbsolutePath()));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(new Configuration(Collections.singletonMap("foo", "bar")));
+
+        assertNull(rawMessage.getCodecConfigJson());
+
+        final RawMessage decodedMsg = RawMessage.decode(rawMessage.encode(), 1);
+
+        assertNotNull(decodedMsg);
+        assertNotNull(decodedMsg.getCodecConfigJson());
+        assertEquals("bar", decodedMsg.getCodecConfig().getString("foo"));
+
+        // Re-encoding uses the serialized configuration as is.
+        final RawMessage reDecodedMsg = RawMessage.decode(decodedMsg.encode(), 2);
+        assertNotNull(reDecodedMsg);
+        assertEquals(decodedMsg.getCodecConfigJson(), reDecodedMsg.getCodecConfigJson());
+    }
+
+    @Test
+    public void decodeFromBufferSharesPayload() throws IOException {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        final File tempFile = File.createTempFile("node", "test");
+        rawMessage.addSourceNode("inputid", new NodeId(tempFile.getAbsolutePath()));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+
+        final byte[] encoded = rawMessage.encode();
+        final RawMessage decodedMsg = RawMessage.decode(ByteBuffer.wrap(encoded), 1);
+
+        assertNotNull(decodedMsg);
+        assertEquals("raw", decodedMsg.getCodecName());
+        assertEquals(11, decodedMsg.getPayloadSize());
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
+
+        final ByteBuffer payload = decodedMsg.getPayloadBuffer();
+        assertTrue(payload.isReadOnly());
+        assertEquals("testmessage", StandardCharsets.UTF_8.decode(payload).toString());
+        assertEquals("testmessage", new String(ByteStreams.toByteArray(decodedMsg.getPayloadStream()), StandardCharsets.UTF_8));
+        assertEquals("testmessage", decodedMsg.getPayloadAsString(StandardCharsets.UTF_8));
+
+        // the payload hasn't been copied out of the buffer
+        final int payloadStart = new String(encoded, StandardCharsets.ISO_8859_1).indexOf("testmessage");
+        encoded[payloadStart] = 'T';
+        assertEquals("Testmessage", decodedMsg.getPayloadAsString(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest;
+
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+import org.graylog2.indexer.results.ScrollResult;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScrollChunkNdjsonWriterTest {
+    private final ScrollChunkNdjsonWriter writer = new ScrollChunkNdjsonWriter();
+
+    @Test
+    public void writeToSplicesIdIntoSource() throws Exception {
+        final ScrollResult.ScrollChunk chunk = chunk(ImmutableList.of("_id", "message"),
+                hit("id-1", "{\"message\":\"hello\"}"),
+                hit("id-2", "{\"message\":\"world\",\"source\":\"example.org\"}"));
+
+        assertThat(write(chunk)).isEqualTo(
+                "{\"_id\":\"id-1\",\"message\":\"hello\"}\n" +
+                "{\"_id\":\"id-2\",\"message\":\"world\",\"source\":\"example.org\"}\n");
+    }
+
+    @Test
+    public void writeToEscapesId() throws Exception {
+        final ScrollResult.ScrollChunk chunk = chunk(ImmutableList.of("_id", "message"),
+                hit("id\"1\\", "{\"message\":\"hello\"}"));
+
+        assertThat(write(chunk)).isEqualTo("{\"_id\":\"id\\\"1\\\\\",\"message\":\"hello\"}\n");
+    }
+
+    @Test
+    public void writeToWritesOnlyIdForEmptySource() throws Exception {
+        final ScrollResult.ScrollChunk chunk = chunk(ImmutableList.of("_id", "message"),
+                hit("id-1", "{}"),
+                hit("id-2", null));
+
+        assertThat(write(chunk)).isEqualTo(
+                "{\"_id\":\"id-1\"}\n" +
+                "{\"_id\":\"id-2\"}\n");
+    }
+
+    @Test
+    public void writeToCopiesSourceIfIdHasNotBeenRequested() throws Exception {
+        final ScrollResult.ScrollChunk chunk = chunk(ImmutableList.of("message"),
+                hit("id-1", "{\"message\":\"hello\"}"),
+                hit("id-2", null));
+
+        assertThat(write(chunk)).isEqualTo(
+                "{\"message\":\"hello\"}\n" +
+                "{}\n");
+    }
+
+    private String write(ScrollResult.ScrollChunk chunk) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(chunk, ScrollResult.ScrollChunk.class, null, null, MoreMediaTypes.APPLICATION_NDJSON_TYPE, null, outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static ScrollResult.ScrollChunk chunk(List<String> fields, SearchHit... hits) {
+        final ScrollResult.ScrollChunk chunk = mock(ScrollResult.ScrollChunk.class);
+        when(chunk.getFields()).thenReturn(fields);
+        when(chunk.getHits()).thenReturn(hits);
+        return chunk;
+    }
+
+    private static SearchHit hit(String id, String source) {
+        final SearchHit hit = mock(SearchHit.class);
+        when(hit.getId()).thenReturn(id);
+        when(hit.sourceRef()).thenReturn(source == null ? null : new BytesArray(source));
+        return hit;
+    }
+}
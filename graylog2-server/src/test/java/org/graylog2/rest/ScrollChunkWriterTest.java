@@ -0,0 +1,108 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.rest;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.search.SearchHit;
+import org.graylog2.indexer.results.ScrollResult;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScrollChunkWriterTest {
+    private final ScrollChunkWriter writer = new ScrollChunkWriter();
+
+    @Test
+    public void writeToWritesHeaderOnlyForFirstChunk() throws Exception {
+        final SearchHit hit = hit("id-1", ImmutableMap.<String, Object>of("message", "hello"));
+
+        assertThat(write(chunk(true, hit))).isEqualTo(
+                "\"_id\",\"timestamp\",\"message\"\n" +
+                "\"id-1\",,\"hello\"\n");
+        assertThat(write(chunk(false, hit))).isEqualTo("\"id-1\",,\"hello\"\n");
+    }
+
+    @Test
+    public void writeToFormatsTimestamp() throws Exception {
+        final SearchHit hit = hit("id-1", ImmutableMap.<String, Object>of(
+                "timestamp", "2017-01-01 12:00:00.000",
+                "message", "hello"));
+
+        assertThat(write(chunk(false, hit))).isEqualTo("\"id-1\",\"2017-01-01T12:00:00.000Z\",\"hello\"\n");
+    }
+
+    @Test
+    public void writeToKeepsUnparsableTimestamp() throws Exception {
+        final SearchHit hit = hit("id-1", ImmutableMap.<String, Object>of(
+                "timestamp", " yesterday ",
+                "message", "hello"));
+
+        assertThat(write(chunk(false, hit))).isEqualTo("\"id-1\",\"yesterday\",\"hello\"\n");
+    }
+
+    @Test
+    public void writeToTrimsValuesAndSkipsBlankValues() throws Exception {
+        final SearchHit hit1 = hit("id-1", ImmutableMap.<String, Object>of("message", "  padded  "));
+        final SearchHit hit2 = hit("id-2", ImmutableMap.<String, Object>of("message", "   "));
+
+        assertThat(write(chunk(false, hit1, hit2))).isEqualTo(
+                "\"id-1\",,\"padded\"\n" +
+                "\"id-2\",,\n");
+    }
+
+    @Test
+    public void writeToEscapesLineBreaks() throws Exception {
+        final SearchHit hit = hit("id-1", ImmutableMap.<String, Object>of("message", "multi\nline\r\nmessage"));
+
+        assertThat(write(chunk(false, hit))).isEqualTo("\"id-1\",,\"multi\\nline\\r\\nmessage\"\n");
+    }
+
+    @Test
+    public void writeToHandlesMissingSource() throws Exception {
+        final SearchHit hit = hit("id-1", null);
+
+        assertThat(write(chunk(false, hit))).isEqualTo("\"id-1\",,\n");
+    }
+
+    private String write(ScrollResult.ScrollChunk chunk) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(chunk, ScrollResult.ScrollChunk.class, null, null, MoreMediaTypes.TEXT_CSV_TYPE, null, outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static ScrollResult.ScrollChunk chunk(boolean firstChunk, SearchHit... hits) {
+        final ScrollResult.ScrollChunk chunk = mock(ScrollResult.ScrollChunk.class);
+        when(chunk.getFields()).thenReturn(ImmutableList.of("_id", "timestamp", "message"));
+        when(chunk.isFirstChunk()).thenReturn(firstChunk);
+        when(chunk.getHits()).thenReturn(hits);
+        return chunk;
+    }
+
+    private static SearchHit hit(String id, Map<String, Object> source) {
+        final SearchHit hit = mock(SearchHit.class);
+        when(hit.getId()).thenReturn(id);
+        when(hit.getSource()).thenReturn(source);
+        return hit;
+    }
+}
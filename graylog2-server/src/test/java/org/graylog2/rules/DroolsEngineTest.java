@@ -16,12 +16,17 @@
  */
 package org.graylog2.rules;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.Tools;
 import org.junit.Test;
 
 import java.net.URI;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -31,7 +36,7 @@ public class DroolsEngineTest {
 
     @Test
     public void runWithoutRules() {
-        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet());
+        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet(), new MetricRegistry());
 
         final int rulesFired = engine.evaluateInSharedSession(new Message("test message", "test", Tools.nowUTC()));
 
@@ -42,7 +47,7 @@ public class DroolsEngineTest {
 
     @Test
     public void addedRuleIsVisibleInSession() {
-        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet());
+        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet(), new MetricRegistry());
 
         String rule1 =
                 "declare Message\n" +
@@ -85,7 +90,7 @@ public class DroolsEngineTest {
 
     @Test
     public void incorrectRuleIsNotApplied() {
-        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet());
+        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet(), new MetricRegistry());
 
         String invalidRule = "rule \"this will not compile\"\n" +
                 "when\n" +
@@ -109,4 +114,83 @@ public class DroolsEngineTest {
 
         engine.stop();
     }
+
+    @Test
+    public void threadsShareSessionsAndFacts() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet(), metricRegistry);
+
+        String rule = "rule \"filter out messages from blocked sources\"\n" +
+                "when\n" +
+                "    $s : String()\n" +
+                "    $m : Message( filterOut == false, source == $s )\n" +
+                "then\n" +
+                "    modify($m) { setFilterOut(true) };\n" +
+                "end\n";
+        assertTrue("Rule should compile without errors", engine.addRule(rule));
+        engine.insertFact("blocked");
+
+        final Message blocked = new Message("test message", "blocked", Tools.nowUTC());
+        final Thread thread = new Thread(() -> engine.evaluateInSharedSession(blocked));
+        thread.start();
+        thread.join();
+
+        final Message other = new Message("test message", "other", Tools.nowUTC());
+        engine.evaluateInSharedSession(other);
+
+        assertTrue("message from blocked source is filtered out", blocked.getFilterOut());
+        assertFalse("message from other source is not filtered out", other.getFilterOut());
+        // the session of the finished thread has been reused
+        assertEquals(1, metricRegistry.getGauges().get(MetricRegistry.name(DroolsEngine.class, "sessions")).getValue());
+
+        assertTrue(engine.deleteFact("blocked"));
+        final Message unblocked = new Message("test message", "blocked", Tools.nowUTC());
+        engine.evaluateInSharedSession(unblocked);
+
+        assertFalse("removed fact is not visible anymore", unblocked.getFilterOut());
+
+        engine.stop();
+        assertEquals(0, metricRegistry.getGauges().get(MetricRegistry.name(DroolsEngine.class, "sessions")).getValue());
+    }
+
+    @Test
+    public void sessionsInUseAreDisposedAfterEvaluation() throws Exception {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final DroolsEngine engine = new DroolsEngine(Collections.<URI>emptySet(), metricRegistry);
+
+        final AtomicBoolean blocking = new AtomicBoolean();
+        final CountDownLatch evaluating = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final Message message = new Message("test message", "source", Tools.nowUTC()) {
+            @Override
+            public String getSource() {
+                // blocks the evaluation while the engine is being stopped
+                if (blocking.getAndSet(false)) {
+                    evaluating.countDown();
+                    Uninterruptibles.awaitUninterruptibly(stopped);
+                }
+                return super.getSource();
+            }
+        };
+        String rule = "rule \"filter out messages from source\"\n" +
+                "when\n" +
+                "    $m : Message( source == \"source\" )\n" +
+                "then\n" +
+                "    log.info(\"message from source\");\n" +
+                "end\n";
+        assertTrue("Rule should compile without errors", engine.addRule(rule));
+
+        final AtomicInteger rulesFired = new AtomicInteger(-1);
+        blocking.set(true);
+        final Thread thread = new Thread(() -> rulesFired.set(engine.evaluateInSharedSession(message)));
+        thread.start();
+        evaluating.await();
+
+        engine.stop();
+        stopped.countDown();
+        thread.join();
+
+        assertEquals("session in use hasn't been disposed by stop()", 1, rulesFired.get());
+        assertEquals(0, metricRegistry.getGauges().get(MetricRegistry.name(DroolsEngine.class, "sessions")).getValue());
+    }
 }
@@ -0,0 +1,235 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.eaio.uuid.UUID;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.plugin.IOState;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.events.inputs.IOStateChangedEvent;
+import org.graylog2.plugin.inputs.MessageInput;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.inputs.codecs.MultiMessageCodec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.journal.Journal;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DecodingProcessorTest {
+    private static final long JOURNAL_OFFSET = 42L;
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ServerStatus serverStatus;
+    @Mock
+    private Journal journal;
+    @Mock
+    private Codec.Factory<Codec> codecFactory;
+    @Mock
+    private Codec codec;
+    @Mock
+    private Codec.Factory<MultiMessageCodec> multiMessageCodecFactory;
+    @Mock
+    private MultiMessageCodec multiMessageCodec;
+
+    private EventBus eventBus;
+    private DecodingProcessor decodingProcessor;
+
+    @Before
+    public void setUp() {
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+        when(codecFactory.create(any())).thenReturn(codec);
+        when(multiMessageCodecFactory.create(any())).thenReturn(multiMessageCodec);
+
+        final Map<String, Codec.Factory<? extends Codec>> codecFactories = ImmutableMap.of(
+                "single", codecFactory,
+                "multi", multiMessageCodecFactory);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        eventBus = new EventBus();
+        decodingProcessor = new DecodingProcessor(codecFactories, serverStatus, metricRegistry, journal, eventBus,
+                metricRegistry.timer("decodeTime"), metricRegistry.timer("parseTime"));
+    }
+
+    @Test
+    public void decodedMessageIsNotCommitted() throws Exception {
+        when(codec.decode(any(RawMessage.class))).thenReturn(new Message("message", "source", Tools.nowUTC()));
+
+        final MessageEvent event = process(rawMessage("single"));
+
+        assertThat(event.getMessage()).isNotNull();
+        assertThat(event.getMessage().getJournalOffset()).isEqualTo(JOURNAL_OFFSET);
+        verify(journal, never()).markJournalOffsetCommitted(anyLong());
+        verify(journal, never()).markJournalOffsetShared(anyLong(), anyInt());
+    }
+
+    @Test
+    public void nullMessageIsCommitted() throws Exception {
+        when(codec.decode(any(RawMessage.class))).thenReturn(null);
+
+        final MessageEvent event = process(rawMessage("single"));
+
+        assertThat(event.getMessage()).isNull();
+        verify(journal).markJournalOffsetCommitted(JOURNAL_OFFSET);
+    }
+
+    @Test
+    public void incompleteMessageIsCommitted() throws Exception {
+        when(codec.decode(any(RawMessage.class))).thenReturn(new Message("", "source", Tools.nowUTC()));
+
+        final MessageEvent event = process(rawMessage("single"));
+
+        assertThat(event.getMessage()).isNull();
+        verify(journal).markJournalOffsetCommitted(JOURNAL_OFFSET);
+    }
+
+    @Test
+    public void messageWithoutCodecIsCommitted() throws Exception {
+        final MessageEvent event = process(rawMessage("unknown"));
+
+        assertThat(event.getMessage()).isNull();
+        assertThat(event.getMessages()).isNull();
+        verify(journal).markJournalOffsetCommitted(JOURNAL_OFFSET);
+    }
+
+    @Test
+    public void messageWithoutDecodedMessagesIsCommitted() throws Exception {
+        when(multiMessageCodec.decodeMessages(any(RawMessage.class))).thenReturn(null, Collections.emptyList());
+
+        process(rawMessage("multi"));
+        process(rawMessage("multi"));
+
+        verify(journal, times(2)).markJournalOffsetCommitted(JOURNAL_OFFSET);
+        verify(journal, never()).markJournalOffsetShared(anyLong(), anyInt());
+    }
+
+    @Test
+    public void messageWithOnlyIncompleteDecodedMessagesIsCommitted() throws Exception {
+        when(multiMessageCodec.decodeMessages(any(RawMessage.class))).thenReturn(ImmutableList.of(
+                new Message("", "source", Tools.nowUTC()),
+                new Message("", "source", Tools.nowUTC())));
+
+        final MessageEvent event = process(rawMessage("multi"));
+
+        assertThat(event.getMessages()).isEmpty();
+        verify(journal).markJournalOffsetCommitted(JOURNAL_OFFSET);
+    }
+
+    @Test
+    public void offsetIsSharedByAllDecodedMessages() throws Exception {
+        when(multiMessageCodec.decodeMessages(any(RawMessage.class))).thenReturn(ImmutableList.of(
+                new Message("message1", "source", Tools.nowUTC()),
+                new Message("", "source", Tools.nowUTC()),
+                new Message("message2", "source", Tools.nowUTC())));
+
+        final MessageEvent event = process(rawMessage("multi"));
+
+        assertThat(event.getMessages())
+                .hasSize(2)
+                .extracting(Message::getJournalOffset)
+                .containsOnly(JOURNAL_OFFSET);
+        verify(journal).markJournalOffsetShared(JOURNAL_OFFSET, 2);
+        verify(journal, never()).markJournalOffsetCommitted(anyLong());
+    }
+
+    @Test
+    public void codecIsCachedPerInput() throws Exception {
+        process(rawMessage("single", "input-1"));
+        process(rawMessage("single", "input-1"));
+        verify(codecFactory, times(1)).create(any());
+
+        process(rawMessage("single", "input-2"));
+        process(rawMessage("single", "input-2"));
+        verify(codecFactory, times(2)).create(any());
+    }
+
+    @Test
+    public void codecIsReplacedIfCodecOfInputChanges() throws Exception {
+        process(rawMessage("single", "input-1"));
+        process(rawMessage("multi", "input-1"));
+        process(rawMessage("multi", "input-1"));
+
+        verify(codecFactory, times(1)).create(any());
+        verify(multiMessageCodecFactory, times(1)).create(any());
+    }
+
+    @Test
+    public void inputStateChangeEvictsCachedCodecOfInput() throws Exception {
+        process(rawMessage("single", "input-1"));
+        process(rawMessage("single", "input-2"));
+        verify(codecFactory, times(2)).create(any());
+
+        eventBus.post(inputStateChanged("input-1"));
+
+        process(rawMessage("single", "input-1"));
+        process(rawMessage("single", "input-2"));
+        verify(codecFactory, times(3)).create(any());
+    }
+
+    private MessageEvent process(RawMessage rawMessage) throws Exception {
+        final MessageEvent event = new MessageEvent();
+        event.setRaw(rawMessage);
+        decodingProcessor.onEvent(event, 0L, false);
+        return event;
+    }
+
+    private static RawMessage rawMessage(String codecName) {
+        final RawMessage rawMessage = new RawMessage(JOURNAL_OFFSET, new UUID(), Tools.nowUTC(), null,
+                "payload".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName(codecName);
+        return rawMessage;
+    }
+
+    private static RawMessage rawMessage(String codecName, String inputId) {
+        final RawMessage rawMessage = rawMessage(codecName);
+        rawMessage.addSourceNode(inputId, mock(NodeId.class));
+        return rawMessage;
+    }
+
+    private static IOStateChangedEvent<MessageInput> inputStateChanged(String inputId) {
+        final MessageInput input = mock(MessageInput.class);
+        when(input.getId()).thenReturn(inputId);
+        final IOState<MessageInput> inputState = new IOState<>(new EventBus(), input, IOState.Type.STOPPED);
+        return IOStateChangedEvent.create(IOState.Type.RUNNING, IOState.Type.STOPPED, inputState);
+    }
+}
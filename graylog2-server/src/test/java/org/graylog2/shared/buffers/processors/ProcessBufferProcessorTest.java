@@ -0,0 +1,142 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Provider;
+import org.graylog2.buffers.OutputBuffer;
+import org.graylog2.messageprocessors.OrderedMessageProcessors;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageCollection;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.messageprocessors.MessageProcessor;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.journal.Journal;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProcessBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private OrderedMessageProcessors orderedMessageProcessors;
+    @Mock
+    private OutputBuffer outputBuffer;
+    @Mock
+    private Journal journal;
+    @Mock
+    private DecodingProcessor decodingProcessor;
+    @Mock
+    private Provider<Stream> defaultStreamProvider;
+
+    private final List<MessageProcessor> messageProcessors = new ArrayList<>();
+    private ProcessBufferProcessor processBufferProcessor;
+
+    @Before
+    public void setUp() {
+        when(orderedMessageProcessors.iterator()).then(invocation -> messageProcessors.iterator());
+        when(defaultStreamProvider.get()).thenReturn(mock(Stream.class));
+
+        processBufferProcessor = new ProcessBufferProcessor(new MetricRegistry(), orderedMessageProcessors,
+                outputBuffer, journal, decodingProcessor, defaultStreamProvider);
+    }
+
+    @Test
+    public void messagePassedToOutputIsNotCommitted() throws Exception {
+        messageProcessors.add(messages -> messages);
+        final Message message = message(1L);
+
+        process(message);
+
+        verify(outputBuffer).insertBlocking(message);
+        verify(journal, never()).markJournalOffsetCommitted(anyLong());
+    }
+
+    @Test
+    public void filteredOutMessageIsCommitted() throws Exception {
+        messageProcessors.add(messages -> {
+            for (Message message : messages) {
+                message.setFilterOut(true);
+            }
+            return messages;
+        });
+        final Message message = message(1L);
+
+        process(message);
+
+        verify(outputBuffer, never()).insertBlocking(any(Message.class));
+        verify(journal).markJournalOffsetCommitted(1L);
+    }
+
+    @Test
+    public void messageRemovedFromResultIsCommitted() throws Exception {
+        final Message created = message(Long.MIN_VALUE);
+        // replaces the message with a new one, like a processing pipeline dropping the message and creating another
+        messageProcessors.add(messages -> new MessageCollection(ImmutableList.of(created)));
+        messageProcessors.add(messages -> messages);
+        final Message message = message(1L);
+
+        process(message);
+
+        verify(outputBuffer).insertBlocking(created);
+        verify(outputBuffer, never()).insertBlocking(message);
+        verify(journal).markJournalOffsetCommitted(1L);
+        verify(journal, never()).markJournalOffsetCommitted(Long.MIN_VALUE);
+    }
+
+    @Test
+    public void messageOfFailingProcessorIsCommitted() throws Exception {
+        messageProcessors.add(messages -> {
+            throw new IllegalStateException("Boom");
+        });
+        final Message message = message(1L);
+
+        process(message);
+
+        verify(outputBuffer, never()).insertBlocking(any(Message.class));
+        verify(journal).markJournalOffsetCommitted(1L);
+    }
+
+    private void process(Message message) throws Exception {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        processBufferProcessor.onEvent(event);
+    }
+
+    private static Message message(long journalOffset) {
+        final Message message = new Message("message", "source", Tools.nowUTC());
+        message.setJournalOffset(journalOffset);
+        return message;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.journal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalCommitTrackerTest {
+    @Test
+    public void lowWaterMarkOnlyAdvancesOverContiguousOffsets() {
+        final JournalCommitTracker tracker = new JournalCommitTracker(64, 10L);
+
+        assertThat(tracker.complete(12L)).isTrue();
+        assertThat(tracker.complete(11L)).isTrue();
+        assertThat(tracker.getLowWaterMark()).isEqualTo(10L);
+
+        assertThat(tracker.complete(10L)).isTrue();
+        assertThat(tracker.getLowWaterMark()).isEqualTo(13L);
+
+        // already committed offsets are ignored
+        assertThat(tracker.complete(5L)).isTrue();
+        assertThat(tracker.complete(11L)).isTrue();
+        assertThat(tracker.getLowWaterMark()).isEqualTo(13L);
+    }
+
+    @Test
+    public void offsetsBeyondTheWindowAreNotTracked() {
+        final JournalCommitTracker tracker = new JournalCommitTracker(64, 0L);
+
+        assertThat(tracker.getWindowEnd()).isEqualTo(64L);
+        assertThat(tracker.complete(64L)).isFalse();
+
+        for (long offset = 0; offset < 64; offset++) {
+            tracker.complete(offset);
+        }
+        assertThat(tracker.getLowWaterMark()).isEqualTo(64L);
+        assertThat(tracker.getWindowEnd()).isEqualTo(128L);
+
+        // the bits of the first round of the ring must not leak into the second one
+        assertThat(tracker.complete(65L)).isTrue();
+        assertThat(tracker.getLowWaterMark()).isEqualTo(64L);
+        assertThat(tracker.complete(64L)).isTrue();
+        assertThat(tracker.getLowWaterMark()).isEqualTo(66L);
+    }
+
+    @Test
+    public void skipToClearsSkippedOffsets() {
+        final JournalCommitTracker tracker = new JournalCommitTracker(64, 0L);
+        tracker.complete(3L);
+        tracker.complete(7L);
+
+        tracker.skipTo(5L);
+        assertThat(tracker.getLowWaterMark()).isEqualTo(5L);
+
+        // offset 7 has been committed before and is picked up once offset 5 and 6 are done
+        tracker.complete(5L);
+        tracker.complete(6L);
+        assertThat(tracker.getLowWaterMark()).isEqualTo(8L);
+
+        // skipping backwards does nothing
+        tracker.skipTo(2L);
+        assertThat(tracker.getLowWaterMark()).isEqualTo(8L);
+
+        tracker.skipTo(1000L);
+        assertThat(tracker.getLowWaterMark()).isEqualTo(1000L);
+        assertThat(tracker.getWindowEnd()).isEqualTo(1064L);
+        tracker.complete(1001L);
+        assertThat(tracker.getLowWaterMark()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void concurrentCommitsInRandomOrder() throws Exception {
+        final int count = 100_000;
+        final int threads = 4;
+        final JournalCommitTracker tracker = new JournalCommitTracker(1 << 17, 0L);
+
+        final List<Long> offsets = new ArrayList<>(count);
+        for (long offset = 0; offset < count; offset++) {
+            offsets.add(offset);
+        }
+        Collections.shuffle(offsets, new Random(42L));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final List<Long> slice = offsets.subList(i * count / threads, (i + 1) * count / threads);
+                futures.add(executor.submit(() -> slice.forEach(tracker::complete)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(tracker.getLowWaterMark()).isEqualTo(count);
+    }
+}
@@ -125,6 +125,9 @@ public class KafkaJournalTest {
         final Journal.JournalReadEntry firstMessage = Iterators.getOnlyElement(messages.iterator());
 
         assertEquals("message", new String(firstMessage.getPayload(), UTF_8));
+        // protobuf can only share the content of buffers backed by an accessible array
+        assertTrue(firstMessage.getPayloadBuffer().hasArray());
+        assertEquals("message", UTF_8.decode(firstMessage.getPayloadBuffer()).toString());
     }
 
     @Test
@@ -154,6 +157,142 @@ public class KafkaJournalTest {
         assertEquals("message1", new String(firstMessage.getPayload(), UTF_8));
     }
 
+    @Test
+    public void writeAndReadMultiplePartitions() throws Exception {
+        final KafkaJournal journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                2,
+                100,
+                new MetricRegistry(),
+                serverStatus);
+
+        assertThat(journal.getPartitionCount()).isEqualTo(2);
+        assertTrue(new File(journalDirectory, "messagejournal-0").exists());
+        assertTrue(new File(journalDirectory, "messagejournal-1").exists());
+
+        journal.write("id1".getBytes(UTF_8), "message1".getBytes(UTF_8));
+        journal.write("id2".getBytes(UTF_8), "message2".getBytes(UTF_8));
+
+        final Journal.JournalReadEntry first = Iterators.getOnlyElement(journal.read(0, 10).iterator());
+        final Journal.JournalReadEntry second = Iterators.getOnlyElement(journal.read(1, 10).iterator());
+        assertEquals("message1", new String(first.getPayload(), UTF_8));
+        assertEquals("message2", new String(second.getPayload(), UTF_8));
+        assertThat(first.getOffset()).isNotEqualTo(second.getOffset());
+        assertThat(journal.getLogEndOffset()).isEqualTo(2L);
+        assertThat(journal.getNextReadOffset()).isEqualTo(2L);
+
+        journal.markJournalOffsetCommitted(second.getOffset());
+        // only the message of the first partition is uncommitted
+        assertThat(journal.getLogEndOffset() - 1 - journal.getCommittedOffset()).isEqualTo(1L);
+
+        journal.startAsync().awaitRunning();
+        journal.stopAsync().awaitTerminated();
+
+        // existing partitions must not be dropped when fewer partitions are configured
+        final KafkaJournal reopenedJournal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                1,
+                100,
+                new MetricRegistry(),
+                serverStatus);
+
+        assertThat(reopenedJournal.getPartitionCount()).isEqualTo(2);
+        assertThat(reopenedJournal.read(1, 10)).isEmpty();
+        assertEquals("message1", new String(Iterators.getOnlyElement(reopenedJournal.read(0, 10).iterator()).getPayload(), UTF_8));
+    }
+
+    @Test
+    public void committedOffsetOnlyAdvancesOverContiguousCommits() throws Exception {
+        final KafkaJournal journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                new MetricRegistry(),
+                serverStatus);
+
+        for (int i = 0; i < 5; i++) {
+            journal.write(("id" + i).getBytes(UTF_8), ("message" + i).getBytes(UTF_8));
+        }
+        final List<Journal.JournalReadEntry> entries = journal.read(0, 10);
+        assertThat(entries).hasSize(5);
+        assertThat(journal.getInFlightMessages()).isEqualTo(5L);
+        assertThat(journal.getCommittedOffset()).isEqualTo(KafkaJournal.DEFAULT_COMMITTED_OFFSET);
+
+        // the later messages are done before the first one, which must not be skipped
+        journal.markJournalOffsetCommitted(entries.get(1).getOffset());
+        journal.markJournalOffsetCommitted(entries.get(3).getOffset());
+        assertThat(journal.getCommittedOffset()).isEqualTo(KafkaJournal.DEFAULT_COMMITTED_OFFSET);
+        assertThat(journal.getInFlightMessages()).isEqualTo(5L);
+
+        journal.markJournalOffsetCommitted(entries.get(0).getOffset());
+        assertThat(journal.getCommittedOffset()).isEqualTo(1L);
+        assertThat(journal.getInFlightMessages()).isEqualTo(3L);
+
+        journal.markJournalOffsetCommitted(entries.get(2).getOffset());
+        assertThat(journal.getCommittedOffset()).isEqualTo(3L);
+        assertThat(journal.getInFlightMessages()).isEqualTo(1L);
+
+        // committing an offset twice is harmless
+        journal.markJournalOffsetCommitted(entries.get(2).getOffset());
+        journal.markJournalOffsetCommitted(entries.get(4).getOffset());
+        assertThat(journal.getCommittedOffset()).isEqualTo(4L);
+        assertThat(journal.getInFlightMessages()).isEqualTo(0L);
+    }
+
+    @Test
+    public void sharedOffsetIsCommittedAfterAllMessages() throws Exception {
+        final KafkaJournal journal = new KafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                new MetricRegistry(),
+                serverStatus);
+
+        journal.write("id".getBytes(UTF_8), "message".getBytes(UTF_8));
+        final List<Journal.JournalReadEntry> entries = journal.read(0, 10);
+        assertThat(entries).hasSize(1);
+        final long offset = entries.get(0).getOffset();
+
+        // the entry has been decoded into three messages
+        journal.markJournalOffsetShared(offset, 3);
+        journal.markJournalOffsetCommitted(offset);
+        journal.markJournalOffsetCommitted(offset);
+        assertThat(journal.getCommittedOffset()).isEqualTo(KafkaJournal.DEFAULT_COMMITTED_OFFSET);
+        assertThat(journal.getInFlightMessages()).isEqualTo(1L);
+
+        journal.markJournalOffsetCommitted(offset);
+        assertThat(journal.getCommittedOffset()).isEqualTo(0L);
+        assertThat(journal.getInFlightMessages()).isEqualTo(0L);
+    }
+
+    private void commitOffsets(KafkaJournal journal, long firstOffset, long lastOffset) {
+        for (long offset = firstOffset; offset <= lastOffset; offset++) {
+            journal.markJournalOffsetCommitted(offset);
+        }
+    }
+
     private int createBulkChunks(KafkaJournal journal, Size segmentSize, int bulkCount) {
         // Magic numbers deduced by magic…
         int bulkSize = Ints.saturatedCast(segmentSize.toBytes() / (2L * 16L));
@@ -405,15 +544,15 @@ public class KafkaJournalTest {
         assertEquals(numberOfSegments, 3);
 
         // mark first half of first segment committed, should not clean anything
-        journal.markJournalOffsetCommitted(bulkSize / 2);
+        commitOffsets(journal, 0, bulkSize / 2);
         assertEquals("should not touch segments", journal.cleanupLogs(), 0);
         assertEquals(countSegmentsInDir(messageJournalDir), 3);
 
-        journal.markJournalOffsetCommitted(bulkSize + 1);
+        commitOffsets(journal, bulkSize / 2 + 1, bulkSize + 1);
         assertEquals("first segment should've been purged", journal.cleanupLogs(), 1);
         assertEquals(countSegmentsInDir(messageJournalDir), 2);
 
-        journal.markJournalOffsetCommitted(bulkSize * 4);
+        commitOffsets(journal, bulkSize + 2, bulkSize * 4);
         assertEquals("only purge one segment, not the active one", journal.cleanupLogs(), 1);
         assertEquals(countSegmentsInDir(messageJournalDir), 1);
     }
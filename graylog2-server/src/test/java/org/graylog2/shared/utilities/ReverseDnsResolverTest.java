@@ -0,0 +1,123 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.shared.utilities;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReverseDnsResolverTest {
+    private static final long TTL = TimeUnit.HOURS.toNanos(1L);
+    private static final long NEGATIVE_TTL = TimeUnit.MINUTES.toNanos(1L);
+
+    private final AtomicLong time = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return time.get();
+        }
+    };
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private InetAddress resolvable;
+    private InetAddress unresolvable;
+    private InetAddress unknown;
+    private MetricRegistry metricRegistry;
+    private ReverseDnsResolver resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        resolvable = InetAddress.getByAddress(new byte[]{10, 0, 0, 1});
+        unresolvable = InetAddress.getByAddress(new byte[]{10, 0, 0, 2});
+        unknown = InetAddress.getByAddress(new byte[]{10, 0, 0, 3});
+        metricRegistry = new MetricRegistry();
+        resolver = new ReverseDnsResolver(100, TTL, NEGATIVE_TTL, this::lookup, tasks::add, ticker, metricRegistry);
+    }
+
+    private String lookup(InetAddress address) throws UnknownHostException {
+        lookups.incrementAndGet();
+        if (address.equals(resolvable)) {
+            return "host.example.com";
+        } else if (address.equals(unresolvable)) {
+            return address.getHostAddress();
+        }
+        throw new UnknownHostException(address.getHostAddress());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void resolveCachesHostnames() {
+        assertThat(resolver.resolve(resolvable)).isEqualTo("host.example.com");
+        assertThat(resolver.resolve(resolvable)).isEqualTo("host.example.com");
+        assertThat(lookups.get()).isEqualTo(1);
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(ReverseDnsResolver.class, "hits")).getCount()).isEqualTo(1L);
+        assertThat(metricRegistry.meter(MetricRegistry.name(ReverseDnsResolver.class, "misses")).getCount()).isEqualTo(1L);
+        assertThat(metricRegistry.timer(MetricRegistry.name(ReverseDnsResolver.class, "lookupTime")).getCount()).isEqualTo(1L);
+
+        time.addAndGet(TTL);
+        assertThat(resolver.resolve(resolvable)).isEqualTo("host.example.com");
+        assertThat(lookups.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void resolveCachesFailedLookupsWithNegativeTtl() {
+        assertThat(resolver.resolve(unresolvable)).isEqualTo("10.0.0.2");
+        assertThat(resolver.resolve(unknown)).isEqualTo("10.0.0.3");
+        assertThat(resolver.resolve(unresolvable)).isEqualTo("10.0.0.2");
+        assertThat(resolver.resolve(unknown)).isEqualTo("10.0.0.3");
+        assertThat(lookups.get()).isEqualTo(2);
+
+        time.addAndGet(NEGATIVE_TTL);
+        assertThat(resolver.resolve(unresolvable)).isEqualTo("10.0.0.2");
+        assertThat(resolver.resolve(unknown)).isEqualTo("10.0.0.3");
+        assertThat(lookups.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void resolveNonBlockingLooksUpAddressInBackground() {
+        assertThat(resolver.resolveNonBlocking(resolvable)).isNull();
+        assertThat(resolver.resolveNonBlocking(resolvable)).isNull();
+        assertThat(tasks).hasSize(1);
+        assertThat(lookups.get()).isEqualTo(0);
+
+        runTasks();
+        assertThat(lookups.get()).isEqualTo(1);
+        assertThat(resolver.resolveNonBlocking(resolvable)).isEqualTo("host.example.com");
+        assertThat(resolver.resolve(resolvable)).isEqualTo("host.example.com");
+        assertThat(tasks).isEmpty();
+        assertThat(lookups.get()).isEqualTo(1);
+    }
+}
@@ -18,6 +18,7 @@
 package org.graylog2.streams;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.bson.types.ObjectId;
@@ -25,7 +26,6 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
-import org.graylog2.shared.SuppressForbidden;
 import org.graylog2.streams.matchers.StreamRuleMock;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -40,7 +40,6 @@ import javax.inject.Provider;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
@@ -49,6 +48,7 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class StreamRouterEngineTest {
@@ -70,9 +70,8 @@ public class StreamRouterEngineTest {
         when(streamFaultManager.getStreamProcessingTimeout()).thenReturn(250L);
     }
 
-    @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
     private StreamRouterEngine newEngine(List<Stream> streams) {
-        return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics, defaultStreamProvider);
+        return new StreamRouterEngine(streams, streamFaultManager, streamMetrics, defaultStreamProvider);
     }
 
     @Test
@@ -269,6 +268,60 @@ public class StreamRouterEngineTest {
         assertEquals(engine.match(message), Lists.newArrayList(stream));
     }
 
+    @Test
+    public void testLiteralRegexAndContainsRulesMatch() throws Exception {
+        final Stream containsStream = mock(Stream.class);
+        when(containsStream.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule containsRule = getStreamRuleMock("contains", StreamRuleType.CONTAINS, "number", "42", false);
+        when(containsStream.getStreamRules()).thenReturn(Collections.singletonList(containsRule));
+
+        final Stream regexStream = mock(Stream.class);
+        when(regexStream.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule regexRule = getStreamRuleMock("regex", StreamRuleType.REGEX, "number", "42", false);
+        when(regexStream.getStreamRules()).thenReturn(Collections.singletonList(regexRule));
+
+        final Stream invertedContainsStream = mock(Stream.class);
+        when(invertedContainsStream.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule invertedContainsRule = getStreamRuleMock("invertedContains", StreamRuleType.CONTAINS, "number", "42", true);
+        when(invertedContainsStream.getStreamRules()).thenReturn(Collections.singletonList(invertedContainsRule));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(containsStream, regexStream, invertedContainsStream));
+
+        // Without the field in the message no rule matches, inverted CONTAINS rules require the field to be present.
+        assertThat(engine.match(getMessage())).isEmpty();
+
+        final Message stringMessage = getMessage();
+        stringMessage.addField("number", "1426");
+        assertThat(engine.match(stringMessage)).containsExactly(containsStream, regexStream);
+
+        // CONTAINS rules only match strings while REGEX rules match the string representation of any value.
+        final Message numberMessage = getMessage();
+        numberMessage.addField("number", 1426);
+        assertThat(engine.match(numberMessage)).containsExactly(regexStream, invertedContainsStream);
+
+        final Message otherMessage = getMessage();
+        otherMessage.addField("number", "23");
+        assertThat(engine.match(otherMessage)).containsExactly(invertedContainsStream);
+    }
+
+    @Test
+    public void testRegexTimeoutRegistersFailure() throws Exception {
+        when(streamFaultManager.getStreamProcessingTimeout()).thenReturn(10L);
+
+        final Stream stream = mock(Stream.class);
+        when(stream.getMatchingType()).thenReturn(Stream.MatchingType.OR);
+        final StreamRule rule = getStreamRuleMock("regex", StreamRuleType.REGEX, "testfield", "^(a+)+$", false);
+        when(stream.getStreamRules()).thenReturn(Collections.singletonList(rule));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+
+        final Message message = getMessage();
+        message.addField("testfield", Strings.repeat("a", 64) + "b");
+
+        assertThat(engine.match(message)).isEmpty();
+        verify(streamFaultManager).registerFailure(stream);
+    }
+
     @Test
     public void testMultipleRulesMatch() throws Exception {
         final StreamMock stream = getStreamMock("test");
@@ -729,6 +782,92 @@ public class StreamRouterEngineTest {
                 Lists.newArrayList(stream), engine.match(message2));
     }
 
+    @Test
+    public void testInvertedExactMatch() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule rule = getStreamRuleMock("StreamRule1Id", StreamRuleType.EXACT, "testfield", "testvalue", true);
+        when(stream.getStreamRules()).thenReturn(Collections.singletonList(rule));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+
+        // Without testfield in the message.
+        assertThat(engine.match(getMessage())).containsExactly(stream);
+
+        final Message message1 = getMessage();
+        message1.addField("testfield", "testvalue");
+        assertThat(engine.match(message1)).isEmpty();
+
+        final Message message2 = getMessage();
+        message2.addField("testfield", "othervalue");
+        assertThat(engine.match(message2)).containsExactly(stream);
+    }
+
+    @Test
+    public void testGreaterAndSmallerThresholdsMatch() throws Exception {
+        final List<Stream> streams = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            final Stream greater = mock(Stream.class);
+            when(greater.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+            final StreamRule greaterRule = getStreamRuleMock("greater" + i, StreamRuleType.GREATER, "number", String.valueOf(i), false);
+            when(greater.getStreamRules()).thenReturn(Collections.singletonList(greaterRule));
+
+            final Stream notSmaller = mock(Stream.class);
+            when(notSmaller.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+            final StreamRule notSmallerRule = getStreamRuleMock("notSmaller" + i, StreamRuleType.SMALLER, "number", String.valueOf(i), true);
+            when(notSmaller.getStreamRules()).thenReturn(Collections.singletonList(notSmallerRule));
+
+            streams.add(greater);
+            streams.add(notSmaller);
+        }
+
+        final StreamRouterEngine engine = newEngine(streams);
+
+        // Rules without the field in the message never match, inverted or not.
+        assertThat(engine.match(getMessage())).isEmpty();
+
+        final Message message = getMessage();
+        message.addField("number", 4.5);
+
+        final List<Stream> expected = Lists.newArrayList();
+        for (int i = 0; i <= 4; i++) {
+            expected.add(streams.get(2 * i));
+            expected.add(streams.get(2 * i + 1));
+        }
+        assertThat(engine.match(message)).containsOnlyElementsOf(expected).hasSize(expected.size());
+
+        final Message nonNumericMessage = getMessage();
+        nonNumericMessage.addField("number", "foo");
+        assertThat(engine.match(nonNumericMessage)).isEmpty();
+    }
+
+    @Test
+    public void testIndexedAndContainsRulesMatch() throws Exception {
+        final Stream andStream = mock(Stream.class);
+        when(andStream.getMatchingType()).thenReturn(Stream.MatchingType.AND);
+        final StreamRule exactRule = getStreamRuleMock("exact", StreamRuleType.EXACT, "source", "localhost", false);
+        final StreamRule containsRule = getStreamRuleMock("contains", StreamRuleType.CONTAINS, "message", "error", false);
+        when(andStream.getStreamRules()).thenReturn(Lists.newArrayList(containsRule, exactRule));
+
+        final Stream orStream = mock(Stream.class);
+        when(orStream.getMatchingType()).thenReturn(Stream.MatchingType.OR);
+        when(orStream.getStreamRules()).thenReturn(Lists.newArrayList(containsRule, exactRule));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(andStream, orStream));
+
+        final Message message1 = new Message("an error occurred", "localhost", new DateTime(DateTimeZone.UTC));
+        assertThat(engine.match(message1)).containsExactly(andStream, orStream);
+
+        final Message message2 = new Message("all good", "localhost", new DateTime(DateTimeZone.UTC));
+        assertThat(engine.match(message2)).containsExactly(orStream);
+
+        final Message message3 = new Message("an error occurred", "remotehost", new DateTime(DateTimeZone.UTC));
+        assertThat(engine.match(message3)).containsExactly(orStream);
+
+        final Message message4 = new Message("all good", "remotehost", new DateTime(DateTimeZone.UTC));
+        assertThat(engine.match(message4)).isEmpty();
+    }
+
     private StreamMock getStreamMock(String title) {
         return getStreamMock(title, Stream.MatchingType.AND);
     }
@@ -738,7 +877,12 @@ public class StreamRouterEngineTest {
     }
 
     private StreamRule getStreamRuleMock(String id, StreamRuleType type, String field, String value) {
+        return getStreamRuleMock(id, type, field, value, false);
+    }
+
+    private StreamRule getStreamRuleMock(String id, StreamRuleType type, String field, String value, boolean inverted) {
         final StreamRule result = mock(StreamRule.class);
+        when(result.getInverted()).thenReturn(inverted);
         when(result.getId()).thenReturn(id);
         when(result.getType()).thenReturn(type);
         when(result.getField()).thenReturn(field);
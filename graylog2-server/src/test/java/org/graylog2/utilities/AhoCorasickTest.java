@@ -0,0 +1,101 @@
+/**
+ * This file is part of Graylog.
+ *
+ * Graylog is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Graylog is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Graylog.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.graylog2.utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AhoCorasickTest {
+    @Test
+    public void findAllReportsEveryContainedPattern() {
+        final AhoCorasick.Builder builder = AhoCorasick.builder();
+        final int he = builder.add("he");
+        final int she = builder.add("she");
+        final int his = builder.add("his");
+        final int hers = builder.add("hers");
+        final AhoCorasick ahoCorasick = builder.build();
+
+        assertThat(ahoCorasick.getPatternCount()).isEqualTo(4);
+        assertThat(found(ahoCorasick, "ushers")).containsOnly(he, she, hers);
+        assertThat(found(ahoCorasick, "this")).containsOnly(his);
+        assertThat(found(ahoCorasick, "nothing")).isEmpty();
+    }
+
+    @Test
+    public void addingTheSamePatternTwiceReturnsTheSameIndex() {
+        final AhoCorasick.Builder builder = AhoCorasick.builder();
+        final int first = builder.add("foo");
+        final int second = builder.add("foo");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(builder.build().getPatternCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void emptyPatternIsContainedInEveryText() {
+        final AhoCorasick.Builder builder = AhoCorasick.builder();
+        final int empty = builder.add("");
+        final int foo = builder.add("foo");
+        final AhoCorasick ahoCorasick = builder.build();
+
+        assertThat(found(ahoCorasick, "")).containsOnly(empty);
+        assertThat(found(ahoCorasick, "foobar")).containsOnly(empty, foo);
+        assertThat(ahoCorasick.containsAny("bar")).isTrue();
+    }
+
+    @Test
+    public void findsOverlappingPatternsThroughFailureLinks() {
+        final AhoCorasick.Builder builder = AhoCorasick.builder();
+        final int abcd = builder.add("abcd");
+        final int bc = builder.add("bc");
+        final int c = builder.add("c");
+        final AhoCorasick ahoCorasick = builder.build();
+
+        assertThat(found(ahoCorasick, "xabcx")).containsOnly(bc, c);
+        assertThat(found(ahoCorasick, "abcabcd")).containsOnly(abcd, bc, c);
+        assertThat(ahoCorasick.containsAny("ab")).isFalse();
+    }
+
+    @Test
+    public void supportsMoreThan64Patterns() {
+        final AhoCorasick.Builder builder = AhoCorasick.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add("pattern" + i + ";");
+        }
+        final AhoCorasick ahoCorasick = builder.build();
+
+        assertThat(ahoCorasick.getBitSetWords()).isEqualTo(2);
+        assertThat(found(ahoCorasick, "pattern99;pattern7;")).hasSize(2);
+    }
+
+    private static List<Integer> found(AhoCorasick ahoCorasick, String text) {
+        final long[] matches = new long[ahoCorasick.getBitSetWords()];
+        ahoCorasick.findAll(text, matches);
+
+        final List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < ahoCorasick.getPatternCount(); i++) {
+            if ((matches[i >>> 6] & (1L << i)) != 0) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+}